@@ -0,0 +1,109 @@
+package com.udacity.jdnd.course3.critter;
+
+import com.udacity.jdnd.course3.critter.entity.EmployeeSlot;
+import com.udacity.jdnd.course3.critter.service.AssignmentSolver;
+import com.udacity.jdnd.course3.critter.user.EmployeeSkill;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Solves one POST /schedule/assign batch of {@code requests} requests over a week against {@code employees}
+ * employees, without the database: random working days (five of seven) and one to three skills per employee,
+ * one or two activities and a 30 to 120 minute slot between 8:00 and 18:00 per request, and a few existing
+ * bookings per employee. Run with {@code parallelism=1} to see what solving the days in parallel gains.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class AssignmentSolverBenchmark {
+
+    private static final LocalDate MONDAY = LocalDate.of(2030, 1, 7);
+
+    @Param({"10000"})
+    public int requests;
+
+    @Param({"1000"})
+    public int employees;
+
+    @Param({"0", "1"})
+    public int parallelism;
+
+    private ForkJoinPool pool;
+    private AssignmentSolver solver;
+    private List<AssignmentSolver.Request> batch;
+    private List<AssignmentSolver.Candidate> candidates;
+    private List<EmployeeSlot> booked;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        solver = new AssignmentSolver(pool, 3);
+        Random random = new Random(42);
+        int skills = EmployeeSkill.values().length;
+
+        candidates = new ArrayList<>(employees);
+        booked = new ArrayList<>();
+        for (int e = 0; e < employees; e++) {
+            int dayMask = 0;
+            while (Integer.bitCount(dayMask) < 5) {
+                dayMask |= 1 << random.nextInt(7);
+            }
+            int skillMask = 0;
+            for (int s = 1 + random.nextInt(3); Integer.bitCount(skillMask) < s; ) {
+                skillMask |= 1 << random.nextInt(skills);
+            }
+            candidates.add(new AssignmentSolver.Candidate(e + 1, skillMask, dayMask));
+            for (int b = 0; b < 3; b++) {
+                LocalDateTime start = randomStart(random);
+                booked.add(new EmployeeSlot((long) e + 1, start, start.plusMinutes(60)));
+            }
+        }
+
+        batch = new ArrayList<>(requests);
+        for (int r = 0; r < requests; r++) {
+            int skillMask = 1 << random.nextInt(skills);
+            if (random.nextInt(4) == 0) {
+                skillMask |= 1 << random.nextInt(skills);
+            }
+            LocalDateTime start = randomStart(random);
+            batch.add(new AssignmentSolver.Request(start, start.plusMinutes(30 + 30L * random.nextInt(4)), skillMask));
+        }
+    }
+
+    // A quarter hour between 8:00 and 16:00 on one of the seven days
+    private static LocalDateTime randomStart(Random random) {
+        return MONDAY.plusDays(random.nextInt(7)).atTime(8, 0).plusMinutes(15L * random.nextInt(32));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public long[] solve() {
+        return solver.solve(batch, candidates, booked);
+    }
+}
@@ -0,0 +1,135 @@
+package com.udacity.jdnd.course3.critter;
+
+import com.udacity.jdnd.course3.critter.entity.EnumSetMaskConverter;
+import com.udacity.jdnd.course3.critter.pet.PetType;
+import com.udacity.jdnd.course3.critter.service.EmployeeService;
+import com.udacity.jdnd.course3.critter.user.EmployeeSkill;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Date;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * Runs the application on an in-memory H2 database seeded with {@code rows} customers, pets and schedules and
+ * {@code rows / 100} (at least 10) employees. The size is set with {@code -p rows=1000,100000,1000000}.
+ * <p>
+ * The rows are inserted over plain JDBC, so seeding a million rows takes seconds instead of minutes. Ids start
+ * at 1 in every table: the first n schedules, customers, pets and employees are ids 1..n.
+ */
+@State(Scope.Benchmark)
+public class CritterDataset {
+
+    public static final LocalDate FIRST_DATE = LocalDate.of(2020, 1, 6);
+
+    private static final int BATCH_SIZE = 10_000;
+
+    @Param({"1000"})
+    public int rows;
+
+    public int employees;
+
+    private ConfigurableApplicationContext context;
+
+    @Setup(Level.Trial)
+    public void start() {
+        // Passed as command line arguments so they take precedence over application.properties
+        context = new SpringApplicationBuilder(CritterApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(
+                        "--spring.datasource.url=jdbc:h2:mem:critter-jmh;DB_CLOSE_ON_EXIT=FALSE",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.datasource.username=sa",
+                        "--spring.jpa.hibernate.ddl-auto=validate",
+                        "--spring.jpa.properties.hibernate.generate_statistics=false",
+                        "--logging.level.root=WARN");
+
+        employees = Math.max(10, rows / 100);
+        seed(context.getBean(JdbcTemplate.class));
+
+        // The availability index was built when the context started, before the employees were inserted
+        context.getBean(EmployeeService.class).loadAvailabilityIndex();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    public <T> T getBean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    /**
+     * Repeats the given rows up to exactly {@code size} elements, so that a benchmark can declare a fixed
+     * number of operations per invocation even when the dataset has fewer rows (e.g. employees).
+     */
+    public static <T> List<T> repeat(List<T> rows, int size) {
+        List<T> repeated = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            repeated.add(rows.get(i % rows.size()));
+        }
+        return repeated;
+    }
+
+    private void seed(JdbcTemplate jdbcTemplate) {
+        DayOfWeek[] days = DayOfWeek.values();
+        EmployeeSkill[] skills = EmployeeSkill.values();
+        PetType[] types = PetType.values();
+
+        insert(jdbcTemplate, "insert into customer (id, name, phone_number, notes) values (?, ?, ?, ?)", rows,
+                i -> new Object[]{i, "Customer " + i, "123-456-789", null});
+        insert(jdbcTemplate, "insert into pet (id, type, name, birth_date, notes, customer_id) values (?, ?, ?, ?, ?, ?)",
+                rows, i -> new Object[]{i, types[i % types.length].ordinal(), "Pet " + i,
+                        Date.valueOf(FIRST_DATE.minusDays(i % 3650)), null, i});
+
+        // Every employee works three consecutive weekdays and has two skills
+        insert(jdbcTemplate, "insert into employee (id, version, name, days_mask, skills_mask) values (?, 0, ?, ?, ?)",
+                employees, i -> new Object[]{i, "Employee " + i,
+                        EnumSetMaskConverter.toMask(EnumSet.of(days[(i - 1) % days.length], days[i % days.length],
+                                days[(i + 1) % days.length])),
+                        EnumSetMaskConverter.toMask(EnumSet.of(skills[(i - 1) % skills.length],
+                                skills[(i + 1) % skills.length]))});
+
+        // Schedule i books pet i with one employee and one activity, spread over a year
+        insert(jdbcTemplate, "insert into schedule (id, version, date, activities_mask) values (?, 0, ?, ?)", rows,
+                i -> new Object[]{i, Date.valueOf(FIRST_DATE.plusDays(i % 365)),
+                        EnumSetMaskConverter.toMask(EnumSet.of(skills[i % skills.length]))});
+        insert(jdbcTemplate, "insert into schedule_pets (schedule_id, pets_id) values (?, ?)", rows,
+                i -> new Object[]{i, i});
+        insert(jdbcTemplate, "insert into schedule_employee (schedule_id, employee_id) values (?, ?)", rows,
+                i -> new Object[]{i, (i - 1) % employees + 1});
+
+        // Continue the id generator after the seeded rows (the schema migration creates one row per entity)
+        jdbcTemplate.update("update id_generator set next_id = ? where entity in ('customer', 'pet', 'schedule')",
+                rows + 1);
+        jdbcTemplate.update("update id_generator set next_id = ? where entity = 'employee'", employees + 1);
+    }
+
+    private interface Row {
+        Object[] values(int id);
+    }
+
+    private static void insert(JdbcTemplate jdbcTemplate, String sql, int count, Row row) {
+        List<Object[]> batch = new ArrayList<>(Math.min(count, BATCH_SIZE));
+        for (int id = 1; id <= count; id++) {
+            batch.add(row.values(id));
+            if (batch.size() == BATCH_SIZE || id == count) {
+                jdbcTemplate.batchUpdate(sql, batch);
+                batch.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.udacity.jdnd.course3.critter;
+
+import com.udacity.jdnd.course3.critter.entity.Employee;
+import com.udacity.jdnd.course3.critter.entity.Schedule;
+import com.udacity.jdnd.course3.critter.service.EmployeeService;
+import com.udacity.jdnd.course3.critter.service.ScheduleService;
+import com.udacity.jdnd.course3.critter.user.EmployeeSkill;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service-level lookups against the seeded dataset: the employee availability search and the schedules of a
+ * customer's pets.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class CritterServiceBenchmark {
+
+    @State(Scope.Thread)
+    public static class Lookups {
+        private EmployeeService employeeService;
+        private ScheduleService scheduleService;
+        private int customers;
+
+        private final SplittableRandom random = new SplittableRandom(42);
+        private final EmployeeSkill[] skills = EmployeeSkill.values();
+
+        @Setup(Level.Trial)
+        public void setUp(CritterDataset dataset) {
+            employeeService = dataset.getBean(EmployeeService.class);
+            scheduleService = dataset.getBean(ScheduleService.class);
+            customers = dataset.rows;
+        }
+
+        LocalDate nextDate() {
+            return CritterDataset.FIRST_DATE.plusDays(random.nextInt(7));
+        }
+
+        Set<EmployeeSkill> nextSkills() {
+            Set<EmployeeSkill> requested = EnumSet.of(skills[random.nextInt(skills.length)]);
+            if (random.nextBoolean()) {
+                requested.add(skills[random.nextInt(skills.length)]);
+            }
+            return requested;
+        }
+
+        long nextCustomerId() {
+            return 1 + random.nextInt(customers);
+        }
+    }
+
+    @Benchmark
+    public List<Employee> getEmployeesByService(Lookups lookups) {
+        return lookups.employeeService.getEmployeesByService(lookups.nextDate(), lookups.nextSkills());
+    }
+
+    @Benchmark
+    public List<Schedule> getCustomerSchedule(Lookups lookups) {
+        return lookups.scheduleService.getCustomerSchedule(lookups.nextCustomerId());
+    }
+}
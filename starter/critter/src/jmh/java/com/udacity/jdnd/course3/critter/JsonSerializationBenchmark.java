@@ -0,0 +1,51 @@
+package com.udacity.jdnd.course3.critter;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.udacity.jdnd.course3.critter.schedule.ScheduleDTO;
+import com.udacity.jdnd.course3.critter.service.ScheduleService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializes a list of {@code listSize} ScheduleDTOs with the application's ObjectMapper, i.e. the response
+ * body of GET /schedule or of one page of it.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class JsonSerializationBenchmark {
+
+    @Param({"100", "1000"})
+    public int listSize;
+
+    private ObjectMapper objectMapper;
+    private List<ScheduleDTO> schedules;
+
+    @Setup(Level.Trial)
+    public void setUp(CritterDataset dataset) {
+        objectMapper = dataset.getBean(ObjectMapper.class);
+        schedules = dataset.getBean(ScheduleService.class).getScheduleDTOsAfter(0, listSize);
+    }
+
+    @Benchmark
+    public byte[] writeScheduleList() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(schedules);
+    }
+}
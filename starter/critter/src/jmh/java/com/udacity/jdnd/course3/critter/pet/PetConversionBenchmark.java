@@ -0,0 +1,62 @@
+package com.udacity.jdnd.course3.critter.pet;
+
+import com.udacity.jdnd.course3.critter.CritterDataset;
+import com.udacity.jdnd.course3.critter.entity.Pet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Converts the first {@value #PETS} seeded pets to PetDTOs. Scores are per pet.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class PetConversionBenchmark {
+
+    private static final int PETS = 1000;
+
+    private PetController petController;
+    private List<Pet> pets;
+
+    @Setup(Level.Trial)
+    public void setUp(CritterDataset dataset) {
+        petController = dataset.getBean(PetController.class);
+
+        EntityManager entityManager = dataset.getBean(EntityManagerFactory.class).createEntityManager();
+        try {
+            pets = entityManager.createQuery("select p from Pet p where p.id <= :last order by p.id", Pet.class)
+                    .setParameter("last", (long) PETS)
+                    .getResultList();
+        } finally {
+            entityManager.close();
+        }
+        pets = CritterDataset.repeat(pets, PETS);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PETS)
+    public void convertPetToPetDTO(Blackhole blackhole) {
+        for (Pet pet : pets) {
+            blackhole.consume(petController.convertPetToPetDTO(pet));
+        }
+    }
+}
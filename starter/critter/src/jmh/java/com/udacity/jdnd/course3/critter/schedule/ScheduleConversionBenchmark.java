@@ -0,0 +1,68 @@
+package com.udacity.jdnd.course3.critter.schedule;
+
+import com.udacity.jdnd.course3.critter.CritterDataset;
+import com.udacity.jdnd.course3.critter.entity.Schedule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Converts the first {@value #SCHEDULES} seeded schedules (employees, pets and activities loaded) to
+ * ScheduleDTOs. Scores are per schedule.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class ScheduleConversionBenchmark {
+
+    private static final int SCHEDULES = 1000;
+
+    private ScheduleController scheduleController;
+    private List<Schedule> schedules;
+
+    @Setup(Level.Trial)
+    public void setUp(CritterDataset dataset) {
+        scheduleController = dataset.getBean(ScheduleController.class);
+
+        EntityManager entityManager = dataset.getBean(EntityManagerFactory.class).createEntityManager();
+        try {
+            schedules = entityManager.createQuery("select distinct s from Schedule s left join fetch s.employee " +
+                    "where s.id <= :last order by s.id", Schedule.class)
+                    .setParameter("last", (long) SCHEDULES)
+                    .getResultList();
+            entityManager.createQuery("select distinct s from Schedule s left join fetch s.pets " +
+                    "where s in :schedules", Schedule.class)
+                    .setParameter("schedules", schedules)
+                    .getResultList();
+        } finally {
+            entityManager.close();
+        }
+        schedules = CritterDataset.repeat(schedules, SCHEDULES);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SCHEDULES)
+    public void convertScheduleToDTO(Blackhole blackhole) {
+        for (Schedule schedule : schedules) {
+            blackhole.consume(scheduleController.convertScheduleToDTO(schedule));
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.udacity.jdnd.course3.critter.user;
+
+import com.udacity.jdnd.course3.critter.CritterDataset;
+import com.udacity.jdnd.course3.critter.entity.Customer;
+import com.udacity.jdnd.course3.critter.entity.Employee;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Converts {@value #ROWS} seeded customers (with their pets) and employees (with skills and days) to DTOs.
+ * Scores are per entity.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class UserConversionBenchmark {
+
+    private static final int ROWS = 1000;
+
+    private UserController userController;
+    private List<Customer> customers;
+    private List<Employee> employees;
+
+    @Setup(Level.Trial)
+    public void setUp(CritterDataset dataset) {
+        userController = dataset.getBean(UserController.class);
+
+        EntityManager entityManager = dataset.getBean(EntityManagerFactory.class).createEntityManager();
+        try {
+            customers = entityManager.createQuery("select distinct c from Customer c left join fetch c.pets " +
+                    "where c.id <= :last order by c.id", Customer.class)
+                    .setParameter("last", (long) ROWS)
+                    .getResultList();
+            employees = entityManager.createQuery("select e from Employee e where e.id <= :last order by e.id", Employee.class)
+                    .setParameter("last", (long) ROWS)
+                    .getResultList();
+        } finally {
+            entityManager.close();
+        }
+
+        // There are only rows / 100 employees
+        employees = CritterDataset.repeat(employees, ROWS);
+        customers = CritterDataset.repeat(customers, ROWS);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void convertCustomerToCustomerDTO(Blackhole blackhole) {
+        for (Customer customer : customers) {
+            blackhole.consume(userController.convertCustomerToCustomerDTO(customer));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void convertEmployeeToEmployeeDTO(Blackhole blackhole) {
+        for (Employee employee : employees) {
+            blackhole.consume(userController.convertEmployeeToEmployeeDTO(employee));
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.udacity.jdnd.course3.critter;
+
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+/**
+ * One page of a keyset-paginated list. Pass {@code next} as the {@code after} parameter of the following
+ * request; it is null on the last page.
+ */
+public class CursorPage<T> {
+    private List<T> items;
+    private Long next;
+
+    public CursorPage() {
+    }
+
+    public CursorPage(List<T> items, Long next) {
+        this.items = items;
+        this.next = next;
+    }
+
+    /**
+     * Builds a page from rows that were queried with {@code limit + 1}: the extra row only tells that
+     * another page exists and is dropped.
+     */
+    public static <T> CursorPage<T> of(List<T> rows, int limit, ToLongFunction<T> id) {
+        if (rows.size() <= limit) {
+            return new CursorPage<>(rows, null);
+        }
+        List<T> items = rows.subList(0, limit);
+        return new CursorPage<>(items, id.applyAsLong(items.get(limit - 1)));
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public void setItems(List<T> items) {
+        this.items = items;
+    }
+
+    public Long getNext() {
+        return next;
+    }
+
+    public void setNext(Long next) {
+        this.next = next;
+    }
+}
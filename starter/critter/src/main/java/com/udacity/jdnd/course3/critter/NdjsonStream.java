@@ -0,0 +1,60 @@
+package com.udacity.jdnd.course3.critter;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.udacity.jdnd.course3.critter.tenant.TenantContext;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.List;
+import java.util.function.LongFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * Streams a whole table as newline-delimited JSON, one keyset page at a time.
+ * <p>
+ * Each page is loaded by its own short read, written and dropped before the next one is loaded, so the
+ * heap only ever holds one page regardless of the table size, and no connection or transaction is held
+ * open while the client is reading. The pages are read as the tenant of the request, as the body is written on
+ * another thread.
+ */
+public final class NdjsonStream {
+
+    public static final String MEDIA_TYPE = "application/x-ndjson";
+
+    private NdjsonStream() {
+    }
+
+    /**
+     * @param pages loads the rows after the given id, ordered by id; an empty or short page ends the stream
+     * @param id    extracts the keyset id of a row
+     */
+    public static <T> ResponseEntity<StreamingResponseBody> of(ObjectMapper objectMapper, int pageSize,
+                                                               LongFunction<List<T>> pages, ToLongFunction<T> id) {
+        String tenantId = TenantContext.getTenantId();
+        StreamingResponseBody body = outputStream -> {
+            JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+            long after = 0;
+            List<T> page;
+            do {
+                long pageAfter = after;
+                page = TenantContext.callAs(tenantId, () -> pages.apply(pageAfter));
+                for (T row : page) {
+                    generator.writeObject(row);
+                    generator.writeRaw('\n');
+                }
+                generator.flush();
+                if (!page.isEmpty()) {
+                    after = id.applyAsLong(page.get(page.size() - 1));
+                }
+            } while (page.size() >= pageSize);
+            generator.close();
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(MEDIA_TYPE))
+                .body(body);
+    }
+}
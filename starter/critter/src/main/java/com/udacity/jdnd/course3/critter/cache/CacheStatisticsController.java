@@ -0,0 +1,25 @@
+package com.udacity.jdnd.course3.critter.cache;
+
+import com.udacity.jdnd.course3.critter.service.CacheStatisticsService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * Exposes the second-level cache counters so that region sizes and TTLs can be tuned.
+ */
+@RestController
+@RequestMapping("/cache")
+public class CacheStatisticsController {
+
+    @Autowired
+    private CacheStatisticsService cacheStatisticsService;
+
+    @GetMapping("/statistics")
+    public List<CacheRegionStatisticsDTO> getStatistics() {
+        return cacheStatisticsService.getRegionStatistics();
+    }
+}
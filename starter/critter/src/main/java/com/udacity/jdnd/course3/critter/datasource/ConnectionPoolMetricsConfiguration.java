@@ -0,0 +1,36 @@
+package com.udacity.jdnd.course3.critter.datasource;
+
+import com.udacity.jdnd.course3.critter.metrics.ConnectionWaitMetricsTrackerFactory;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Installs the {@link ConnectionWaitMetricsTrackerFactory} on every Hikari pool bean before the pool starts, in
+ * place of the plain Micrometer tracker that Spring Boot would install. The read replica pools get theirs in
+ * {@link ReadReplicaConfiguration}, the pools of dedicated tenant databases in {@link TenantRoutingConfiguration}.
+ * <p>
+ * This runs before initialization, while the bean is still the pool itself: afterwards
+ * {@link SqlSamplerConfiguration} may wrap it in a query listener proxy.
+ */
+@Configuration
+public class ConnectionPoolMetricsConfiguration {
+
+    @Bean
+    public static BeanPostProcessor connectionWaitMetricsPostProcessor(ObjectProvider<MeterRegistry> meterRegistry) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if (bean instanceof HikariDataSource pool && pool.getMetricRegistry() == null
+                        && pool.getMetricsTrackerFactory() == null) {
+                    meterRegistry.ifAvailable(registry ->
+                            pool.setMetricsTrackerFactory(new ConnectionWaitMetricsTrackerFactory(registry)));
+                }
+                return bean;
+            }
+        };
+    }
+}
@@ -0,0 +1,90 @@
+package com.udacity.jdnd.course3.critter.datasource;
+
+import com.zaxxer.hikari.HikariConfigMXBean;
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.jdbc.DataSourceUnwrapper;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Startup self-check of the connection pools, enabled with {@code critter.datasource.warmup.enabled}. Before the
+ * application reports ready, every pool is made to open its minimum number of idle connections at once, and
+ * every connection is validated. The first requests then find the pool full instead of waiting for new
+ * connections, and a database that cannot serve the configured pool size fails the startup instead of the
+ * first busy minute.
+ * <p>
+ * Only the pools that are beans are checked: the primary, which may be wrapped by the SQL sampler. Read
+ * replicas may be down at startup, see ReadReplicaConfiguration.
+ */
+@Component
+public class ConnectionPoolWarmup implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(ConnectionPoolWarmup.class);
+
+    @Autowired
+    private ObjectProvider<DataSource> dataSources;
+
+    @Value("${critter.datasource.warmup.enabled:false}")
+    private boolean enabled;
+
+    @Value("${critter.datasource.warmup.validation-timeout:5s}")
+    private Duration validationTimeout;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) {
+            return;
+        }
+        // The pool bean and the proxies around it unwrap to the same pool
+        dataSources.orderedStream()
+                .map(dataSource -> DataSourceUnwrapper.unwrap(dataSource, HikariConfigMXBean.class,
+                        HikariDataSource.class))
+                .filter(Objects::nonNull)
+                .distinct()
+                .forEach(this::warmUp);
+    }
+
+    private void warmUp(HikariDataSource pool) {
+        int size = pool.getMinimumIdle() > 0 ? pool.getMinimumIdle() : pool.getMaximumPoolSize();
+        long started = System.nanoTime();
+        List<Connection> connections = new ArrayList<>(size);
+        try {
+            // Holding the connections makes the pool open new ones until it has `size`
+            for (int i = 0; i < size; i++) {
+                Connection connection = pool.getConnection();
+                connections.add(connection);
+                if (!connection.isValid((int) Math.max(1, validationTimeout.toSeconds()))) {
+                    throw new IllegalStateException("Connection pool " + pool.getPoolName()
+                            + " handed out an invalid connection during the startup check");
+                }
+            }
+        } catch (SQLException exception) {
+            throw new IllegalStateException("Connection pool " + pool.getPoolName() + " could not open " + size
+                    + " connections during the startup check (" + connections.size() + " opened)", exception);
+        } finally {
+            for (Connection connection : connections) {
+                try {
+                    connection.close();
+                } catch (SQLException exception) {
+                    log.warn("Could not return a connection to pool {}", pool.getPoolName(), exception);
+                }
+            }
+        }
+        log.info("Connection pool {} warmed up: {} connections validated in {} ms", pool.getPoolName(), size,
+                (System.nanoTime() - started) / 1_000_000);
+    }
+}
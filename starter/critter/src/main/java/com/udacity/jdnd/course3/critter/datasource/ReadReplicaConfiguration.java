@@ -0,0 +1,82 @@
+package com.udacity.jdnd.course3.critter.datasource;
+
+import com.udacity.jdnd.course3.critter.metrics.ConnectionWaitMetricsTrackerFactory;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sends read-only transactions to the read replicas listed in {@code critter.datasource.replica.urls}, and
+ * everything else to the primary configured with the usual {@code spring.datasource.*} properties.
+ * <p>
+ * The application's DataSource is a {@link LazyConnectionDataSourceProxy}: the physical connection is only
+ * taken on the first statement, once the transaction has marked the connection read-only, and read-only
+ * connections come from the {@link ReadReplicaDataSource}. Without replica urls, the auto-configured single
+ * DataSource is used as before.
+ */
+@Configuration
+@ConditionalOnProperty("critter.datasource.replica.urls")
+public class ReadReplicaConfiguration {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    public ReadReplicaDataSource replicaDataSource(
+            HikariDataSource primaryDataSource, DataSourceProperties properties,
+            ObjectProvider<MeterRegistry> meterRegistry,
+            @Value("${critter.datasource.replica.urls}") List<String> urls,
+            @Value("${critter.datasource.replica.username:${spring.datasource.username:}}") String username,
+            @Value("${critter.datasource.replica.password:${spring.datasource.password:}}") String password,
+            @Value("${critter.datasource.replica.maximum-pool-size:10}") int maximumPoolSize,
+            @Value("${critter.datasource.replica.lag-query:}") String lagQuery,
+            @Value("${critter.datasource.replica.max-lag:5s}") Duration maxLag,
+            @Value("${critter.datasource.replica.check-interval:1s}") Duration checkInterval) {
+        List<ReadReplicaDataSource.Replica> replicas = new ArrayList<>();
+        for (int i = 0; i < urls.size(); i++) {
+            HikariDataSource replica = new HikariDataSource();
+            replica.setPoolName("replica-" + i);
+            replica.setJdbcUrl(urls.get(i).trim());
+            replica.setDriverClassName(properties.determineDriverClassName());
+            replica.setUsername(username);
+            replica.setPassword(password);
+            replica.setMaximumPoolSize(maximumPoolSize);
+            replica.setReadOnly(true);
+            // The same driver properties, timeouts and leak detection as the primary
+            replica.setDataSourceProperties(primaryDataSource.getDataSourceProperties());
+            replica.setConnectionTimeout(primaryDataSource.getConnectionTimeout());
+            replica.setLeakDetectionThreshold(primaryDataSource.getLeakDetectionThreshold());
+            meterRegistry.ifAvailable(registry ->
+                    replica.setMetricsTrackerFactory(new ConnectionWaitMetricsTrackerFactory(registry)));
+            // Do not fail startup when a replica is down, the lag check keeps it out of use until it is back
+            replica.setInitializationFailTimeout(-1);
+            replicas.add(new ReadReplicaDataSource.Replica(replica.getPoolName(), replica));
+        }
+        return new ReadReplicaDataSource(primaryDataSource, replicas, lagQuery.isEmpty() ? null : lagQuery, maxLag,
+                checkInterval);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(HikariDataSource primaryDataSource, ReadReplicaDataSource replicaDataSource) {
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(primaryDataSource);
+        dataSource.setReadOnlyDataSource(replicaDataSource);
+        return dataSource;
+    }
+}
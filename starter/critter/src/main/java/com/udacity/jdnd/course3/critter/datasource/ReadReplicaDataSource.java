@@ -0,0 +1,141 @@
+package com.udacity.jdnd.course3.critter.datasource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out connections to the read replicas, round robin, for read-only transactions.
+ * <p>
+ * Every replica is checked periodically: it is used only while the check succeeds and its replication lag
+ * (the lag query returns it in seconds) is at most the configured maximum. A replica that is down or lagging
+ * further behind is skipped, and with no fresh replica left the connections come from the primary, so reads
+ * are never staler than the maximum lag.
+ */
+public class ReadReplicaDataSource extends AbstractDataSource implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(ReadReplicaDataSource.class);
+
+    private final DataSource primary;
+    private final List<Replica> replicas;
+    private final String lagQuery;
+    private final Duration maxLag;
+    private final AtomicInteger next = new AtomicInteger();
+    private final ScheduledExecutorService checker;
+
+    /**
+     * @param lagQuery query returning the replication lag of a replica in seconds, or null to only check that
+     *                 the replica answers
+     */
+    public ReadReplicaDataSource(DataSource primary, List<Replica> replicas, String lagQuery, Duration maxLag,
+                                 Duration checkInterval) {
+        this.primary = primary;
+        this.replicas = replicas;
+        this.lagQuery = lagQuery;
+        this.maxLag = maxLag;
+
+        checkReplicas();
+        this.checker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replica-lag-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        checker.scheduleWithFixedDelay(this::checkReplicas, checkInterval.toMillis(), checkInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return select().getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return select().getConnection(username, password);
+    }
+
+    // The next fresh replica in round robin order, or the primary when every replica is stale
+    private DataSource select() {
+        int start = next.getAndIncrement();
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get(Math.floorMod(start + i, replicas.size()));
+            if (replica.fresh) {
+                return replica.dataSource;
+            }
+        }
+        return primary;
+    }
+
+    /**
+     * Runs the lag check on every replica now, instead of waiting for the next periodic check.
+     */
+    public void checkReplicas() {
+        for (Replica replica : replicas) {
+            boolean fresh;
+            try (Connection connection = replica.dataSource.getConnection()) {
+                fresh = lagQuery == null ? connection.isValid(1) : getLagSeconds(connection) <= maxLag.getSeconds();
+            } catch (SQLException | RuntimeException exception) {
+                log.debug("Lag check of replica {} failed", replica.name, exception);
+                fresh = false;
+            }
+            if (fresh != replica.fresh) {
+                log.warn("Replica {} is {}", replica.name,
+                        fresh ? "in use for reads" : "stale or down, reads go elsewhere");
+                replica.fresh = fresh;
+            }
+        }
+    }
+
+    private double getLagSeconds(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(lagQuery)) {
+            // No row means no replication status, i.e. not a replica that can be trusted
+            if (!resultSet.next()) {
+                return Double.MAX_VALUE;
+            }
+            double lag = resultSet.getDouble(1);
+            return resultSet.wasNull() ? Double.MAX_VALUE : lag;
+        }
+    }
+
+    public boolean isFresh(String name) {
+        return replicas.stream().anyMatch(replica -> replica.name.equals(name) && replica.fresh);
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        checker.shutdownNow();
+        for (Replica replica : replicas) {
+            if (replica.dataSource instanceof AutoCloseable) {
+                ((AutoCloseable) replica.dataSource).close();
+            }
+        }
+    }
+
+    /**
+     * One replica, with the result of its last lag check.
+     */
+    public static final class Replica {
+        private final String name;
+        private final DataSource dataSource;
+        private volatile boolean fresh;
+
+        public Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.udacity.jdnd.course3.critter.datasource;
+
+import com.udacity.jdnd.course3.critter.metrics.QueryMetricsListener;
+import com.udacity.jdnd.course3.critter.metrics.SlowQueryLog;
+import io.micrometer.core.instrument.MeterRegistry;
+import net.ttddyy.dsproxy.support.ProxyDataSource;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.Profiles;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+/**
+ * Replaces SQL logging with the slow-query sampler: the application's DataSource (the bean named dataSource,
+ * i.e. the Hikari pool, or the read/write routing proxy of {@link ReadReplicaConfiguration}, either of them behind
+ * the tenant routing of {@link TenantRoutingConfiguration}) is wrapped in a datasource-proxy that reports every
+ * statement to the {@link QueryMetricsListener}.
+ * <p>
+ * {@code spring.jpa.show-sql} prints every statement synchronously on the request thread, so the production
+ * profile refuses to start with it.
+ */
+@Configuration
+@ConditionalOnProperty(name = "critter.sql.enabled", matchIfMissing = true)
+public class SqlSamplerConfiguration {
+
+    private static final String DATA_SOURCE_BEAN = "dataSource";
+
+    public SqlSamplerConfiguration(Environment environment) {
+        if (environment.acceptsProfiles(Profiles.of("production"))
+                && (environment.getProperty("spring.jpa.show-sql", Boolean.class, false)
+                || environment.getProperty("spring.jpa.properties.hibernate.show_sql", Boolean.class, false))) {
+            throw new IllegalStateException("SQL logging must stay off in production, the critter.sql sampler "
+                    + "logs slow statements instead");
+        }
+    }
+
+    @Bean
+    public SlowQueryLog slowQueryLog(MeterRegistry meterRegistry,
+                                     @Value("${critter.sql.queue-size:1024}") int queueSize) {
+        return new SlowQueryLog(queueSize, meterRegistry);
+    }
+
+    @Bean
+    public QueryMetricsListener queryMetricsListener(
+            MeterRegistry meterRegistry, SlowQueryLog slowQueryLog,
+            @Value("${critter.sql.slow-threshold:200ms}") Duration slowThreshold,
+            @Value("${critter.sql.sample-rate:0}") double sampleRate,
+            @Value("${critter.sql.max-shapes:500}") int maxShapes) {
+        return new QueryMetricsListener(meterRegistry, slowQueryLog, slowThreshold, sampleRate, maxShapes);
+    }
+
+    @Bean
+    public static BeanPostProcessor queryListenerPostProcessor(ObjectProvider<QueryMetricsListener> listener) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (DATA_SOURCE_BEAN.equals(beanName) && bean instanceof DataSource dataSource
+                        && !(bean instanceof ProxyDataSource)) {
+                    return ProxyDataSourceBuilder.create(dataSource)
+                            .name(beanName)
+                            .listener(listener.getObject())
+                            .build();
+                }
+                return bean;
+            }
+        };
+    }
+}
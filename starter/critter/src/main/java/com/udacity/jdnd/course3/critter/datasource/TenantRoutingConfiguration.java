@@ -0,0 +1,101 @@
+package com.udacity.jdnd.course3.critter.datasource;
+
+import com.udacity.jdnd.course3.critter.metrics.ConnectionWaitMetricsTrackerFactory;
+import com.udacity.jdnd.course3.critter.tenant.TenancyProperties;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.flywaydb.core.Flyway;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.jdbc.DatabaseDriver;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.Environment;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Moves heavy tenants to databases of their own: every {@code critter.tenancy.databases.<tenant>.url} gets a
+ * Hikari pool, is brought to the current schema with the application's Flyway migrations, and the application's
+ * DataSource (the bean named dataSource) is wrapped in a {@link TenantRoutingDataSource} that sends the statements
+ * of that tenant there. Without dedicated databases the DataSource is left as it is.
+ * <p>
+ * The wrapping runs before the {@link SqlSamplerConfiguration} proxy is put around the DataSource, so the
+ * statements of the dedicated databases are timed and sampled too.
+ */
+@Configuration
+public class TenantRoutingConfiguration {
+
+    private static final String DATA_SOURCE_BEAN = "dataSource";
+
+    @Bean
+    public static BeanPostProcessor tenantRoutingPostProcessor(ObjectProvider<TenancyProperties> tenancyProperties,
+                                                               ObjectProvider<MeterRegistry> meterRegistry,
+                                                               Environment environment) {
+        return new TenantRoutingPostProcessor(tenancyProperties, meterRegistry, environment);
+    }
+
+    // Ordered, so that it runs before the sampler's post processor, which is not
+    private static final class TenantRoutingPostProcessor implements BeanPostProcessor, Ordered {
+
+        private final ObjectProvider<TenancyProperties> tenancyProperties;
+        private final ObjectProvider<MeterRegistry> meterRegistry;
+        private final Environment environment;
+
+        private TenantRoutingPostProcessor(ObjectProvider<TenancyProperties> tenancyProperties,
+                                           ObjectProvider<MeterRegistry> meterRegistry, Environment environment) {
+            this.tenancyProperties = tenancyProperties;
+            this.meterRegistry = meterRegistry;
+            this.environment = environment;
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            if (!DATA_SOURCE_BEAN.equals(beanName) || !(bean instanceof DataSource shared)
+                    || bean instanceof TenantRoutingDataSource) {
+                return bean;
+            }
+            Map<String, TenancyProperties.Database> databases = tenancyProperties.getObject().getDatabases();
+            if (databases.isEmpty()) {
+                return bean;
+            }
+            Map<String, DataSource> dedicated = new LinkedHashMap<>();
+            databases.forEach((tenantId, database) -> dedicated.put(tenantId, createPool(tenantId, database)));
+            return new TenantRoutingDataSource(shared, dedicated);
+        }
+
+        @Override
+        public int getOrder() {
+            return Ordered.LOWEST_PRECEDENCE;
+        }
+
+        private HikariDataSource createPool(String tenantId, TenancyProperties.Database database) {
+            DatabaseDriver driver = DatabaseDriver.fromJdbcUrl(database.getUrl());
+            HikariDataSource pool = new HikariDataSource();
+            pool.setPoolName("tenant-" + tenantId);
+            pool.setJdbcUrl(database.getUrl());
+            pool.setDriverClassName(driver.getDriverClassName());
+            pool.setUsername(database.getUsername() != null ? database.getUsername()
+                    : environment.getProperty("spring.datasource.username"));
+            pool.setPassword(database.getPassword() != null ? database.getPassword()
+                    : environment.getProperty("spring.datasource.password"));
+            pool.setMaximumPoolSize(database.getMaximumPoolSize());
+            pool.setConnectionTimeout(environment.getProperty("spring.datasource.hikari.connection-timeout",
+                    Long.class, pool.getConnectionTimeout()));
+            meterRegistry.ifAvailable(registry ->
+                    pool.setMetricsTrackerFactory(new ConnectionWaitMetricsTrackerFactory(registry)));
+
+            // The same migrations as the shared database, from the folder of this database's vendor
+            String locations = environment.getProperty("spring.flyway.locations", "classpath:db/migration/{vendor}");
+            Flyway.configure()
+                    .dataSource(pool)
+                    .locations(locations.replace("{vendor}", driver.getId()).split(","))
+                    .load()
+                    .migrate();
+            return pool;
+        }
+    }
+}
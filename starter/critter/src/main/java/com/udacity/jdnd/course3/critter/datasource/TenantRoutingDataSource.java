@@ -0,0 +1,52 @@
+package com.udacity.jdnd.course3.critter.datasource;
+
+import com.udacity.jdnd.course3.critter.tenant.TenantContext;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Hands out connections of the current tenant's database: the dedicated pool of a tenant that has been moved to a
+ * database of its own, and the shared DataSource for every other tenant. A connection is looked up when a
+ * transaction or statement takes it, so the tenant must be set before that, as it is for requests.
+ * <p>
+ * It takes the place of the dataSource bean, so closing it closes every pool, the shared one included.
+ */
+public class TenantRoutingDataSource extends AbstractRoutingDataSource implements Closeable {
+
+    private final DataSource shared;
+    private final Map<String, DataSource> dedicated;
+
+    public TenantRoutingDataSource(DataSource shared, Map<String, DataSource> dedicated) {
+        this.shared = shared;
+        this.dedicated = dedicated;
+        setDefaultTargetDataSource(shared);
+        setTargetDataSources(new LinkedHashMap<>(dedicated));
+        // Tenants without a dedicated database use the shared one
+        setLenientFallback(true);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return TenantContext.getTenantId();
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (DataSource dataSource : dedicated.values()) {
+            close(dataSource);
+        }
+        close(shared);
+    }
+
+    private static void close(DataSource dataSource) throws IOException {
+        if (dataSource instanceof Closeable closeable) {
+            closeable.close();
+        }
+    }
+}
@@ -1,18 +1,32 @@
 package com.udacity.jdnd.course3.critter.entity;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.GenericGenerator;
 import org.hibernate.annotations.Nationalized;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.annotations.TenantId;
 
-import javax.persistence.*;
+import jakarta.persistence.*;
 import java.util.List;
 
 @Entity
 @Table(name = "customer")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "customer")
 public class Customer {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(generator = "customer_id")
+    @GenericGenerator(name = "customer_id", type = PooledTableIdGenerator.class,
+            parameters = @Parameter(name = PooledTableIdGenerator.SEGMENT_VALUE_PARAM, value = "customer"))
     private Long id;
 
+    // The clinic the row belongs to; set on insert and added to every query by Hibernate (see TenantContext)
+    @TenantId
+    @Column(name = "tenant_id", length = 64, nullable = false, updatable = false)
+    private String tenantId;
+
     @Nationalized
     private String name;
 
@@ -20,6 +34,7 @@ public class Customer {
     private String notes;
 
     @OneToMany(mappedBy = "customer", cascade = CascadeType.ALL, orphanRemoval = true)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "customer-pets")
     private List<Pet> pets;
 
     public Customer() {
@@ -33,6 +48,10 @@ public class Customer {
         this.notes = notes;
     }
 
+    public String getTenantId() {
+        return tenantId;
+    }
+
     public Long getId() {
         return id;
     }
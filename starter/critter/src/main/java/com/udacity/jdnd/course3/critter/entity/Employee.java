@@ -1,33 +1,58 @@
 package com.udacity.jdnd.course3.critter.entity;
 
 import com.udacity.jdnd.course3.critter.user.EmployeeSkill;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.annotations.TenantId;
 
-import javax.persistence.*;
+import jakarta.persistence.*;
 import java.time.DayOfWeek;
 import java.util.Set;
 
 @Entity
 @Table(name = "employee")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "employee")
 public class Employee {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(generator = "employee_id")
+    @GenericGenerator(name = "employee_id", type = PooledTableIdGenerator.class,
+            parameters = @Parameter(name = PooledTableIdGenerator.SEGMENT_VALUE_PARAM, value = "employee"))
     private Long id;
 
+    // The clinic the row belongs to; set on insert and added to every query by Hibernate (see TenantContext)
+    @TenantId
+    @Column(name = "tenant_id", length = 64, nullable = false, updatable = false)
+    private String tenantId;
+
+    // Bumped by every booking of this employee, so that concurrent bookings on different nodes conflict
+    @Version
+    private long version;
+
     private String name;
 
-    @ElementCollection(targetClass = DayOfWeek.class)
-    @Enumerated(EnumType.STRING)
-    @CollectionTable(name = "employee_day_available")
-    @Column(name = "daysAvailable")
+    // Both sets are bitmasks on the employee row (see EnumSetMaskConverter), so an employee is one row and
+    // the lookup by day and skills filters in SQL. The columns are not null, but a null set is allowed here: the
+    // converter stores it as 0, and Hibernate would reject it before converting if the mapping said nullable=false.
+    @Convert(converter = EnumSetMaskConverter.DaysOfWeek.class)
+    @Column(name = "days_mask")
     private Set<DayOfWeek> daysAvailable;
 
-    @ElementCollection(targetClass = EmployeeSkill.class)
-    @Enumerated(EnumType.STRING)
-    @CollectionTable(name = "tblSkills")
-    @Column(name = "skill")
+    @Convert(converter = EnumSetMaskConverter.EmployeeSkills.class)
+    @Column(name = "skills_mask")
     private Set<EmployeeSkill> skills;
 
+    // The same columns as plain integers, for the bitwise predicates of EmployeeRepository; only written
+    // through daysAvailable and skills
+    @Column(name = "days_mask", insertable = false, updatable = false)
+    private int daysMask;
+
+    @Column(name = "skills_mask", insertable = false, updatable = false)
+    private int skillsMask;
+
     public Employee() {
     }
 
@@ -38,6 +63,10 @@ public class Employee {
         this.skills = skills;
     }
 
+    public String getTenantId() {
+        return tenantId;
+    }
+
     public Long getId() {
         return id;
     }
@@ -46,6 +75,14 @@ public class Employee {
         this.id = id;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     public String getName() {
         return name;
     }
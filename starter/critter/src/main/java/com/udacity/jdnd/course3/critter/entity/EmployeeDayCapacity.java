@@ -0,0 +1,13 @@
+package com.udacity.jdnd.course3.critter.entity;
+
+import java.time.LocalDate;
+
+/**
+ * One row of the employee_day_capacity table: an employee who works on the date, with its skills as a mask (see
+ * {@link EnumSetMaskConverter}) and the minutes of that day it is not booked yet. Derived from the employee and its
+ * booked slots by EmployeeDayCapacityService; not a JPA entity.
+ */
+public record EmployeeDayCapacity(LocalDate date, long employeeId, int skillsMask, int remainingMinutes) {
+
+    public static final int DAY_MINUTES = 24 * 60;
+}
@@ -0,0 +1,74 @@
+package com.udacity.jdnd.course3.critter.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+/**
+ * The time slot for which one employee is booked by a schedule. Copies the times of the schedule so that
+ * the bookings of an employee can be searched through an (employee_id, start_time) index.
+ */
+@Embeddable
+public class EmployeeSlot {
+
+    @Column(name = "employee_id", nullable = false)
+    private Long employeeId;
+
+    @Column(name = "start_time", nullable = false)
+    private LocalDateTime startTime;
+
+    @Column(name = "end_time", nullable = false)
+    private LocalDateTime endTime;
+
+    public EmployeeSlot() {
+    }
+
+    public EmployeeSlot(Long employeeId, LocalDateTime startTime, LocalDateTime endTime) {
+        this.employeeId = employeeId;
+        this.startTime = startTime;
+        this.endTime = endTime;
+    }
+
+    public Long getEmployeeId() {
+        return employeeId;
+    }
+
+    public void setEmployeeId(Long employeeId) {
+        this.employeeId = employeeId;
+    }
+
+    public LocalDateTime getStartTime() {
+        return startTime;
+    }
+
+    public void setStartTime(LocalDateTime startTime) {
+        this.startTime = startTime;
+    }
+
+    public LocalDateTime getEndTime() {
+        return endTime;
+    }
+
+    public void setEndTime(LocalDateTime endTime) {
+        this.endTime = endTime;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof EmployeeSlot)) {
+            return false;
+        }
+        EmployeeSlot that = (EmployeeSlot) o;
+        return Objects.equals(employeeId, that.employeeId) && Objects.equals(startTime, that.startTime)
+                && Objects.equals(endTime, that.endTime);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(employeeId, startTime, endTime);
+    }
+}
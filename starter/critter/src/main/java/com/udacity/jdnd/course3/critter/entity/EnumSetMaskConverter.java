@@ -0,0 +1,69 @@
+package com.udacity.jdnd.course3.critter.entity;
+
+import com.udacity.jdnd.course3.critter.user.EmployeeSkill;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+import java.time.DayOfWeek;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Stores a set of enum constants as an integer bitmask column, with bit `ordinal()` set for every constant
+ * in the set. A null set is stored as 0, and every value is read back as a (mutable) EnumSet.
+ * <p>
+ * Queries filter on the mask with bitwise predicates, e.g. `bitand(mask, :required) = :required` for "has all
+ * of", and `bitand(mask, :any) <> 0` for "has any of".
+ */
+public abstract class EnumSetMaskConverter<E extends Enum<E>> implements AttributeConverter<Set<E>, Integer> {
+
+    private final Class<E> enumClass;
+
+    protected EnumSetMaskConverter(Class<E> enumClass) {
+        this.enumClass = enumClass;
+    }
+
+    public static int toMask(Set<? extends Enum<?>> values) {
+        int mask = 0;
+        if (values != null) {
+            for (Enum<?> value : values) {
+                mask |= 1 << value.ordinal();
+            }
+        }
+        return mask;
+    }
+
+    public static <E extends Enum<E>> EnumSet<E> fromMask(Class<E> enumClass, int mask) {
+        EnumSet<E> values = EnumSet.noneOf(enumClass);
+        for (E value : enumClass.getEnumConstants()) {
+            if ((mask & (1 << value.ordinal())) != 0) {
+                values.add(value);
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public Integer convertToDatabaseColumn(Set<E> attribute) {
+        return toMask(attribute);
+    }
+
+    @Override
+    public Set<E> convertToEntityAttribute(Integer dbData) {
+        return fromMask(enumClass, dbData == null ? 0 : dbData);
+    }
+
+    @Converter
+    public static class EmployeeSkills extends EnumSetMaskConverter<EmployeeSkill> {
+        public EmployeeSkills() {
+            super(EmployeeSkill.class);
+        }
+    }
+
+    @Converter
+    public static class DaysOfWeek extends EnumSetMaskConverter<DayOfWeek> {
+        public DaysOfWeek() {
+            super(DayOfWeek.class);
+        }
+    }
+}
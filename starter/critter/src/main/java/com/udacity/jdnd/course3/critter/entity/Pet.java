@@ -1,24 +1,38 @@
 package com.udacity.jdnd.course3.critter.entity;
 
 import com.udacity.jdnd.course3.critter.pet.PetType;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.GenericGenerator;
 import org.hibernate.annotations.Nationalized;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.annotations.TenantId;
 
-import javax.persistence.*;
+import jakarta.persistence.*;
 import java.time.LocalDate;
 
 @Entity
 @Table(name = "pet")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "pet")
 public class Pet {
     @Id
-    @GeneratedValue
+    @GeneratedValue(generator = "pet_id")
+    @GenericGenerator(name = "pet_id", type = PooledTableIdGenerator.class,
+            parameters = @Parameter(name = PooledTableIdGenerator.SEGMENT_VALUE_PARAM, value = "pet"))
     private Long id;
 
+    // The clinic the row belongs to; set on insert and added to every query by Hibernate (see TenantContext)
+    @TenantId
+    @Column(name = "tenant_id", length = 64, nullable = false, updatable = false)
+    private String tenantId;
+
     private PetType type;
 
     @Nationalized
     private String name;
 
-    @ManyToOne(targetEntity = Customer.class, optional = false)
+    @ManyToOne(targetEntity = Customer.class, optional = false, fetch = FetchType.LAZY)
     private Customer customer;
     private LocalDate birthDate;
     private String notes;
@@ -33,6 +47,10 @@ public class Pet {
         this.notes = notes;
     }
 
+    public String getTenantId() {
+        return tenantId;
+    }
+
     public Long getId() {
         return id;
     }
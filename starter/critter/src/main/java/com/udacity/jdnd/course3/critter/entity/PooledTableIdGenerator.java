@@ -0,0 +1,47 @@
+package com.udacity.jdnd.course3.critter.entity;
+
+import org.hibernate.MappingException;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.id.enhanced.TableGenerator;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Table-based id generator shared by all entities, one row per entity in the {@code id_generator} table.
+ * <p>
+ * Each allocation reserves a block of ids with a single update of the entity's own row, so inserts get their
+ * ids without a round trip per row and can be sent as JDBC batches. The block size and the optimizer are
+ * read from the Hibernate settings, i.e. {@code spring.jpa.properties.critter.id.allocation-size} and
+ * {@code spring.jpa.properties.critter.id.optimizer}, instead of being fixed in the mapping.
+ */
+public class PooledTableIdGenerator extends TableGenerator {
+
+    public static final String ALLOCATION_SIZE_SETTING = "critter.id.allocation-size";
+    public static final String OPTIMIZER_SETTING = "critter.id.optimizer";
+
+    private static final String DEFAULT_ALLOCATION_SIZE = "50";
+    private static final String DEFAULT_OPTIMIZER = "pooled-lo";
+
+    @Override
+    public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) throws MappingException {
+        Map settings = serviceRegistry.getService(ConfigurationService.class).getSettings();
+
+        Properties generatorParams = new Properties();
+        generatorParams.putAll(params);
+        generatorParams.setProperty(TABLE_PARAM, "id_generator");
+        generatorParams.setProperty(SEGMENT_COLUMN_PARAM, "entity");
+        generatorParams.setProperty(VALUE_COLUMN_PARAM, "next_id");
+        generatorParams.setProperty(INCREMENT_PARAM, setting(settings, ALLOCATION_SIZE_SETTING, DEFAULT_ALLOCATION_SIZE));
+        generatorParams.setProperty(OPT_PARAM, setting(settings, OPTIMIZER_SETTING, DEFAULT_OPTIMIZER));
+
+        super.configure(type, generatorParams, serviceRegistry);
+    }
+
+    private static String setting(Map settings, String name, String defaultValue) {
+        Object value = settings.get(name);
+        return value == null ? defaultValue : value.toString().trim();
+    }
+}
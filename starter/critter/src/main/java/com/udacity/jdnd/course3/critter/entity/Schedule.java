@@ -1,9 +1,14 @@
 package com.udacity.jdnd.course3.critter.entity;
 
 import com.udacity.jdnd.course3.critter.user.EmployeeSkill;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.annotations.TenantId;
 
-import javax.persistence.*;
+import jakarta.persistence.*;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -12,9 +17,19 @@ import java.util.Set;
 public class Schedule {
 
     @Id
-    @GeneratedValue
+    @GeneratedValue(generator = "schedule_id")
+    @GenericGenerator(name = "schedule_id", type = PooledTableIdGenerator.class,
+            parameters = @Parameter(name = PooledTableIdGenerator.SEGMENT_VALUE_PARAM, value = "schedule"))
     private Long id;
 
+    // The clinic the row belongs to; set on insert and added to every query by Hibernate (see TenantContext)
+    @TenantId
+    @Column(name = "tenant_id", length = 64, nullable = false, updatable = false)
+    private String tenantId;
+
+    @Version
+    private long version;
+
     @ManyToMany(targetEntity = Employee.class)
     private List<Employee> employee;
 
@@ -23,9 +38,23 @@ public class Schedule {
 
     private LocalDate date;
 
-    @ElementCollection
+    // The booked time slot [startTime, endTime), within the day of `date`. A schedule booked without times
+    // takes the whole day.
+    private LocalDateTime startTime;
+
+    private LocalDateTime endTime;
+
+    // A null set is stored as 0, like the masks of Employee
+    @Convert(converter = EnumSetMaskConverter.EmployeeSkills.class)
+    @Column(name = "activities_mask")
     private Set<EmployeeSkill> activities;
 
+    // One slot per booked employee, indexed by (employee_id, start_time) in the schema so that overlapping
+    // bookings of an employee are found without going through schedule_employee
+    @ElementCollection
+    @CollectionTable(name = "employee_slot")
+    private Set<EmployeeSlot> slots = new HashSet<>();
+
     public Schedule() {
     }
 
@@ -37,6 +66,10 @@ public class Schedule {
         this.activities = activities;
     }
 
+    public String getTenantId() {
+        return tenantId;
+    }
+
     public Long getId() {
         return id;
     }
@@ -45,6 +78,14 @@ public class Schedule {
         this.id = id;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     public List<Employee> getEmployee() {
         return employee;
     }
@@ -69,6 +110,22 @@ public class Schedule {
         this.date = date;
     }
 
+    public LocalDateTime getStartTime() {
+        return startTime;
+    }
+
+    public void setStartTime(LocalDateTime startTime) {
+        this.startTime = startTime;
+    }
+
+    public LocalDateTime getEndTime() {
+        return endTime;
+    }
+
+    public void setEndTime(LocalDateTime endTime) {
+        this.endTime = endTime;
+    }
+
     public Set<EmployeeSkill> getActivities() {
         return activities;
     }
@@ -76,4 +133,12 @@ public class Schedule {
     public void setActivities(Set<EmployeeSkill> activities) {
         this.activities = activities;
     }
+
+    public Set<EmployeeSlot> getSlots() {
+        return slots;
+    }
+
+    public void setSlots(Set<EmployeeSlot> slots) {
+        this.slots = slots;
+    }
 }
@@ -0,0 +1,70 @@
+package com.udacity.jdnd.course3.critter.event;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.util.Set;
+
+/**
+ * A committed change, as pushed to subscribers. The employee, pet and customer ids are the ones the change
+ * concerns and are what subscriptions filter on; data is the changed schedule, pet or set of available days.
+ * Subscribers only get the events of their own tenant.
+ */
+public class CritterEvent {
+    private final long sequence;
+    private final String tenantId;
+    private final CritterEventType type;
+    private final String key;
+    private final Set<Long> employeeIds;
+    private final Set<Long> petIds;
+    private final Set<Long> customerIds;
+    private final Object data;
+
+    CritterEvent(long sequence, String tenantId, CritterEventType type, String key, Set<Long> employeeIds,
+                 Set<Long> petIds, Set<Long> customerIds, Object data) {
+        this.sequence = sequence;
+        this.tenantId = tenantId;
+        this.type = type;
+        this.key = key;
+        this.employeeIds = employeeIds;
+        this.petIds = petIds;
+        this.customerIds = customerIds;
+        this.data = data;
+    }
+
+    // Increases with every published event, so a client can tell the order and spot gaps
+    public long getSequence() {
+        return sequence;
+    }
+
+    @JsonIgnore
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    public CritterEventType getType() {
+        return type;
+    }
+
+    // Events with the same key describe the same schedule, pet or employee; a coalescing subscriber only
+    // keeps the latest of them
+    @JsonIgnore
+    public String getKey() {
+        return key;
+    }
+
+    public Set<Long> getEmployeeIds() {
+        return employeeIds;
+    }
+
+    public Set<Long> getPetIds() {
+        return petIds;
+    }
+
+    public Set<Long> getCustomerIds() {
+        return customerIds;
+    }
+
+    public Object getData() {
+        return data;
+    }
+}
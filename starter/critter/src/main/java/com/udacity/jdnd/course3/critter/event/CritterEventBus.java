@@ -0,0 +1,109 @@
+package com.udacity.jdnd.course3.critter.event;
+
+import com.udacity.jdnd.course3.critter.tenant.TenantContext;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * In-process bus for the changes pushed to event subscribers. The services publish a change once its
+ * transaction has committed, so subscribers never see a change that is rolled back. Publishing only hands the
+ * event to the buffer of every matching subscription and never waits for a subscriber.
+ * <p>
+ * Events are not persisted or replayed: a subscriber only gets the changes committed on this node while it
+ * is subscribed, and only those of the tenant it subscribed as.
+ */
+@Component
+public class CritterEventBus implements DisposableBean {
+
+    private final List<EventSubscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    public EventSubscription subscribe(Predicate<CritterEvent> filter, EventSubscription.OverflowPolicy policy,
+                                       int capacity) {
+        String tenantId = TenantContext.getTenantId();
+        Predicate<CritterEvent> tenantFilter = event -> tenantId.equals(event.getTenantId()) && filter.test(event);
+        EventSubscription[] subscription = new EventSubscription[1];
+        subscription[0] = new EventSubscription(tenantFilter, policy, capacity,
+                () -> subscriptions.remove(subscription[0]));
+        subscriptions.add(subscription[0]);
+        return subscription[0];
+    }
+
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    // Lets publishers skip building events nobody is listening for
+    public boolean hasSubscribers() {
+        return !subscriptions.isEmpty();
+    }
+
+    /**
+     * Publishes the events once the current transaction commits, or right away without a transaction.
+     */
+    public void publishAfterCommit(List<PendingEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            events.forEach(this::publish);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                events.forEach(CritterEventBus.this::publish);
+            }
+        });
+    }
+
+    private void publish(PendingEvent pending) {
+        CritterEvent event = new CritterEvent(sequence.incrementAndGet(), pending.tenantId, pending.type, pending.key,
+                pending.employeeIds, pending.petIds, pending.customerIds, pending.data);
+        for (EventSubscription subscription : subscriptions) {
+            subscription.offer(event);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        // Ends every delivery loop, which then completes its response
+        for (EventSubscription subscription : new ArrayList<>(subscriptions)) {
+            subscription.close();
+        }
+    }
+
+    /**
+     * An event that is numbered when it is published, of the tenant it is created for.
+     *
+     * @param key identifies the schedule, pet or employee the event is about, see {@link CritterEvent#getKey()}
+     */
+    public static final class PendingEvent {
+        private final String tenantId = TenantContext.getTenantId();
+        private final CritterEventType type;
+        private final String key;
+        private final Set<Long> employeeIds;
+        private final Set<Long> petIds;
+        private final Set<Long> customerIds;
+        private final Object data;
+
+        public PendingEvent(CritterEventType type, String key, Set<Long> employeeIds, Set<Long> petIds,
+                            Set<Long> customerIds, Object data) {
+            this.type = type;
+            this.key = key;
+            this.employeeIds = employeeIds;
+            this.petIds = petIds;
+            this.customerIds = customerIds;
+            this.data = data;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.udacity.jdnd.course3.critter.event;
+
+/**
+ * The kinds of change pushed to event subscribers.
+ */
+public enum CritterEventType {
+    SCHEDULE_CREATED,
+    PET_ADDED,
+    EMPLOYEE_AVAILABILITY_CHANGED,
+    // Sent to a subscriber in place of the events its full buffer had to drop; data is the
+    // number dropped and the sequence is 0
+    EVENTS_DROPPED
+}
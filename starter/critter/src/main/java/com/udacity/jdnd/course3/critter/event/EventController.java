@@ -0,0 +1,182 @@
+package com.udacity.jdnd.course3.critter.event;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.udacity.jdnd.course3.critter.NdjsonStream;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Pushes committed schedule, pet and availability changes to subscribers, as Server-Sent Events or as
+ * newline-delimited JSON. A subscription can be narrowed to the changes of one employee, customer and/or pet.
+ * <p>
+ * Every subscriber has a bounded buffer (see {@link EventSubscription}) that is drained by its own virtual
+ * thread, so a slow client only ever holds its buffer and a parked thread, and never slows down publishing
+ * or other subscribers. Idle streams get a heartbeat, which also detects clients that have gone away.
+ */
+@RestController
+@RequestMapping("/events")
+public class EventController {
+
+    private static final MediaType NDJSON = MediaType.parseMediaType(NdjsonStream.MEDIA_TYPE);
+
+    @Autowired
+    private CritterEventBus eventBus;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${critter.events.buffer-size:256}")
+    private int bufferSize;
+
+    @Value("${critter.events.max-subscribers:1000}")
+    private int maxSubscribers;
+
+    @Value("${critter.events.heartbeat:15s}")
+    private Duration heartbeat;
+
+    private final ExecutorService deliveryExecutor =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("event-delivery-", 0).factory());
+
+    // Subscribers with a delivery thread, counted here so that the limit is checked and taken in one step
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+
+    @PreDestroy
+    public void shutdown() {
+        // The delivery threads park in poll until the next heartbeat, so they are interrupted
+        deliveryExecutor.shutdownNow();
+    }
+
+    @GetMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter subscribeEvents(
+            @RequestParam(required = false) Long employeeId,
+            @RequestParam(required = false) Long customerId,
+            @RequestParam(required = false) Long petId,
+            @RequestParam(defaultValue = "DROP_OLDEST") EventSubscription.OverflowPolicy overflow) {
+        EventSubscription subscription = subscribe(employeeId, customerId, petId, overflow);
+        SseEmitter emitter = new SseEmitter();
+
+        // The event name is the type, the id its sequence; the heartbeat is a comment that clients ignore
+        deliver(subscription, emitter, new EventWriter() {
+            @Override
+            public void write(CritterEvent event) throws IOException {
+                SseEmitter.SseEventBuilder sse = SseEmitter.event().name(event.getType().name());
+                if (event.getSequence() > 0) {
+                    sse.id(Long.toString(event.getSequence()));
+                }
+                emitter.send(sse.data(event, MediaType.APPLICATION_JSON));
+            }
+
+            @Override
+            public void heartbeat() throws IOException {
+                emitter.send(SseEmitter.event().comment("heartbeat"));
+            }
+        });
+        return emitter;
+    }
+
+    @GetMapping(produces = NdjsonStream.MEDIA_TYPE)
+    public ResponseEntity<ResponseBodyEmitter> streamEvents(
+            @RequestParam(required = false) Long employeeId,
+            @RequestParam(required = false) Long customerId,
+            @RequestParam(required = false) Long petId,
+            @RequestParam(defaultValue = "DROP_OLDEST") EventSubscription.OverflowPolicy overflow) {
+        EventSubscription subscription = subscribe(employeeId, customerId, petId, overflow);
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter();
+
+        // One event per line; the heartbeat is an empty line
+        deliver(subscription, emitter, new EventWriter() {
+            @Override
+            public void write(CritterEvent event) throws IOException {
+                emitter.send(objectMapper.writeValueAsString(event) + "\n", NDJSON);
+            }
+
+            @Override
+            public void heartbeat() throws IOException {
+                emitter.send("\n", NDJSON);
+            }
+        });
+        return ResponseEntity.ok().contentType(NDJSON).body(emitter);
+    }
+
+    private EventSubscription subscribe(Long employeeId, Long customerId, Long petId,
+                                        EventSubscription.OverflowPolicy overflow) {
+        // Takes a place below the limit in one step, so concurrent requests cannot all pass the check
+        int count;
+        do {
+            count = subscriberCount.get();
+            if (count >= maxSubscribers) {
+                throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                        "Too many event subscribers, try again later");
+            }
+        } while (!subscriberCount.compareAndSet(count, count + 1));
+        Predicate<CritterEvent> filter = event -> (employeeId == null || event.getEmployeeIds().contains(employeeId))
+                && (customerId == null || event.getCustomerIds().contains(customerId))
+                && (petId == null || event.getPetIds().contains(petId));
+        return eventBus.subscribe(filter, overflow, bufferSize);
+    }
+
+    private void deliver(EventSubscription subscription, ResponseBodyEmitter emitter, EventWriter writer) {
+        emitter.onCompletion(subscription::close);
+        emitter.onTimeout(subscription::close);
+        emitter.onError(error -> subscription.close());
+
+        Runnable delivery = () -> {
+            try {
+                while (!subscription.isClosed()) {
+                    List<CritterEvent> events = subscription.poll(heartbeat);
+                    if (subscription.isClosed()) {
+                        break;
+                    }
+                    if (events.isEmpty()) {
+                        writer.heartbeat();
+                    }
+                    for (CritterEvent event : events) {
+                        writer.write(event);
+                    }
+                }
+                emitter.complete();
+            } catch (IOException | IllegalStateException exception) {
+                // The client has gone away or the request has timed out
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            } finally {
+                subscription.close();
+                subscriberCount.decrementAndGet();
+            }
+        };
+        try {
+            deliveryExecutor.execute(delivery);
+        } catch (RejectedExecutionException exception) {
+            // Shutting down
+            subscription.close();
+            subscriberCount.decrementAndGet();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Shutting down, try again later");
+        }
+    }
+
+    private interface EventWriter {
+        void write(CritterEvent event) throws IOException;
+
+        void heartbeat() throws IOException;
+    }
+}
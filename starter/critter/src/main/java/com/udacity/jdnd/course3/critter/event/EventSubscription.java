@@ -0,0 +1,124 @@
+package com.udacity.jdnd.course3.critter.event;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * One subscriber's buffer of pending events. Publishing never waits for the subscriber: the buffer holds at
+ * most `capacity` events, and when it is full the oldest pending event is dropped. The subscriber learns how
+ * many were dropped from an {@link CritterEventType#EVENTS_DROPPED} event delivered in their place.
+ * <p>
+ * With {@link OverflowPolicy#COALESCE} a new event also replaces a pending event of the same schedule, pet or
+ * employee, so a slow subscriber gets the latest state of everything that changed rather than every step.
+ */
+public class EventSubscription implements AutoCloseable {
+
+    public enum OverflowPolicy {
+        DROP_OLDEST,
+        COALESCE
+    }
+
+    private final Predicate<CritterEvent> filter;
+    private final OverflowPolicy policy;
+    private final int capacity;
+    private final Runnable onClose;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    // Keyed by sequence, or by the event key when coalescing; in publishing order either way
+    private final LinkedHashMap<Object, CritterEvent> pending = new LinkedHashMap<>();
+    private long dropped;
+    private boolean closed;
+
+    EventSubscription(Predicate<CritterEvent> filter, OverflowPolicy policy, int capacity, Runnable onClose) {
+        this.filter = filter;
+        this.policy = policy;
+        this.capacity = capacity;
+        this.onClose = onClose;
+    }
+
+    void offer(CritterEvent event) {
+        if (!filter.test(event)) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            Object key = policy == OverflowPolicy.COALESCE ? event.getKey() : event.getSequence();
+            // A replaced event is removed first, so that the newer one moves to the end
+            if (pending.remove(key) == null && pending.size() >= capacity) {
+                Iterator<CritterEvent> oldest = pending.values().iterator();
+                oldest.next();
+                oldest.remove();
+                dropped++;
+            }
+            pending.put(key, event);
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits up to the timeout for events and takes all pending ones, preceded by an EVENTS_DROPPED event if
+     * any were dropped since the last call. Empty on timeout or once the subscription is closed.
+     */
+    public List<CritterEvent> poll(Duration timeout) throws InterruptedException {
+        lock.lock();
+        try {
+            long nanos = timeout.toNanos();
+            while (pending.isEmpty() && !closed && nanos > 0) {
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            if (closed || pending.isEmpty()) {
+                return Collections.emptyList();
+            }
+            List<CritterEvent> events = new ArrayList<>(pending.size() + 1);
+            if (dropped > 0) {
+                // Not published, so neither numbered nor filtered by tenant
+                events.add(new CritterEvent(0, null, CritterEventType.EVENTS_DROPPED, null,
+                        Collections.emptySet(), Collections.emptySet(), Collections.emptySet(), dropped));
+                dropped = 0;
+            }
+            events.addAll(pending.values());
+            pending.clear();
+            return events;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isClosed() {
+        lock.lock();
+        try {
+            return closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            pending.clear();
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        onClose.run();
+    }
+}
@@ -0,0 +1,87 @@
+package com.udacity.jdnd.course3.critter.metrics;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hikari metrics that show who waits for connections. Next to the usual hikaricp.* pool metrics, every
+ * connection checkout records how long it waited in a {@value #WAIT_METRIC_NAME} timer, and every checkout that
+ * gave up after connection-timeout increments {@value #TIMEOUT_METRIC_NAME}, both tagged with the pool and the
+ * HTTP method and route of the request that asked for the connection ("none" outside a request).
+ * <p>
+ * Hikari reports a checkout on the thread that asked for the connection, which is still bound to its request.
+ */
+public class ConnectionWaitMetricsTrackerFactory implements MetricsTrackerFactory {
+
+    public static final String WAIT_METRIC_NAME = "critter.datasource.connection.wait";
+    public static final String TIMEOUT_METRIC_NAME = "critter.datasource.connection.timeouts";
+
+    private static final String NONE = "none";
+
+    private final MeterRegistry meterRegistry;
+    private final MicrometerMetricsTrackerFactory poolMetrics;
+
+    public ConnectionWaitMetricsTrackerFactory(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.poolMetrics = new MicrometerMetricsTrackerFactory(meterRegistry);
+    }
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        IMetricsTracker pool = poolMetrics.create(poolName, poolStats);
+        return new IMetricsTracker() {
+            @Override
+            public void recordConnectionCreatedMillis(long connectionCreatedMillis) {
+                pool.recordConnectionCreatedMillis(connectionCreatedMillis);
+            }
+
+            @Override
+            public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                pool.recordConnectionAcquiredNanos(elapsedAcquiredNanos);
+                meterRegistry.timer(WAIT_METRIC_NAME, requestTags(poolName))
+                        .record(elapsedAcquiredNanos, TimeUnit.NANOSECONDS);
+            }
+
+            @Override
+            public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+                pool.recordConnectionUsageMillis(elapsedBorrowedMillis);
+            }
+
+            @Override
+            public void recordConnectionTimeout() {
+                pool.recordConnectionTimeout();
+                meterRegistry.counter(TIMEOUT_METRIC_NAME, requestTags(poolName)).increment();
+            }
+
+            @Override
+            public void close() {
+                pool.close();
+            }
+        };
+    }
+
+    private static Tags requestTags(String poolName) {
+        String method = NONE;
+        String route = NONE;
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes instanceof ServletRequestAttributes servletAttributes) {
+            HttpServletRequest request = servletAttributes.getRequest();
+            method = request.getMethod();
+            // The mapped pattern, e.g. /schedule/employee/{employeeId}, so that the tag values stay bounded
+            Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            route = pattern == null ? NONE : pattern.toString();
+        }
+        return Tags.of("pool", poolName, "method", method, "uri", route);
+    }
+}
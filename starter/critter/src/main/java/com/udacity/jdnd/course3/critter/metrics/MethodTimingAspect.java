@@ -0,0 +1,123 @@
+package com.udacity.jdnd.course3.critter.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Pointcut;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.repository.Repository;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records a {@value #METRIC_NAME} timer around every controller, service and repository method, tagged with
+ * the layer, the class and the method name, and with the exception type when the call failed.
+ * <p>
+ * Spring Data repositories are matched on the repository interface they implement, so inherited methods such
+ * as {@code findById} are timed as well. Calls from a bean to its own methods do not go through the proxy and
+ * are only counted as part of the outer call.
+ * <p>
+ * While a controller or service method runs, {@link #currentCaller()} names it (the innermost one), so that
+ * lower layers such as the SQL sampler can tell which method caused their work.
+ */
+@Aspect
+@Component
+public class MethodTimingAspect {
+
+    public static final String METRIC_NAME = "critter.method";
+
+    private static final String NONE = "none";
+
+    private static final ThreadLocal<String> CALLER = new ThreadLocal<>();
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // The tags and caller names only depend on the target class and the method, so they are built once.
+    // Repository methods inherited from Spring Data are shared by all repositories, hence the outer map by class.
+    private final Map<Class<?>, Map<Method, TimedMethod>> methods = new ConcurrentHashMap<>();
+
+    /**
+     * Returns "Class.method" of the innermost controller or service method running on this thread, or "none".
+     */
+    public static String currentCaller() {
+        String caller = CALLER.get();
+        return caller == null ? NONE : caller;
+    }
+
+    @Pointcut("within(@org.springframework.web.bind.annotation.RestController *)")
+    public void controller() {
+    }
+
+    @Pointcut("within(@org.springframework.stereotype.Service *)")
+    public void service() {
+    }
+
+    @Pointcut("within(@org.springframework.stereotype.Repository *) "
+            + "|| target(org.springframework.data.repository.Repository)")
+    public void repository() {
+    }
+
+    @Around("controller()")
+    public Object timeController(ProceedingJoinPoint joinPoint) throws Throwable {
+        return time(joinPoint, "controller");
+    }
+
+    @Around("service()")
+    public Object timeService(ProceedingJoinPoint joinPoint) throws Throwable {
+        return time(joinPoint, "service");
+    }
+
+    @Around("repository() && !controller() && !service()")
+    public Object timeRepository(ProceedingJoinPoint joinPoint) throws Throwable {
+        return time(joinPoint, "repository");
+    }
+
+    private Object time(ProceedingJoinPoint joinPoint, String layer) throws Throwable {
+        Class<?> type = joinPoint.getTarget().getClass();
+        TimedMethod timed = methods.computeIfAbsent(type, key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(((MethodSignature) joinPoint.getSignature()).getMethod(),
+                        method -> new TimedMethod(
+                                Tags.of("layer", layer, "class", getTypeName(type), "method", method.getName()),
+                                getTypeName(type) + "." + method.getName()));
+        String outerCaller = CALLER.get();
+        if (!"repository".equals(layer)) {
+            CALLER.set(timed.caller);
+        }
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String exception = NONE;
+        try {
+            return joinPoint.proceed();
+        } catch (Throwable throwable) {
+            exception = throwable.getClass().getSimpleName();
+            throw throwable;
+        } finally {
+            sample.stop(meterRegistry.timer(METRIC_NAME, timed.tags.and("exception", exception)));
+            CALLER.set(outerCaller);
+        }
+    }
+
+    private record TimedMethod(Tags tags, String caller) {
+    }
+
+    // Spring Data repositories are JDK proxies, name them after the repository interface instead
+    private static String getTypeName(Class<?> type) {
+        if (Proxy.isProxyClass(type)) {
+            for (Class<?> candidate : type.getInterfaces()) {
+                if (Repository.class.isAssignableFrom(candidate)) {
+                    return candidate.getSimpleName();
+                }
+            }
+        }
+        return ClassUtils.getUserClass(type).getSimpleName();
+    }
+}
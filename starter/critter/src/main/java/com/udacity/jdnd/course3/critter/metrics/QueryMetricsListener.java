@@ -0,0 +1,160 @@
+package com.udacity.jdnd.course3.critter.metrics;
+
+import com.udacity.jdnd.course3.critter.web.RequestTrace;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Times every JDBC statement in a {@value #METRIC_NAME} timer per query shape, and hands the slow ones and a
+ * random sample of the others to the {@link SlowQueryLog}, together with the controller or service method that
+ * ran them (see {@link MethodTimingAspect#currentCaller()}). The time is also added to the {@link RequestTrace} of
+ * the request that ran the statement, for the access log.
+ * <p>
+ * A query shape is the statement text with literals replaced by {@code ?}, whitespace collapsed and IN lists of
+ * any length folded into one, so that the queries Hibernate generates for different list sizes share a timer.
+ * The timer is tagged with the operation, the first table and a hash of the shape; the log lines show the hash
+ * next to the statement. Once {@code maxShapes} shapes have been seen, further ones are counted as "other", so
+ * that ad-hoc SQL cannot grow the number of series without bound.
+ */
+public class QueryMetricsListener implements QueryExecutionListener {
+
+    public static final String METRIC_NAME = "critter.sql";
+    public static final String LOGGED_METRIC_NAME = "critter.sql.logged";
+
+    private static final String STARTED = QueryMetricsListener.class.getName() + ".started";
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+    private static final Pattern IN_LIST = Pattern.compile("(?i)\\bin \\(\\?(?: ?, ?\\?)*\\)");
+    private static final Pattern TABLE = Pattern.compile("(?i)\\b(?:from|into|update|join)\\s+([\\w.`\"]+)");
+
+    private final MeterRegistry meterRegistry;
+    private final SlowQueryLog slowQueryLog;
+    private final long slowThresholdNanos;
+    private final double sampleRate;
+    private final int maxShapes;
+
+    // By statement text, which is what the driver sees; several texts can have the same shape
+    private final Map<String, QueryShape> shapesBySql = new ConcurrentHashMap<>();
+    private final Map<String, QueryShape> shapes = new ConcurrentHashMap<>();
+    private final QueryShape other;
+
+    public QueryMetricsListener(MeterRegistry meterRegistry, SlowQueryLog slowQueryLog, Duration slowThreshold,
+                                double sampleRate, int maxShapes) {
+        this.meterRegistry = meterRegistry;
+        this.slowQueryLog = slowQueryLog;
+        this.slowThresholdNanos = slowThreshold.toNanos();
+        this.sampleRate = sampleRate;
+        this.maxShapes = maxShapes;
+        this.other = new QueryShape("other", "other", "other", "other");
+    }
+
+    @Override
+    public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        execInfo.addCustomValue(STARTED, System.nanoTime());
+    }
+
+    @Override
+    public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        Long started = execInfo.getCustomValue(STARTED, Long.class);
+        long elapsed = started == null ? TimeUnit.MILLISECONDS.toNanos(execInfo.getElapsedTime())
+                : System.nanoTime() - started;
+        String sql = queryInfoList.isEmpty() ? "" : queryInfoList.get(0).getQuery();
+        QueryShape shape = shapeOf(sql);
+        shape.timer(execInfo.isSuccess()).record(elapsed, TimeUnit.NANOSECONDS);
+        RequestTrace trace = RequestTrace.current();
+        if (trace != null) {
+            trace.addStatement(elapsed);
+        }
+
+        String reason = null;
+        if (elapsed >= slowThresholdNanos) {
+            reason = SlowQueryLog.SLOW;
+        } else if (sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate) {
+            reason = SlowQueryLog.SAMPLED;
+        }
+        if (reason != null) {
+            meterRegistry.counter(LOGGED_METRIC_NAME, "reason", reason).increment();
+            slowQueryLog.offer(new SlowQueryLog.Entry(reason, elapsed, shape.id, MethodTimingAspect.currentCaller(),
+                    shape == other ? normalize(sql) : shape.sql, execInfo.isBatch() ? execInfo.getBatchSize() : 1,
+                    execInfo.isSuccess()));
+        }
+    }
+
+    private QueryShape shapeOf(String sql) {
+        QueryShape shape = shapesBySql.get(sql);
+        if (shape != null) {
+            return shape;
+        }
+        String normalized = normalize(sql);
+        shape = shapes.get(normalized);
+        if (shape == null) {
+            if (shapes.size() >= maxShapes) {
+                return other;
+            }
+            shape = shapes.computeIfAbsent(normalized, this::newShape);
+        }
+        // Differently sized IN lists are distinct texts of one shape, so bound this map as well
+        if (shapesBySql.size() < maxShapes * 4) {
+            shapesBySql.put(sql, shape);
+        }
+        return shape;
+    }
+
+    private QueryShape newShape(String sql) {
+        int space = sql.indexOf(' ');
+        String operation = (space < 0 ? sql : sql.substring(0, space)).toLowerCase(Locale.ROOT);
+        Matcher table = TABLE.matcher(sql);
+        return new QueryShape(String.format("%08x", sql.hashCode()), sql, operation,
+                table.find() ? table.group(1).replaceAll("[`\"]", "").toLowerCase(Locale.ROOT) : "none");
+    }
+
+    private static String normalize(String sql) {
+        String normalized = WHITESPACE.matcher(sql.strip()).replaceAll(" ");
+        normalized = STRING_LITERAL.matcher(normalized).replaceAll("?");
+        normalized = NUMBER_LITERAL.matcher(normalized).replaceAll("?");
+        return IN_LIST.matcher(normalized).replaceAll("in (?)");
+    }
+
+    private final class QueryShape {
+        private final String id;
+        private final String sql;
+        private final Tags tags;
+        private volatile Timer success;
+        private volatile Timer failure;
+
+        private QueryShape(String id, String sql, String operation, String table) {
+            this.id = id;
+            this.sql = sql;
+            this.tags = Tags.of("shape", id, "operation", operation, "table", table);
+        }
+
+        private Timer timer(boolean succeeded) {
+            Timer timer = succeeded ? success : failure;
+            if (timer == null) {
+                timer = meterRegistry.timer(METRIC_NAME, tags.and("outcome", succeeded ? "success" : "error"));
+                if (succeeded) {
+                    success = timer;
+                } else {
+                    failure = timer;
+                }
+            }
+            return timer;
+        }
+    }
+}
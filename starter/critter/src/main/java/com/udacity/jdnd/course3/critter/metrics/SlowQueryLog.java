@@ -0,0 +1,94 @@
+package com.udacity.jdnd.course3.critter.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the statements picked by {@link QueryMetricsListener} to the {@value #LOGGER_NAME} log from a background
+ * thread, so that the thread running a query never waits for the log appender.
+ * <p>
+ * Entries go through a bounded array queue. When the writer falls behind and the queue is full, new entries are
+ * dropped and counted in {@value #DROPPED_METRIC_NAME} instead of slowing down the queries.
+ */
+public class SlowQueryLog implements AutoCloseable {
+
+    public static final String LOGGER_NAME = "critter.sql.slow";
+    public static final String DROPPED_METRIC_NAME = "critter.sql.log.dropped";
+
+    public static final String SLOW = "slow";
+    public static final String SAMPLED = "sampled";
+
+    private static final Logger log = LoggerFactory.getLogger(LOGGER_NAME);
+
+    private static final String FORMAT = "{} query: {} ms shape={} caller={} batch={} success={} sql={}";
+
+    private static final int DRAIN_BATCH = 256;
+
+    /**
+     * One logged statement. The SQL is the prepared statement text, without parameter values.
+     */
+    public record Entry(String reason, long elapsedNanos, String shape, String caller, String sql, int batchSize,
+                        boolean success) {
+    }
+
+    private final BlockingQueue<Entry> queue;
+    private final Counter dropped;
+    private final Thread writer;
+
+    public SlowQueryLog(int capacity, MeterRegistry meterRegistry) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.dropped = meterRegistry.counter(DROPPED_METRIC_NAME);
+        this.writer = new Thread(this::write, "critter-sql-log");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queues the entry for logging, or drops it when the queue is full.
+     */
+    public void offer(Entry entry) {
+        if (!queue.offer(entry)) {
+            dropped.increment();
+        }
+    }
+
+    private void write() {
+        List<Entry> entries = new ArrayList<>(DRAIN_BATCH);
+        try {
+            while (true) {
+                entries.add(queue.take());
+                queue.drainTo(entries, DRAIN_BATCH - 1);
+                entries.forEach(SlowQueryLog::write);
+                entries.clear();
+            }
+        } catch (InterruptedException exception) {
+            // Closing: write what is left
+            queue.drainTo(entries);
+            entries.forEach(SlowQueryLog::write);
+        }
+    }
+
+    private static void write(Entry entry) {
+        Object[] arguments = {entry.reason(), TimeUnit.NANOSECONDS.toMicros(entry.elapsedNanos()) / 1000.0,
+                entry.shape(), entry.caller(), entry.batchSize(), entry.success(), entry.sql()};
+        if (SLOW.equals(entry.reason())) {
+            log.warn(FORMAT, arguments);
+        } else {
+            log.info(FORMAT, arguments);
+        }
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        writer.interrupt();
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+    }
+}
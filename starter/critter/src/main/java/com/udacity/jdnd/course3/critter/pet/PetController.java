@@ -1,12 +1,21 @@
 package com.udacity.jdnd.course3.critter.pet;
 
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.udacity.jdnd.course3.critter.CursorPage;
+import com.udacity.jdnd.course3.critter.NdjsonStream;
 import com.udacity.jdnd.course3.critter.entity.Pet;
 import com.udacity.jdnd.course3.critter.service.PetService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -18,7 +27,16 @@ public class PetController {
     @Autowired
     PetService petService;
 
-    private PetDTO convertPetToPetDTO(Pet pet) {
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${critter.page.max-limit:1000}")
+    private int maxLimit;
+
+    @Value("${critter.stream.page-size:500}")
+    private int streamPageSize;
+
+    PetDTO convertPetToPetDTO(Pet pet) {
         return new PetDTO(pet.getId(), pet.getType(), pet.getName(), pet.getCustomer().getId(), pet.getBirthDate(), pet.getNotes());
     }
 
@@ -43,6 +61,20 @@ public class PetController {
     }
 
 
+    @PostMapping(value = "/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, NdjsonStream.MEDIA_TYPE})
+    public List<Long> savePets(InputStream body) {
+        try {
+            // Read the pets one at a time, from either a JSON array or newline-delimited JSON
+            MappingIterator<PetDTO> pets = objectMapper.readerFor(PetDTO.class).readValues(body);
+
+            // Insert them in JDBC batches and return the new ids in input order
+            return petService.importPets(pets);
+        } catch (Exception exception) {
+            // The import runs in one transaction, so a bad row or unknown owner leaves nothing behind
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Pets could not be imported", exception);
+        }
+    }
+
     @GetMapping("/{petId}")
     public PetDTO getPet(@PathVariable long petId) {
         try {
@@ -61,20 +93,26 @@ public class PetController {
 
     @GetMapping
     public List<PetDTO> getPets() {
-        // Retrieve the list of pets from the petService
-        List<Pet> pets = petService.getAllPets();
-
-        // Create an empty list to store the converted PetDTO objects
-        List<PetDTO> petDTOs = new ArrayList<>();
+        // Retrieve the list of pets from the petService, projected straight into PetDTOs
+        return petService.getAllPetDTOs();
+    }
 
-        // Iterate over each Pet object and convert it to a PetDTO
-        for (Pet pet : pets) {
-            PetDTO petDTO = convertPetToPetDTO(pet);  // Convert Pet to PetDTO
-            petDTOs.add(petDTO);  // Add the converted PetDTO to the list
+    @GetMapping(params = "limit")
+    public CursorPage<PetDTO> getPets(@RequestParam int limit, @RequestParam(defaultValue = "0") long after) {
+        // Validate the requested page size before querying
+        if (limit < 1 || limit > maxLimit) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be between 1 and " + maxLimit);
         }
 
-        // Return the list of PetDTOs
-        return petDTOs;
+        // Fetch one row more than requested to find out whether there is a next page
+        return CursorPage.of(petService.getPetDTOsAfter(after, limit + 1), limit, PetDTO::getId);
+    }
+
+    @GetMapping("/stream")
+    public ResponseEntity<StreamingResponseBody> streamPets() {
+        // Write all pets as newline-delimited JSON, one keyset page at a time
+        return NdjsonStream.of(objectMapper, streamPageSize,
+                after -> petService.getPetDTOsAfter(after, streamPageSize), PetDTO::getId);
     }
 
 
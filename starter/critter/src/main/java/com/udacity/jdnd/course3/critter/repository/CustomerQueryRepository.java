@@ -0,0 +1,61 @@
+package com.udacity.jdnd.course3.critter.repository;
+
+import com.udacity.jdnd.course3.critter.user.CustomerDTO;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read-only projection of customers. The pet ids of every customer are collected from one joined query
+ * ordered by customer, so no pet collection is ever initialized.
+ */
+@Repository
+public class CustomerQueryRepository extends ProjectionRepository {
+
+    private static final ResultSetExtractor<List<CustomerDTO>> CUSTOMER_EXTRACTOR = rs -> {
+        List<CustomerDTO> customers = new ArrayList<>();
+        CustomerDTO current = null;
+        while (rs.next()) {
+            long id = rs.getLong("id");
+            if (current == null || current.getId() != id) {
+                current = new CustomerDTO(id, rs.getString("name"), rs.getString("phone_number"),
+                        rs.getString("notes"), new ArrayList<>());
+                customers.add(current);
+            }
+            long petId = rs.getLong("pet_id");
+            if (!rs.wasNull()) {
+                current.getPetIds().add(petId);
+            }
+        }
+        return customers;
+    };
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    public List<CustomerDTO> findAll() {
+        flushPendingWrites();
+        return jdbcTemplate.query(
+                "select c.id, c.name, c.phone_number, c.notes, p.id as pet_id " +
+                        "from customer c left join pet p on p.customer_id = c.id " +
+                        "where c.tenant_id = ? " +
+                        "order by c.id, p.id",
+                CUSTOMER_EXTRACTOR, tenantId());
+    }
+
+    // Keyset page: the first `limit` customers with an id greater than `after`, with their pet ids
+    public List<CustomerDTO> findPage(long after, int limit) {
+        flushPendingWrites();
+        return jdbcTemplate.query(
+                "select c.id, c.name, c.phone_number, c.notes, p.id as pet_id " +
+                        "from (select id, name, phone_number, notes from customer " +
+                        "where tenant_id = ? and id > ? order by id limit ?) c " +
+                        "left join pet p on p.customer_id = c.id " +
+                        "order by c.id, p.id",
+                CUSTOMER_EXTRACTOR, tenantId(), after, limit);
+    }
+}
@@ -2,8 +2,19 @@ package com.udacity.jdnd.course3.critter.repository;
 
 import com.udacity.jdnd.course3.critter.entity.Customer;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+import java.util.Optional;
+
 @Repository
 public interface CustomerRepository extends JpaRepository<Customer, Long> {
+    @Query("select distinct c from Customer c left join fetch c.pets order by c.id")
+    List<Customer> findAllWithPets();
+
+    @Query("select distinct c from Customer c left join fetch c.pets " +
+            "where c.id = (select p.customer.id from Pet p where p.id = :petId)")
+    Optional<Customer> findOwnerWithPetsByPetId(@Param("petId") Long petId);
 }
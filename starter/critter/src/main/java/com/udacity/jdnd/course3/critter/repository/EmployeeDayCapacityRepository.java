@@ -0,0 +1,129 @@
+package com.udacity.jdnd.course3.critter.repository;
+
+import com.udacity.jdnd.course3.critter.entity.EmployeeDayCapacity;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The employee_day_capacity table. Its rows are derived data, so they are written with plain JDBC: a refresh
+ * deletes the rows it recomputes and inserts the new ones in JDBC batches, which needs no upsert syntax and
+ * works the same on MySQL and H2. Every statement is restricted to the current tenant, whose id leads the
+ * primary key.
+ */
+@Repository
+public class EmployeeDayCapacityRepository extends ProjectionRepository {
+
+    private static final int BATCH_SIZE = 500;
+
+    // Bound the number of parameters of one IN list
+    private static final int MAX_IDS = 1000;
+
+    private static final String INSERT = "insert into employee_day_capacity " +
+            "(tenant_id, work_date, employee_id, skills_mask, remaining_minutes) values (?, ?, ?, ?, ?)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * Returns the ids of the employees that work on the date, are not booked all day and have every skill in
+     * skillMask, in id order. The tenant and date lead the primary key; the skills are tested on the rows of that
+     * day, as MySQL and H2 spell a bitwise AND differently.
+     */
+    public List<Long> findEmployeeIds(LocalDate date, int skillMask) {
+        flushPendingWrites();
+        List<Long> employeeIds = new ArrayList<>();
+        jdbcTemplate.query("select employee_id, skills_mask from employee_day_capacity " +
+                "where tenant_id = ? and work_date = ? and remaining_minutes > 0 order by employee_id", rs -> {
+            if ((rs.getInt("skills_mask") & skillMask) == skillMask) {
+                employeeIds.add(rs.getLong("employee_id"));
+            }
+        }, tenantId(), date);
+        return employeeIds;
+    }
+
+    // Replaces all rows of the date
+    public void replaceDay(LocalDate date, List<EmployeeDayCapacity> rows) {
+        jdbcTemplate.update("delete from employee_day_capacity where tenant_id = ? and work_date = ?",
+                tenantId(), date);
+        insert(rows);
+    }
+
+    // Replaces the rows of the given employees from `from` to `to`, both inclusive
+    public void replace(Collection<Long> employeeIds, LocalDate from, LocalDate to, List<EmployeeDayCapacity> rows) {
+        List<Long> ids = new ArrayList<>(employeeIds);
+        for (int start = 0; start < ids.size(); start += MAX_IDS) {
+            List<Long> chunk = ids.subList(start, Math.min(ids.size(), start + MAX_IDS));
+            List<Object> arguments = new ArrayList<>();
+            arguments.add(tenantId());
+            arguments.addAll(chunk);
+            arguments.add(from);
+            arguments.add(to);
+            jdbcTemplate.update("delete from employee_day_capacity where tenant_id = ? and employee_id in ("
+                    + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ") and work_date between ? and ?",
+                    arguments.toArray());
+        }
+        insert(rows);
+    }
+
+    /**
+     * Returns the rows of the days from `from` to `to`, both inclusive, in date order.
+     */
+    public List<EmployeeDayCapacity> findDays(LocalDate from, LocalDate to) {
+        return jdbcTemplate.query("select work_date, employee_id, skills_mask, remaining_minutes " +
+                        "from employee_day_capacity where tenant_id = ? and work_date between ? and ? order by work_date",
+                (rs, row) -> new EmployeeDayCapacity(rs.getObject("work_date", LocalDate.class),
+                        rs.getLong("employee_id"), rs.getInt("skills_mask"), rs.getInt("remaining_minutes")),
+                tenantId(), from, to);
+    }
+
+    /**
+     * Locks the tenant's day_capacity_horizon row until the end of the current transaction, creating it first if
+     * needed, and returns the materialized days it records; null when none have been written yet.
+     */
+    public Horizon lockHorizon() {
+        try {
+            jdbcTemplate.update("insert into day_capacity_horizon (tenant_id) values (?)", tenantId());
+        } catch (DuplicateKeyException exception) {
+            // The row exists, or another node created it first
+        }
+        return jdbcTemplate.queryForObject("select first_day, last_day from day_capacity_horizon " +
+                "where tenant_id = ? for update", (rs, row) -> {
+            LocalDate first = rs.getObject("first_day", LocalDate.class);
+            return first == null ? null : new Horizon(first, rs.getObject("last_day", LocalDate.class));
+        }, tenantId());
+    }
+
+    // Records the materialized days in the row locked by lockHorizon
+    public void saveHorizon(Horizon horizon) {
+        jdbcTemplate.update("update day_capacity_horizon set first_day = ?, last_day = ? where tenant_id = ?",
+                horizon.from(), horizon.to(), tenantId());
+    }
+
+    // Deletes the rows of the days before `from` and after `to`
+    public int deleteOutside(LocalDate from, LocalDate to) {
+        return jdbcTemplate.update("delete from employee_day_capacity where tenant_id = ? " +
+                "and (work_date < ? or work_date > ?)", tenantId(), from, to);
+    }
+
+    private void insert(List<EmployeeDayCapacity> rows) {
+        String tenantId = tenantId();
+        jdbcTemplate.batchUpdate(INSERT, rows, BATCH_SIZE, (ps, row) -> {
+            ps.setString(1, tenantId);
+            ps.setObject(2, row.date());
+            ps.setLong(3, row.employeeId());
+            ps.setInt(4, row.skillsMask());
+            ps.setInt(5, row.remainingMinutes());
+        });
+    }
+
+    public record Horizon(LocalDate from, LocalDate to) {
+    }
+}
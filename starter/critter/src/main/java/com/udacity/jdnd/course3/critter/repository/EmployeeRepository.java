@@ -2,12 +2,37 @@ package com.udacity.jdnd.course3.critter.repository;
 
 import com.udacity.jdnd.course3.critter.entity.Employee;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
-import java.time.DayOfWeek;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface EmployeeRepository extends JpaRepository<Employee, Long> {
-    List<Employee> findByDaysAvailable(DayOfWeek daysAvailable);
+    // The employees available on any of the days in dayMask that have every skill in skillMask (masks as
+    // built by EnumSetMaskConverter.toMask). The masks are cast because H2 cannot type a bare parameter of bitand.
+    @Query("select e from Employee e " +
+            "where bitand(e.daysMask, cast(:dayMask as Integer)) <> 0 " +
+            "and bitand(e.skillsMask, cast(:skillMask as Integer)) = :skillMask")
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.HibernateHints.HINT_CACHEABLE, value = "true"))
+    List<Employee> findAvailable(@Param("dayMask") int dayMask, @Param("skillMask") int skillMask);
+
+    // Skills and days are columns of the employee row, so these need no fetch joins
+    @Query("select e from Employee e")
+    List<Employee> findAllWithDetails();
+
+    @Query("select e from Employee e where e.id in :ids")
+    List<Employee> findAllWithDetailsByIdIn(@Param("ids") Collection<Long> ids);
+
+    // Loads the employees to book from the database (not the second-level cache) and increments their
+    // version on commit, so that a concurrent booking of the same employee fails with an optimistic lock error
+    @Lock(LockModeType.OPTIMISTIC_FORCE_INCREMENT)
+    @Query("select e from Employee e where e.id in :ids")
+    List<Employee> findForBookingByIdIn(@Param("ids") Collection<Long> ids);
 }
@@ -0,0 +1,50 @@
+package com.udacity.jdnd.course3.critter.repository;
+
+import com.udacity.jdnd.course3.critter.pet.PetDTO;
+import com.udacity.jdnd.course3.critter.pet.PetType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Read-only projection of pets. Builds PetDTOs straight from the result set, without managed entities.
+ */
+@Repository
+public class PetQueryRepository extends ProjectionRepository {
+
+    private static final PetType[] PET_TYPES = PetType.values();
+
+    private static final RowMapper<PetDTO> PET_MAPPER = (rs, rowNum) -> {
+        Number type = (Number) rs.getObject("type");
+        return new PetDTO(
+                rs.getLong("id"),
+                type == null ? null : PET_TYPES[type.intValue()],
+                rs.getString("name"),
+                rs.getLong("customer_id"),
+                rs.getObject("birth_date", LocalDate.class),
+                rs.getString("notes"));
+    };
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    public List<PetDTO> findAll() {
+        flushPendingWrites();
+        return jdbcTemplate.query(
+                "select id, type, name, customer_id, birth_date, notes from pet where tenant_id = ? order by id",
+                PET_MAPPER, tenantId());
+    }
+
+    // Keyset page: the first `limit` pets with an id greater than `after`
+    public List<PetDTO> findPage(long after, int limit) {
+        flushPendingWrites();
+        return jdbcTemplate.query(
+                "select id, type, name, customer_id, birth_date, notes from pet where tenant_id = ? and id > ? " +
+                        "order by id limit ?",
+                PET_MAPPER, tenantId(), after, limit);
+    }
+}
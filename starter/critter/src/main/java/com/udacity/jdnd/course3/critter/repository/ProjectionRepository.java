@@ -0,0 +1,27 @@
+package com.udacity.jdnd.course3.critter.repository;
+
+import com.udacity.jdnd.course3.critter.tenant.TenantContext;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+/**
+ * Base class for the JDBC projection repositories. They read with plain SQL, so writes that are still
+ * pending in the JPA persistence context of the current transaction have to be flushed first, and the tenant
+ * restriction that Hibernate adds to entity queries has to be spelled out with {@link #tenantId()}.
+ */
+abstract class ProjectionRepository {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    protected void flushPendingWrites() {
+        if (entityManager.isJoinedToTransaction()) {
+            entityManager.flush();
+        }
+    }
+
+    // The tenant to restrict every statement to; the tenant_id column leads the indexes the projections read
+    protected static String tenantId() {
+        return TenantContext.getTenantId();
+    }
+}
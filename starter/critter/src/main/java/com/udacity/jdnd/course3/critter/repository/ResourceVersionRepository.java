@@ -0,0 +1,88 @@
+package com.udacity.jdnd.course3.critter.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The resource_version table. A bump updates the rows of the changed resources and inserts the missing ones in
+ * JDBC batches, which needs no upsert syntax and works the same on MySQL and H2. Every statement is restricted
+ * to the current tenant, whose id leads the primary key.
+ */
+@Repository
+public class ResourceVersionRepository extends ProjectionRepository {
+
+    private static final int BATCH_SIZE = 500;
+
+    private static final String UPDATE = "update resource_version set version = version + 1, changed_at = ? " +
+            "where tenant_id = ? and kind = ? and resource_id = ?";
+
+    private static final String INSERT = "insert into resource_version " +
+            "(tenant_id, kind, resource_id, version, changed_at) values (?, ?, ?, 1, ?)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * The version of a resource and the time of its last change, or null when it has never changed. One read of
+     * the primary key.
+     */
+    public Version find(String kind, long id) {
+        List<Version> versions = jdbcTemplate.query("select version, changed_at from resource_version " +
+                        "where tenant_id = ? and kind = ? and resource_id = ?",
+                (rs, row) -> new Version(rs.getLong("version"), rs.getLong("changed_at")), tenantId(), kind, id);
+        return versions.isEmpty() ? null : versions.get(0);
+    }
+
+    /**
+     * Increments the versions of the given resources in the current transaction. The ids have to be sorted, so
+     * that concurrent bumps lock the rows in the same order.
+     */
+    public void increment(String kind, List<Long> sortedIds, long changedAt) {
+        String tenantId = tenantId();
+        List<Long> missingIds = update(tenantId, kind, sortedIds, changedAt);
+        if (missingIds.isEmpty()) {
+            return;
+        }
+        try {
+            jdbcTemplate.batchUpdate(INSERT, missingIds, BATCH_SIZE, (ps, id) -> {
+                ps.setString(1, tenantId);
+                ps.setString(2, kind);
+                ps.setLong(3, id);
+                ps.setLong(4, changedAt);
+            });
+        } catch (DuplicateKeyException exception) {
+            // Another transaction inserted some of the rows first; the update now finds them. An insert that
+            // did succeed before the failure makes its row one version further, which is harmless.
+            update(tenantId, kind, missingIds, changedAt);
+        }
+    }
+
+    // Returns the ids that have no row yet
+    private List<Long> update(String tenantId, String kind, List<Long> ids, long changedAt) {
+        int[][] counts = jdbcTemplate.batchUpdate(UPDATE, ids, BATCH_SIZE, (ps, id) -> {
+            ps.setLong(1, changedAt);
+            ps.setString(2, tenantId);
+            ps.setString(3, kind);
+            ps.setLong(4, id);
+        });
+        List<Long> missingIds = new ArrayList<>();
+        int i = 0;
+        for (int[] batch : counts) {
+            for (int count : batch) {
+                if (count == 0) {
+                    missingIds.add(ids.get(i));
+                }
+                i++;
+            }
+        }
+        return missingIds;
+    }
+
+    public record Version(long number, long changedAt) {
+    }
+}
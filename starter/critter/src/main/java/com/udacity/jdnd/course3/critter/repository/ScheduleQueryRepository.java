@@ -0,0 +1,186 @@
+package com.udacity.jdnd.course3.critter.repository;
+
+import com.udacity.jdnd.course3.critter.entity.EnumSetMaskConverter;
+import com.udacity.jdnd.course3.critter.schedule.ScheduleDTO;
+import com.udacity.jdnd.course3.critter.user.EmployeeSkill;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Read-only projection of schedules.
+ * <p>
+ * The employee ids and pet ids of a schedule live in two collection tables. Joining both would multiply the
+ * rows, so they are stacked with UNION ALL into one (schedule, kind, value) list and joined to the schedule
+ * once. Every schedule then arrives as consecutive rows of a single query. The activities are a bitmask
+ * column of the schedule row.
+ * <p>
+ * The collection tables have no tenant column; their rows are restricted through the schedule they belong to.
+ */
+@Repository
+public class ScheduleQueryRepository extends ProjectionRepository {
+
+    private static final int EMPLOYEE = 0;
+    private static final int PET = 1;
+
+    // The members of the tenant's schedules; parameters: the tenant, twice
+    private static final String MEMBERS =
+            "select e.schedule_id, " + EMPLOYEE + " as kind, e.employee_id as member from schedule_employee e " +
+            "join schedule es on es.id = e.schedule_id where es.tenant_id = ? " +
+            "union all select p.schedule_id, " + PET + ", p.pets_id from schedule_pets p " +
+            "join schedule ps on ps.id = p.schedule_id where ps.tenant_id = ?";
+
+    // The same for the schedules with ids in a range; parameters: first id, last id and tenant, twice
+    private static final String MEMBERS_IN_RANGE =
+            "select e.schedule_id, " + EMPLOYEE + " as kind, e.employee_id as member from schedule_employee e " +
+            "join schedule es on es.id = e.schedule_id where e.schedule_id between ? and ? and es.tenant_id = ? " +
+            "union all select p.schedule_id, " + PET + ", p.pets_id from schedule_pets p " +
+            "join schedule ps on ps.id = p.schedule_id where p.schedule_id between ? and ? and ps.tenant_id = ? " +
+            "order by schedule_id, kind, member";
+
+    private static final ResultSetExtractor<List<ScheduleDTO>> SCHEDULE_EXTRACTOR = rs -> {
+        List<ScheduleDTO> schedules = new ArrayList<>();
+        ScheduleDTO current = null;
+        while (rs.next()) {
+            long id = rs.getLong("id");
+            if (current == null || current.getId() != id) {
+                current = new ScheduleDTO(id, new ArrayList<>(), new ArrayList<>(),
+                        rs.getObject("date", LocalDate.class), rs.getObject("start_time", LocalDateTime.class),
+                        rs.getObject("end_time", LocalDateTime.class), activities(rs.getInt("activities_mask")));
+                schedules.add(current);
+            }
+            long member = rs.getLong("member");
+            if (!rs.wasNull()) {
+                addMember(current, rs.getInt("kind"), member);
+            }
+        }
+        return schedules;
+    };
+
+    private static final RowMapper<ScheduleDTO> SCHEDULE_ROW_MAPPER = (rs, rowNum) -> new ScheduleDTO(rs.getLong("id"),
+            new ArrayList<>(), new ArrayList<>(), rs.getObject("date", LocalDate.class),
+            rs.getObject("start_time", LocalDateTime.class), rs.getObject("end_time", LocalDateTime.class),
+            activities(rs.getInt("activities_mask")));
+
+    private static void addMember(ScheduleDTO schedule, int kind, long member) {
+        if (kind == EMPLOYEE) {
+            schedule.getEmployeeIds().add(member);
+        } else {
+            schedule.getPetIds().add(member);
+        }
+    }
+
+    private static Set<EmployeeSkill> activities(int mask) {
+        return EnumSetMaskConverter.fromMask(EmployeeSkill.class, mask);
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    public List<ScheduleDTO> findAll() {
+        flushPendingWrites();
+        return jdbcTemplate.query(
+                "select s.id, s.date, s.start_time, s.end_time, s.activities_mask, m.kind, m.member " +
+                        "from schedule s left join (" + MEMBERS + ") m on m.schedule_id = s.id " +
+                        "where s.tenant_id = ? " +
+                        "order by s.id, m.kind, m.member",
+                SCHEDULE_EXTRACTOR, tenantId(), tenantId(), tenantId());
+    }
+
+    /**
+     * Keyset page: the first `limit` schedules with an id greater than `after`. The members are read by a
+     * second query restricted to the id range of the page, so it never touches rows of other pages.
+     */
+    public List<ScheduleDTO> findPage(long after, int limit) {
+        flushPendingWrites();
+        List<ScheduleDTO> schedules = jdbcTemplate.query(
+                "select id, date, start_time, end_time, activities_mask from schedule where tenant_id = ? and id > ? " +
+                        "order by id limit ?",
+                SCHEDULE_ROW_MAPPER, tenantId(), after, limit);
+        if (!schedules.isEmpty()) {
+            long first = schedules.get(0).getId();
+            long last = schedules.get(schedules.size() - 1).getId();
+            addMembers(schedules, MEMBERS_IN_RANGE, first, last, tenantId(), first, last, tenantId());
+        }
+        return schedules;
+    }
+
+    /**
+     * Keyset page of the schedules that include at least one pet of the customer, optionally restricted to
+     * schedule dates within [from, to]; null bounds are open. The members are read by a second query that
+     * selects the same schedules within the id range of the page, so the cost of both depends on the page and
+     * not on how many pets the customer has. The EXISTS keeps a schedule with several of the customer's pets
+     * from appearing more than once.
+     */
+    public List<ScheduleDTO> findByCustomer(long customerId, LocalDate from, LocalDate to, long after, int limit) {
+        flushPendingWrites();
+        StringBuilder filter = new StringBuilder(
+                "from schedule s where s.tenant_id = ? and exists (select 1 from schedule_pets sp " +
+                        "join pet p on p.id = sp.pets_id where sp.schedule_id = s.id and p.customer_id = ?) ");
+        List<Object> filterArgs = new ArrayList<>();
+        filterArgs.add(tenantId());
+        filterArgs.add(customerId);
+        if (from != null) {
+            filter.append("and s.date >= ? ");
+            filterArgs.add(from);
+        }
+        if (to != null) {
+            filter.append("and s.date <= ? ");
+            filterArgs.add(to);
+        }
+
+        List<Object> args = new ArrayList<>(filterArgs);
+        args.add(after);
+        args.add(limit);
+        List<ScheduleDTO> schedules = jdbcTemplate.query(
+                "select s.id, s.date, s.start_time, s.end_time, s.activities_mask " + filter +
+                        "and s.id > ? order by s.id limit ?",
+                SCHEDULE_ROW_MAPPER, args.toArray());
+        if (schedules.isEmpty()) {
+            return schedules;
+        }
+
+        // Within the id range of the page, the filter selects exactly the schedules of the page
+        String pageIds = "select s.id " + filter + "and s.id between ? and ?";
+        List<Object> memberArgs = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            memberArgs.addAll(filterArgs);
+            memberArgs.add(schedules.get(0).getId());
+            memberArgs.add(schedules.get(schedules.size() - 1).getId());
+        }
+        addMembers(schedules,
+                "select e.schedule_id, " + EMPLOYEE + " as kind, e.employee_id as member from schedule_employee e " +
+                        "where e.schedule_id in (" + pageIds + ") " +
+                        "union all select sp.schedule_id, " + PET + ", sp.pets_id from schedule_pets sp " +
+                        "where sp.schedule_id in (" + pageIds + ") " +
+                        "order by schedule_id, kind, member",
+                memberArgs.toArray());
+        return schedules;
+    }
+
+    // Both the schedules and the members are ordered by schedule id, so they can be merged in one pass. The two
+    // queries do not read one snapshot: a schedule committed in between with an id in the range of the page (from
+    // another node's id block) has member rows but is not on the page, and those rows are skipped.
+    private void addMembers(List<ScheduleDTO> schedules, String membersSql, Object... args) {
+        Iterator<ScheduleDTO> iterator = schedules.iterator();
+        ScheduleDTO[] current = {iterator.next()};
+        jdbcTemplate.query(membersSql, rs -> {
+            long scheduleId = rs.getLong("schedule_id");
+            while (current[0].getId() < scheduleId && iterator.hasNext()) {
+                current[0] = iterator.next();
+            }
+            if (current[0].getId() == scheduleId) {
+                addMember(current[0], rs.getInt("kind"), rs.getLong("member"));
+            }
+        }, args);
+    }
+}
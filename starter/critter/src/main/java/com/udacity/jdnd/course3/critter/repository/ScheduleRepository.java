@@ -1,18 +1,79 @@
 package com.udacity.jdnd.course3.critter.repository;
 
 import com.udacity.jdnd.course3.critter.entity.Employee;
+import com.udacity.jdnd.course3.critter.entity.EmployeeSlot;
 import com.udacity.jdnd.course3.critter.entity.Pet;
 import com.udacity.jdnd.course3.critter.entity.Schedule;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
+/**
+ * Schedule has two bag associations (employee and pets), and Hibernate cannot join fetch two bags in one
+ * query. The finders below fetch the employees together with the schedules, and {@link #fetchPets(List)}
+ * loads the pets of those schedules in one more statement. The activities are a column of the schedule row.
+ * <p>
+ * The lookups by pet and employee select the schedule ids in a subquery that joins the collection they filter
+ * on, so they start from the join table's index on the pet or employee. "member of" would be a correlated
+ * subquery per schedule, and a join next to the fetch joins keeps the schedule table first, which H2 then scans.
+ */
 @Repository
 public interface ScheduleRepository extends JpaRepository<Schedule, Long> {
-    List<Schedule> findByPets(Pet pet);
+    @Query("select distinct s from Schedule s left join fetch s.employee order by s.id")
+    List<Schedule> findAllWithEmployees();
 
-    List<Schedule> findByEmployee(Employee employee);
+    @Query("select distinct s from Schedule s left join fetch s.employee " +
+            "where s.id in (select b.id from Schedule b join b.pets booked where booked = :pet) order by s.id")
+    List<Schedule> findByPets(@Param("pet") Pet pet);
 
-    List<Schedule> findByPetsIn(List<Pet> pets);
-}
\ No newline at end of file
+    @Query("select distinct s from Schedule s left join fetch s.employee " +
+            "where s.id in (select b.id from Schedule b join b.employee booked where booked = :employee) " +
+            "order by s.id")
+    List<Schedule> findByEmployee(@Param("employee") Employee employee);
+
+    @Query("select distinct s from Schedule s left join fetch s.employee " +
+            "where s in (select s2 from Schedule s2 join s2.pets p where p.customer.id = :customerId) order by s.id")
+    List<Schedule> findByCustomerId(@Param("customerId") Long customerId);
+
+    // Ids of the given employees that are booked at some time during [start, end)
+    @Query("select distinct slot.employeeId from Schedule s join s.slots slot " +
+            "where slot.employeeId in :employeeIds and slot.startTime < :end and slot.endTime > :start")
+    List<Long> findBookedEmployeeIds(@Param("employeeIds") Collection<Long> employeeIds,
+                                     @Param("start") LocalDateTime start, @Param("end") LocalDateTime end);
+
+    // The booked slots of the given employees that overlap [start, end)
+    @Query("select new com.udacity.jdnd.course3.critter.entity.EmployeeSlot(slot.employeeId, slot.startTime, " +
+            "slot.endTime) from Schedule s join s.slots slot " +
+            "where slot.employeeId in :employeeIds and slot.startTime < :end and slot.endTime > :start")
+    List<EmployeeSlot> findSlotsOverlapping(@Param("employeeIds") Collection<Long> employeeIds,
+                                            @Param("start") LocalDateTime start, @Param("end") LocalDateTime end);
+
+    // The booked slots of an employee that end after the given time, in start time order
+    @Query("select new com.udacity.jdnd.course3.critter.entity.EmployeeSlot(slot.employeeId, slot.startTime, " +
+            "slot.endTime) from Schedule s join s.slots slot " +
+            "where slot.employeeId = :employeeId and slot.endTime > :after order by slot.startTime")
+    List<EmployeeSlot> findSlotsEndingAfter(@Param("employeeId") Long employeeId,
+                                            @Param("after") LocalDateTime after);
+
+    @Query("select new com.udacity.jdnd.course3.critter.entity.EmployeeSlot(slot.employeeId, slot.startTime, " +
+            "slot.endTime) from Schedule s join s.slots slot")
+    List<EmployeeSlot> findAllSlots();
+
+    // The booked slots of all employees that overlap [start, end)
+    @Query("select new com.udacity.jdnd.course3.critter.entity.EmployeeSlot(slot.employeeId, slot.startTime, " +
+            "slot.endTime) from Schedule s join s.slots slot where slot.startTime < :end and slot.endTime > :start")
+    List<EmployeeSlot> findAllSlotsOverlapping(@Param("start") LocalDateTime start, @Param("end") LocalDateTime end);
+
+    // Schedules stored before time slots were introduced
+    @Query("select distinct s from Schedule s left join fetch s.employee where s.startTime is null")
+    List<Schedule> findWithoutTimeSlot();
+
+    // Initializes the pets collection of the given (managed) schedules
+    @Query("select distinct s from Schedule s left join fetch s.pets where s in :schedules")
+    List<Schedule> fetchPets(@Param("schedules") List<Schedule> schedules);
+}
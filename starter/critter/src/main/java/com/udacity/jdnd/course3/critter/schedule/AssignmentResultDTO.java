@@ -0,0 +1,29 @@
+package com.udacity.jdnd.course3.critter.schedule;
+
+import java.util.List;
+
+/**
+ * Represents the answer to an employee assignment request: the schedules of the requests that got an employee,
+ * in request order (with their ids once booked), and the positions in the request list of those that did not.
+ * Does not map to the database directly.
+ */
+public class AssignmentResultDTO {
+    private List<ScheduleDTO> schedules;
+    private List<Integer> unassigned;
+
+    public List<ScheduleDTO> getSchedules() {
+        return schedules;
+    }
+
+    public void setSchedules(List<ScheduleDTO> schedules) {
+        this.schedules = schedules;
+    }
+
+    public List<Integer> getUnassigned() {
+        return unassigned;
+    }
+
+    public void setUnassigned(List<Integer> unassigned) {
+        this.unassigned = unassigned;
+    }
+}
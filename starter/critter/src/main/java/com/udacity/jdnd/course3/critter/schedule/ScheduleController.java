@@ -1,19 +1,32 @@
 package com.udacity.jdnd.course3.critter.schedule;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.udacity.jdnd.course3.critter.CursorPage;
+import com.udacity.jdnd.course3.critter.NdjsonStream;
 import com.udacity.jdnd.course3.critter.entity.Employee;
 import com.udacity.jdnd.course3.critter.entity.Pet;
 import com.udacity.jdnd.course3.critter.entity.Schedule;
-import com.udacity.jdnd.course3.critter.repository.EmployeeRepository;
-import com.udacity.jdnd.course3.critter.repository.PetRepository;
+import com.udacity.jdnd.course3.critter.service.EmployeeAssignmentService;
+import com.udacity.jdnd.course3.critter.service.ScheduleBookingService;
+import com.udacity.jdnd.course3.critter.service.ScheduleConflictException;
 import com.udacity.jdnd.course3.critter.service.ScheduleService;
-import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.TemporalAdjusters;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/schedule")
@@ -22,9 +35,23 @@ public class ScheduleController {
     @Autowired
     ScheduleService scheduleService;
     @Autowired
-    private EmployeeRepository employeeRepository;
+    private ScheduleBookingService scheduleBookingService;
     @Autowired
-    private PetRepository petRepository;
+    private EmployeeAssignmentService employeeAssignmentService;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${critter.page.max-limit:1000}")
+    private int maxLimit;
+
+    @Value("${critter.stream.page-size:500}")
+    private int streamPageSize;
+
+    @Value("${critter.schedule.max-batch-size:5000}")
+    private int maxBatchSize;
+
+    @Value("${critter.assignment.max-requests:10000}")
+    private int maxAssignmentRequests;
 
     private ScheduleDTO convertSchedule(Schedule schedule) {
         // Create a list to hold the employee IDs
@@ -42,69 +69,156 @@ public class ScheduleController {
         }
 
         // Return a new ScheduleDTO with the extracted data
-        return new ScheduleDTO(schedule.getId(), employeeIds, petIds, schedule.getDate(), schedule.getActivities());
+        return new ScheduleDTO(schedule.getId(), employeeIds, petIds, schedule.getDate(), schedule.getStartTime(),
+                schedule.getEndTime(), schedule.getActivities());
     }
 
 
     @PostMapping
     public ScheduleDTO createSchedule(@RequestBody ScheduleDTO scheduleDTO) {
-        Schedule schedule = convertDTOToSchedule(scheduleDTO);
+        Schedule savedSchedule;
+
+        // A time slot is optional, but when both a date and a start time are given they must agree
+        LocalDateTime startTime = scheduleDTO.getStartTime();
+        if (scheduleDTO.getDate() != null && startTime != null
+                && !scheduleDTO.getDate().equals(startTime.toLocalDate())) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Schedule date " + scheduleDTO.getDate()
+                    + " does not match start time " + startTime);
+        }
 
-        Schedule savedSchedule = scheduleService.saveSchedule(schedule);
+        try {
+            // Book the schedule: validates the employees against the activities and date, and rejects
+            // employees that are already booked at that time. Without a time slot the whole day is booked.
+            if (startTime == null && scheduleDTO.getEndTime() == null) {
+                savedSchedule = scheduleBookingService.bookSchedule(scheduleDTO.getEmployeeIds(),
+                        scheduleDTO.getPetIds(), scheduleDTO.getDate(), scheduleDTO.getActivities());
+            } else {
+                savedSchedule = scheduleBookingService.bookSchedule(scheduleDTO.getEmployeeIds(),
+                        scheduleDTO.getPetIds(), startTime, scheduleDTO.getEndTime(), scheduleDTO.getActivities());
+            }
+        } catch (ScheduleConflictException exception) {
+            // The employee already has a schedule at that time
+            throw new ResponseStatusException(HttpStatus.CONFLICT, exception.getMessage(), exception);
+        } catch (Exception exception) {
+            // Unknown employees or pets, unavailable employees or missing skills
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Schedule could not be saved", exception);
+        }
 
         return convertScheduleToDTO(savedSchedule);
+    }
 
+    @PostMapping("/batch")
+    public List<ScheduleDTO> createSchedules(@RequestBody List<ScheduleDTO> scheduleDTOs) {
+        // Book every schedule in one transaction: nothing is booked when one of them fails
+        return bookSchedules(scheduleDTOs);
     }
 
-    public ScheduleDTO convertScheduleToDTO(Schedule schedule) {
-        // Create a new ScheduleDTO object
-        ScheduleDTO scheduleDTO = new ScheduleDTO();
+    @PostMapping("/recurring")
+    public List<ScheduleDTO> createRecurringSchedule(@RequestBody RecurringScheduleDTO recurringDTO) {
+        // Expand the recurrence into one schedule per occurrence, then book them like a batch
+        return bookSchedules(expandRecurrence(recurringDTO));
+    }
 
-        // Copy properties from Schedule to ScheduleDTO using BeanUtils
-        BeanUtils.copyProperties(schedule, scheduleDTO);
+    @PostMapping("/assign")
+    public AssignmentResultDTO assignEmployees(@RequestBody List<ScheduleDTO> requests,
+                                               @RequestParam(defaultValue = "true") boolean book) {
+        if (requests == null || requests.isEmpty() || requests.size() > maxAssignmentRequests) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "An assignment must contain between 1 and " + maxAssignmentRequests + " requests");
+        }
 
-        // Create a list to hold employee IDs
-        List<Long> listOfEmployeeIDs = new ArrayList<>();
-        // Iterate over each employee and add their ID to the list
-        for (Employee employee : schedule.getEmployee()) {
-            listOfEmployeeIDs.add(employee.getId());
+        try {
+            // Pick an employee for every request that can get one; with book=false only return the plan
+            return employeeAssignmentService.assign(requests, book);
+        } catch (ScheduleConflictException exception) {
+            // Other bookings kept taking the planned slots
+            throw new ResponseStatusException(HttpStatus.CONFLICT, exception.getMessage(), exception);
+        } catch (Exception exception) {
+            // Requests naming employees, unknown pets or invalid time slots
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Employees could not be assigned", exception);
         }
+    }
 
-        // Create a list to hold pet IDs
-        List<Long> listOfPetIDs = new ArrayList<>();
-        // Iterate over each pet and add their ID to the list
-        for (Pet pet : schedule.getPets()) {
-            listOfPetIDs.add(pet.getId());
+    private List<ScheduleDTO> bookSchedules(List<ScheduleDTO> scheduleDTOs) {
+        if (scheduleDTOs == null || scheduleDTOs.isEmpty() || scheduleDTOs.size() > maxBatchSize) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "A batch must contain between 1 and " + maxBatchSize + " schedules");
         }
 
-        // Set the date and activities for the ScheduleDTO
-        scheduleDTO.setDate(schedule.getDate());
-        scheduleDTO.setActivities(schedule.getActivities());
+        List<Schedule> savedSchedules;
+        try {
+            savedSchedules = scheduleBookingService.bookSchedules(scheduleDTOs);
+        } catch (ScheduleConflictException exception) {
+            // An employee is already booked at one of the times, or twice within the batch
+            throw new ResponseStatusException(HttpStatus.CONFLICT, exception.getMessage(), exception);
+        } catch (Exception exception) {
+            // Unknown employees or pets, invalid time slots, unavailable employees or missing skills
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Schedules could not be saved", exception);
+        }
 
-        // Set the employee and pet IDs in the ScheduleDTO
-        scheduleDTO.setEmployeeIds(listOfEmployeeIDs);
-        scheduleDTO.setPetIds(listOfPetIDs);
+        List<ScheduleDTO> savedDTOs = new ArrayList<>(savedSchedules.size());
+        for (Schedule schedule : savedSchedules) {
+            savedDTOs.add(convertSchedule(schedule));
+        }
+        return savedDTOs;
+    }
 
-        // Return the fully populated ScheduleDTO
-        return scheduleDTO;
+    // One schedule per recurrence day in every intervalWeeks-th week, from the start date on
+    private List<ScheduleDTO> expandRecurrence(RecurringScheduleDTO recurringDTO) {
+        if (recurringDTO.getStartDate() == null || recurringDTO.getWeeks() < 1 || recurringDTO.getIntervalWeeks() < 1
+                || (recurringDTO.getStartTime() == null) != (recurringDTO.getEndTime() == null)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "A recurring schedule needs a start date, at least one week, a positive interval, "
+                            + "and either both or none of start and end time");
+        }
+        Set<DayOfWeek> days = recurringDTO.getDaysOfWeek() == null || recurringDTO.getDaysOfWeek().isEmpty()
+                ? EnumSet.of(recurringDTO.getStartDate().getDayOfWeek())
+                : EnumSet.copyOf(recurringDTO.getDaysOfWeek());
+
+        List<ScheduleDTO> scheduleDTOs = new ArrayList<>();
+        for (int week = 0; week < recurringDTO.getWeeks(); week += recurringDTO.getIntervalWeeks()) {
+            LocalDate weekStart = recurringDTO.getStartDate().plusWeeks(week);
+            for (DayOfWeek day : days) {
+                LocalDate date = weekStart.with(TemporalAdjusters.nextOrSame(day));
+                ScheduleDTO scheduleDTO = new ScheduleDTO(0, recurringDTO.getEmployeeIds(), recurringDTO.getPetIds(),
+                        date, recurringDTO.getActivities());
+                if (recurringDTO.getStartTime() != null) {
+                    scheduleDTO.setStartTime(date.atTime(recurringDTO.getStartTime()));
+                    scheduleDTO.setEndTime(date.atTime(recurringDTO.getEndTime()));
+                }
+                scheduleDTOs.add(scheduleDTO);
+            }
+        }
+        return scheduleDTOs;
+    }
+
+    public ScheduleDTO convertScheduleToDTO(Schedule schedule) {
+        // Build the ScheduleDTO through the constructor instead of reflective property copying
+        return convertSchedule(schedule);
     }
 
     @GetMapping
     public List<ScheduleDTO> getAllSchedules() {
-        // Retrieve all schedules from the scheduleService
-        List<Schedule> allSchedules = scheduleService.getAllSchedules();
-
-        // Create a list to hold the ScheduleDTOs
-        List<ScheduleDTO> scheduleDTOs = new ArrayList<>();
+        // Retrieve all schedules from the scheduleService, projected straight into ScheduleDTOs
+        return scheduleService.getAllScheduleDTOs();
+    }
 
-        // Iterate over each Schedule and convert it to a ScheduleDTO
-        for (Schedule schedule : allSchedules) {
-            ScheduleDTO scheduleDTO = convertSchedule(schedule);  // Convert Schedule to ScheduleDTO
-            scheduleDTOs.add(scheduleDTO);  // Add the converted DTO to the list
+    @GetMapping(params = "limit")
+    public CursorPage<ScheduleDTO> getSchedules(@RequestParam int limit, @RequestParam(defaultValue = "0") long after) {
+        // Validate the requested page size before querying
+        if (limit < 1 || limit > maxLimit) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be between 1 and " + maxLimit);
         }
 
-        // Return the list of ScheduleDTOs
-        return scheduleDTOs;
+        // Fetch one row more than requested to find out whether there is a next page
+        return CursorPage.of(scheduleService.getScheduleDTOsAfter(after, limit + 1), limit, ScheduleDTO::getId);
+    }
+
+    @GetMapping("/stream")
+    public ResponseEntity<StreamingResponseBody> streamSchedules() {
+        // Write all schedules as newline-delimited JSON, one keyset page at a time
+        return NdjsonStream.of(objectMapper, streamPageSize,
+                after -> scheduleService.getScheduleDTOsAfter(after, streamPageSize), ScheduleDTO::getId);
     }
 
 
@@ -158,54 +272,42 @@ public class ScheduleController {
         return scheduleDTOs;
     }
 
+    public List<ScheduleDTO> getScheduleForCustomer(long customerId) {
+        return getScheduleForCustomer(customerId, null, null);
+    }
+
     @GetMapping("/customer/{customerId}")
-    public List<ScheduleDTO> getScheduleForCustomer(@PathVariable long customerId) {
-        List<Schedule> schedules;
+    public List<ScheduleDTO> getScheduleForCustomer(
+            @PathVariable long customerId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        // Read the customer's schedules, optionally within a date range, in a single query
+        return getCustomerSchedule(customerId, from, to, 0, Integer.MAX_VALUE);
+    }
+
+    @GetMapping(value = "/customer/{customerId}", params = "limit")
+    public CursorPage<ScheduleDTO> getScheduleForCustomer(
+            @PathVariable long customerId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam int limit, @RequestParam(defaultValue = "0") long after) {
+        // Bound the page size so that a single request cannot read a whole shelter's history
+        if (limit < 1 || limit > maxLimit) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be between 1 and " + maxLimit);
+        }
+        // Query one row more than requested to know whether there is a next page
+        return CursorPage.of(getCustomerSchedule(customerId, from, to, after, limit + 1), limit,
+                ScheduleDTO::getId);
+    }
 
+    private List<ScheduleDTO> getCustomerSchedule(long customerId, LocalDate from, LocalDate to, long after,
+                                                  int limit) {
         try {
-            // Attempt to retrieve the customer schedule
-            schedules = scheduleService.getCustomerSchedule(customerId);
+            return scheduleService.getCustomerScheduleDTOs(customerId, from, to, after, limit);
         } catch (Exception exception) {
             // If an error occurs, throw a ResponseStatusException with an error message
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Schedule with owner id " + customerId + " not found", exception);
         }
-
-        // Create a list to hold the ScheduleDTOs
-        List<ScheduleDTO> scheduleDTOs = new ArrayList<>();
-
-        // Iterate over each Schedule and convert it to a ScheduleDTO
-        for (Schedule schedule : schedules) {
-            ScheduleDTO scheduleDTO = convertSchedule(schedule);  // Convert Schedule to ScheduleDTO
-            scheduleDTOs.add(scheduleDTO);  // Add the converted DTO to the list
-        }
-
-        // Return the list of ScheduleDTOs
-        return scheduleDTOs;
-    }
-
-    public Schedule convertDTOToSchedule(ScheduleDTO scheduleDTO){
-        // Create a new Schedule object to hold the converted data
-        Schedule schedule = new Schedule();
-
-        // Copy properties from the ScheduleDTO to the new Schedule object
-        BeanUtils.copyProperties(scheduleDTO, schedule);
-
-        // Set the 'date' property of the Schedule object using the value from the DTO
-        schedule.setDate(scheduleDTO.getDate());
-
-        // Set the 'activities' property of the Schedule object using the value from the DTO
-        schedule.setActivities(scheduleDTO.getActivities());
-
-        // Set the 'employee' property of the Schedule object
-        // Find all Employee entities by the list of employee IDs in the DTO and set them to the Schedule
-        schedule.setEmployee(employeeRepository.findAllById(scheduleDTO.getEmployeeIds()));
-
-        // Set the 'pets' property of the Schedule object
-        // Find all Pet entities by the list of pet IDs in the DTO and set them to the Schedule
-        schedule.setPets(petRepository.findAllById(scheduleDTO.getPetIds()));
-
-        // Return the fully populated Schedule object
-        return schedule;
     }
 
 }
\ No newline at end of file
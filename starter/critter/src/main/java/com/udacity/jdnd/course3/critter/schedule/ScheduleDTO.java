@@ -3,6 +3,7 @@ package com.udacity.jdnd.course3.critter.schedule;
 import com.udacity.jdnd.course3.critter.user.EmployeeSkill;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Set;
 
@@ -15,6 +16,8 @@ public class ScheduleDTO {
     private List<Long> employeeIds;
     private List<Long> petIds;
     private LocalDate date;
+    private LocalDateTime startTime;
+    private LocalDateTime endTime;
     private Set<EmployeeSkill> activities;
 	
 	public ScheduleDTO() {
@@ -28,6 +31,13 @@ public class ScheduleDTO {
         this.date = date;
         this.activities = activities;
     }
+
+    public ScheduleDTO(long id, List<Long> employeeIds, List<Long> petIds, LocalDate date, LocalDateTime startTime,
+                       LocalDateTime endTime, Set<EmployeeSkill> activities) {
+        this(id, employeeIds, petIds, date, activities);
+        this.startTime = startTime;
+        this.endTime = endTime;
+    }
     public long getId(){
         return id;
     }
@@ -60,6 +70,22 @@ public class ScheduleDTO {
         this.date = date;
     }
 
+    public LocalDateTime getStartTime() {
+        return startTime;
+    }
+
+    public void setStartTime(LocalDateTime startTime) {
+        this.startTime = startTime;
+    }
+
+    public LocalDateTime getEndTime() {
+        return endTime;
+    }
+
+    public void setEndTime(LocalDateTime endTime) {
+        this.endTime = endTime;
+    }
+
     public Set<EmployeeSkill> getActivities() {
         return activities;
     }
@@ -0,0 +1,324 @@
+package com.udacity.jdnd.course3.critter.service;
+
+import com.udacity.jdnd.course3.critter.entity.EmployeeSlot;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Assigns one employee to every request of a batch, so that each request gets an employee who works on its
+ * day, has every skill it asks for and is free during its time slot. It assigns as many requests as it can,
+ * and spreads them evenly over the employees.
+ * <p>
+ * Slots never cross midnight, so every day is an independent problem; the days are solved in parallel on a
+ * fork/join pool. A day is solved greedily, the most constrained requests (fewest eligible employees, then
+ * the longest) first, each to the least loaded eligible employee who is free. A local search then improves
+ * that: an unassigned request takes the slot of an employee whose single conflicting request can move to
+ * another employee, and requests move from heavily loaded employees to employees with at least two bookings
+ * less on that day.
+ * <p>
+ * Holds no state between calls and does not touch the database.
+ */
+public class AssignmentSolver {
+
+    public static final long UNASSIGNED = -1;
+
+    private final ForkJoinPool pool;
+    private final int localSearchRounds;
+
+    public AssignmentSolver(ForkJoinPool pool, int localSearchRounds) {
+        this.pool = pool;
+        this.localSearchRounds = localSearchRounds;
+    }
+
+    /**
+     * An employee that can be assigned, with the masks of EnumSetMaskConverter.
+     */
+    public static final class Candidate {
+        private final long id;
+        private final int skillMask;
+        private final int dayMask;
+
+        public Candidate(long id, int skillMask, int dayMask) {
+            this.id = id;
+            this.skillMask = skillMask;
+            this.dayMask = dayMask;
+        }
+    }
+
+    /**
+     * A time slot [start, end) within one day that needs an employee with every skill in skillMask.
+     */
+    public static final class Request {
+        private final LocalDateTime start;
+        private final LocalDateTime end;
+        private final int skillMask;
+
+        public Request(LocalDateTime start, LocalDateTime end, int skillMask) {
+            this.start = start;
+            this.end = end;
+            this.skillMask = skillMask;
+        }
+
+        public LocalDateTime getStart() {
+            return start;
+        }
+    }
+
+    /**
+     * Returns the id of the employee assigned to every request, in request order, or {@link #UNASSIGNED}.
+     *
+     * @param booked the slots the candidates are already booked for on the days of the requests
+     */
+    public long[] solve(List<Request> requests, List<Candidate> candidates, Collection<EmployeeSlot> booked) {
+        long[] assignment = new long[requests.size()];
+        Arrays.fill(assignment, UNASSIGNED);
+
+        Map<LocalDate, List<Integer>> requestsByDay = new TreeMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            requestsByDay.computeIfAbsent(requests.get(i).start.toLocalDate(), day -> new ArrayList<>()).add(i);
+        }
+        Map<LocalDate, List<EmployeeSlot>> bookedByDay = new TreeMap<>();
+        for (EmployeeSlot slot : booked) {
+            bookedByDay.computeIfAbsent(slot.getStartTime().toLocalDate(), day -> new ArrayList<>()).add(slot);
+        }
+
+        List<DaySolver> days = new ArrayList<>(requestsByDay.size());
+        requestsByDay.forEach((day, indexes) -> days.add(new DaySolver(day, indexes, requests, candidates,
+                bookedByDay.getOrDefault(day, List.of()), assignment)));
+        // Every day writes to its own requests' entries only
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(days);
+            }
+        });
+        return assignment;
+    }
+
+    // A booked or assigned interval of one employee; request is -1 for the bookings made before
+    private record Interval(int end, int request) {
+    }
+
+    private final class DaySolver extends RecursiveAction {
+        private final LocalDate day;
+        private final int[] requestIndexes;
+        private final long[] assignment;
+
+        private final int[] starts;
+        private final int[] ends;
+        private final int[] masks;
+
+        private final long[] employeeIds;
+        private final int[] employeeSkills;
+        // Per employee: the intervals by start second, kept free of overlaps, and the number of them
+        private final List<TreeMap<Integer, Interval>> busy;
+        private final int[] load;
+        // Per local request: the employee it is assigned to, or -1
+        private final int[] assigned;
+        // Eligible employees by requested skill mask, computed on first use
+        private final int[][] eligibleByMask = new int[32][];
+
+        private DaySolver(LocalDate day, List<Integer> requestIndexes, List<Request> requests,
+                          List<Candidate> candidates, List<EmployeeSlot> booked, long[] assignment) {
+            this.day = day;
+            this.requestIndexes = requestIndexes.stream().mapToInt(Integer::intValue).toArray();
+            this.assignment = assignment;
+
+            int size = this.requestIndexes.length;
+            starts = new int[size];
+            ends = new int[size];
+            masks = new int[size];
+            for (int r = 0; r < size; r++) {
+                Request request = requests.get(this.requestIndexes[r]);
+                starts[r] = secondOfDay(request.start);
+                ends[r] = secondOfDay(request.end);
+                masks[r] = request.skillMask;
+            }
+            assigned = new int[size];
+            Arrays.fill(assigned, -1);
+
+            int dayBit = 1 << day.getDayOfWeek().ordinal();
+            List<Candidate> working = candidates.stream().filter(c -> (c.dayMask & dayBit) != 0).toList();
+            employeeIds = new long[working.size()];
+            employeeSkills = new int[working.size()];
+            busy = new ArrayList<>(working.size());
+            load = new int[working.size()];
+            Map<Long, Integer> employeeIndexes = new TreeMap<>();
+            for (int e = 0; e < working.size(); e++) {
+                employeeIds[e] = working.get(e).id;
+                employeeSkills[e] = working.get(e).skillMask;
+                busy.add(new TreeMap<>());
+                employeeIndexes.put(employeeIds[e], e);
+            }
+            for (EmployeeSlot slot : booked) {
+                Integer e = employeeIndexes.get(slot.getEmployeeId());
+                if (e != null) {
+                    // Older data may hold overlapping bookings; keep the longest per start
+                    busy.get(e).merge(secondOfDay(slot.getStartTime()), new Interval(secondOfDay(slot.getEndTime()), -1),
+                            (a, b) -> a.end >= b.end ? a : b);
+                    load[e]++;
+                }
+            }
+        }
+
+        // Seconds since the start of the day; the following midnight is 86400
+        private int secondOfDay(LocalDateTime time) {
+            return (int) ChronoUnit.SECONDS.between(day.atStartOfDay(), time);
+        }
+
+        @Override
+        protected void compute() {
+            assignGreedily();
+            for (int round = 0; round < localSearchRounds; round++) {
+                boolean improved = reassignToFreeUnassigned();
+                improved |= balance();
+                if (!improved) {
+                    break;
+                }
+            }
+            for (int r = 0; r < requestIndexes.length; r++) {
+                if (assigned[r] >= 0) {
+                    assignment[requestIndexes[r]] = employeeIds[assigned[r]];
+                }
+            }
+        }
+
+        private void assignGreedily() {
+            Integer[] order = new Integer[requestIndexes.length];
+            for (int r = 0; r < order.length; r++) {
+                order[r] = r;
+            }
+            Arrays.sort(order, Comparator.<Integer>comparingInt(r -> eligible(masks[r]).length)
+                    .thenComparingInt(r -> starts[r] - ends[r])
+                    .thenComparingInt(r -> starts[r])
+                    .thenComparingInt(r -> r));
+            for (int r : order) {
+                int employee = leastLoadedFree(r, -1, Integer.MAX_VALUE);
+                if (employee >= 0) {
+                    assign(r, employee);
+                }
+            }
+        }
+
+        // An unassigned request takes the slot of an employee whose only conflicting request can move elsewhere
+        private boolean reassignToFreeUnassigned() {
+            boolean improved = false;
+            for (int r = 0; r < requestIndexes.length; r++) {
+                if (assigned[r] >= 0) {
+                    continue;
+                }
+                for (int employee : eligible(masks[r])) {
+                    int conflict = singleMovableConflict(employee, starts[r], ends[r]);
+                    if (conflict < 0) {
+                        continue;
+                    }
+                    unassign(conflict);
+                    int other = leastLoadedFree(conflict, employee, Integer.MAX_VALUE);
+                    if (other >= 0) {
+                        assign(conflict, other);
+                        assign(r, employee);
+                        improved = true;
+                        break;
+                    }
+                    assign(conflict, employee);
+                }
+            }
+            return improved;
+        }
+
+        // Moves requests to eligible employees with at least two bookings less, which lowers the sum of squares
+        private boolean balance() {
+            boolean improved = false;
+            for (int r = 0; r < requestIndexes.length; r++) {
+                int employee = assigned[r];
+                if (employee < 0) {
+                    continue;
+                }
+                int other = leastLoadedFree(r, employee, load[employee] - 1);
+                if (other >= 0) {
+                    unassign(r);
+                    assign(r, other);
+                    improved = true;
+                }
+            }
+            return improved;
+        }
+
+        // The free eligible employee with the lowest load below maxLoad (lowest index on ties), or -1
+        private int leastLoadedFree(int r, int excluded, int maxLoad) {
+            int best = -1;
+            for (int employee : eligible(masks[r])) {
+                if (employee != excluded && load[employee] < maxLoad && (best < 0 || load[employee] < load[best])
+                        && isFree(employee, starts[r], ends[r])) {
+                    best = employee;
+                }
+            }
+            return best;
+        }
+
+        private boolean isFree(int employee, int start, int end) {
+            // The intervals do not overlap, so only the last one starting before `end` can reach past `start`
+            Map.Entry<Integer, Interval> before = busy.get(employee).lowerEntry(end);
+            return before == null || before.getValue().end <= start;
+        }
+
+        // The one assigned request of the employee that overlaps [start, end), or -1 if there are none, several,
+        // or a booking made before
+        private int singleMovableConflict(int employee, int start, int end) {
+            TreeMap<Integer, Interval> intervals = busy.get(employee);
+            Integer from = intervals.floorKey(start);
+            int conflict = -1;
+            for (Map.Entry<Integer, Interval> entry
+                    : intervals.subMap(from == null ? start : from, true, end, false).entrySet()) {
+                if (entry.getValue().end <= start) {
+                    continue;
+                }
+                if (conflict >= 0 || entry.getValue().request < 0) {
+                    return -1;
+                }
+                conflict = entry.getValue().request;
+            }
+            return conflict;
+        }
+
+        private void assign(int r, int employee) {
+            busy.get(employee).put(starts[r], new Interval(ends[r], r));
+            load[employee]++;
+            assigned[r] = employee;
+        }
+
+        private void unassign(int r) {
+            int employee = assigned[r];
+            busy.get(employee).remove(starts[r]);
+            load[employee]--;
+            assigned[r] = -1;
+        }
+
+        private int[] eligible(int mask) {
+            int[] eligible = eligibleByMask[mask];
+            if (eligible == null) {
+                eligible = new int[employeeSkills.length];
+                int count = 0;
+                for (int e = 0; e < employeeSkills.length; e++) {
+                    if ((employeeSkills[e] & mask) == mask) {
+                        eligible[count++] = e;
+                    }
+                }
+                eligible = Arrays.copyOf(eligible, count);
+                eligibleByMask[mask] = eligible;
+            }
+            return eligible;
+        }
+    }
+}
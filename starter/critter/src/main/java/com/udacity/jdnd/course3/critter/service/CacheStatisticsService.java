@@ -0,0 +1,78 @@
+package com.udacity.jdnd.course3.critter.service;
+
+import com.udacity.jdnd.course3.critter.cache.CacheRegionStatisticsDTO;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import jakarta.persistence.EntityManagerFactory;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the second-level cache counters. Hits, misses and puts come from the Hibernate statistics
+ * (hibernate.generate_statistics must be on); evictions are only known to the cache provider and are read
+ * from its JCache statistics MBeans.
+ */
+@Service
+public class CacheStatisticsService {
+
+    private static final String QUERY_RESULTS_REGION = "default-query-results-region";
+    private static final String UPDATE_TIMESTAMPS_REGION = "default-update-timestamps-region";
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    public List<CacheRegionStatisticsDTO> getRegionStatistics() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        Map<String, Long> evictions = getEvictionCounts();
+
+        List<CacheRegionStatisticsDTO> regions = new ArrayList<>();
+        String[] regionNames = statistics.getSecondLevelCacheRegionNames();
+        Arrays.sort(regionNames);
+        for (String regionName : regionNames) {
+            // Skip the update timestamps region, it only supports invalidation of the query results region
+            if (!UPDATE_TIMESTAMPS_REGION.equals(regionName)) {
+                regions.add(convert(statistics.getCacheRegionStatistics(regionName), evictions));
+            }
+        }
+
+        // The query results region is only listed once it has been used
+        if (!Arrays.asList(regionNames).contains(QUERY_RESULTS_REGION)) {
+            regions.add(convert(statistics.getQueryRegionStatistics(QUERY_RESULTS_REGION), evictions));
+        }
+        return regions;
+    }
+
+    private static CacheRegionStatisticsDTO convert(CacheRegionStatistics region, Map<String, Long> evictions) {
+        return new CacheRegionStatisticsDTO(region.getRegionName(), region.getHitCount(), region.getMissCount(),
+                region.getPutCount(), evictions.getOrDefault(region.getRegionName(), 0L));
+    }
+
+    // Read CacheEvictions from every javax.cache CacheStatistics MBean, keyed by cache (region) name
+    private static Map<String, Long> getEvictionCounts() {
+        Map<String, Long> evictions = new HashMap<>();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            for (ObjectName name : server.queryNames(new ObjectName("javax.cache:type=CacheStatistics,*"), null)) {
+                String cache = name.getKeyProperty("Cache");
+                if (cache.startsWith("\"")) {
+                    cache = ObjectName.unquote(cache);
+                }
+                evictions.merge(cache, (Long) server.getAttribute(name, "CacheEvictions"), Long::sum);
+            }
+        } catch (JMException exception) {
+            throw new IllegalStateException("Cache statistics could not be read", exception);
+        }
+        return evictions;
+    }
+}
@@ -2,13 +2,19 @@ package com.udacity.jdnd.course3.critter.service;
 
 import com.udacity.jdnd.course3.critter.entity.Customer;
 import com.udacity.jdnd.course3.critter.entity.Pet;
+import com.udacity.jdnd.course3.critter.repository.CustomerQueryRepository;
 import com.udacity.jdnd.course3.critter.repository.CustomerRepository;
 import com.udacity.jdnd.course3.critter.repository.PetRepository;
+import com.udacity.jdnd.course3.critter.user.CustomerDTO;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
-import javax.transaction.Transactional;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
 @Service
@@ -18,11 +24,32 @@ public class CustomerService {
     private PetRepository petRepository;
     @Autowired
     private CustomerRepository customerRepository;
+    @Autowired
+    private CustomerQueryRepository customerQueryRepository;
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${critter.import.flush-size:500}")
+    private int flushSize;
 
 
     // Get all customer
+    @Transactional(readOnly = true)
     public List<Customer> getAllCustomers() {
-        return customerRepository.findAll();
+        // Fetch the customers together with their pets in a single query
+        return customerRepository.findAllWithPets();
+    }
+
+    // Get all customers as DTOs, read straight from the result set
+    @Transactional(readOnly = true)
+    public List<CustomerDTO> getAllCustomerDTOs() {
+        return customerQueryRepository.findAll();
+    }
+
+    // Get one keyset page of customers: the first `limit` customers with an id greater than `after`
+    @Transactional(readOnly = true)
+    public List<CustomerDTO> getCustomerDTOsAfter(long after, int limit) {
+        return customerQueryRepository.findPage(after, limit);
     }
 
 
@@ -32,7 +59,7 @@ public class CustomerService {
         // check if list petIds not empty
         if (petIds != null && !petIds.isEmpty()) {
             for (Long petId : petIds) {
-                Pet pet = petRepository.getOne(petId); // Get Pet by petId
+                Pet pet = petRepository.getReferenceById(petId); // Get Pet by petId
                 if (pet != null) {
                     customerPets.add(pet);  // Add pet to customer's pet list
                 }
@@ -43,9 +70,33 @@ public class CustomerService {
         return customerRepository.save(customer); // Save customer and return results
     }
 
+    // Import customers in JDBC batches, flushing and clearing the persistence context every flushSize rows.
+    // Pets are imported separately through PetService.importPets, so petIds are not read here.
+    public List<Long> importCustomers(Iterator<CustomerDTO> customers) {
+        List<Long> customerIds = new ArrayList<>();
+        while (customers.hasNext()) {
+            CustomerDTO customerDTO = customers.next();
+            Customer customer = new Customer(null, customerDTO.getName(), customerDTO.getPhoneNumber(),
+                    customerDTO.getNotes());
+            customer.setPets(new ArrayList<>());
+            entityManager.persist(customer);
+            customerIds.add(customer.getId());
+
+            if (customerIds.size() % flushSize == 0) {
+                entityManager.flush();
+                entityManager.clear();
+            }
+        }
+        entityManager.flush();
+        entityManager.clear();
+        return customerIds;
+    }
+
     // Get customer by petId
+    @Transactional(readOnly = true)
     public Customer getCustomerByPetId(Long petId) {
-        return petRepository.getOne(petId).getCustomer();
+        return customerRepository.findOwnerWithPetsByPetId(petId)
+                .orElseThrow(() -> new IllegalArgumentException("Owner not found for pet with id: " + petId));
     }
 
 
@@ -0,0 +1,133 @@
+package com.udacity.jdnd.course3.critter.service;
+
+import com.udacity.jdnd.course3.critter.entity.EmployeeSlot;
+import com.udacity.jdnd.course3.critter.entity.EnumSetMaskConverter;
+import com.udacity.jdnd.course3.critter.entity.Schedule;
+import com.udacity.jdnd.course3.critter.repository.EmployeeRepository;
+import com.udacity.jdnd.course3.critter.repository.ScheduleRepository;
+import com.udacity.jdnd.course3.critter.schedule.AssignmentResultDTO;
+import com.udacity.jdnd.course3.critter.schedule.ScheduleDTO;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Assigns employees to a batch of schedule requests that name pets, a date or time slot and activities but no
+ * employees, see {@link AssignmentSolver}. Every request gets at most one employee, who has all its activities.
+ * <p>
+ * The candidates and their booked slots are read before solving, outside of any lock, so a booking made in the
+ * meantime can make the planned batch conflict. The batch is then planned again with the new bookings, up to
+ * {@code critter.assignment.max-attempts} times.
+ */
+@Service
+public class EmployeeAssignmentService {
+
+    private static final Logger log = LoggerFactory.getLogger(EmployeeAssignmentService.class);
+
+    @Autowired
+    private EmployeeRepository employeeRepository;
+
+    @Autowired
+    private ScheduleRepository scheduleRepository;
+
+    @Autowired
+    private ScheduleBookingService scheduleBookingService;
+
+    @Value("${critter.assignment.max-attempts:3}")
+    private int maxAttempts;
+
+    private final ForkJoinPool pool;
+    private final AssignmentSolver solver;
+
+    public EmployeeAssignmentService(@Value("${critter.assignment.parallelism:0}") int parallelism,
+                                     @Value("${critter.assignment.local-search-rounds:3}") int localSearchRounds) {
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        this.solver = new AssignmentSolver(pool, localSearchRounds);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Plans the requests and, if book is set, books the assigned ones in one transaction. The result lists every
+     * assigned request with its employee (and its id once booked), and the positions of the requests that no
+     * employee could take.
+     */
+    public AssignmentResultDTO assign(List<ScheduleDTO> requests, boolean book) {
+        List<AssignmentSolver.Request> tasks = new ArrayList<>(requests.size());
+        int dayMask = 0;
+        LocalDateTime first = null;
+        LocalDateTime last = null;
+        for (ScheduleDTO request : requests) {
+            if (request.getEmployeeIds() != null && !request.getEmployeeIds().isEmpty()) {
+                throw new IllegalArgumentException("Requests to assign must not name employees");
+            }
+            EmployeeSlot slot = ScheduleService.getTimeSlot(request);
+            tasks.add(new AssignmentSolver.Request(slot.getStartTime(), slot.getEndTime(),
+                    EnumSetMaskConverter.toMask(request.getActivities())));
+            dayMask |= 1 << slot.getStartTime().getDayOfWeek().ordinal();
+            first = first == null || slot.getStartTime().isBefore(first) ? slot.getStartTime() : first;
+            last = last == null || slot.getEndTime().isAfter(last) ? slot.getEndTime() : last;
+        }
+
+        // Every employee who works on at least one of the days; the solver filters by day and skills
+        List<AssignmentSolver.Candidate> candidates = new ArrayList<>();
+        List<Long> employeeIds = new ArrayList<>();
+        employeeRepository.findAvailable(dayMask, 0).forEach(employee -> {
+            candidates.add(new AssignmentSolver.Candidate(employee.getId(),
+                    EnumSetMaskConverter.toMask(employee.getSkills()),
+                    EnumSetMaskConverter.toMask(employee.getDaysAvailable())));
+            employeeIds.add(employee.getId());
+        });
+
+        for (int attempt = 1; ; attempt++) {
+            List<EmployeeSlot> booked = employeeIds.isEmpty() ? List.of()
+                    : scheduleRepository.findSlotsOverlapping(employeeIds, first, last);
+            long[] assignment = solver.solve(tasks, candidates, booked);
+
+            AssignmentResultDTO result = new AssignmentResultDTO();
+            List<ScheduleDTO> schedules = new ArrayList<>();
+            List<Integer> unassigned = new ArrayList<>();
+            for (int i = 0; i < requests.size(); i++) {
+                if (assignment[i] == AssignmentSolver.UNASSIGNED) {
+                    unassigned.add(i);
+                    continue;
+                }
+                ScheduleDTO request = requests.get(i);
+                schedules.add(new ScheduleDTO(0, List.of(assignment[i]), request.getPetIds(),
+                        tasks.get(i).getStart().toLocalDate(), request.getStartTime(), request.getEndTime(),
+                        request.getActivities()));
+            }
+            result.setSchedules(schedules);
+            result.setUnassigned(unassigned);
+            if (!book || schedules.isEmpty()) {
+                return result;
+            }
+
+            try {
+                List<Schedule> saved = scheduleBookingService.bookSchedules(schedules);
+                for (int i = 0; i < saved.size(); i++) {
+                    schedules.get(i).setId(saved.get(i).getId());
+                }
+                return result;
+            } catch (ScheduleConflictException exception) {
+                // Another booking took one of the planned slots after they were read
+                if (attempt >= maxAttempts) {
+                    throw exception;
+                }
+                log.debug("Assignment of {} requests conflicted, planning again (attempt {})", requests.size(),
+                        attempt, exception);
+            }
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.udacity.jdnd.course3.critter.service;
+
+import com.udacity.jdnd.course3.critter.entity.EnumSetMaskConverter;
+import com.udacity.jdnd.course3.critter.user.EmployeeSkill;
+
+import java.time.DayOfWeek;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory matching index for the employee availability lookup.
+ * <p>
+ * Every employee gets a dense slot number. For each slot we keep the skills and the available days as
+ * one-byte masks (both enums have less than 8 constants), and for every skill and every weekday we keep a
+ * posting list as a long[] bitset over the slots. Finding the employees that are available on a day and
+ * have all requested skills is then a bitwise AND of a handful of bitsets.
+ * <p>
+ * Every slot also keeps the version of the employee row its masks were taken from. Writes are put after their
+ * transaction commits, and two commits can reach the index in either order, so a put with an older version than
+ * the slot's is ignored.
+ * <p>
+ * There is one index per tenant (see TenancyConfiguration), so the bitsets only span the employees of one clinic.
+ */
+public class EmployeeAvailabilityIndex {
+
+    private static final int DAYS = DayOfWeek.values().length;
+    private static final int SKILLS = EmployeeSkill.values().length;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // employee id -> slot, and slot -> employee id
+    private final Map<Long, Integer> slotsById = new HashMap<>();
+    private long[] idsBySlot = new long[64];
+
+    // per-slot masks, indexed by slot
+    private byte[] skillMasks = new byte[64];
+    private byte[] dayMasks = new byte[64];
+    private long[] versions = new long[64];
+
+    // posting lists, one bitset per weekday and per skill
+    private final long[][] dayPostings = new long[DAYS][1];
+    private final long[][] skillPostings = new long[SKILLS][1];
+
+    private int size;
+    private volatile boolean ready;
+
+    // The same bit layout as the mask columns of the employee row
+    public static byte skillMask(Set<EmployeeSkill> skills) {
+        return (byte) EnumSetMaskConverter.toMask(skills);
+    }
+
+    public static byte dayMask(Set<DayOfWeek> days) {
+        return (byte) EnumSetMaskConverter.toMask(days);
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Marks the index as fully loaded. Until then lookups must use the database path.
+     */
+    public void markReady() {
+        ready = true;
+    }
+
+    public boolean contains(Long employeeId) {
+        lock.readLock().lock();
+        try {
+            return slotsById.containsKey(employeeId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void put(Long employeeId, Set<EmployeeSkill> skills, Set<DayOfWeek> days, long version) {
+        put(employeeId, skillMask(skills), dayMask(days), version);
+    }
+
+    public void remove(Long employeeId) {
+        // Clearing both masks removes the slot from every posting list; the slot itself is kept for reuse
+        // if the same employee is written again.
+        lock.writeLock().lock();
+        try {
+            Integer slot = slotsById.get(employeeId);
+            if (slot != null) {
+                write(slot, (byte) 0, (byte) 0, versions[slot]);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the ids of all employees that are available on the given day and have every requested skill.
+     */
+    public List<Long> findEmployeeIds(DayOfWeek day, Set<EmployeeSkill> skills) {
+        lock.readLock().lock();
+        try {
+            long[] days = dayPostings[day.ordinal()];
+            long[] result = Arrays.copyOf(days, days.length);
+
+            // AND the weekday posting list with the posting list of every requested skill
+            if (skills != null) {
+                for (EmployeeSkill skill : skills) {
+                    long[] postings = skillPostings[skill.ordinal()];
+                    for (int word = 0; word < result.length; word++) {
+                        result[word] &= word < postings.length ? postings[word] : 0L;
+                    }
+                }
+            }
+
+            List<Long> employeeIds = new ArrayList<>();
+            for (int word = 0; word < result.length; word++) {
+                long bits = result[word];
+                while (bits != 0) {
+                    int slot = (word << 6) + Long.numberOfTrailingZeros(bits);
+                    employeeIds.add(idsBySlot[slot]);
+                    bits &= bits - 1;
+                }
+            }
+            return employeeIds;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Sets the masks of the employee as of the given version of its row, unless the index already has a newer
+     * version.
+     */
+    public void put(Long employeeId, byte skillMask, byte dayMask, long version) {
+        lock.writeLock().lock();
+        try {
+            Integer slot = slotsById.get(employeeId);
+            if (slot == null) {
+                slot = size++;
+                ensureCapacity(size);
+                slotsById.put(employeeId, slot);
+                idsBySlot[slot] = employeeId;
+            } else if (version < versions[slot]) {
+                return;
+            }
+            write(slot, skillMask, dayMask, version);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Called with the write lock held
+    private void write(int slot, byte skillMask, byte dayMask, long version) {
+        skillMasks[slot] = skillMask;
+        dayMasks[slot] = dayMask;
+        versions[slot] = version;
+
+        for (int day = 0; day < DAYS; day++) {
+            dayPostings[day] = setBit(dayPostings[day], slot, (dayMask & (1 << day)) != 0);
+        }
+        for (int skill = 0; skill < SKILLS; skill++) {
+            skillPostings[skill] = setBit(skillPostings[skill], slot, (skillMask & (1 << skill)) != 0);
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > idsBySlot.length) {
+            int newLength = Math.max(capacity, idsBySlot.length * 2);
+            idsBySlot = Arrays.copyOf(idsBySlot, newLength);
+            skillMasks = Arrays.copyOf(skillMasks, newLength);
+            dayMasks = Arrays.copyOf(dayMasks, newLength);
+            versions = Arrays.copyOf(versions, newLength);
+        }
+    }
+
+    private static long[] setBit(long[] bitset, int slot, boolean value) {
+        int word = slot >>> 6;
+        if (word >= bitset.length) {
+            if (!value) {
+                return bitset;
+            }
+            bitset = Arrays.copyOf(bitset, Math.max(word + 1, bitset.length * 2));
+        }
+        if (value) {
+            bitset[word] |= 1L << slot;
+        } else {
+            bitset[word] &= ~(1L << slot);
+        }
+        return bitset;
+    }
+}
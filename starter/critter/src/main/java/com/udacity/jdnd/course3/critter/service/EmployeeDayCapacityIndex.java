@@ -0,0 +1,131 @@
+package com.udacity.jdnd.course3.critter.service;
+
+import com.udacity.jdnd.course3.critter.entity.EmployeeDayCapacity;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory mirror of the employee_day_capacity table, for the availability lookup by date and skills.
+ * <p>
+ * Every materialized day keeps its rows as three arrays in employee id order: the ids, the skills masks and the
+ * remaining minutes. A lookup finds the day in a hash map and tests one mask and one number per employee working
+ * that day, without a lock. Writes replace the arrays of a day as a whole, one writer per day at a time. Like the
+ * other in-memory indexes, it learns about writes made by other nodes only when it is rebuilt, and there is one
+ * per tenant (see TenancyConfiguration).
+ */
+public class EmployeeDayCapacityIndex {
+
+    private final Map<LocalDate, Day> days = new ConcurrentHashMap<>();
+
+    /**
+     * Immutable rows of one day, in employee id order.
+     */
+    private static final class Day {
+
+        static final Day EMPTY = new Day(new long[0], new int[0], new int[0]);
+
+        private final long[] employeeIds;
+        private final int[] skillMasks;
+        private final int[] remainingMinutes;
+
+        private Day(long[] employeeIds, int[] skillMasks, int[] remainingMinutes) {
+            this.employeeIds = employeeIds;
+            this.skillMasks = skillMasks;
+            this.remainingMinutes = remainingMinutes;
+        }
+
+        static Day of(List<EmployeeDayCapacity> rows) {
+            List<EmployeeDayCapacity> sorted = new ArrayList<>(rows);
+            sorted.sort(Comparator.comparingLong(EmployeeDayCapacity::employeeId));
+            long[] employeeIds = new long[sorted.size()];
+            int[] skillMasks = new int[sorted.size()];
+            int[] remainingMinutes = new int[sorted.size()];
+            for (int i = 0; i < sorted.size(); i++) {
+                EmployeeDayCapacity row = sorted.get(i);
+                employeeIds[i] = row.employeeId();
+                skillMasks[i] = row.skillsMask();
+                remainingMinutes[i] = row.remainingMinutes();
+            }
+            return new Day(employeeIds, skillMasks, remainingMinutes);
+        }
+
+        // This day without the rows of the given employees, merged with the given rows of those employees
+        Day replace(Set<Long> replaced, List<EmployeeDayCapacity> rows) {
+            Day added = of(rows);
+            int length = employeeIds.length + added.employeeIds.length;
+            long[] mergedIds = new long[length];
+            int[] mergedSkills = new int[length];
+            int[] mergedMinutes = new int[length];
+            int size = 0;
+            for (int i = 0, j = 0; i < employeeIds.length || j < added.employeeIds.length; ) {
+                if (j == added.employeeIds.length
+                        || i < employeeIds.length && employeeIds[i] < added.employeeIds[j]) {
+                    if (!replaced.contains(employeeIds[i])) {
+                        mergedIds[size] = employeeIds[i];
+                        mergedSkills[size] = skillMasks[i];
+                        mergedMinutes[size++] = remainingMinutes[i];
+                    }
+                    i++;
+                } else {
+                    mergedIds[size] = added.employeeIds[j];
+                    mergedSkills[size] = added.skillMasks[j];
+                    mergedMinutes[size++] = added.remainingMinutes[j];
+                    j++;
+                }
+            }
+            return new Day(Arrays.copyOf(mergedIds, size), Arrays.copyOf(mergedSkills, size),
+                    Arrays.copyOf(mergedMinutes, size));
+        }
+    }
+
+    /**
+     * Returns the ids of the employees that work on the date, are not booked all day and have every skill in
+     * skillMask, in id order. A date that is not materialized has no rows.
+     */
+    public List<Long> findEmployeeIds(LocalDate date, int skillMask) {
+        Day day = days.getOrDefault(date, Day.EMPTY);
+        List<Long> employeeIds = new ArrayList<>();
+        for (int i = 0; i < day.employeeIds.length; i++) {
+            if ((day.skillMasks[i] & skillMask) == skillMask && day.remainingMinutes[i] > 0) {
+                employeeIds.add(day.employeeIds[i]);
+            }
+        }
+        return employeeIds;
+    }
+
+    // Replaces all rows of the date
+    public void putDay(LocalDate date, List<EmployeeDayCapacity> rows) {
+        days.put(date, Day.of(rows));
+    }
+
+    /**
+     * Replaces the rows of the given employees from `from` to `to`, both inclusive, by the given rows of those
+     * employees on those days.
+     */
+    public void replace(Collection<Long> employeeIds, LocalDate from, LocalDate to, List<EmployeeDayCapacity> rows) {
+        Set<Long> replaced = new HashSet<>(employeeIds);
+        Map<LocalDate, List<EmployeeDayCapacity>> rowsByDate = new HashMap<>();
+        for (EmployeeDayCapacity row : rows) {
+            rowsByDate.computeIfAbsent(row.date(), date -> new ArrayList<>()).add(row);
+        }
+        for (LocalDate date = from; !date.isAfter(to); date = date.plusDays(1)) {
+            List<EmployeeDayCapacity> dayRows = rowsByDate.getOrDefault(date, List.of());
+            days.compute(date, (key, day) -> (day == null ? Day.EMPTY : day).replace(replaced, dayRows));
+        }
+    }
+
+    // Drops the days before `from` and after `to`
+    public void retain(LocalDate from, LocalDate to) {
+        days.keySet().removeIf(date -> date.isBefore(from) || date.isAfter(to));
+    }
+}
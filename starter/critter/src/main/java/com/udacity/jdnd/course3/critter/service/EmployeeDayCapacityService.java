@@ -0,0 +1,443 @@
+package com.udacity.jdnd.course3.critter.service;
+
+import com.udacity.jdnd.course3.critter.entity.Employee;
+import com.udacity.jdnd.course3.critter.entity.EmployeeDayCapacity;
+import com.udacity.jdnd.course3.critter.entity.EmployeeSlot;
+import com.udacity.jdnd.course3.critter.entity.EnumSetMaskConverter;
+import com.udacity.jdnd.course3.critter.repository.EmployeeDayCapacityRepository;
+import com.udacity.jdnd.course3.critter.repository.EmployeeDayCapacityRepository.Horizon;
+import com.udacity.jdnd.course3.critter.repository.EmployeeRepository;
+import com.udacity.jdnd.course3.critter.repository.ScheduleRepository;
+import com.udacity.jdnd.course3.critter.tenant.TenantContext;
+import com.udacity.jdnd.course3.critter.tenant.TenantDirectory;
+import com.udacity.jdnd.course3.critter.tenant.TenantScoped;
+import com.udacity.jdnd.course3.critter.user.EmployeeSkill;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.udacity.jdnd.course3.critter.entity.EmployeeDayCapacity.DAY_MINUTES;
+
+/**
+ * Keeps the employee_day_capacity table and its in-memory mirror ({@link EmployeeDayCapacityIndex}) for the days
+ * from today to critter.day-capacity.horizon-days ahead. The availability lookup by date and skills then reads the
+ * rows of one day instead of combining the days, skills and bookings of the employees on every request.
+ * <p>
+ * Days that are not materialized yet are computed from one read of the employees and one of the slots booked on
+ * them, and written in a transaction of its own, several days in parallel. After that, every write that changes the
+ * days or skills of employees or books them recomputes only the rows of those employees on the affected days, in the
+ * writer's transaction; the mirror follows once it commits. Writes that commit on this node while days are being
+ * materialized are recomputed again afterwards. A background task moves the horizon forward as the days pass.
+ * <p>
+ * The table is shared by the nodes on one database, so the materialized days are recorded in day_capacity_horizon
+ * and written under the lock of that row: on startup and when the horizon moves, the first node writes the new days
+ * and the others find them there and only load them into their mirror. A node that restarts keeps the rows that the
+ * writes of all nodes kept current; after running with critter.day-capacity.enabled=false, whose writes leave the
+ * table alone, delete the day_capacity_horizon rows to have the days written again.
+ * <p>
+ * The horizon is the same for every tenant; the rows, the recorded days and the mirror are kept per tenant, and the
+ * startup and horizon writes go through the tenants one after the other.
+ * <p>
+ * The mirror is node-local: it only follows the writes committed on this node, so with several nodes on one
+ * database it misses the others' bookings and availability changes. Such nodes have to read the table
+ * (critter.day-capacity.mirror-enabled=false), which is the default once read replicas are configured; a startup
+ * warning is logged when the mirror is switched on with replicas.
+ */
+@Service
+@Transactional
+public class EmployeeDayCapacityService {
+
+    private static final Logger log = LoggerFactory.getLogger(EmployeeDayCapacityService.class);
+
+    // Bound the number of employees loaded by one refresh
+    private static final int REFRESH_CHUNK = 1000;
+
+    @Autowired
+    private EmployeeRepository employeeRepository;
+
+    @Autowired
+    private ScheduleRepository scheduleRepository;
+
+    @Autowired
+    private EmployeeDayCapacityRepository capacityRepository;
+
+    @Autowired
+    private TenantScoped<EmployeeDayCapacityIndex> capacityIndexes;
+
+    @Autowired
+    private TenantDirectory tenantDirectory;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${critter.day-capacity.enabled:true}")
+    private boolean enabled;
+
+    // Unset, the mirror is used on a single database and not once read replicas, i.e. several nodes, are configured
+    @Value("${critter.day-capacity.mirror-enabled:#{null}}")
+    private Boolean mirrorSetting;
+
+    @Value("${critter.datasource.replica.urls:}")
+    private List<String> replicaUrls;
+
+    private boolean mirrorEnabled;
+
+    @Value("${critter.day-capacity.horizon-days:60}")
+    private int horizonDays;
+
+    @Value("${critter.day-capacity.rebuild-parallelism:4}")
+    private int rebuildParallelism;
+
+    private final ScheduledExecutorService horizonMover = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "day-capacity-horizon");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // The materialized days, null until they have been written once
+    private volatile Horizon horizon;
+
+    private ScheduledFuture<?> horizonTask;
+
+    // The employees of the writes that commit while days are being materialized, by tenant; null otherwise
+    private volatile Map<String, Set<Long>> committedDuringRebuild;
+
+    private record EmployeeMasks(long employeeId, int skillsMask, int daysMask) {
+    }
+
+    // Materialize the horizon once the application is up, after the slots of old schedules have been filled in
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            LocalDate today = LocalDate.now();
+            materialize(today, today.plusDays(horizonDays - 1));
+            if (horizonTask == null) {
+                horizonTask = horizonMover.scheduleWithFixedDelay(this::moveHorizon, 1, 1, TimeUnit.HOURS);
+            }
+        } catch (RuntimeException exception) {
+            // The availability lookups keep working on the other indexes and the database
+            log.warn("Employee day capacity could not be rebuilt, using the other availability lookups", exception);
+        }
+    }
+
+    @PostConstruct
+    public void configureMirror() {
+        mirrorEnabled = mirrorSetting != null ? mirrorSetting : replicaUrls.isEmpty();
+        if (enabled && mirrorEnabled && !replicaUrls.isEmpty()) {
+            log.warn("critter.day-capacity.mirror-enabled=true with read replicas: the mirror only follows the " +
+                    "writes of this node, so availability lookups miss the bookings made on other nodes");
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        horizonMover.shutdownNow();
+    }
+
+    /**
+     * Returns whether the date is materialized, so that {@link #findEmployeeIds} can answer for it.
+     */
+    public boolean covers(LocalDate date) {
+        Horizon current = horizon;
+        return enabled && current != null && !date.isBefore(current.from()) && !date.isAfter(current.to());
+    }
+
+    /**
+     * Returns the ids of the employees that work on a materialized date, are not booked all day and have every
+     * requested skill, from the mirror or, with critter.day-capacity.mirror-enabled=false, from the table.
+     */
+    @Transactional(readOnly = true)
+    public List<Long> findEmployeeIds(LocalDate date, Set<EmployeeSkill> skills) {
+        int skillMask = EnumSetMaskConverter.toMask(skills);
+        return mirrorEnabled ? capacityIndexes.get().findEmployeeIds(date, skillMask)
+                : capacityRepository.findEmployeeIds(date, skillMask);
+    }
+
+    /**
+     * Returns the ids of the given employees whose booked slots fill the whole date, counted the same way as the
+     * remaining minutes of the rows, so that lookups outside the horizon leave out the same employees.
+     */
+    @Transactional(readOnly = true)
+    public Set<Long> findBookedAllDay(List<Long> employeeIds, LocalDate date) {
+        Set<Long> bookedAllDay = new HashSet<>();
+        for (int start = 0; start < employeeIds.size(); start += REFRESH_CHUNK) {
+            List<Long> chunk = employeeIds.subList(start, Math.min(employeeIds.size(), start + REFRESH_CHUNK));
+            bookedMinutes(scheduleRepository.findSlotsOverlapping(chunk, date.atStartOfDay(),
+                    date.plusDays(1).atStartOfDay()), date, 1).forEach((employeeId, minutes) -> {
+                if (minutes[0] >= DAY_MINUTES) {
+                    bookedAllDay.add(employeeId);
+                }
+            });
+        }
+        return bookedAllDay;
+    }
+
+    /**
+     * Recomputes the rows of the employees on every materialized day, after their days or skills changed.
+     */
+    public void refresh(Collection<Long> employeeIds) {
+        refresh(employeeIds, LocalDate.MIN, LocalDate.MAX);
+    }
+
+    /**
+     * Recomputes the rows of the employees on the materialized days from `from` to `to`, both inclusive, from
+     * their current days, skills and booked slots. Runs in the caller's transaction; the mirror is updated once
+     * it commits.
+     */
+    public void refresh(Collection<Long> employeeIds, LocalDate from, LocalDate to) {
+        if (!enabled || employeeIds.isEmpty()) {
+            return;
+        }
+        Set<Long> uniqueEmployeeIds = new LinkedHashSet<>(employeeIds);
+        List<Runnable> mirrorUpdates = new ArrayList<>();
+
+        Horizon current = horizon;
+        if (current != null) {
+            // Up to the end of the configured horizon, as another node may have materialized the next day before
+            // this one moved its horizon
+            LocalDate end = LocalDate.now().plusDays(horizonDays - 1);
+            LocalDate horizonEnd = end.isAfter(current.to()) ? end : current.to();
+            LocalDate first = from.isBefore(current.from()) ? current.from() : from;
+            LocalDate last = to.isAfter(horizonEnd) ? horizonEnd : to;
+            if (!first.isAfter(last)) {
+                mirrorUpdates.addAll(write(new ArrayList<>(uniqueEmployeeIds), first, last));
+            }
+        }
+
+        String tenantId = TenantContext.getTenantId();
+        afterCommit(() -> {
+            Map<String, Set<Long>> committed = committedDuringRebuild;
+            if (committed != null) {
+                committed.computeIfAbsent(tenantId, id -> ConcurrentHashMap.newKeySet()).addAll(uniqueEmployeeIds);
+            }
+            if (mirrorEnabled) {
+                mirrorUpdates.forEach(Runnable::run);
+            }
+        });
+    }
+
+    // Recomputes and writes the rows of the employees from `first` to `last`; returns the matching mirror updates
+    private List<Runnable> write(List<Long> employeeIds, LocalDate first, LocalDate last) {
+        int days = (int) ChronoUnit.DAYS.between(first, last) + 1;
+        EmployeeDayCapacityIndex capacityIndex = capacityIndexes.getOrCreate();
+        List<Runnable> mirrorUpdates = new ArrayList<>();
+        for (int start = 0; start < employeeIds.size(); start += REFRESH_CHUNK) {
+            List<Long> chunk = employeeIds.subList(start, Math.min(employeeIds.size(), start + REFRESH_CHUNK));
+            // Both queries flush the pending writes of the transaction first
+            List<EmployeeMasks> employees = masks(employeeRepository.findAllWithDetailsByIdIn(chunk));
+            Map<Long, int[]> bookedMinutes = bookedMinutes(scheduleRepository.findSlotsOverlapping(chunk,
+                    first.atStartOfDay(), last.plusDays(1).atStartOfDay()), first, days);
+
+            List<EmployeeDayCapacity> rows = new ArrayList<>();
+            for (int day = 0; day < days; day++) {
+                rows.addAll(rows(employees, bookedMinutes, first.plusDays(day), day));
+            }
+            capacityRepository.replace(chunk, first, last, rows);
+            mirrorUpdates.add(() -> capacityIndex.replace(chunk, first, last, rows));
+        }
+        return mirrorUpdates;
+    }
+
+    private void moveHorizon() {
+        try {
+            LocalDate today = LocalDate.now();
+            if (!today.equals(horizon.from())) {
+                materialize(today, today.plusDays(horizonDays - 1));
+            }
+        } catch (RuntimeException exception) {
+            log.warn("Employee day capacity horizon could not be moved", exception);
+        }
+    }
+
+    // Writes the days from `from` to `to` that are not materialized yet, and drops the days outside, for every
+    // tenant
+    private synchronized void materialize(LocalDate from, LocalDate to) {
+        Horizon current = horizon;
+        Set<String> tenantIds = tenantDirectory.findTenantIds();
+        Map<String, Set<Long>> committed = new ConcurrentHashMap<>();
+        committedDuringRebuild = committed;
+        try {
+            for (String tenantId : tenantIds) {
+                TenantContext.runAs(tenantId, () -> transactionTemplate.executeWithoutResult(status ->
+                        materializeTenant(current, from, to)));
+            }
+            horizon = new Horizon(from, to);
+        } finally {
+            committedDuringRebuild = null;
+        }
+
+        // Their rows may have been computed from data read before they committed
+        committed.forEach((tenantId, employeeIds) -> TenantContext.runAs(tenantId, () ->
+                transactionTemplate.executeWithoutResult(status -> refresh(employeeIds))));
+    }
+
+    // Materializes the days of the current tenant while holding the lock of its day_capacity_horizon row. Of the
+    // nodes sharing the database, the first to get the lock writes the new days and the others find them recorded,
+    // so they only fill their mirror from the table.
+    private void materializeTenant(Horizon current, LocalDate from, LocalDate to) {
+        Horizon stored = capacityRepository.lockHorizon();
+        LocalDate first = stored == null || stored.from().isAfter(from) || stored.to().isBefore(from)
+                ? from : stored.to().plusDays(1);
+        if (!first.isAfter(to)) {
+            writeDays(first, to);
+        }
+        if (mirrorEnabled) {
+            // The days written by another node, or by this one before it restarted
+            LocalDate mirrored = current == null || current.to().isBefore(from) ? from : current.to().plusDays(1);
+            LocalDate written = first.isAfter(to) ? to : first.minusDays(1);
+            if (!mirrored.isAfter(written)) {
+                loadMirror(mirrored, written);
+            }
+        }
+        capacityRepository.deleteOutside(from, to);
+        capacityIndexes.getOrCreate().retain(from, to);
+        capacityRepository.saveHorizon(new Horizon(from, to));
+    }
+
+    // Copies the current tenant's rows from `first` to `last` into its mirror, one day at a time
+    private void loadMirror(LocalDate first, LocalDate last) {
+        Map<LocalDate, List<EmployeeDayCapacity>> rowsByDate = new HashMap<>();
+        for (EmployeeDayCapacity row : capacityRepository.findDays(first, last)) {
+            rowsByDate.computeIfAbsent(row.date(), date -> new ArrayList<>()).add(row);
+        }
+        EmployeeDayCapacityIndex capacityIndex = capacityIndexes.getOrCreate();
+        for (LocalDate date = first; !date.isAfter(last); date = date.plusDays(1)) {
+            capacityIndex.putDay(date, rowsByDate.getOrDefault(date, List.of()));
+        }
+    }
+
+    // Computes the days of the current tenant from one read of its employees and one of their slots on those days,
+    // and writes each day in its own transaction, rebuild-parallelism days at a time
+    private void writeDays(LocalDate first, LocalDate last) {
+        int days = (int) ChronoUnit.DAYS.between(first, last) + 1;
+        String tenantId = TenantContext.getTenantId();
+        EmployeeDayCapacityIndex capacityIndex = capacityIndexes.getOrCreate();
+        List<EmployeeMasks> employees = transactionTemplate.execute(status ->
+                masks(employeeRepository.findAllWithDetails()));
+        Map<Long, int[]> bookedMinutes = bookedMinutes(transactionTemplate.execute(status ->
+                scheduleRepository.findAllSlotsOverlapping(first.atStartOfDay(), last.plusDays(1).atStartOfDay())),
+                first, days);
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, rebuildParallelism), runnable -> {
+            Thread thread = new Thread(runnable, "day-capacity-rebuild");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> writes = new ArrayList<>(days);
+            for (int day = 0; day < days; day++) {
+                LocalDate date = first.plusDays(day);
+                int offset = day;
+                writes.add(executor.submit(() -> TenantContext.runAs(tenantId, () -> {
+                    List<EmployeeDayCapacity> rows = rows(employees, bookedMinutes, date, offset);
+                    transactionTemplate.executeWithoutResult(status -> capacityRepository.replaceDay(date, rows));
+                    if (mirrorEnabled) {
+                        capacityIndex.putDay(date, rows);
+                    }
+                })));
+            }
+            for (Future<?> write : writes) {
+                write.get();
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while writing the employee day capacity", exception);
+        } catch (ExecutionException exception) {
+            throw new IllegalStateException("Employee day capacity could not be written", exception.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static List<EmployeeMasks> masks(List<Employee> employees) {
+        List<EmployeeMasks> masks = new ArrayList<>(employees.size());
+        for (Employee employee : employees) {
+            masks.add(new EmployeeMasks(employee.getId(), EnumSetMaskConverter.toMask(employee.getSkills()),
+                    EnumSetMaskConverter.toMask(employee.getDaysAvailable())));
+        }
+        return masks;
+    }
+
+    // The minutes booked by every employee on each day from `first`, indexed by day; slots are split at midnight
+    private static Map<Long, int[]> bookedMinutes(List<EmployeeSlot> slots, LocalDate first, int days) {
+        Map<Long, int[]> bookedMinutes = new HashMap<>();
+        LocalDateTime origin = first.atStartOfDay();
+        for (EmployeeSlot slot : slots) {
+            long start = Math.max(0, Duration.between(origin, slot.getStartTime()).toMinutes());
+            long end = Math.min((long) days * DAY_MINUTES, Duration.between(origin, slot.getEndTime()).toMinutes());
+            int[] minutes = bookedMinutes.computeIfAbsent(slot.getEmployeeId(), id -> new int[days]);
+            while (start < end) {
+                int day = (int) (start / DAY_MINUTES);
+                long dayEnd = Math.min(end, (day + 1L) * DAY_MINUTES);
+                minutes[day] += (int) (dayEnd - start);
+                start = dayEnd;
+            }
+        }
+        return bookedMinutes;
+    }
+
+    // One row for every employee that works on the date, with the minutes of that day its slots leave free
+    private static List<EmployeeDayCapacity> rows(List<EmployeeMasks> employees, Map<Long, int[]> bookedMinutes,
+                                                  LocalDate date, int day) {
+        int dayBit = 1 << date.getDayOfWeek().ordinal();
+        List<EmployeeDayCapacity> rows = new ArrayList<>();
+        for (EmployeeMasks employee : employees) {
+            if ((employee.daysMask() & dayBit) != 0) {
+                int[] minutes = bookedMinutes.get(employee.employeeId());
+                int booked = minutes == null ? 0 : minutes[day];
+                rows.add(new EmployeeDayCapacity(date, employee.employeeId(), employee.skillsMask(),
+                        Math.max(0, DAY_MINUTES - booked)));
+            }
+        }
+        return rows;
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
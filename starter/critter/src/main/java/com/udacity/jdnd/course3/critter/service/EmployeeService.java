@@ -1,15 +1,41 @@
 package com.udacity.jdnd.course3.critter.service;
 
 import com.udacity.jdnd.course3.critter.entity.Employee;
+import com.udacity.jdnd.course3.critter.entity.EnumSetMaskConverter;
+import com.udacity.jdnd.course3.critter.event.CritterEventBus;
+import com.udacity.jdnd.course3.critter.event.CritterEventType;
 import com.udacity.jdnd.course3.critter.repository.EmployeeRepository;
+import com.udacity.jdnd.course3.critter.repository.ScheduleRepository;
+import com.udacity.jdnd.course3.critter.tenant.TenantDirectory;
+import com.udacity.jdnd.course3.critter.tenant.TenantScoped;
 import com.udacity.jdnd.course3.critter.user.EmployeeSkill;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
 
-import javax.transaction.Transactional;
 import java.time.DayOfWeek;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
@@ -17,29 +43,182 @@ import java.util.Set;
 @Transactional
 public class EmployeeService {
 
+    private static final Logger log = LoggerFactory.getLogger(EmployeeService.class);
+
     @Autowired
     private EmployeeRepository employeeRepository;
 
+    @Autowired
+    private TenantScoped<EmployeeAvailabilityIndex> availabilityIndexes;
+
+    @Autowired
+    private TenantScoped<EmployeeSlotIndex> slotIndexes;
+
+    @Autowired
+    private TenantDirectory tenantDirectory;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private EmployeeDayCapacityService dayCapacityService;
+
+    @Autowired
+    private ScheduleRepository scheduleRepository;
+
+    @Autowired
+    private ResourceVersions resourceVersions;
+
+    @Autowired
+    private CritterEventBus eventBus;
+
+    // Unset, the availability index is used on a single database and not once read replicas, i.e. several nodes,
+    // are configured
+    @Value("${critter.employee-index.enabled:#{null}}")
+    private Boolean availabilityIndexSetting;
+
+    @Value("${critter.datasource.replica.urls:}")
+    private List<String> replicaUrls;
+
+    private boolean availabilityIndexEnabled;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${critter.import.flush-size:500}")
+    private int flushSize;
+
+    @Value("${critter.slot-search.max-days:90}")
+    private int slotSearchMaxDays;
+
+    @PostConstruct
+    public void configureAvailabilityIndex() {
+        availabilityIndexEnabled = availabilityIndexSetting != null ? availabilityIndexSetting : replicaUrls.isEmpty();
+        if (availabilityIndexEnabled && !replicaUrls.isEmpty()) {
+            log.warn("critter.employee-index.enabled=true with read replicas: the index only follows the employee " +
+                    "writes of this node, so availability lookups miss the changes made on other nodes");
+        }
+    }
+
+    // Build the in-memory availability index of every tenant once the application is up, each from a read in a
+    // transaction of that tenant
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void loadAvailabilityIndex() {
+        if (!availabilityIndexEnabled) {
+            return;
+        }
+        try {
+            availabilityIndexes.loadAll(tenantDirectory.findTenantIds(), availabilityIndex -> {
+                List<Employee> employees = transactionTemplate.execute(status -> employeeRepository.findAllWithDetails());
+                for (Employee employee : employees) {
+                    availabilityIndex.put(employee.getId(), employee.getSkills(), employee.getDaysAvailable(),
+                            employee.getVersion());
+                }
+                availabilityIndex.markReady();
+            });
+        } catch (RuntimeException exception) {
+            // The database query path keeps working without the index
+            log.warn("Employee availability index could not be loaded, using database lookups", exception);
+        }
+    }
+
     //Get employee by employeeId
+    @Transactional(readOnly = true)
     public Employee getEmployeeById(Long employeeId) {
+        // Lookup by id goes through the second-level cache (entity and collections), unlike a JPQL query
         return employeeRepository.findById(employeeId).orElse(null);
     }
 
+    /**
+     * Returns the employees that work on the date, have every requested skill and are not booked for the whole
+     * day. Bookings that leave part of the day free do not matter here; {@link #getEmployeesFreeDuring} checks a
+     * time slot.
+     */
+    @Transactional(readOnly = true)
     public List<Employee> getEmployeesByService(LocalDate date, Set<EmployeeSkill> skills) {
-        List<Employee> result = new ArrayList<>(); // List containing found employees
+        // Within the materialized horizon, read the capacity rows of that one day, which leave out the employees
+        // booked for the whole day
+        if (dayCapacityService.covers(date)) {
+            List<Long> employeeIds = dayCapacityService.findEmployeeIds(date, skills);
+            return employeeIds.isEmpty() ? new ArrayList<>() : employeeRepository.findAllWithDetailsByIdIn(employeeIds);
+        }
 
-        // Get the list of available employees on the corresponding weekday
-        List<Employee> employees = employeeRepository.findByDaysAvailable(date.getDayOfWeek());
+        // Otherwise answer from the in-memory index when it is available: one bitwise AND instead of a scan
+        List<Employee> employees;
+        EmployeeAvailabilityIndex availabilityIndex = availabilityIndexes.get();
+        if (availabilityIndexEnabled && isCurrent(availabilityIndex)) {
+            List<Long> employeeIds = availabilityIndex.findEmployeeIds(date.getDayOfWeek(), skills);
+            employees = employeeIds.isEmpty() ? new ArrayList<>()
+                    : employeeRepository.findAllWithDetailsByIdIn(employeeIds);
+        } else {
+            // Otherwise filter in SQL on the day and skill masks of the employee rows
+            employees = employeeRepository.findAvailable(
+                    EnumSetMaskConverter.toMask(EnumSet.of(date.getDayOfWeek())), EnumSetMaskConverter.toMask(skills));
+        }
 
-        // Filter through the list of employees
-        for (Employee employee : employees) {
-            // Check if employee has all required skills
-            if (employee.getSkills().containsAll(skills)) {
-                result.add(employee); // If satisfied, add to the result list
+        // Either way, drop the employees booked for the whole day, as the capacity rows do
+        if (!employees.isEmpty()) {
+            Set<Long> bookedAllDay = dayCapacityService.findBookedAllDay(
+                    employees.stream().map(Employee::getId).toList(), date);
+            employees.removeIf(employee -> bookedAllDay.contains(employee.getId()));
+        }
+        return employees;
+    }
+
+    /**
+     * Returns the employees that work on the day of the time slot, have every requested skill and are not
+     * booked at any time during [start, end).
+     */
+    @Transactional(readOnly = true)
+    public List<Employee> getEmployeesFreeDuring(Set<EmployeeSkill> skills, LocalDateTime start, LocalDateTime end) {
+        ScheduleService.validateTimeSlot(start, end);
+
+        // Both in-memory indexes: a bitset AND for day and skills, then one binary search per candidate
+        EmployeeAvailabilityIndex availabilityIndex = availabilityIndexes.get();
+        EmployeeSlotIndex slotIndex = slotIndexes.get();
+        if (availabilityIndexEnabled && isCurrent(availabilityIndex) && slotIndex.isReady()) {
+            List<Long> employeeIds = new ArrayList<>();
+            for (Long employeeId : availabilityIndex.findEmployeeIds(start.getDayOfWeek(), skills)) {
+                if (slotIndex.get(employeeId).isFree(start, end)) {
+                    employeeIds.add(employeeId);
+                }
             }
+            return employeeIds.isEmpty() ? new ArrayList<>() : employeeRepository.findAllWithDetailsByIdIn(employeeIds);
         }
 
-        return result; // Returns a list of matching employees
+        // Otherwise drop the booked employees, found through the (employee_id, start_time) index
+        List<Employee> employees = getEmployeesByService(start.toLocalDate(), skills);
+        if (employees.isEmpty()) {
+            return employees;
+        }
+        List<Long> employeeIds = new ArrayList<>();
+        for (Employee employee : employees) {
+            employeeIds.add(employee.getId());
+        }
+        List<Long> bookedEmployeeIds = scheduleRepository.findBookedEmployeeIds(employeeIds, start, end);
+        employees.removeIf(employee -> bookedEmployeeIds.contains(employee.getId()));
+        return employees;
+    }
+
+    /**
+     * Returns the start of the earliest free slot of the given duration, at or after `from`, on a day the
+     * employee works, or null if there is none within critter.slot-search.max-days.
+     */
+    @Transactional(readOnly = true)
+    public LocalDateTime getNextFreeSlot(Long employeeId, LocalDateTime from, Duration duration) {
+        if (from == null || duration == null || duration.isNegative() || duration.isZero()
+                || duration.compareTo(Duration.ofDays(1)) > 0) {
+            throw new IllegalArgumentException("A start time and a duration of up to one day are required");
+        }
+        Employee employee = employeeRepository.findById(employeeId)
+                .orElseThrow(() -> new IllegalArgumentException("Employee not found with id: " + employeeId));
+
+        EmployeeSlotIndex slotIndex = slotIndexes.get();
+        EmployeeSlotIndex.Slots slots = slotIndex.isReady()
+                ? slotIndex.get(employeeId)
+                : EmployeeSlotIndex.Slots.of(scheduleRepository.findSlotsEndingAfter(employeeId, from));
+        return slots.nextFree(from, duration, employee.getDaysAvailable(), from.plusDays(slotSearchMaxDays));
     }
 
     public void setEmployeeAvailability(Set<DayOfWeek> days, Long employeeId) {
@@ -49,18 +228,119 @@ public class EmployeeService {
         }
 
         // If exists, get Employee from database
-        Employee employee = employeeRepository.getOne(employeeId);
+        Employee employee = employeeRepository.getReferenceById(employeeId);
 
         // Update availability information
         employee.setDaysAvailable(days);
 
         // Save Employee after changes
         employeeRepository.save(employee);
+
+        updateAvailabilityIndex(List.of(employee));
+        dayCapacityService.refresh(List.of(employeeId));
+        resourceVersions.bump(ResourceVersions.EMPLOYEE, List.of(employeeId));
+        if (eventBus.hasSubscribers()) {
+            Set<DayOfWeek> daysAvailable = days == null ? new HashSet<>() : new HashSet<>(days);
+            eventBus.publishAfterCommit(List.of(new CritterEventBus.PendingEvent(
+                    CritterEventType.EMPLOYEE_AVAILABILITY_CHANGED, "employee:" + employeeId, Set.of(employeeId),
+                    Collections.emptySet(), Collections.emptySet(), daysAvailable)));
+        }
+    }
+
+    // save the employee; replacing an existing one needs the version the client last read
+    public Employee saveEmployee(Employee employee, Long version) {
+        if (employee.getId() != null) {
+            Employee existing = employeeRepository.findById(employee.getId()).orElse(null);
+            if (existing != null) {
+                if (version == null || version != existing.getVersion()) {
+                    throw new OptimisticLockingFailureException("Employee " + employee.getId() + " is at version " +
+                            existing.getVersion() + ", not " + version);
+                }
+                // The merge checks the version again, against a change committed after the read above
+                employee.setVersion(version);
+            }
+        }
+        Employee savedEmployee = employeeRepository.save(employee);
+        updateAvailabilityIndex(List.of(savedEmployee));
+        dayCapacityService.refresh(List.of(savedEmployee.getId()));
+        resourceVersions.bump(ResourceVersions.EMPLOYEE, List.of(savedEmployee.getId()));
+        return savedEmployee;
+    }
+
+    // Import employees in JDBC batches, flushing and clearing the persistence context every flushSize rows
+    public List<Long> importEmployees(Iterator<Employee> employees) {
+        List<Long> employeeIds = new ArrayList<>();
+        List<Employee> imported = new ArrayList<>();
+
+        while (employees.hasNext()) {
+            Employee employee = employees.next();
+            entityManager.persist(employee);
+            employeeIds.add(employee.getId());
+            imported.add(employee);
+
+            if (employeeIds.size() % flushSize == 0) {
+                entityManager.flush();
+                entityManager.clear();
+            }
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        updateAvailabilityIndex(imported);
+        dayCapacityService.refresh(employeeIds);
+        resourceVersions.bump(ResourceVersions.EMPLOYEE, employeeIds);
+        return employeeIds;
+    }
+
+    // The availability index only learns about the written employees once they have been committed, so readers
+    // never see days or skills that may still be rolled back. The versions are read then, after the flush has
+    // incremented them, so that the index can drop a put that arrives after the one of a later commit.
+    private void updateAvailabilityIndex(List<Employee> employees) {
+        EmployeeAvailabilityIndex availabilityIndex = availabilityIndexes.getOrCreate();
+        // Take the masks now: the entities may be detached or changed again by the time the transaction commits
+        long[] employeeIds = new long[employees.size()];
+        byte[] skillMasks = new byte[employees.size()];
+        byte[] dayMasks = new byte[employees.size()];
+        for (int i = 0; i < employeeIds.length; i++) {
+            Employee employee = employees.get(i);
+            employeeIds[i] = employee.getId();
+            skillMasks[i] = EmployeeAvailabilityIndex.skillMask(employee.getSkills());
+            dayMasks[i] = EmployeeAvailabilityIndex.dayMask(employee.getDaysAvailable());
+        }
+        Runnable update = () -> {
+            for (int i = 0; i < employeeIds.length; i++) {
+                availabilityIndex.put(employeeIds[i], skillMasks[i], dayMasks[i], employees.get(i).getVersion());
+            }
+        };
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            update.run();
+            return;
+        }
+        // Until then, this transaction reads employees from the database, where it sees its own writes
+        boolean firstWrite = !TransactionSynchronizationManager.hasResource(availabilityIndex);
+        if (firstWrite) {
+            TransactionSynchronizationManager.bindResource(availabilityIndex, Boolean.TRUE);
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                update.run();
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (firstWrite) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(availabilityIndex);
+                }
+            }
+        });
     }
 
-    // save the employee
-    public Employee saveEmployee(Employee employee) {
-        return employeeRepository.save(employee);
+    // Whether the index can answer for the current transaction: it is loaded, and the transaction has not written
+    // employees that the index only learns about on commit
+    private static boolean isCurrent(EmployeeAvailabilityIndex availabilityIndex) {
+        return availabilityIndex.isReady() && !TransactionSynchronizationManager.hasResource(availabilityIndex);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,212 @@
+package com.udacity.jdnd.course3.critter.service;
+
+import com.udacity.jdnd.course3.critter.entity.EmployeeSlot;
+
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory interval index of the booked time slots, for the "who is free" and "next free slot" searches.
+ * <p>
+ * Every employee keeps the times it is busy as a sorted array of disjoint intervals (overlapping and
+ * touching bookings are merged). Because the intervals are disjoint, sorting them by start also sorts them by
+ * end, and whether the employee is free during [start, end) is a single binary search: the last interval
+ * starting before `end` must end no later than `start`.
+ * <p>
+ * The arrays of an employee are replaced as a whole on every write, so lookups take no lock. Bookings are
+ * added once their transaction has committed; schedules are never moved or deleted, so nothing is removed.
+ * Bookings made by other nodes are only picked up when the index is reloaded, so the booking itself always checks
+ * the database, and the searches leave the index alone once read replicas, i.e. several nodes, are configured
+ * (critter.slot-index.enabled). There is one index per tenant (see TenancyConfiguration).
+ */
+public class EmployeeSlotIndex {
+
+    private final Map<Long, Slots> slotsByEmployee = new ConcurrentHashMap<>();
+
+    private volatile boolean ready;
+
+    /**
+     * Immutable busy intervals of one employee, as seconds of the local date-time, ordered by start.
+     */
+    public static final class Slots {
+
+        static final Slots EMPTY = new Slots(new long[0], new long[0]);
+
+        private final long[] starts;
+        private final long[] ends;
+
+        private Slots(long[] starts, long[] ends) {
+            this.starts = starts;
+            this.ends = ends;
+        }
+
+        /**
+         * Builds the busy intervals from booked slots, which may come in any order and may overlap.
+         */
+        public static Slots of(List<EmployeeSlot> slots) {
+            List<EmployeeSlot> sorted = new ArrayList<>(slots);
+            sorted.sort(Comparator.comparing(EmployeeSlot::getStartTime));
+
+            long[] starts = new long[sorted.size()];
+            long[] ends = new long[sorted.size()];
+            int size = 0;
+            for (EmployeeSlot slot : sorted) {
+                long start = seconds(slot.getStartTime());
+                long end = seconds(slot.getEndTime());
+                if (size > 0 && start <= ends[size - 1]) {
+                    ends[size - 1] = Math.max(ends[size - 1], end);
+                } else {
+                    starts[size] = start;
+                    ends[size] = end;
+                    size++;
+                }
+            }
+            return new Slots(Arrays.copyOf(starts, size), Arrays.copyOf(ends, size));
+        }
+
+        public int size() {
+            return starts.length;
+        }
+
+        public boolean isFree(LocalDateTime start, LocalDateTime end) {
+            int last = lowerBound(starts, seconds(end)) - 1;
+            return last < 0 || ends[last] <= seconds(start);
+        }
+
+        /**
+         * Returns the earliest time at or after `from` at which a slot of the given duration fits between the
+         * busy intervals on a single day out of `days`, or null if there is none starting before `until`.
+         * <p>
+         * The first interval to look at is found by binary search; from there on every busy interval that is
+         * too close to the next one is skipped.
+         */
+        public LocalDateTime nextFree(LocalDateTime from, Duration duration, Set<DayOfWeek> days,
+                                      LocalDateTime until) {
+            long length = duration.getSeconds();
+            LocalDateTime candidate = from;
+            int next = upperBound(ends, seconds(from));
+            while (candidate.isBefore(until)) {
+                LocalDateTime endOfDay = candidate.toLocalDate().plusDays(1).atStartOfDay();
+                if (days == null || !days.contains(candidate.getDayOfWeek())) {
+                    candidate = endOfDay;
+                    continue;
+                }
+
+                long time = seconds(candidate);
+                while (next < ends.length && ends[next] <= time) {
+                    next++;
+                }
+                if (next < starts.length && starts[next] <= time) {
+                    // Busy at the candidate time, continue at the end of the busy interval
+                    candidate = dateTime(ends[next]);
+                    continue;
+                }
+
+                // Free until the next busy interval or the end of the day, whichever comes first
+                long freeUntil = Math.min(next < starts.length ? starts[next] : Long.MAX_VALUE, seconds(endOfDay));
+                if (freeUntil - time >= length) {
+                    return candidate;
+                }
+                candidate = freeUntil < seconds(endOfDay) ? dateTime(ends[next]) : endOfDay;
+            }
+            return null;
+        }
+
+        // Inserts [start, end), merging it with every interval it overlaps or touches
+        Slots with(long start, long end) {
+            int from = lowerBound(ends, start);
+            int to = upperBound(starts, end);
+            if (from < to) {
+                start = Math.min(start, starts[from]);
+                end = Math.max(end, ends[to - 1]);
+            }
+
+            int size = starts.length - (to - from) + 1;
+            long[] newStarts = new long[size];
+            long[] newEnds = new long[size];
+            System.arraycopy(starts, 0, newStarts, 0, from);
+            System.arraycopy(ends, 0, newEnds, 0, from);
+            newStarts[from] = start;
+            newEnds[from] = end;
+            System.arraycopy(starts, to, newStarts, from + 1, starts.length - to);
+            System.arraycopy(ends, to, newEnds, from + 1, ends.length - to);
+            return new Slots(newStarts, newEnds);
+        }
+
+        // First index with a value >= key
+        private static int lowerBound(long[] values, long key) {
+            int low = 0;
+            int high = values.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (values[mid] < key) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        // First index with a value > key
+        private static int upperBound(long[] values, long key) {
+            int low = 0;
+            int high = values.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (values[mid] <= key) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Replaces the index content with the given booked slots and marks it as ready. Until then lookups must
+     * use the database.
+     */
+    public void load(Collection<EmployeeSlot> slots) {
+        Map<Long, List<EmployeeSlot>> slotsById = new HashMap<>();
+        for (EmployeeSlot slot : slots) {
+            slotsById.computeIfAbsent(slot.getEmployeeId(), id -> new ArrayList<>()).add(slot);
+        }
+        slotsByEmployee.clear();
+        slotsById.forEach((employeeId, employeeSlots) -> slotsByEmployee.put(employeeId, Slots.of(employeeSlots)));
+        ready = true;
+    }
+
+    public void add(Long employeeId, LocalDateTime start, LocalDateTime end) {
+        slotsByEmployee.compute(employeeId,
+                (id, slots) -> (slots == null ? Slots.EMPTY : slots).with(seconds(start), seconds(end)));
+    }
+
+    public Slots get(Long employeeId) {
+        return slotsByEmployee.getOrDefault(employeeId, Slots.EMPTY);
+    }
+
+    private static long seconds(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private static LocalDateTime dateTime(long seconds) {
+        return LocalDateTime.ofEpochSecond(seconds, 0, ZoneOffset.UTC);
+    }
+}
@@ -2,13 +2,31 @@ package com.udacity.jdnd.course3.critter.service;
 
 import com.udacity.jdnd.course3.critter.entity.Customer;
 import com.udacity.jdnd.course3.critter.entity.Pet;
+import com.udacity.jdnd.course3.critter.event.CritterEventBus;
+import com.udacity.jdnd.course3.critter.event.CritterEventType;
+import com.udacity.jdnd.course3.critter.pet.PetDTO;
 import com.udacity.jdnd.course3.critter.repository.CustomerRepository;
+import com.udacity.jdnd.course3.critter.repository.PetQueryRepository;
 import com.udacity.jdnd.course3.critter.repository.PetRepository;
+import com.udacity.jdnd.course3.critter.tenant.TenantContext;
+import org.hibernate.cache.spi.access.CollectionDataAccess;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.collection.CollectionPersister;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
-import javax.transaction.Transactional;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 @Service
 @Transactional
@@ -19,18 +37,48 @@ public class PetService {
     @Autowired
     private PetRepository petRepository;
 
+    @Autowired
+    private PetQueryRepository petQueryRepository;
+
+    @Autowired
+    private ResourceVersions resourceVersions;
+
+    @Autowired
+    private CritterEventBus eventBus;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${critter.import.flush-size:500}")
+    private int flushSize;
+
+    @Transactional(readOnly = true)
     public List<Pet> getAllPets() {
         // Retrieve all Pet entities from the petRepository.
         // The findAll() method fetches all the pets stored in the database.
         return petRepository.findAll();
     }
 
+    @Transactional(readOnly = true)
+    public List<PetDTO> getAllPetDTOs() {
+        // Read the pets as DTOs straight from the result set, without loading managed entities.
+        return petQueryRepository.findAll();
+    }
+
+    @Transactional(readOnly = true)
+    public List<PetDTO> getPetDTOsAfter(long after, int limit) {
+        // Read one keyset page of pets: the first `limit` pets with an id greater than `after`.
+        return petQueryRepository.findPage(after, limit);
+    }
+
+    @Transactional(readOnly = true)
     public Pet getPetById(Long petId) {
         // Retrieve the Pet entity from the petRepository using the provided petId.
-        // The method getOne() returns a proxy object for the Pet, which is lazily loaded.
-        return petRepository.getOne(petId);
+        // The method getReferenceById() returns a proxy object for the Pet, which is lazily loaded.
+        return petRepository.getReferenceById(petId);
     }
 
+    @Transactional(readOnly = true)
     public List<Pet> getPetsByCustomerId(long customerId) {
         // Call the petRepository's method to find pets associated with the provided customerId.
         // This will query the database for all pets that belong to the customer with the given id.
@@ -40,8 +88,9 @@ public class PetService {
 
     public Pet savePet(Pet pet, Long customerId) {
         // Retrieve the Customer object from the repository using the provided customerId.
-        // The method getOne is used, which returns a proxy object if the customer exists.
-        Customer customer = customerRepository.getOne(customerId);
+        // The method getReferenceById() returns a proxy object without querying the database; an unknown
+        // customerId only fails when the proxy is first read below (EntityNotFoundException).
+        Customer customer = customerRepository.getReferenceById(customerId);
 
         // Set the customer associated with the pet. This links the pet to the retrieved customer.
         pet.setCustomer(customer);
@@ -58,8 +107,83 @@ public class PetService {
         // This ensures that the customer's pets list, which was modified above, is persisted.
         customerRepository.save(customer);
 
+        // The owner's list of pets has changed
+        resourceVersions.bump(ResourceVersions.OWNER_PETS, List.of(customerId));
+        if (eventBus.hasSubscribers()) {
+            eventBus.publishAfterCommit(List.of(petAdded(pet, customerId)));
+        }
+
         // Return the saved pet object, which includes the customer association.
         return pet;
     }
 
+    public List<Long> importPets(Iterator<PetDTO> pets) {
+        List<Long> petIds = new ArrayList<>();
+        Set<Long> ownerIds = new HashSet<>();
+        List<CritterEventBus.PendingEvent> events = new ArrayList<>();
+        boolean publishEvents = eventBus.hasSubscribers();
+
+        while (pets.hasNext()) {
+            PetDTO petDTO = pets.next();
+            Pet pet = new Pet(petDTO.getType(), petDTO.getName(), petDTO.getBirthDate(), petDTO.getNotes());
+
+            // Link the owner by reference only. Unlike savePet, the owner and its pets collection are not
+            // loaded and re-saved for every row; a missing owner fails on the foreign key at flush.
+            pet.setCustomer(entityManager.getReference(Customer.class, petDTO.getOwnerId()));
+            entityManager.persist(pet);
+            petIds.add(pet.getId());
+            ownerIds.add(petDTO.getOwnerId());
+            if (publishEvents) {
+                events.add(petAdded(pet, petDTO.getOwnerId()));
+            }
+
+            // Send the pending inserts as JDBC batches and drop the persisted pets from memory
+            if (petIds.size() % flushSize == 0) {
+                entityManager.flush();
+                entityManager.clear();
+            }
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        evictOwnerPetCollections(ownerIds);
+        resourceVersions.bump(ResourceVersions.OWNER_PETS, ownerIds);
+        eventBus.publishAfterCommit(events);
+        return petIds;
+    }
+
+    private static CritterEventBus.PendingEvent petAdded(Pet pet, long ownerId) {
+        PetDTO petDTO = new PetDTO(pet.getId(), pet.getType(), pet.getName(), ownerId, pet.getBirthDate(),
+                pet.getNotes());
+        return new CritterEventBus.PendingEvent(CritterEventType.PET_ADDED, "pet:" + pet.getId(),
+                Collections.emptySet(), Set.of(pet.getId()), Set.of(ownerId), petDTO);
+    }
+
+    // The owners' cached pets collections did not see the imported pets; evict them now and again after the
+    // transaction ends, so that no reader can cache the old collection in between. The cache keys carry the tenant,
+    // which Cache.evictCollectionData(role, id) leaves out, so the keys are built here.
+    private void evictOwnerPetCollections(Set<Long> ownerIds) {
+        SessionFactoryImplementor factory = entityManager.getEntityManagerFactory()
+                .unwrap(SessionFactoryImplementor.class);
+        CollectionPersister persister = factory.getMappingMetamodel()
+                .getCollectionDescriptor(Customer.class.getName() + ".pets");
+        CollectionDataAccess cacheAccess = persister.getCacheAccessStrategy();
+        if (cacheAccess == null) {
+            return;
+        }
+        String tenantId = TenantContext.getTenantId();
+        Runnable evict = () -> ownerIds.forEach(ownerId ->
+                cacheAccess.evict(cacheAccess.generateCacheKey(ownerId, persister, factory, tenantId)));
+        evict.run();
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evict.run();
+                }
+            });
+        }
+    }
+
 }
\ No newline at end of file
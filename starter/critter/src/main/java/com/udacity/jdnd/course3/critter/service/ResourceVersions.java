@@ -0,0 +1,112 @@
+package com.udacity.jdnd.course3.critter.service;
+
+import com.udacity.jdnd.course3.critter.repository.ResourceVersionRepository;
+import com.udacity.jdnd.course3.critter.tenant.TenantContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Versions of the resources that are served with an ETag, one per resource (e.g. the schedules of employee 5).
+ * The services bump the version of everything a write changes in the writing transaction, so an unchanged
+ * version means an unchanged response, and a conditional GET is answered with one primary key read instead of
+ * the queries of the resource.
+ * <p>
+ * The versions are rows of the resource_version table, so every node hands out the same ETag once a change is
+ * committed, a restart keeps them, and a rolled back write leaves them alone. Writes that bypass the services
+ * are not seen.
+ * <p>
+ * With read replicas, a read right after a write may still see the old data under the new version. No ETag
+ * is handed out for a resource until its last change is older than the longest lag a replica in use can
+ * have, i.e. max-lag plus one check interval. The change time is taken from the clock of the writing node, so
+ * the clocks of the nodes are assumed to agree to well within that window.
+ * <p>
+ * The versions are kept per tenant: ids are only unique within a clinic once clinics have databases of their own.
+ */
+@Component
+public class ResourceVersions {
+
+    public static final String EMPLOYEE = "employee";
+    public static final String EMPLOYEE_SCHEDULE = "employee-schedule";
+    public static final String PET_SCHEDULE = "pet-schedule";
+    public static final String OWNER_PETS = "owner-pets";
+
+    private final ResourceVersionRepository repository;
+    private final long settleMillis;
+
+    public ResourceVersions(ResourceVersionRepository repository,
+                            @Value("${critter.datasource.replica.urls:}") List<String> replicaUrls,
+                            @Value("${critter.datasource.replica.max-lag:5s}") Duration maxLag,
+                            @Value("${critter.datasource.replica.check-interval:1s}") Duration checkInterval) {
+        this.repository = repository;
+        this.settleMillis = replicaUrls.isEmpty() ? 0 : maxLag.plus(checkInterval).toMillis();
+    }
+
+    /**
+     * The current ETag of a resource of the current clinic, or null while its last change may not have reached
+     * every replica. The ETag starts with the clinic, since the same URL names a different resource in every
+     * clinic and the versions of two clinics can be equal.
+     */
+    public String getETag(String kind, long id) {
+        ResourceVersionRepository.Version version = repository.find(kind, id);
+        long number = version == null ? 0 : version.number();
+        if (version != null && System.currentTimeMillis() - version.changedAt() < settleMillis) {
+            return null;
+        }
+        // A clinic id has no quotes and the version no dash, so the ETag is unambiguous
+        return "\"" + TenantContext.getTenantId() + "-" + number + "\"";
+    }
+
+    /**
+     * Bumps the versions of the given resources in the current transaction, so they change when it commits and
+     * not at all when it rolls back, or right away without a transaction.
+     * <p>
+     * The rows are written just before the commit, all kinds and ids of the transaction in one sorted order, so
+     * that they are locked for as short as possible and concurrent transactions cannot deadlock on them.
+     */
+    public void bump(String kind, Collection<Long> ids) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            increment(Map.of(kind, new TreeSet<>(ids)));
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, SortedSet<Long>> pending =
+                (Map<String, SortedSet<Long>>) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            Map<String, SortedSet<Long>> changes = new TreeMap<>();
+            TransactionSynchronizationManager.bindResource(this, changes);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    increment(changes);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(ResourceVersions.this);
+                }
+            });
+            pending = changes;
+        }
+        pending.computeIfAbsent(kind, k -> new TreeSet<>()).addAll(ids);
+    }
+
+    private void increment(Map<String, SortedSet<Long>> changes) {
+        long now = System.currentTimeMillis();
+        changes.forEach((kind, ids) -> {
+            if (!ids.isEmpty()) {
+                repository.increment(kind, new ArrayList<>(ids), now);
+            }
+        });
+    }
+}
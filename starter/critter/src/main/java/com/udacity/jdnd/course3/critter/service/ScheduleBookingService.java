@@ -0,0 +1,150 @@
+package com.udacity.jdnd.course3.critter.service;
+
+import com.google.common.util.concurrent.Striped;
+import com.udacity.jdnd.course3.critter.entity.Schedule;
+import com.udacity.jdnd.course3.critter.schedule.ScheduleDTO;
+import com.udacity.jdnd.course3.critter.user.EmployeeSkill;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Supplier;
+
+/**
+ * Books schedules so that no employee ends up with two schedules at the same time.
+ * <p>
+ * Bookings that share an employee are serialized in this JVM with striped locks, which are held until the
+ * booking transaction has committed. Bookings running on other nodes are caught by the optimistic version
+ * check on the booked employees; the losing transaction is retried, and then sees the winner's schedule and
+ * fails with a {@link ScheduleConflictException}.
+ * <p>
+ * The locks are keyed on the employee alone, not on (employee, time slot): every booking increments the
+ * employee's version, so two bookings of the same employee at different times cannot both commit concurrently
+ * anyway. Keying on the slot as well would only turn that wait into optimistic lock failures and retries.
+ * <p>
+ * This service is deliberately not transactional: each attempt runs in its own {@link ScheduleService}
+ * transaction, started after the locks are taken and committed before they are released.
+ * <p>
+ * At most {@code critter.booking.max-concurrent} booking transactions run at once. This must stay below the
+ * connection pool size: a booking holds one connection and may need a second one when the id generator
+ * reserves the next block of ids, so a full pool of bookings would wait on each other.
+ */
+@Service
+public class ScheduleBookingService {
+
+    private static final Logger log = LoggerFactory.getLogger(ScheduleBookingService.class);
+
+    private static final long MAX_BACKOFF_MILLIS = 200;
+
+    @Autowired
+    private ScheduleService scheduleService;
+
+    @Value("${critter.booking.max-attempts:10}")
+    private int maxAttempts;
+
+    private final Striped<Lock> locks;
+
+    private final Semaphore transactions;
+
+    public ScheduleBookingService(@Value("${critter.booking.lock-stripes:1024}") int lockStripes,
+                                  @Value("${critter.booking.max-concurrent:8}") int maxConcurrent) {
+        this.locks = Striped.lock(lockStripes);
+        this.transactions = new Semaphore(maxConcurrent, true);
+    }
+
+    /**
+     * Books the employees for the whole day.
+     */
+    public Schedule bookSchedule(List<Long> employeeIds, List<Long> petIds, LocalDate date,
+                                 Set<EmployeeSkill> activities) {
+        if (date == null) {
+            throw new IllegalArgumentException("Schedule date is required");
+        }
+        return bookSchedule(employeeIds, petIds, date.atStartOfDay(), date.plusDays(1).atStartOfDay(), activities);
+    }
+
+    /**
+     * Books the employees for the time slot [start, end) within one day.
+     */
+    public Schedule bookSchedule(List<Long> employeeIds, List<Long> petIds, LocalDateTime start,
+                                 LocalDateTime end, Set<EmployeeSkill> activities) {
+        Set<Long> keys = employeeIds == null ? new HashSet<>() : new HashSet<>(employeeIds);
+        return withLocks(keys, () -> bookWithRetry(keys,
+                () -> scheduleService.bookSchedule(employeeIds, petIds, start, end, activities)));
+    }
+
+    /**
+     * Books a batch of schedules in one transaction, all or nothing (see {@link ScheduleService#bookSchedules}).
+     * The locks of every employee in the batch are held for the whole transaction.
+     */
+    public List<Schedule> bookSchedules(List<ScheduleDTO> bookings) {
+        Set<Long> keys = new HashSet<>();
+        for (ScheduleDTO booking : bookings) {
+            if (booking.getEmployeeIds() != null) {
+                keys.addAll(booking.getEmployeeIds());
+            }
+        }
+        return withLocks(keys, () -> bookWithRetry(keys, () -> scheduleService.bookSchedules(bookings)));
+    }
+
+    private <T> T withLocks(Set<Long> keys, Supplier<T> booking) {
+        // bulkGet returns the stripes in a fixed global order, so bookings of overlapping employees
+        // cannot deadlock on each other
+        List<Lock> acquired = new ArrayList<>();
+        for (Lock lock : locks.bulkGet(keys)) {
+            lock.lock();
+            acquired.add(lock);
+        }
+        try {
+            transactions.acquireUninterruptibly();
+            try {
+                return booking.get();
+            } finally {
+                transactions.release();
+            }
+        } finally {
+            for (int i = acquired.size() - 1; i >= 0; i--) {
+                acquired.get(i).unlock();
+            }
+        }
+    }
+
+    private <T> T bookWithRetry(Collection<Long> employeeIds, Supplier<T> booking) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return booking.get();
+            } catch (ConcurrencyFailureException exception) {
+                // Optimistic lock failure or lock timeout caused by a booking on another node
+                if (attempt >= maxAttempts) {
+                    throw exception;
+                }
+                log.debug("Booking of employees {} conflicted, retrying (attempt {})", employeeIds, attempt,
+                        exception);
+                backOff(attempt);
+            }
+        }
+    }
+
+    private static void backOff(int attempt) {
+        try {
+            // Random delay, growing with the attempt, so that the colliding bookings do not meet again
+            Thread.sleep(1 + ThreadLocalRandom.current().nextLong(Math.min(5L << attempt, MAX_BACKOFF_MILLIS)));
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while retrying a booking", exception);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.udacity.jdnd.course3.critter.service;
+
+/**
+ * Thrown when a booking assigns an employee who already has a schedule on the requested date.
+ */
+public class ScheduleConflictException extends RuntimeException {
+
+    public ScheduleConflictException(String message) {
+        super(message);
+    }
+}
@@ -1,26 +1,61 @@
 package com.udacity.jdnd.course3.critter.service;
 
-import com.udacity.jdnd.course3.critter.entity.Customer;
 import com.udacity.jdnd.course3.critter.entity.Employee;
+import com.udacity.jdnd.course3.critter.entity.EmployeeSlot;
 import com.udacity.jdnd.course3.critter.entity.Pet;
 import com.udacity.jdnd.course3.critter.entity.Schedule;
+import com.udacity.jdnd.course3.critter.event.CritterEventBus;
+import com.udacity.jdnd.course3.critter.event.CritterEventType;
 import com.udacity.jdnd.course3.critter.repository.CustomerRepository;
 import com.udacity.jdnd.course3.critter.repository.EmployeeRepository;
 import com.udacity.jdnd.course3.critter.repository.PetRepository;
+import com.udacity.jdnd.course3.critter.repository.ScheduleQueryRepository;
 import com.udacity.jdnd.course3.critter.repository.ScheduleRepository;
+import com.udacity.jdnd.course3.critter.schedule.ScheduleDTO;
+import com.udacity.jdnd.course3.critter.tenant.TenantContext;
+import com.udacity.jdnd.course3.critter.tenant.TenantDirectory;
+import com.udacity.jdnd.course3.critter.tenant.TenantScoped;
+import com.udacity.jdnd.course3.critter.user.EmployeeSkill;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import javax.transaction.Transactional;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @Service
 @Transactional
 public class ScheduleService {
 
+    private static final Logger log = LoggerFactory.getLogger(ScheduleService.class);
+
     @Autowired
     private ScheduleRepository scheduleRepository;
 
+    @Autowired
+    private ScheduleQueryRepository scheduleQueryRepository;
+
     @Autowired
     private PetRepository petRepository;
 
@@ -30,47 +65,430 @@ public class ScheduleService {
     @Autowired
     private CustomerRepository customerRepository;
 
+    @Autowired
+    private TenantScoped<EmployeeSlotIndex> slotIndexes;
+
+    @Autowired
+    private TenantDirectory tenantDirectory;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private EmployeeDayCapacityService dayCapacityService;
+
+    @Autowired
+    private ResourceVersions resourceVersions;
+
+    @Autowired
+    private CritterEventBus eventBus;
+
+    @Value("${critter.booking.validate-availability:true}")
+    private boolean validateAvailability;
+
+    // Unset, the slot index is used on a single database and not once read replicas, i.e. several nodes, are
+    // configured
+    @Value("${critter.slot-index.enabled:#{null}}")
+    private Boolean slotIndexSetting;
+
+    @Value("${critter.datasource.replica.urls:}")
+    private List<String> replicaUrls;
+
+    private boolean slotIndexEnabled;
+
+    @PostConstruct
+    public void configureSlotIndex() {
+        slotIndexEnabled = slotIndexSetting != null ? slotIndexSetting : replicaUrls.isEmpty();
+        if (slotIndexEnabled && !replicaUrls.isEmpty()) {
+            log.warn("critter.slot-index.enabled=true with read replicas: the index only follows the bookings of " +
+                    "this node, so the free employee and next free slot searches miss the bookings of other nodes");
+        }
+    }
+
+    // Give schedules stored before time slots existed their whole-day slot, then build the in-memory slot index of
+    // every tenant, each in a transaction of that tenant; ordered before the employee day capacity rebuild, which
+    // counts those slots
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(0)
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void loadSlotIndex() {
+        Set<String> tenantIds = tenantDirectory.findTenantIds();
+        for (String tenantId : tenantIds) {
+            TenantContext.runAs(tenantId, () -> transactionTemplate.executeWithoutResult(status -> {
+                for (Schedule schedule : scheduleRepository.findWithoutTimeSlot()) {
+                    if (schedule.getDate() != null) {
+                        setTimeSlot(schedule, schedule.getDate().atStartOfDay(),
+                                schedule.getDate().plusDays(1).atStartOfDay());
+                    }
+                }
+            }));
+        }
+        if (!slotIndexEnabled) {
+            return;
+        }
+        try {
+            slotIndexes.loadAll(tenantIds, slotIndex ->
+                    slotIndex.load(transactionTemplate.execute(status -> scheduleRepository.findAllSlots())));
+        } catch (RuntimeException exception) {
+            // The free slot searches keep working on the database without the index
+            log.warn("Employee slot index could not be loaded, using database lookups", exception);
+        }
+    }
+
+    @Transactional(readOnly = true)
     public List<Schedule> getAllSchedules() {
         // Retrieve all Schedule entities from the scheduleRepository.
         // The findAll() method fetches all the schedule records stored in the database.
-        return scheduleRepository.findAll();
+        return withPets(scheduleRepository.findAllWithEmployees());
+    }
+
+    @Transactional(readOnly = true)
+    public List<ScheduleDTO> getAllScheduleDTOs() {
+        // Read all schedules as DTOs in a single query, without loading managed entities.
+        return scheduleQueryRepository.findAll();
+    }
+
+    @Transactional(readOnly = true)
+    public List<ScheduleDTO> getScheduleDTOsAfter(long after, int limit) {
+        // Read one keyset page of schedules: the first `limit` schedules with an id greater than `after`.
+        return scheduleQueryRepository.findPage(after, limit);
     }
 
 
+    @Transactional(readOnly = true)
     public List<Schedule> getCustomerSchedule(Long customerId) {
-        // Retrieve the Customer entity from the customerRepository using the provided customerId.
-        // The method getOne() returns a proxy object for the Customer, which is lazily loaded.
-        Customer customer = customerRepository.getOne(customerId);
+        // Find the schedules of the customer's pets by filtering on the pet owner in the query, so the
+        // customer's pets do not have to be loaded first.
+        return withPets(scheduleRepository.findByCustomerId(customerId));
+    }
 
-        // Use the customer's pets to find schedules associated with those pets.
-        // This assumes that the scheduleRepository has a method to find schedules where the pets are included in the customer's pets list.
-        return scheduleRepository.findByPetsIn(customer.getPets());
+    @Transactional(readOnly = true)
+    public List<ScheduleDTO> getCustomerScheduleDTOs(long customerId, LocalDate from, LocalDate to, long after,
+                                                     int limit) {
+        // Read one keyset page of the customer's schedules, then the members of that page.
+        List<ScheduleDTO> schedules = scheduleQueryRepository.findByCustomer(customerId, from, to, after, limit);
+
+        // An empty page is also what an unknown customer gets, so only then check that the customer exists.
+        if (schedules.isEmpty() && !customerRepository.existsById(customerId)) {
+            throw new IllegalArgumentException("Customer " + customerId + " not found");
+        }
+        return schedules;
     }
 
+    @Transactional(readOnly = true)
     public List<Schedule> getPetSchedule(Long petId) {
         // Retrieve the Pet entity from the petRepository using the provided petId.
-        // The method getOne() returns a proxy object for the Pet, which is lazily loaded.
-        Pet pet = petRepository.getOne(petId);
+        // The method getReferenceById() returns a proxy object for the Pet, which is lazily loaded.
+        Pet pet = petRepository.getReferenceById(petId);
 
         // Use the pet to find schedules associated with that pet.
         // This assumes that the scheduleRepository has a method to find schedules where the pet is directly associated with the schedule.
-        return scheduleRepository.findByPets(pet);
+        return withPets(scheduleRepository.findByPets(pet));
     }
 
+    @Transactional(readOnly = true)
     public List<Schedule> getEmployeeSchedule(Long employeeId) {
         // Retrieve the Employee entity from the employeeRepository using the provided employeeId.
-        // The getOne() method returns a proxy object for the Employee, which is lazily loaded.
-        Employee employee = employeeRepository.getOne(employeeId);
+        // The getReferenceById() method returns a proxy object for the Employee, which is lazily loaded.
+        Employee employee = employeeRepository.getReferenceById(employeeId);
 
         // Use the employee to find schedules associated with that employee.
         // This assumes that the scheduleRepository has a method to find schedules where the employee is directly associated with the schedule.
-        return scheduleRepository.findByEmployee(employee);
+        return withPets(scheduleRepository.findByEmployee(employee));
+    }
+
+    /**
+     * Books the employees for the whole day.
+     */
+    public Schedule bookSchedule(List<Long> employeeIds, List<Long> petIds, LocalDate date,
+                                 Set<EmployeeSkill> activities) {
+        if (date == null) {
+            throw new IllegalArgumentException("Schedule date is required");
+        }
+        return bookSchedule(employeeIds, petIds, date.atStartOfDay(), date.plusDays(1).atStartOfDay(), activities);
+    }
+
+    /**
+     * Validates and saves one booking of the time slot [start, end), which must lie within one day. Callers
+     * serialize bookings of the same employee within the JVM (see {@link ScheduleBookingService}); across
+     * nodes, the version increment on every booked employee makes the later of two overlapping transactions
+     * fail with an optimistic lock error at commit.
+     */
+    public Schedule bookSchedule(List<Long> employeeIds, List<Long> petIds, LocalDateTime start,
+                                 LocalDateTime end, Set<EmployeeSkill> activities) {
+        validateTimeSlot(start, end);
+        LocalDate date = start.toLocalDate();
+        Set<Long> uniqueEmployeeIds = employeeIds == null ? new HashSet<>() : new HashSet<>(employeeIds);
+        Set<Long> uniquePetIds = petIds == null ? new HashSet<>() : new HashSet<>(petIds);
+
+        // Load the employees with a forced version increment, and make sure every requested one exists
+        List<Employee> employees = uniqueEmployeeIds.isEmpty()
+                ? new ArrayList<>() : employeeRepository.findForBookingByIdIn(uniqueEmployeeIds);
+        if (employees.size() != uniqueEmployeeIds.size()) {
+            throw new IllegalArgumentException("Employee not found in " + uniqueEmployeeIds);
+        }
+        List<Pet> pets = uniquePetIds.isEmpty() ? new ArrayList<>() : petRepository.findAllById(uniquePetIds);
+        if (pets.size() != uniquePetIds.size()) {
+            throw new IllegalArgumentException("Pet not found in " + uniquePetIds);
+        }
+
+        if (validateAvailability) {
+            validateAvailability(employees, date, activities);
+        }
+
+        // An employee cannot be booked twice at the same time
+        if (!uniqueEmployeeIds.isEmpty()) {
+            List<Long> bookedEmployeeIds = scheduleRepository.findBookedEmployeeIds(uniqueEmployeeIds, start, end);
+            if (!bookedEmployeeIds.isEmpty()) {
+                throw new ScheduleConflictException("Employees " + bookedEmployeeIds + " are already booked on "
+                        + date + " between " + start.toLocalTime() + " and " + end.toLocalTime());
+            }
+        }
+
+        Schedule schedule = new Schedule(null, employees, pets, date, activities);
+        setTimeSlot(schedule, start, end);
+        Schedule savedSchedule = scheduleRepository.save(schedule);
+        bumpScheduleVersions(uniqueEmployeeIds, uniquePetIds);
+        publishScheduleEvents(CritterEventType.SCHEDULE_CREATED, List.of(savedSchedule));
+        dayCapacityService.refresh(uniqueEmployeeIds, date, date);
+
+        // The slot index only learns about the booking once it has been committed
+        if (slotIndexEnabled && TransactionSynchronizationManager.isSynchronizationActive()) {
+            EmployeeSlotIndex slotIndex = slotIndexes.getOrCreate();
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    uniqueEmployeeIds.forEach(employeeId -> slotIndex.add(employeeId, start, end));
+                }
+            });
+        }
+        return savedSchedule;
+    }
+
+    /**
+     * Validates and saves a batch of bookings, all or nothing. Schedules without a start and end time book the
+     * whole day of their date. The employees and pets of all bookings are loaded once, the existing bookings
+     * of those employees in the covered period are read in one query, and the schedules are inserted in JDBC
+     * batches when the transaction commits. Fails with a {@link ScheduleConflictException} when a booking
+     * overlaps an existing schedule or another booking of the batch.
+     */
+    public List<Schedule> bookSchedules(List<ScheduleDTO> bookings) {
+        if (bookings == null || bookings.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        // Resolve the time slot of every booking, and collect the employees and pets of the whole batch
+        List<EmployeeSlot> slots = new ArrayList<>();
+        Set<Long> uniqueEmployeeIds = new HashSet<>();
+        Set<Long> uniquePetIds = new HashSet<>();
+        LocalDateTime first = null;
+        LocalDateTime last = null;
+        for (ScheduleDTO booking : bookings) {
+            EmployeeSlot slot = getTimeSlot(booking);
+            slots.add(slot);
+            first = first == null || slot.getStartTime().isBefore(first) ? slot.getStartTime() : first;
+            last = last == null || slot.getEndTime().isAfter(last) ? slot.getEndTime() : last;
+            if (booking.getEmployeeIds() != null) {
+                uniqueEmployeeIds.addAll(booking.getEmployeeIds());
+            }
+            if (booking.getPetIds() != null) {
+                uniquePetIds.addAll(booking.getPetIds());
+            }
+        }
+
+        // Load every employee once, with a forced version increment, and every pet once
+        Map<Long, Employee> employees = new HashMap<>();
+        if (!uniqueEmployeeIds.isEmpty()) {
+            employeeRepository.findForBookingByIdIn(uniqueEmployeeIds)
+                    .forEach(employee -> employees.put(employee.getId(), employee));
+        }
+        if (employees.size() != uniqueEmployeeIds.size()) {
+            throw new IllegalArgumentException("Employee not found in " + uniqueEmployeeIds);
+        }
+        Map<Long, Pet> pets = new HashMap<>();
+        if (!uniquePetIds.isEmpty()) {
+            petRepository.findAllById(uniquePetIds).forEach(pet -> pets.put(pet.getId(), pet));
+        }
+        if (pets.size() != uniquePetIds.size()) {
+            throw new IllegalArgumentException("Pet not found in " + uniquePetIds);
+        }
+
+        // The booked slots of every employee: the existing ones in the covered period, then the new ones
+        Map<Long, List<EmployeeSlot>> employeeSlots = new HashMap<>();
+        if (!uniqueEmployeeIds.isEmpty()) {
+            for (EmployeeSlot booked : scheduleRepository.findSlotsOverlapping(uniqueEmployeeIds, first, last)) {
+                employeeSlots.computeIfAbsent(booked.getEmployeeId(), id -> new ArrayList<>()).add(booked);
+            }
+        }
+
+        List<Schedule> schedules = new ArrayList<>(bookings.size());
+        for (int i = 0; i < bookings.size(); i++) {
+            ScheduleDTO booking = bookings.get(i);
+            EmployeeSlot slot = slots.get(i);
+            List<Employee> bookedEmployees = new ArrayList<>();
+            for (Long employeeId : unique(booking.getEmployeeIds())) {
+                bookedEmployees.add(employees.get(employeeId));
+                employeeSlots.computeIfAbsent(employeeId, id -> new ArrayList<>())
+                        .add(new EmployeeSlot(employeeId, slot.getStartTime(), slot.getEndTime()));
+            }
+            List<Pet> bookedPets = new ArrayList<>();
+            for (Long petId : unique(booking.getPetIds())) {
+                bookedPets.add(pets.get(petId));
+            }
+
+            LocalDate date = slot.getStartTime().toLocalDate();
+            if (validateAvailability) {
+                validateAvailability(bookedEmployees, date, booking.getActivities());
+            }
+            Schedule schedule = new Schedule(null, bookedEmployees, bookedPets, date, booking.getActivities());
+            setTimeSlot(schedule, slot.getStartTime(), slot.getEndTime());
+            schedules.add(schedule);
+        }
+
+        // No two slots of an employee may overlap, whether already booked or booked by this batch
+        employeeSlots.forEach(ScheduleService::checkNoOverlap);
+
+        List<Schedule> savedSchedules = scheduleRepository.saveAll(schedules);
+        bumpScheduleVersions(uniqueEmployeeIds, uniquePetIds);
+        publishScheduleEvents(CritterEventType.SCHEDULE_CREATED, savedSchedules);
+        dayCapacityService.refresh(uniqueEmployeeIds, first.toLocalDate(), last.toLocalDate());
+
+        // The slot index only learns about the bookings once they have been committed
+        if (slotIndexEnabled && TransactionSynchronizationManager.isSynchronizationActive()) {
+            EmployeeSlotIndex slotIndex = slotIndexes.getOrCreate();
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    for (Schedule schedule : savedSchedules) {
+                        schedule.getSlots().forEach(slot ->
+                                slotIndex.add(slot.getEmployeeId(), slot.getStartTime(), slot.getEndTime()));
+                    }
+                }
+            });
+        }
+        return savedSchedules;
+    }
+
+    // The ETags of the employee and pet schedules change once the booking is committed
+    private void bumpScheduleVersions(Collection<Long> employeeIds, Collection<Long> petIds) {
+        resourceVersions.bump(ResourceVersions.EMPLOYEE_SCHEDULE, employeeIds);
+        resourceVersions.bump(ResourceVersions.PET_SCHEDULE, petIds);
+    }
+
+    // Subscribers are told about the schedules once they are committed, filtered by employee, pet and owner
+    private void publishScheduleEvents(CritterEventType type, List<Schedule> schedules) {
+        if (!eventBus.hasSubscribers()) {
+            return;
+        }
+        List<CritterEventBus.PendingEvent> events = new ArrayList<>(schedules.size());
+        for (Schedule schedule : schedules) {
+            List<Long> employeeIds = new ArrayList<>();
+            if (schedule.getEmployee() != null) {
+                schedule.getEmployee().forEach(employee -> employeeIds.add(employee.getId()));
+            }
+            List<Long> petIds = new ArrayList<>();
+            Set<Long> customerIds = new HashSet<>();
+            if (schedule.getPets() != null) {
+                for (Pet pet : schedule.getPets()) {
+                    petIds.add(pet.getId());
+                    customerIds.add(pet.getCustomer().getId());
+                }
+            }
+            ScheduleDTO scheduleDTO = new ScheduleDTO(schedule.getId(), employeeIds, petIds, schedule.getDate(),
+                    schedule.getStartTime(), schedule.getEndTime(), schedule.getActivities());
+            events.add(new CritterEventBus.PendingEvent(type, "schedule:" + schedule.getId(),
+                    new HashSet<>(employeeIds), new HashSet<>(petIds), customerIds, scheduleDTO));
+        }
+        eventBus.publishAfterCommit(events);
+    }
+
+    /**
+     * Checks that [start, end) is a non-empty time slot within a single day.
+     */
+    public static void validateTimeSlot(LocalDateTime start, LocalDateTime end) {
+        if (start == null || end == null) {
+            throw new IllegalArgumentException("Start and end time are required");
+        }
+        if (!start.isBefore(end)) {
+            throw new IllegalArgumentException("Start time " + start + " is not before end time " + end);
+        }
+        if (end.isAfter(start.toLocalDate().plusDays(1).atStartOfDay())) {
+            throw new IllegalArgumentException("Time slot " + start + " - " + end + " spans more than one day");
+        }
+    }
+
+    // The time slot [startTime, endTime) of a booking, or the whole day of its date when it has no times
+    static EmployeeSlot getTimeSlot(ScheduleDTO booking) {
+        LocalDateTime start = booking.getStartTime();
+        LocalDateTime end = booking.getEndTime();
+        if (start == null && end == null) {
+            if (booking.getDate() == null) {
+                throw new IllegalArgumentException("Schedule date is required");
+            }
+            start = booking.getDate().atStartOfDay();
+            end = booking.getDate().plusDays(1).atStartOfDay();
+        }
+        validateTimeSlot(start, end);
+        if (booking.getDate() != null && !booking.getDate().equals(start.toLocalDate())) {
+            throw new IllegalArgumentException("Schedule date " + booking.getDate() + " does not match start time "
+                    + start);
+        }
+        return new EmployeeSlot(null, start, end);
+    }
+
+    // Fails when two of the slots of the employee overlap
+    private static void checkNoOverlap(Long employeeId, List<EmployeeSlot> slots) {
+        slots.sort(Comparator.comparing(EmployeeSlot::getStartTime));
+        EmployeeSlot latest = null;
+        for (EmployeeSlot slot : slots) {
+            if (latest != null && slot.getStartTime().isBefore(latest.getEndTime())) {
+                throw new ScheduleConflictException("Employee " + employeeId + " is booked twice between "
+                        + slot.getStartTime() + " and " + latest.getEndTime());
+            }
+            if (latest == null || slot.getEndTime().isAfter(latest.getEndTime())) {
+                latest = slot;
+            }
+        }
+    }
+
+    private static Set<Long> unique(List<Long> ids) {
+        return ids == null ? new LinkedHashSet<>() : new LinkedHashSet<>(ids);
+    }
+
+    // Sets the time slot and books it for every employee of the schedule
+    private static void setTimeSlot(Schedule schedule, LocalDateTime start, LocalDateTime end) {
+        schedule.setDate(start.toLocalDate());
+        schedule.setStartTime(start);
+        schedule.setEndTime(end);
+        schedule.getSlots().clear();
+        for (Employee employee : schedule.getEmployee()) {
+            schedule.getSlots().add(new EmployeeSlot(employee.getId(), start, end));
+        }
+    }
+
+    // Every employee must work on that weekday, and together they must have every requested skill
+    private static void validateAvailability(List<Employee> employees, LocalDate date, Set<EmployeeSkill> activities) {
+        Set<EmployeeSkill> skills = EnumSet.noneOf(EmployeeSkill.class);
+        for (Employee employee : employees) {
+            if (employee.getDaysAvailable() == null || !employee.getDaysAvailable().contains(date.getDayOfWeek())) {
+                throw new IllegalArgumentException("Employee " + employee.getId() + " is not available on "
+                        + date.getDayOfWeek());
+            }
+            if (employee.getSkills() != null) {
+                skills.addAll(employee.getSkills());
+            }
+        }
+        if (activities != null && !skills.containsAll(activities)) {
+            throw new IllegalArgumentException("Employees do not have all skills for " + activities);
+        }
     }
 
-    public Schedule saveSchedule(Schedule schedule) {
-        // Save the provided Schedule entity to the scheduleRepository.
-        // The save() method persists the Schedule object in the database.
-        return scheduleRepository.save(schedule);
+    // The schedule finders fetch the employees; load the pets of all found schedules in one more query
+    private List<Schedule> withPets(List<Schedule> schedules) {
+        if (!schedules.isEmpty()) {
+            scheduleRepository.fetchPets(schedules);
+        }
+        return schedules;
     }
 
 }
\ No newline at end of file
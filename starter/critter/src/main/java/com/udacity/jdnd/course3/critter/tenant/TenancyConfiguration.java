@@ -0,0 +1,60 @@
+package com.udacity.jdnd.course3.critter.tenant;
+
+import com.udacity.jdnd.course3.critter.service.EmployeeAvailabilityIndex;
+import com.udacity.jdnd.course3.critter.service.EmployeeDayCapacityIndex;
+import com.udacity.jdnd.course3.critter.service.EmployeeSlotIndex;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.jpa.boot.internal.EntityManagerFactoryBuilderImpl;
+import org.hibernate.jpa.boot.spi.IntegratorProvider;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+import java.util.List;
+
+/**
+ * Partitions the data by clinic: the tenant header sets the clinic of a request ({@link TenantFilter}), and
+ * Hibernate restricts every entity query to it ({@link TenantIdentifierResolver}); loads by id are checked by
+ * {@link TenantLoadCheck}. The in-memory indexes are kept per tenant ({@link TenantScoped}); an index of a tenant
+ * that shows up after startup starts out complete, as it has no rows that were written before.
+ */
+@Configuration
+@EnableConfigurationProperties(TenancyProperties.class)
+public class TenancyConfiguration {
+
+    @Bean
+    public HibernatePropertiesCustomizer tenantIdentifierResolverCustomizer() {
+        return properties -> {
+            properties.put(AvailableSettings.MULTI_TENANT_IDENTIFIER_RESOLVER, new TenantIdentifierResolver());
+            properties.put(EntityManagerFactoryBuilderImpl.INTEGRATOR_PROVIDER,
+                    (IntegratorProvider) () -> List.of(new TenantLoadCheck()));
+        };
+    }
+
+    @Bean
+    public FilterRegistrationBean<TenantFilter> tenantFilter(TenancyProperties tenancyProperties) {
+        FilterRegistrationBean<TenantFilter> registration =
+                new FilterRegistrationBean<>(new TenantFilter(tenancyProperties.getHeader()));
+        // Right after the access log, before anything that may touch the database
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 1);
+        return registration;
+    }
+
+    @Bean
+    public TenantScoped<EmployeeAvailabilityIndex> employeeAvailabilityIndexes() {
+        return new TenantScoped<>(EmployeeAvailabilityIndex::new, EmployeeAvailabilityIndex::markReady);
+    }
+
+    @Bean
+    public TenantScoped<EmployeeSlotIndex> employeeSlotIndexes() {
+        return new TenantScoped<>(EmployeeSlotIndex::new, index -> index.load(List.of()));
+    }
+
+    @Bean
+    public TenantScoped<EmployeeDayCapacityIndex> employeeDayCapacityIndexes() {
+        return new TenantScoped<>(EmployeeDayCapacityIndex::new);
+    }
+}
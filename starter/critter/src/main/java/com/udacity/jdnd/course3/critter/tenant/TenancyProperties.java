@@ -0,0 +1,78 @@
+package com.udacity.jdnd.course3.critter.tenant;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The {@code critter.tenancy.*} properties: the request header naming the clinic, and the clinics that have a
+ * database of their own, keyed by clinic id.
+ */
+@ConfigurationProperties("critter.tenancy")
+public class TenancyProperties {
+
+    private String header = "X-Clinic-Id";
+
+    private Map<String, Database> databases = new LinkedHashMap<>();
+
+    public String getHeader() {
+        return header;
+    }
+
+    public void setHeader(String header) {
+        this.header = header;
+    }
+
+    public Map<String, Database> getDatabases() {
+        return databases;
+    }
+
+    public void setDatabases(Map<String, Database> databases) {
+        this.databases = databases;
+    }
+
+    /**
+     * A dedicated database, with the schema of the shared one; username and password default to the shared
+     * database's.
+     */
+    public static class Database {
+
+        private String url;
+        private String username;
+        private String password;
+        private int maximumPoolSize = 10;
+
+        public String getUrl() {
+            return url;
+        }
+
+        public void setUrl(String url) {
+            this.url = url;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public void setUsername(String username) {
+            this.username = username;
+        }
+
+        public String getPassword() {
+            return password;
+        }
+
+        public void setPassword(String password) {
+            this.password = password;
+        }
+
+        public int getMaximumPoolSize() {
+            return maximumPoolSize;
+        }
+
+        public void setMaximumPoolSize(int maximumPoolSize) {
+            this.maximumPoolSize = maximumPoolSize;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.udacity.jdnd.course3.critter.tenant;
+
+import java.util.function.Supplier;
+
+/**
+ * The clinic (tenant) the current thread works for. {@link TenantFilter} sets it for every request from the
+ * clinic header; Hibernate reads it through {@link TenantIdentifierResolver} to fill and filter the tenant_id
+ * column, the plain JDBC repositories add it to their predicates, and the in-memory indexes are picked by it
+ * (see {@link TenantScoped}).
+ * <p>
+ * Work handed to another thread (streamed responses, startup loaders, the day capacity rebuild) does not inherit
+ * it and must run under {@link #runAs} or {@link #callAs}. Without a tenant, the thread works for
+ * {@link #DEFAULT_TENANT}, which owns every row written before tenants were introduced.
+ */
+public final class TenantContext {
+
+    public static final String DEFAULT_TENANT = "default";
+
+    private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+    private TenantContext() {
+    }
+
+    public static String getTenantId() {
+        String tenantId = CURRENT.get();
+        return tenantId == null ? DEFAULT_TENANT : tenantId;
+    }
+
+    public static void runAs(String tenantId, Runnable task) {
+        callAs(tenantId, () -> {
+            task.run();
+            return null;
+        });
+    }
+
+    public static <T> T callAs(String tenantId, Supplier<T> task) {
+        String previous = set(tenantId);
+        try {
+            return task.get();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    // Sets the tenant of this thread and returns the previous one (null for none) to restore afterwards
+    static String set(String tenantId) {
+        String previous = CURRENT.get();
+        CURRENT.set(tenantId);
+        return previous;
+    }
+
+    static void restore(String previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+}
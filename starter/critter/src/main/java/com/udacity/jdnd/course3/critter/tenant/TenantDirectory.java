@@ -0,0 +1,35 @@
+package com.udacity.jdnd.course3.critter.tenant;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The tenants that have data, for the startup loaders of the per-tenant in-memory state: the tenants found in the
+ * shared database plus the tenants that have a database of their own (see
+ * {@link com.udacity.jdnd.course3.critter.datasource.TenantRoutingConfiguration}).
+ * Every tenant owns employees or customers before it has anything else, so those two tables are enough.
+ */
+@Component
+public class TenantDirectory {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TenancyProperties tenancyProperties;
+
+    public Set<String> findTenantIds() {
+        Set<String> tenantIds = new TreeSet<>();
+        tenantIds.add(TenantContext.DEFAULT_TENANT);
+        // Runs as the default tenant, i.e. on the shared database
+        TenantContext.runAs(TenantContext.DEFAULT_TENANT, () -> tenantIds.addAll(jdbcTemplate.queryForList(
+                "select distinct tenant_id from employee union select distinct tenant_id from customer",
+                String.class)));
+        tenantIds.addAll(tenancyProperties.getDatabases().keySet());
+        return tenantIds;
+    }
+}
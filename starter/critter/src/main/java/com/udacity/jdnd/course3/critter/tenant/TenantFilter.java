@@ -0,0 +1,44 @@
+package com.udacity.jdnd.course3.critter.tenant;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.regex.Pattern;
+
+/**
+ * Runs every request as the clinic named in the tenant header (X-Clinic-Id by default). Requests without the
+ * header run as {@link TenantContext#DEFAULT_TENANT}. A malformed clinic id is rejected with 400 before any
+ * handler runs, since it becomes a SQL parameter, a map key and a DataSource lookup key.
+ */
+public class TenantFilter extends OncePerRequestFilter {
+
+    private static final Pattern TENANT_ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    private final String header;
+
+    public TenantFilter(String header) {
+        this.header = header;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String tenantId = request.getHeader(header);
+        if (tenantId == null || tenantId.isEmpty()) {
+            tenantId = TenantContext.DEFAULT_TENANT;
+        } else if (!TENANT_ID.matcher(tenantId).matches()) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid " + header + " header");
+            return;
+        }
+        String previous = TenantContext.set(tenantId);
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            TenantContext.restore(previous);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.udacity.jdnd.course3.critter.tenant;
+
+import org.hibernate.context.spi.CurrentTenantIdentifierResolver;
+
+/**
+ * Hands the tenant of the current thread to Hibernate, which writes it to the {@code @TenantId} column of new
+ * entities and adds a tenant_id restriction to every query of those entities, the Spring Data finders and JPQL
+ * queries included. Loads by id are not restricted; {@link TenantLoadCheck} rejects the rows of other tenants.
+ * Second-level cache entries and cached query results are keyed by the tenant as well.
+ */
+public class TenantIdentifierResolver implements CurrentTenantIdentifierResolver<String> {
+
+    @Override
+    public String resolveCurrentTenantIdentifier() {
+        return TenantContext.getTenantId();
+    }
+
+    // Existing sessions keep their tenant; a session is opened per transaction or request anyway
+    @Override
+    public boolean validateExistingCurrentSessions() {
+        return false;
+    }
+}
@@ -0,0 +1,70 @@
+package com.udacity.jdnd.course3.critter.tenant;
+
+import jakarta.persistence.EntityNotFoundException;
+import org.hibernate.annotations.TenantId;
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.spi.BootstrapContext;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostLoadEvent;
+import org.hibernate.event.spi.PostLoadEventListener;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+
+import java.lang.reflect.Field;
+
+/**
+ * Rejects an entity of another tenant that is loaded by id. Hibernate adds the tenant to every query, but a load by
+ * primary key (findById, an initialized reference) reads the row whatever its tenant_id, so a clinic could read
+ * another clinic's row by its id. Such a load fails as if the row did not exist.
+ */
+public class TenantLoadCheck implements Integrator, PostLoadEventListener {
+
+    // The @TenantId field of an entity class, or null for entities that are not partitioned
+    private static final ClassValue<Field> TENANT_ID_FIELDS = new ClassValue<>() {
+        @Override
+        protected Field computeValue(Class<?> type) {
+            for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (field.isAnnotationPresent(TenantId.class)) {
+                        field.setAccessible(true);
+                        return field;
+                    }
+                }
+            }
+            return null;
+        }
+    };
+
+    @Override
+    public void integrate(Metadata metadata, BootstrapContext bootstrapContext,
+                          SessionFactoryImplementor sessionFactory) {
+        sessionFactory.getServiceRegistry().requireService(EventListenerRegistry.class)
+                .appendListeners(EventType.POST_LOAD, this);
+    }
+
+    @Override
+    public void disintegrate(SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+    }
+
+    @Override
+    public void onPostLoad(PostLoadEvent event) {
+        Field field = TENANT_ID_FIELDS.get(event.getEntity().getClass());
+        Object sessionTenantId = event.getSession().getTenantIdentifierValue();
+        if (field == null || sessionTenantId == null) {
+            return;
+        }
+        Object tenantId;
+        try {
+            tenantId = field.get(event.getEntity());
+        } catch (IllegalAccessException exception) {
+            throw new IllegalStateException(exception);
+        }
+        // An entity assembled from the second-level cache comes without it, but its cache key carries the tenant
+        if (tenantId != null && !sessionTenantId.equals(tenantId)) {
+            throw new EntityNotFoundException("No " + event.getPersister().getEntityName() + " with id "
+                    + event.getId() + " in tenant " + sessionTenantId);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.udacity.jdnd.course3.critter.tenant;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * One instance of an in-memory structure per tenant, e.g. the availability and slot indexes, so that a lookup
+ * only ever scans the employees of its own clinic. {@link #get()} returns the instance of the current tenant for
+ * reading, and {@link #getOrCreate()} the one to write the tenant's committed rows to.
+ * <p>
+ * The tenant comes from a request header, so instances are only created for the tenants that have rows: those
+ * given to {@link #loadAll} and those written through this node. A read for any other tenant gets one shared,
+ * empty instance that is never written, in the state of a new instance once {@link #loadAll} has run, so a
+ * client sending made-up clinic ids cannot grow the map.
+ * <p>
+ * Instances created before {@link #loadAll} has run are loaded by it like the others. Instances created
+ * afterwards belong to tenants that had no rows at startup and are initialized with the given callback instead,
+ * e.g. marked ready, since the rows of such a tenant have all been written through this node since.
+ */
+public class TenantScoped<T> {
+
+    private final Map<String, T> instances = new ConcurrentHashMap<>();
+    private final Supplier<T> factory;
+    private final Consumer<T> initializeNew;
+    private volatile boolean loaded;
+    // Returned for the tenants without an instance
+    private volatile T absent;
+
+    public TenantScoped(Supplier<T> factory, Consumer<T> initializeNew) {
+        this.factory = factory;
+        this.initializeNew = initializeNew;
+        this.absent = factory.get();
+    }
+
+    public TenantScoped(Supplier<T> factory) {
+        this(factory, instance -> {
+        });
+    }
+
+    public T get() {
+        return get(TenantContext.getTenantId());
+    }
+
+    /**
+     * The instance of the tenant, or the shared empty one when the tenant has none; must not be written to.
+     */
+    public T get(String tenantId) {
+        T instance = instances.get(tenantId);
+        return instance != null ? instance : absent;
+    }
+
+    public T getOrCreate() {
+        return getOrCreate(TenantContext.getTenantId());
+    }
+
+    /**
+     * The instance of the tenant, created on first use. Only for writing rows of the tenant that are committed,
+     * or about to be, so that every instance belongs to a tenant that exists.
+     */
+    public T getOrCreate(String tenantId) {
+        return instances.computeIfAbsent(tenantId, id -> {
+            T instance = factory.get();
+            if (loaded) {
+                initializeNew.accept(instance);
+            }
+            return instance;
+        });
+    }
+
+    /**
+     * Loads the instance of every given tenant with the loader, running as that tenant. Instances that were
+     * created meanwhile for other tenants are then initialized as new ones.
+     */
+    public void loadAll(Collection<String> tenantIds, Consumer<T> loader) {
+        for (String tenantId : tenantIds) {
+            TenantContext.runAs(tenantId, () -> loader.accept(getOrCreate(tenantId)));
+        }
+        T empty = factory.get();
+        initializeNew.accept(empty);
+        absent = empty;
+        loaded = true;
+        instances.forEach((tenantId, instance) -> {
+            if (!tenantIds.contains(tenantId)) {
+                initializeNew.accept(instance);
+            }
+        });
+    }
+}
@@ -0,0 +1,46 @@
+package com.udacity.jdnd.course3.critter.user;
+
+import java.time.LocalDateTime;
+
+/**
+ * Represents a free time slot of an employee. Does not map
+ * to the database directly.
+ */
+public class EmployeeSlotDTO {
+    private long employeeId;
+    private LocalDateTime startTime;
+    private LocalDateTime endTime;
+
+    public EmployeeSlotDTO() {
+    }
+
+    public EmployeeSlotDTO(long employeeId, LocalDateTime startTime, LocalDateTime endTime) {
+        this.employeeId = employeeId;
+        this.startTime = startTime;
+        this.endTime = endTime;
+    }
+
+    public long getEmployeeId() {
+        return employeeId;
+    }
+
+    public void setEmployeeId(long employeeId) {
+        this.employeeId = employeeId;
+    }
+
+    public LocalDateTime getStartTime() {
+        return startTime;
+    }
+
+    public void setStartTime(LocalDateTime startTime) {
+        this.startTime = startTime;
+    }
+
+    public LocalDateTime getEndTime() {
+        return endTime;
+    }
+
+    public void setEndTime(LocalDateTime endTime) {
+        this.endTime = endTime;
+    }
+}
@@ -1,5 +1,9 @@
 package com.udacity.jdnd.course3.critter.user;
 
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.udacity.jdnd.course3.critter.CursorPage;
+import com.udacity.jdnd.course3.critter.NdjsonStream;
 import com.udacity.jdnd.course3.critter.entity.Customer;
 import com.udacity.jdnd.course3.critter.entity.Employee;
 import com.udacity.jdnd.course3.critter.entity.Pet;
@@ -9,12 +13,23 @@ import com.udacity.jdnd.course3.critter.user.CustomerDTO;
 import com.udacity.jdnd.course3.critter.user.EmployeeDTO;
 import com.udacity.jdnd.course3.critter.user.EmployeeRequestDTO;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.InputStream;
 import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -35,8 +50,17 @@ public class UserController {
     @Autowired
     private EmployeeService employeeService;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${critter.page.max-limit:1000}")
+    private int maxLimit;
+
+    @Value("${critter.stream.page-size:500}")
+    private int streamPageSize;
 
-    private CustomerDTO convertCustomerToCustomerDTO(Customer customer) {
+
+    CustomerDTO convertCustomerToCustomerDTO(Customer customer) {
         // Initialize a list to store pet IDs
         List<Long> petIds = new ArrayList<>();
 
@@ -50,8 +74,11 @@ public class UserController {
     }
 
 
-    private EmployeeDTO convertEmployeeToEmployeeDTO(Employee employee) {
-        return new EmployeeDTO(employee.getId(), employee.getName(), employee.getSkills(), employee.getDaysAvailable());
+    EmployeeDTO convertEmployeeToEmployeeDTO(Employee employee) {
+        EmployeeDTO employeeDTO = new EmployeeDTO(employee.getId(), employee.getName(), employee.getSkills(),
+                employee.getDaysAvailable());
+        employeeDTO.setVersion(employee.getVersion());
+        return employeeDTO;
     }
 
     @PostMapping("/customer")
@@ -76,22 +103,40 @@ public class UserController {
         }
     }
 
+    @PostMapping(value = "/customer/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, NdjsonStream.MEDIA_TYPE})
+    public List<Long> saveCustomers(InputStream body) {
+        try {
+            // Read the customers one at a time, from either a JSON array or newline-delimited JSON,
+            // insert them in JDBC batches and return the new ids in input order
+            MappingIterator<CustomerDTO> customers = objectMapper.readerFor(CustomerDTO.class).readValues(body);
+            return customerService.importCustomers(customers);
+        } catch (Exception exception) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Customers could not be imported", exception);
+        }
+    }
+
     @GetMapping("/customer")
     public List<CustomerDTO> getAllCustomers() {
-        // Retrieve the list of all customers from the service layer
-        List<Customer> customers = customerService.getAllCustomers();
-
-        // Create a new list to store the CustomerDTO objects
-        List<CustomerDTO> customerDTOList = new ArrayList<>();
+        // Retrieve the list of all customers from the service layer, projected straight into CustomerDTOs
+        return customerService.getAllCustomerDTOs();
+    }
 
-        // Loop through each Customer and convert it to CustomerDTO
-        for (Customer customer : customers) {
-            // Convert each customer to CustomerDTO and add it to the list
-            customerDTOList.add(convertCustomerToCustomerDTO(customer));
+    @GetMapping(value = "/customer", params = "limit")
+    public CursorPage<CustomerDTO> getCustomers(@RequestParam int limit, @RequestParam(defaultValue = "0") long after) {
+        // Validate the requested page size before querying
+        if (limit < 1 || limit > maxLimit) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be between 1 and " + maxLimit);
         }
 
-        // Return the list of CustomerDTOs
-        return customerDTOList;
+        // Fetch one row more than requested to find out whether there is a next page
+        return CursorPage.of(customerService.getCustomerDTOsAfter(after, limit + 1), limit, CustomerDTO::getId);
+    }
+
+    @GetMapping("/customer/stream")
+    public ResponseEntity<StreamingResponseBody> streamCustomers() {
+        // Write all customers as newline-delimited JSON, one keyset page at a time
+        return NdjsonStream.of(objectMapper, streamPageSize,
+                after -> customerService.getCustomerDTOsAfter(after, streamPageSize), CustomerDTO::getId);
     }
 
     @GetMapping("/customer/pet/{petId}")
@@ -119,7 +164,10 @@ public class UserController {
 
         try {
             // Call the service layer to save the employee and return the saved employee as an EmployeeDTO
-            return convertEmployeeToEmployeeDTO(employeeService.saveEmployee(employee));
+            return convertEmployeeToEmployeeDTO(employeeService.saveEmployee(employee, employeeDTO.getVersion()));
+        } catch (OptimisticLockingFailureException exception) {
+            // The client replaced an employee without the version it last read, or someone changed it since
+            throw new ResponseStatusException(HttpStatus.CONFLICT, exception.getMessage(), exception);
         } catch (Exception exception) {
             // If an error occurs during the saving process, throw a BAD_REQUEST (400) exception
             // with a custom error message and the exception details
@@ -127,6 +175,34 @@ public class UserController {
         }
     }
 
+    @PostMapping(value = "/employee/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, NdjsonStream.MEDIA_TYPE})
+    public List<Long> saveEmployees(InputStream body) {
+        try {
+            // Read the employees one at a time, from either a JSON array or newline-delimited JSON
+            MappingIterator<EmployeeDTO> employeeDTOs = objectMapper.readerFor(EmployeeDTO.class).readValues(body);
+
+            // Convert each DTO as it is read; ids are always generated, so any id in the input is ignored
+            Iterator<Employee> employees = new Iterator<Employee>() {
+                @Override
+                public boolean hasNext() {
+                    return employeeDTOs.hasNext();
+                }
+
+                @Override
+                public Employee next() {
+                    EmployeeDTO employeeDTO = employeeDTOs.next();
+                    return new Employee(null, employeeDTO.getName(), employeeDTO.getDaysAvailable(),
+                            employeeDTO.getSkills());
+                }
+            };
+
+            // Insert them in JDBC batches and return the new ids in input order
+            return employeeService.importEmployees(employees);
+        } catch (Exception exception) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Employees could not be imported", exception);
+        }
+    }
+
     @GetMapping("/employee/{employeeId}")
     public EmployeeDTO getEmployee(@PathVariable long employeeId) {
         try {
@@ -157,7 +233,8 @@ public class UserController {
 
     @GetMapping("/employee/availability")
     public List<EmployeeDTO> findEmployeesForService(@RequestBody EmployeeRequestDTO employeeDTO) {
-        // Retrieve the list of employees based on the requested service date and skills
+        // Retrieve the employees that work on the requested date, have every requested skill and are not booked
+        // for the whole day; the same rule holds inside and outside the materialized capacity horizon
         List<Employee> employees = employeeService.getEmployeesByService(employeeDTO.getDate(), employeeDTO.getSkills());
 
         // Create a list to hold the EmployeeDTO objects
@@ -173,4 +250,47 @@ public class UserController {
         return employeeDTOList;
     }
 
+    @GetMapping(value = "/employee/availability", params = {"start", "end"})
+    public List<EmployeeDTO> findEmployeesFreeDuring(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime start,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime end,
+            @RequestParam(required = false) Set<EmployeeSkill> skills) {
+        List<Employee> employees;
+
+        try {
+            // Find the employees with the requested skills that work on that day and are free during [start, end)
+            employees = employeeService.getEmployeesFreeDuring(
+                    skills == null ? EnumSet.noneOf(EmployeeSkill.class) : skills, start, end);
+        } catch (Exception exception) {
+            // An empty time slot or one that spans more than one day
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid time slot " + start + " - " + end,
+                    exception);
+        }
+
+        // Convert the employees to EmployeeDTOs
+        return employees.stream().map(this::convertEmployeeToEmployeeDTO).collect(Collectors.toList());
+    }
+
+    @GetMapping("/employee/{employeeId}/next-slot")
+    public EmployeeSlotDTO findNextFreeSlot(@PathVariable long employeeId,
+                                            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                            @RequestParam long minutes) {
+        LocalDateTime start;
+
+        try {
+            // Find the earliest free slot of the requested length on one of the employee's working days
+            start = employeeService.getNextFreeSlot(employeeId, from, Duration.ofMinutes(minutes));
+        } catch (Exception exception) {
+            // Unknown employee or invalid duration
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Free slot of employee with id: " + employeeId + " could not be searched", exception);
+        }
+
+        if (start == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND,
+                    "Employee with id: " + employeeId + " has no free slot of " + minutes + " minutes");
+        }
+        return new EmployeeSlotDTO(employeeId, start, start.plusMinutes(minutes));
+    }
+
 }
\ No newline at end of file
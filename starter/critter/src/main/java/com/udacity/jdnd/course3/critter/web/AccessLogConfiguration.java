@@ -0,0 +1,39 @@
+package com.udacity.jdnd.course3.critter.web;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+
+/**
+ * The request access log, see {@link RequestTracingFilter} and {@link AccessLogWriter}.
+ */
+@Configuration
+@ConditionalOnProperty(name = "critter.access-log.enabled", matchIfMissing = true)
+public class AccessLogConfiguration {
+
+    @Bean
+    public AccessLogWriter accessLogWriter(
+            MeterRegistry meterRegistry,
+            @Value("${critter.access-log.path:logs/access.log}") Path path,
+            @Value("${critter.access-log.buffer-size:65536}") int bufferSize,
+            @Value("${critter.access-log.max-file-size:100MB}") DataSize maxFileSize,
+            @Value("${critter.access-log.max-history:10}") int maxHistory) {
+        return new AccessLogWriter(path, bufferSize, maxFileSize.toBytes(), maxHistory, meterRegistry);
+    }
+
+    @Bean
+    public FilterRegistrationBean<RequestTracingFilter> requestTracingFilter(AccessLogWriter accessLogWriter) {
+        FilterRegistrationBean<RequestTracingFilter> registration =
+                new FilterRegistrationBean<>(new RequestTracingFilter(accessLogWriter));
+        // Outermost, so that the time includes the other filters
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+}
@@ -0,0 +1,9 @@
+package com.udacity.jdnd.course3.critter.web;
+
+/**
+ * One line of the access log. The route is the matched path pattern, e.g. /schedule/pet/{petId}, or "none"
+ * when no handler matched; the durations are in nanoseconds.
+ */
+public record AccessLogRecord(long timestamp, String method, String route, int status, boolean async,
+                              long durationNanos, long databaseNanos, int statements, long serializationNanos) {
+}
@@ -0,0 +1,81 @@
+package com.udacity.jdnd.course3.critter.web;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free queue of access log records for many request threads and the one writer thread.
+ * <p>
+ * Every slot carries a sequence number that says whose turn it is: a request thread claims the next position with
+ * a compare-and-set, fills the slot and publishes it by advancing the slot's sequence; the writer takes published
+ * slots in order and hands them back by advancing the sequence a lap further. A request thread never waits: when
+ * the writer is a full lap behind, {@link #offer} fails and the record is dropped.
+ */
+final class AccessLogRingBuffer {
+
+    private final int mask;
+    private final AtomicReferenceArray<AccessLogRecord> records;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    // Only touched by the writer thread
+    private long head;
+
+    /**
+     * @param capacity rounded up to a power of two
+     */
+    AccessLogRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.mask = size - 1;
+        this.records = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Adds the record, or returns false when the buffer is full. Safe to call from any thread.
+     */
+    boolean offer(AccessLogRecord record) {
+        long position = tail.get();
+        while (true) {
+            int slot = (int) position & mask;
+            long lag = sequences.get(slot) - position;
+            if (lag == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    records.lazySet(slot, record);
+                    sequences.lazySet(slot, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (lag < 0) {
+                // The slot still holds the record from one lap ago
+                return false;
+            } else {
+                // Another thread claimed this position first
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Moves up to max published records into the list, in order. Only called by the writer thread.
+     */
+    int drainTo(List<AccessLogRecord> drained, int max) {
+        int count = 0;
+        while (count < max) {
+            int slot = (int) head & mask;
+            if (sequences.get(slot) != head + 1) {
+                break;
+            }
+            drained.add(records.get(slot));
+            records.lazySet(slot, null);
+            sequences.lazySet(slot, head + mask + 1);
+            head++;
+            count++;
+        }
+        return count;
+    }
+}
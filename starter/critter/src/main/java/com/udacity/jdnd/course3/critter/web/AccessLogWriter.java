@@ -0,0 +1,196 @@
+package com.udacity.jdnd.course3.critter.web;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes the access log: one JSON object per request and line, appended to a file that is rolled over by size.
+ * <p>
+ * Request threads only put their record into an {@link AccessLogRingBuffer}; a background thread takes whatever
+ * has accumulated, up to {@value #BATCH_SIZE} records, writes them with one flush, and naps briefly when the
+ * buffer is empty. When the writer cannot keep up, records are dropped and counted in {@value #DROPPED_METRIC_NAME}
+ * rather than slowing down requests. File errors are logged and counted, and the writer carries on.
+ */
+public class AccessLogWriter implements AutoCloseable {
+
+    public static final String DROPPED_METRIC_NAME = "critter.access-log.dropped";
+    public static final String ERRORS_METRIC_NAME = "critter.access-log.errors";
+
+    private static final Logger log = LoggerFactory.getLogger(AccessLogWriter.class);
+
+    private static final int BATCH_SIZE = 4096;
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private final AccessLogRingBuffer buffer;
+    private final Path path;
+    private final long maxFileSize;
+    private final int maxHistory;
+    private final Counter dropped;
+    private final Counter errors;
+    private final Thread writer;
+
+    private volatile boolean running = true;
+
+    // Only touched by the writer thread
+    private Writer out;
+    private long fileSize;
+
+    /**
+     * @param maxHistory the number of rolled files (path.1 the newest) kept next to the current one
+     */
+    public AccessLogWriter(Path path, int bufferSize, long maxFileSize, int maxHistory, MeterRegistry meterRegistry) {
+        this.buffer = new AccessLogRingBuffer(bufferSize);
+        this.path = path.toAbsolutePath();
+        this.maxFileSize = maxFileSize;
+        this.maxHistory = maxHistory;
+        this.dropped = meterRegistry.counter(DROPPED_METRIC_NAME);
+        this.errors = meterRegistry.counter(ERRORS_METRIC_NAME);
+        this.writer = new Thread(this::run, "critter-access-log");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queues the record for writing, or drops it when the buffer is full. Never blocks.
+     */
+    public void offer(AccessLogRecord record) {
+        if (!buffer.offer(record)) {
+            dropped.increment();
+        }
+    }
+
+    private void run() {
+        List<AccessLogRecord> batch = new ArrayList<>(BATCH_SIZE);
+        StringBuilder line = new StringBuilder(256);
+        while (true) {
+            // Read the flag first, so that the records offered before close() are still drained
+            boolean closing = !running;
+            batch.clear();
+            buffer.drainTo(batch, BATCH_SIZE);
+            if (batch.isEmpty()) {
+                if (closing) {
+                    break;
+                }
+                LockSupport.parkNanos(IDLE_NANOS);
+                continue;
+            }
+            try {
+                for (AccessLogRecord record : batch) {
+                    line.setLength(0);
+                    format(record, line);
+                    write(line);
+                }
+                out.flush();
+            } catch (IOException exception) {
+                errors.increment();
+                log.warn("Could not write {} access log records to {}", batch.size(), path, exception);
+                closeFile();
+            }
+        }
+        closeFile();
+    }
+
+    private void write(StringBuilder line) throws IOException {
+        if (out == null) {
+            openFile();
+        } else if (fileSize + line.length() > maxFileSize) {
+            out.close();
+            out = null;
+            roll();
+            openFile();
+        }
+        out.append(line);
+        fileSize += line.length();
+    }
+
+    private void openFile() throws IOException {
+        Files.createDirectories(path.getParent());
+        out = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+        fileSize = Files.size(path);
+    }
+
+    // path.(n-1) -> path.n, ..., path -> path.1; the oldest falls off
+    private void roll() throws IOException {
+        if (maxHistory < 1) {
+            Files.deleteIfExists(path);
+            return;
+        }
+        for (int i = maxHistory - 1; i >= 1; i--) {
+            Path rolled = rolledPath(i);
+            if (Files.exists(rolled)) {
+                Files.move(rolled, rolledPath(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.move(path, rolledPath(1), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private Path rolledPath(int index) {
+        return path.resolveSibling(path.getFileName() + "." + index);
+    }
+
+    private void closeFile() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException exception) {
+                log.warn("Could not close the access log {}", path, exception);
+            }
+            out = null;
+        }
+    }
+
+    // Routes and methods come from the handler mappings, but are escaped anyway
+    private static void format(AccessLogRecord record, StringBuilder line) {
+        line.append("{\"time\":\"").append(Instant.ofEpochMilli(record.timestamp())).append('"');
+        line.append(",\"method\":");
+        appendString(line, record.method());
+        line.append(",\"route\":");
+        appendString(line, record.route());
+        line.append(",\"status\":").append(record.status());
+        line.append(",\"async\":").append(record.async());
+        line.append(",\"durationMicros\":").append(TimeUnit.NANOSECONDS.toMicros(record.durationNanos()));
+        line.append(",\"dbMicros\":").append(TimeUnit.NANOSECONDS.toMicros(record.databaseNanos()));
+        line.append(",\"dbStatements\":").append(record.statements());
+        line.append(",\"serializationMicros\":")
+                .append(TimeUnit.NANOSECONDS.toMicros(record.serializationNanos()));
+        line.append("}\n");
+    }
+
+    private static void appendString(StringBuilder line, String value) {
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                line.append('\\').append(c);
+            } else if (c < 0x20) {
+                line.append(String.format("\\u%04x", (int) c));
+            } else {
+                line.append(c);
+            }
+        }
+        line.append('"');
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(writer);
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+    }
+}
@@ -0,0 +1,75 @@
+package com.udacity.jdnd.course3.critter.web;
+
+import com.udacity.jdnd.course3.critter.service.ResourceVersions;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.Map;
+
+/**
+ * Answers conditional GETs of one kind of versioned resource. The ETag is taken from {@link ResourceVersions}
+ * before the handler runs, and a request whose If-None-Match still matches gets a 304 without calling the
+ * handler, so only the primary key read of the version is run and nothing is serialized.
+ * <p>
+ * The same URL is a different resource for every clinic, so the responses vary on the clinic header, and the
+ * ETag names the clinic (see {@link ResourceVersions#getETag}).
+ * <p>
+ * Reading the version before the data means a response can at worst carry an older ETag than its data, which
+ * only costs the client one more full response after the next change.
+ */
+public class ConditionalGetInterceptor implements HandlerInterceptor {
+
+    private final ResourceVersions versions;
+    private final String kind;
+    private final String idVariable;
+    private final CacheControl cacheControl;
+    private final String tenantHeader;
+
+    public ConditionalGetInterceptor(ResourceVersions versions, String kind, String idVariable,
+                                     CacheControl cacheControl, String tenantHeader) {
+        this.versions = versions;
+        this.kind = kind;
+        this.idVariable = idVariable;
+        this.cacheControl = cacheControl;
+        this.tenantHeader = tenantHeader;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (!HttpMethod.GET.matches(request.getMethod()) && !HttpMethod.HEAD.matches(request.getMethod())) {
+            return true;
+        }
+
+        // The id comes from the matched handler's path, so other handlers under the same pattern, e.g.
+        // /user/employee/availability, are left alone
+        @SuppressWarnings("unchecked")
+        Map<String, String> variables =
+                (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        String id = variables == null ? null : variables.get(idVariable);
+        if (id == null) {
+            return true;
+        }
+        long resourceId;
+        try {
+            resourceId = Long.parseLong(id);
+        } catch (NumberFormatException exception) {
+            // The handler rejects it
+            return true;
+        }
+
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl.getHeaderValue());
+        response.addHeader(HttpHeaders.VARY, tenantHeader);
+        String etag = versions.getETag(kind, resourceId);
+        if (etag == null) {
+            return true;
+        }
+        // Sets the ETag header, and the 304 status when the client already has this version
+        return !new ServletWebRequest(request, response).checkNotModified(etag);
+    }
+}
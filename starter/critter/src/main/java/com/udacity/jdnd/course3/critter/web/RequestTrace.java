@@ -0,0 +1,58 @@
+package com.udacity.jdnd.course3.critter.web;
+
+/**
+ * What one request spent its time on, collected while it runs on its thread: the JDBC statements (reported by
+ * the SQL sampler's QueryMetricsListener) and the JSON serialization of the response body (reported by
+ * {@link TimedJsonHttpMessageConverter}). {@link RequestTracingFilter} starts a trace per request and logs it.
+ * <p>
+ * Work done on other threads, e.g. the pages of a streamed response, is not included.
+ */
+public final class RequestTrace {
+
+    private static final ThreadLocal<RequestTrace> CURRENT = new ThreadLocal<>();
+
+    private long databaseNanos;
+    private int statements;
+    private long serializationNanos;
+
+    private RequestTrace() {
+    }
+
+    static RequestTrace start() {
+        RequestTrace trace = new RequestTrace();
+        CURRENT.set(trace);
+        return trace;
+    }
+
+    static void end() {
+        CURRENT.remove();
+    }
+
+    /**
+     * Returns the trace of the request running on this thread, or null outside of a traced request.
+     */
+    public static RequestTrace current() {
+        return CURRENT.get();
+    }
+
+    public void addStatement(long nanos) {
+        databaseNanos += nanos;
+        statements++;
+    }
+
+    public void addSerialization(long nanos) {
+        serializationNanos += nanos;
+    }
+
+    public long getDatabaseNanos() {
+        return databaseNanos;
+    }
+
+    public int getStatements() {
+        return statements;
+    }
+
+    public long getSerializationNanos() {
+        return serializationNanos;
+    }
+}
@@ -0,0 +1,50 @@
+package com.udacity.jdnd.course3.critter.web;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+
+/**
+ * Traces every request into the {@link AccessLogWriter}: method, route, status, total time, and of that the time
+ * spent in JDBC statements and in writing the JSON body (see {@link RequestTrace}).
+ * <p>
+ * A request that starts async processing (the NDJSON and SSE streams) is logged when its handler returns, with
+ * async set; the streaming itself is not included. A request that fails with an exception is logged with status
+ * 500 unless it already had an error status.
+ */
+public class RequestTracingFilter extends OncePerRequestFilter {
+
+    private static final String NONE = "none";
+
+    private final AccessLogWriter accessLogWriter;
+
+    public RequestTracingFilter(AccessLogWriter accessLogWriter) {
+        this.accessLogWriter = accessLogWriter;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        long started = System.nanoTime();
+        RequestTrace trace = RequestTrace.start();
+        boolean failed = true;
+        try {
+            chain.doFilter(request, response);
+            failed = false;
+        } finally {
+            RequestTrace.end();
+            long duration = System.nanoTime() - started;
+            // The mapped pattern, not the path, so that lines can be grouped by endpoint
+            Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            int status = failed && response.getStatus() < 400 ? 500 : response.getStatus();
+            accessLogWriter.offer(new AccessLogRecord(System.currentTimeMillis(), request.getMethod(),
+                    pattern == null ? NONE : pattern.toString(), status, isAsyncStarted(request), duration,
+                    trace.getDatabaseNanos(), trace.getStatements(), trace.getSerializationNanos()));
+        }
+    }
+}
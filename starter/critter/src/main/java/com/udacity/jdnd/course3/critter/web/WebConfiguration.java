@@ -0,0 +1,68 @@
+package com.udacity.jdnd.course3.critter.web;
+
+import com.udacity.jdnd.course3.critter.service.ResourceVersions;
+import com.udacity.jdnd.course3.critter.tenant.TenancyProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.CacheControl;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Serves the polled read endpoints with ETags and Cache-Control, see {@link ConditionalGetInterceptor}, and
+ * times the JSON serialization of response bodies for the access log, see {@link TimedJsonHttpMessageConverter}.
+ */
+@Configuration
+public class WebConfiguration implements WebMvcConfigurer {
+
+    @Autowired
+    private ResourceVersions versions;
+
+    @Autowired
+    private TenancyProperties tenancyProperties;
+
+    // How long a client may reuse a response without revalidating it; 0 revalidates every time
+    @Value("${critter.http.max-age:0s}")
+    private Duration maxAge;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        // The responses are per clinic and customer or employee, so shared caches must not store them
+        CacheControl cacheControl = maxAge.isZero()
+                ? CacheControl.noCache().cachePrivate()
+                : CacheControl.maxAge(maxAge).cachePrivate().mustRevalidate();
+
+        addConditionalGet(registry, "/schedule/employee/{employeeId}", ResourceVersions.EMPLOYEE_SCHEDULE,
+                "employeeId", cacheControl);
+        addConditionalGet(registry, "/schedule/pet/{petId}", ResourceVersions.PET_SCHEDULE, "petId",
+                cacheControl);
+        addConditionalGet(registry, "/pet/owner/{ownerId}", ResourceVersions.OWNER_PETS, "ownerId",
+                cacheControl);
+        addConditionalGet(registry, "/user/employee/{employeeId}", ResourceVersions.EMPLOYEE, "employeeId",
+                cacheControl);
+    }
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        // Same ObjectMapper and position as the converter Spring Boot configured
+        for (int i = 0; i < converters.size(); i++) {
+            if (converters.get(i) instanceof MappingJackson2HttpMessageConverter json
+                    && !(json instanceof TimedJsonHttpMessageConverter)) {
+                converters.set(i, new TimedJsonHttpMessageConverter(json.getObjectMapper()));
+            }
+        }
+    }
+
+    private void addConditionalGet(InterceptorRegistry registry, String pathPattern, String kind,
+                                   String idVariable, CacheControl cacheControl) {
+        registry.addInterceptor(new ConditionalGetInterceptor(versions, kind, idVariable, cacheControl,
+                        tenancyProperties.getHeader()))
+                .addPathPatterns(pathPattern);
+    }
+}
@@ -0,0 +1,36 @@
+-- Same migration as ../mysql/V1_1__entity_additions.sql.
+
+alter table employee add column version bigint not null default 0;
+alter table schedule add column version bigint not null default 0;
+alter table schedule add column start_time timestamp(6);
+alter table schedule add column end_time timestamp(6);
+
+create table employee_slot (
+    schedule_id bigint not null,
+    employee_id bigint not null,
+    start_time timestamp(6) not null,
+    end_time timestamp(6) not null,
+    primary key (schedule_id, employee_id, start_time, end_time),
+    constraint fk_employee_slot_schedule foreign key (schedule_id) references schedule (id)
+);
+
+create index idx_employee_slot_employee_start on employee_slot (employee_id, start_time);
+
+create table resource_version (
+    resource_id bigint not null,
+    kind varchar(32) not null,
+    version bigint not null,
+    changed_at bigint not null,
+    primary key (resource_id, kind)
+);
+
+create table id_generator (
+    entity varchar(255) not null,
+    next_id bigint,
+    primary key (entity)
+);
+
+insert into id_generator (entity, next_id) select 'customer', coalesce(max(id), 0) + 1 from customer;
+insert into id_generator (entity, next_id) select 'employee', coalesce(max(id), 0) + 1 from employee;
+insert into id_generator (entity, next_id) select 'pet', coalesce(max(id), 0) + 1 from pet;
+insert into id_generator (entity, next_id) select 'schedule', coalesce(max(id), 0) + 1 from schedule;
@@ -0,0 +1,68 @@
+-- Same schema as ../mysql/V1__schema.sql, with the types Hibernate 6 validates on H2 for the enum columns (tinyint
+-- for the ordinals, varchar for the names), as the H2 migrations have no V2 conversion.
+
+create table customer (
+    id bigint not null,
+    name varchar(255),
+    phone_number varchar(255),
+    notes varchar(255),
+    primary key (id)
+);
+
+create table pet (
+    id bigint not null,
+    type tinyint,
+    name varchar(255),
+    customer_id bigint not null,
+    birth_date date,
+    notes varchar(255),
+    primary key (id),
+    constraint fk_pet_customer foreign key (customer_id) references customer (id)
+);
+
+create table employee (
+    id bigint not null,
+    name varchar(255),
+    primary key (id)
+);
+
+create table employee_day_available (
+    employee_id bigint not null,
+    days_available varchar(16) not null,
+    primary key (employee_id, days_available),
+    constraint fk_employee_day_available_employee foreign key (employee_id) references employee (id)
+);
+
+create table tbl_skills (
+    employee_id bigint not null,
+    skill varchar(16) not null,
+    primary key (employee_id, skill),
+    constraint fk_tbl_skills_employee foreign key (employee_id) references employee (id)
+);
+
+create table schedule (
+    id bigint not null,
+    date date,
+    primary key (id)
+);
+
+create table schedule_employee (
+    schedule_id bigint not null,
+    employee_id bigint not null,
+    constraint fk_schedule_employee_schedule foreign key (schedule_id) references schedule (id),
+    constraint fk_schedule_employee_employee foreign key (employee_id) references employee (id)
+);
+
+create table schedule_pets (
+    schedule_id bigint not null,
+    pets_id bigint not null,
+    constraint fk_schedule_pets_schedule foreign key (schedule_id) references schedule (id),
+    constraint fk_schedule_pets_pet foreign key (pets_id) references pet (id)
+);
+
+create table schedule_activities (
+    schedule_id bigint not null,
+    activities tinyint not null,
+    primary key (schedule_id, activities),
+    constraint fk_schedule_activities_schedule foreign key (schedule_id) references schedule (id)
+);
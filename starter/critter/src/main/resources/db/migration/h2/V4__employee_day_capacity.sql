@@ -0,0 +1,11 @@
+-- Same migration as ../mysql/V4__employee_day_capacity.sql.
+
+create table employee_day_capacity (
+    work_date date not null,
+    employee_id bigint not null,
+    skills_mask integer not null,
+    remaining_minutes integer not null,
+    primary key (work_date, employee_id)
+);
+
+create index idx_employee_day_capacity_employee on employee_day_capacity (employee_id, work_date);
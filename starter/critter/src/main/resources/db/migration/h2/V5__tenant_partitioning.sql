@@ -0,0 +1,31 @@
+-- Same migration as ../mysql/V5__tenant_partitioning.sql.
+
+alter table customer add column tenant_id varchar(64) not null default 'default';
+alter table pet add column tenant_id varchar(64) not null default 'default';
+alter table employee add column tenant_id varchar(64) not null default 'default';
+alter table schedule add column tenant_id varchar(64) not null default 'default';
+
+create index idx_customer_tenant on customer (tenant_id, id);
+create index idx_pet_tenant on pet (tenant_id, id);
+create index idx_employee_tenant on employee (tenant_id, id);
+create index idx_schedule_tenant on schedule (tenant_id, id);
+
+drop index idx_schedule_date;
+create index idx_schedule_tenant_date on schedule (tenant_id, date, id);
+
+drop table employee_day_capacity;
+
+create table employee_day_capacity (
+    tenant_id varchar(64) not null,
+    work_date date not null,
+    employee_id bigint not null,
+    skills_mask integer not null,
+    remaining_minutes integer not null,
+    primary key (tenant_id, work_date, employee_id)
+);
+
+create index idx_employee_day_capacity_employee on employee_day_capacity (tenant_id, employee_id, work_date);
+
+alter table resource_version add column tenant_id varchar(64) not null default 'default' first;
+alter table resource_version drop primary key;
+alter table resource_version add primary key (tenant_id, kind, resource_id);
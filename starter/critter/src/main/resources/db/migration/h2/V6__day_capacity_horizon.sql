@@ -0,0 +1,8 @@
+-- Same migration as ../mysql/V6__day_capacity_horizon.sql.
+
+create table day_capacity_horizon (
+    tenant_id varchar(64) not null,
+    first_day date,
+    last_day date,
+    primary key (tenant_id)
+);
@@ -0,0 +1,40 @@
+-- What the entities gained after V1: the versions for optimistic locking, the time slot of a schedule and the
+-- employee_slot rows its bookings are checked against, the versions behind the ETags, and the id_generator table.
+-- Schedules stored before time slots existed get their whole-day slot on startup (ScheduleService).
+
+alter table employee add column version bigint not null default 0;
+alter table schedule add column version bigint not null default 0;
+alter table schedule add column start_time datetime(6);
+alter table schedule add column end_time datetime(6);
+
+create table employee_slot (
+    schedule_id bigint not null,
+    employee_id bigint not null,
+    start_time datetime(6) not null,
+    end_time datetime(6) not null,
+    primary key (schedule_id, employee_id, start_time, end_time),
+    constraint fk_employee_slot_schedule foreign key (schedule_id) references schedule (id)
+) engine=InnoDB;
+
+create index idx_employee_slot_employee_start on employee_slot (employee_id, start_time);
+
+create table resource_version (
+    resource_id bigint not null,
+    kind varchar(32) not null,
+    version bigint not null,
+    changed_at bigint not null,
+    primary key (resource_id, kind)
+) engine=InnoDB;
+
+create table id_generator (
+    entity varchar(255) not null,
+    next_id bigint,
+    primary key (entity)
+) engine=InnoDB;
+
+-- The next block of every entity starts above the ids already in use (the pooled-lo optimizer keeps the start of
+-- the next block in next_id)
+insert into id_generator (entity, next_id) select 'customer', coalesce(max(id), 0) + 1 from customer;
+insert into id_generator (entity, next_id) select 'employee', coalesce(max(id), 0) + 1 from employee;
+insert into id_generator (entity, next_id) select 'pet', coalesce(max(id), 0) + 1 from pet;
+insert into id_generator (entity, next_id) select 'schedule', coalesce(max(id), 0) + 1 from schedule;
@@ -0,0 +1,69 @@
+-- The schema of the application before Flyway, with the tables and columns Hibernate 5 created for it with
+-- ddl-auto=update. Databases created that way are baselined at this version (spring.flyway.baseline-on-migrate=true)
+-- instead of running it; V1_1 and every later migration then run on them as on a new database.
+
+create table customer (
+    id bigint not null,
+    name varchar(255),
+    phone_number varchar(255),
+    notes varchar(255),
+    primary key (id)
+) engine=InnoDB;
+
+create table pet (
+    id bigint not null,
+    type integer,
+    name varchar(255),
+    customer_id bigint not null,
+    birth_date date,
+    notes varchar(255),
+    primary key (id),
+    constraint fk_pet_customer foreign key (customer_id) references customer (id)
+) engine=InnoDB;
+
+create table employee (
+    id bigint not null,
+    name varchar(255),
+    primary key (id)
+) engine=InnoDB;
+
+create table employee_day_available (
+    employee_id bigint not null,
+    days_available varchar(255) not null,
+    primary key (employee_id, days_available),
+    constraint fk_employee_day_available_employee foreign key (employee_id) references employee (id)
+) engine=InnoDB;
+
+create table tbl_skills (
+    employee_id bigint not null,
+    skill varchar(255) not null,
+    primary key (employee_id, skill),
+    constraint fk_tbl_skills_employee foreign key (employee_id) references employee (id)
+) engine=InnoDB;
+
+create table schedule (
+    id bigint not null,
+    date date,
+    primary key (id)
+) engine=InnoDB;
+
+create table schedule_employee (
+    schedule_id bigint not null,
+    employee_id bigint not null,
+    constraint fk_schedule_employee_schedule foreign key (schedule_id) references schedule (id),
+    constraint fk_schedule_employee_employee foreign key (employee_id) references employee (id)
+) engine=InnoDB;
+
+create table schedule_pets (
+    schedule_id bigint not null,
+    pets_id bigint not null,
+    constraint fk_schedule_pets_schedule foreign key (schedule_id) references schedule (id),
+    constraint fk_schedule_pets_pet foreign key (pets_id) references pet (id)
+) engine=InnoDB;
+
+create table schedule_activities (
+    schedule_id bigint not null,
+    activities integer not null,
+    primary key (schedule_id, activities),
+    constraint fk_schedule_activities_schedule foreign key (schedule_id) references schedule (id)
+) engine=InnoDB;
@@ -0,0 +1,24 @@
+-- V1 has the types Hibernate 5 gave the enum columns, int for the ordinals and varchar for the names; bring them
+-- to the types the entities are validated against.
+alter table pet modify type tinyint;
+alter table schedule_activities modify activities tinyint not null;
+alter table employee_day_available
+    modify days_available enum ('MONDAY','TUESDAY','WEDNESDAY','THURSDAY','FRIDAY','SATURDAY','SUNDAY') not null;
+alter table tbl_skills modify skill enum ('PETTING','WALKING','FEEDING','MEDICATING','SHAVING') not null;
+
+-- Pets of a customer (PetRepository.findPetByCustomerId, the customer projections and schedule lookups)
+create index idx_pet_customer on pet (customer_id, id);
+
+-- The join tables are read from both sides: by schedule when fetching a schedule's employees and pets, by
+-- employee or pet when looking up their schedules
+create index idx_schedule_employee_schedule on schedule_employee (schedule_id, employee_id);
+create index idx_schedule_employee_employee on schedule_employee (employee_id, schedule_id);
+create index idx_schedule_pets_schedule on schedule_pets (schedule_id, pets_id);
+create index idx_schedule_pets_pet on schedule_pets (pets_id, schedule_id);
+
+-- Employees by day and by skill; the primary keys already cover the lookups by employee
+create index idx_employee_day_available_day on employee_day_available (days_available, employee_id);
+create index idx_tbl_skills_skill on tbl_skills (skill, employee_id);
+
+-- Schedules in a date range, in id order
+create index idx_schedule_date on schedule (date, id);
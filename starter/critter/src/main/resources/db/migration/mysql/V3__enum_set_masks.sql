@@ -0,0 +1,28 @@
+-- Employee skills and available days, and schedule activities, become integer bitmasks on the owning row
+-- (bit n set for the enum constant with ordinal n, see EnumSetMaskConverter). Copy the collection tables into
+-- the masks, then drop them.
+
+alter table employee add column skills_mask integer not null default 0;
+alter table employee add column days_mask integer not null default 0;
+alter table schedule add column activities_mask integer not null default 0;
+
+update employee e set skills_mask = (
+    select coalesce(sum(case s.skill
+        when 'PETTING' then 1 when 'WALKING' then 2 when 'FEEDING' then 4 when 'MEDICATING' then 8
+        when 'SHAVING' then 16 end), 0)
+    from tbl_skills s where s.employee_id = e.id);
+
+update employee e set days_mask = (
+    select coalesce(sum(case d.days_available
+        when 'MONDAY' then 1 when 'TUESDAY' then 2 when 'WEDNESDAY' then 4 when 'THURSDAY' then 8
+        when 'FRIDAY' then 16 when 'SATURDAY' then 32 when 'SUNDAY' then 64 end), 0)
+    from employee_day_available d where d.employee_id = e.id);
+
+-- The activities were stored as EmployeeSkill ordinals
+update schedule s set activities_mask = (
+    select coalesce(sum(case a.activities when 0 then 1 when 1 then 2 when 2 then 4 when 3 then 8 when 4 then 16 end), 0)
+    from schedule_activities a where a.schedule_id = s.id);
+
+drop table tbl_skills;
+drop table employee_day_available;
+drop table schedule_activities;
@@ -0,0 +1,15 @@
+-- Materialized availability per day (EmployeeDayCapacityService): for every day of the materialized horizon, one
+-- row per employee who works on that day, with the employee's skills mask and the minutes of the day that are not
+-- booked yet. The rows are derived from the employee and employee_slot rows and rewritten by the application.
+-- No foreign key to employee: its shared lock would make the rebuild wait for the bookings that update employee rows.
+
+create table employee_day_capacity (
+    work_date date not null,
+    employee_id bigint not null,
+    skills_mask integer not null,
+    remaining_minutes integer not null,
+    primary key (work_date, employee_id)
+) engine=InnoDB;
+
+-- The lookup by day uses the primary key; the refresh of an employee's days uses this one
+create index idx_employee_day_capacity_employee on employee_day_capacity (employee_id, work_date);
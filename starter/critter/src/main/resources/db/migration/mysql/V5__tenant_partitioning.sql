@@ -0,0 +1,40 @@
+-- Every clinic (tenant) gets its own partition of the entity tables: a tenant_id column, filled in and filtered
+-- on by Hibernate (@TenantId), that leads the indexes of the per-clinic lookups. The rows written before are the
+-- default tenant's. The collection and join tables are reached through their schedule or employee and stay as
+-- they are.
+
+alter table customer add column tenant_id varchar(64) not null default 'default';
+alter table pet add column tenant_id varchar(64) not null default 'default';
+alter table employee add column tenant_id varchar(64) not null default 'default';
+alter table schedule add column tenant_id varchar(64) not null default 'default';
+
+-- The listings and keyset pages of one clinic, in id order
+create index idx_customer_tenant on customer (tenant_id, id);
+create index idx_pet_tenant on pet (tenant_id, id);
+create index idx_employee_tenant on employee (tenant_id, id);
+create index idx_schedule_tenant on schedule (tenant_id, id);
+
+-- Schedules of a clinic in a date range, in id order
+drop index idx_schedule_date on schedule;
+create index idx_schedule_tenant_date on schedule (tenant_id, date, id);
+
+-- The materialized capacity is derived data and rebuilt on startup, so it is recreated with the tenant in front
+drop table employee_day_capacity;
+
+create table employee_day_capacity (
+    tenant_id varchar(64) not null,
+    work_date date not null,
+    employee_id bigint not null,
+    skills_mask integer not null,
+    remaining_minutes integer not null,
+    primary key (tenant_id, work_date, employee_id)
+) engine=InnoDB;
+
+create index idx_employee_day_capacity_employee on employee_day_capacity (tenant_id, employee_id, work_date);
+
+-- The versions behind the ETags are kept per clinic. The existing rows stay the default tenant's, so an ETag
+-- issued before the migration is not repeated for a different state.
+alter table resource_version
+    add column tenant_id varchar(64) not null default 'default' first,
+    drop primary key,
+    add primary key (tenant_id, kind, resource_id);
@@ -0,0 +1,10 @@
+-- The days of employee_day_capacity that have been materialized, per clinic (tenant). The node that writes new days
+-- holds the row lock of its clinic's row while it does, so the nodes sharing the database write every day once and
+-- a node that starts later finds the days already written. Both dates are null until the first days are written.
+
+create table day_capacity_horizon (
+    tenant_id varchar(64) not null,
+    first_day date,
+    last_day date,
+    primary key (tenant_id)
+) engine=InnoDB;
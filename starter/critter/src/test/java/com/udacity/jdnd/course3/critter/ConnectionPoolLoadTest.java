@@ -0,0 +1,233 @@
+package com.udacity.jdnd.course3.critter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.udacity.jdnd.course3.critter.pet.PetController;
+import com.udacity.jdnd.course3.critter.pet.PetDTO;
+import com.udacity.jdnd.course3.critter.pet.PetType;
+import com.udacity.jdnd.course3.critter.schedule.ScheduleDTO;
+import com.udacity.jdnd.course3.critter.user.CustomerDTO;
+import com.udacity.jdnd.course3.critter.user.EmployeeDTO;
+import com.udacity.jdnd.course3.critter.user.EmployeeRequestDTO;
+import com.udacity.jdnd.course3.critter.user.EmployeeSkill;
+import com.udacity.jdnd.course3.critter.user.UserController;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+/**
+ * Compares requests/s and p99 latency of POST /schedule and GET /user/employee/availability with the
+ * connection pool as configured in application.properties against the production profile
+ * (application-production.properties: fixed pool, warmup, short connection timeout and the Connector/J
+ * statement caches).
+ * <p>
+ * By default both runs use their own H2 database, which ignores the MySQL driver properties, so only the pool
+ * settings differ. Point it at an empty MySQL database to include them:
+ * {@code -Dcritter.benchmark.url=jdbc:mysql://localhost:3306/critter_bench -Dcritter.benchmark.username=...
+ * -Dcritter.benchmark.password=...}; the second run then also sees the rows of the first.
+ * This is a measurement, not a check, so it only runs on request:
+ * {@code mvn test -Dtest=ConnectionPoolLoadTest -Dcritter.benchmark=true [-Dcritter.benchmark.clients=200]}
+ */
+@EnabledIfSystemProperty(named = "critter.benchmark", matches = "true")
+public class ConnectionPoolLoadTest {
+
+    private static final int CLIENTS = Integer.getInteger("critter.benchmark.clients", 200);
+    private static final int REQUESTS_PER_CLIENT = Integer.getInteger("critter.benchmark.requests", 20);
+    private static final String URL = System.getProperty("critter.benchmark.url");
+    private static final int EMPLOYEES = 100;
+    private static final LocalDate FIRST_DATE = LocalDate.of(2020, 1, 6);
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    @Test
+    public void compareConnectionPoolSettings() throws Exception {
+        Result[] defaults = measure(false);
+        Result[] production = measure(true);
+        String[] endpoints = {"POST /schedule", "GET /user/employee/availability"};
+        for (int i = 0; i < endpoints.length; i++) {
+            System.out.printf("%s clients=%d: application.properties: %8.1f requests/s, p99 %6d ms, %d failed | "
+                            + "production profile: %8.1f requests/s, p99 %6d ms, %d failed%n",
+                    endpoints[i], CLIENTS, defaults[i].requestsPerSecond, defaults[i].p99Millis, defaults[i].failed,
+                    production[i].requestsPerSecond, production[i].p99Millis, production[i].failed);
+        }
+    }
+
+    private Result[] measure(boolean production) throws Exception {
+        List<String> properties = Lists.newArrayList(
+                "server.port=0",
+                "critter.booking.validate-availability=false",
+                // The JCache regions are shared by all contexts in the JVM, so a context on its own database must not use them
+                "spring.jpa.properties.hibernate.cache.use_second_level_cache=false",
+                "spring.jpa.properties.hibernate.cache.use_query_cache=false");
+        if (URL == null) {
+            // H2 rejects the Connector/J properties of the production profile unless told to ignore them
+            properties.add("spring.datasource.url=jdbc:h2:mem:connection-pool-" + production
+                    + ";IGNORE_UNKNOWN_SETTINGS=TRUE");
+        } else {
+            properties.add("spring.datasource.url=" + URL);
+            properties.add("spring.datasource.username=" + System.getProperty("critter.benchmark.username", ""));
+            properties.add("spring.datasource.password=" + System.getProperty("critter.benchmark.password", ""));
+            properties.add("spring.datasource.driver-class-name=com.mysql.cj.jdbc.Driver");
+        }
+
+        SpringApplicationBuilder builder = new SpringApplicationBuilder(CritterApplication.class)
+                .properties(properties.toArray(new String[0]));
+        if (production) {
+            builder.profiles("production");
+        }
+        try (ConfigurableApplicationContext context = builder.run()) {
+            List<Long> employeeIds = new ArrayList<>();
+            List<Long> petIds = new ArrayList<>();
+            populate(context, employeeIds, petIds);
+            String baseUrl = "http://localhost:"
+                    + ((ServletWebServerApplicationContext) context).getWebServer().getPort();
+
+            // Every booking gets its own day, so that none conflicts with another
+            AtomicInteger bookings = new AtomicInteger();
+            IntFunction<HttpRequest> book = i -> {
+                int booking = bookings.getAndIncrement();
+                ScheduleDTO schedule = new ScheduleDTO();
+                schedule.setEmployeeIds(Lists.newArrayList(employeeIds.get(booking % employeeIds.size())));
+                schedule.setPetIds(Lists.newArrayList(petIds.get(booking % petIds.size())));
+                schedule.setDate(FIRST_DATE.plusDays(booking));
+                schedule.setActivities(Sets.newHashSet(EmployeeSkill.FEEDING));
+                return HttpRequest.newBuilder(URI.create(baseUrl + "/schedule"))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(json(schedule)))
+                        .timeout(Duration.ofMinutes(2))
+                        .build();
+            };
+            IntFunction<HttpRequest> findAvailable = i -> {
+                EmployeeRequestDTO request = new EmployeeRequestDTO();
+                request.setDate(FIRST_DATE.plusDays(i % 7));
+                request.setSkills(Sets.newHashSet(EmployeeSkill.values()[i % EmployeeSkill.values().length]));
+                return HttpRequest.newBuilder(URI.create(baseUrl + "/user/employee/availability"))
+                        .header("Content-Type", "application/json")
+                        .method("GET", HttpRequest.BodyPublishers.ofString(json(request)))
+                        .timeout(Duration.ofMinutes(2))
+                        .build();
+            };
+
+            // Warm up the JIT with a small fraction of the load
+            run(book, Math.max(1, CLIENTS / 10));
+            run(findAvailable, Math.max(1, CLIENTS / 10));
+            return new Result[]{run(book, CLIENTS), run(findAvailable, CLIENTS)};
+        }
+    }
+
+    private static Result run(IntFunction<HttpRequest> requests, int clients) throws Exception {
+        long[] latencies = new long[clients * REQUESTS_PER_CLIENT];
+        AtomicInteger failed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+             HttpClient client = HttpClient.newBuilder()
+                     .executor(executor)
+                     .connectTimeout(Duration.ofMinutes(1))
+                     .build()) {
+            List<Future<?>> results = Lists.newArrayList();
+            for (int c = 0; c < clients; c++) {
+                int first = c * REQUESTS_PER_CLIENT;
+                results.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < REQUESTS_PER_CLIENT; i++) {
+                        HttpRequest request = requests.apply(first + i);
+                        long sent = System.nanoTime();
+                        try {
+                            if (client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() != 200) {
+                                failed.incrementAndGet();
+                            }
+                        } catch (IOException exception) {
+                            failed.incrementAndGet();
+                        }
+                        latencies[first + i] = System.nanoTime() - sent;
+                    }
+                    return null;
+                }));
+            }
+
+            long started = System.nanoTime();
+            start.countDown();
+            for (Future<?> result : results) {
+                result.get(10, TimeUnit.MINUTES);
+            }
+            double seconds = (System.nanoTime() - started) / 1e9;
+
+            Arrays.sort(latencies);
+            long p99 = latencies[(int) Math.ceil(latencies.length * 0.99) - 1];
+            return new Result(latencies.length / seconds, TimeUnit.NANOSECONDS.toMillis(p99), failed.get());
+        }
+    }
+
+    // Employees that work every day with two skills each, and one customer with as many pets
+    private static void populate(ConfigurableApplicationContext context, List<Long> employeeIds, List<Long> petIds) {
+        UserController userController = context.getBean(UserController.class);
+        PetController petController = context.getBean(PetController.class);
+
+        CustomerDTO customer = new CustomerDTO();
+        customer.setName("Pool Customer");
+        customer.setPhoneNumber("123-456-789");
+        long customerId = userController.saveCustomer(customer).getId();
+
+        EmployeeSkill[] skills = EmployeeSkill.values();
+        for (int i = 0; i < EMPLOYEES; i++) {
+            EmployeeDTO employee = new EmployeeDTO();
+            employee.setName("Employee " + i);
+            employee.setSkills(Sets.newHashSet(skills[i % skills.length], skills[(i + 1) % skills.length]));
+            employee.setDaysAvailable(EnumSet.allOf(DayOfWeek.class));
+            employeeIds.add(userController.saveEmployee(employee).getId());
+
+            PetDTO pet = new PetDTO();
+            pet.setName("Pet " + i);
+            pet.setType(PetType.CAT);
+            pet.setOwnerId(customerId);
+            petIds.add(petController.savePet(pet).getId());
+        }
+    }
+
+    private String json(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (IOException exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    private static final class Result {
+
+        private final double requestsPerSecond;
+        private final long p99Millis;
+        private final int failed;
+
+        private Result(double requestsPerSecond, long p99Millis, int failed) {
+            this.requestsPerSecond = requestsPerSecond;
+            this.p99Millis = p99Millis;
+            this.failed = failed;
+        }
+    }
+}
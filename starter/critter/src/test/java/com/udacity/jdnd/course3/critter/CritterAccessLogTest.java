@@ -0,0 +1,112 @@
+package com.udacity.jdnd.course3.critter;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.udacity.jdnd.course3.critter.user.CustomerDTO;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Tests that every request ends up as a JSON line in the access log, with its route, status and the time spent
+ * in the database, and that the file is rolled over by size.
+ * <p>
+ * The requests commit, so this class runs on its own database without the shared second-level cache.
+ */
+@SpringBootTest(classes = CritterApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {
+                "spring.datasource.url=jdbc:h2:mem:critter-access-log",
+                // The JCache regions are shared by all contexts in the JVM, so a context on its own database must not use them
+                "spring.jpa.properties.hibernate.cache.use_second_level_cache=false",
+                "spring.jpa.properties.hibernate.cache.use_query_cache=false",
+                "critter.access-log.enabled=true",
+                "critter.access-log.path=target/access-log-test/access.log",
+                "critter.access-log.buffer-size=1024",
+                "critter.access-log.max-file-size=2KB",
+                "critter.access-log.max-history=2"
+        })
+public class CritterAccessLogTest {
+
+    private static final Path LOG = Path.of("target/access-log-test/access.log");
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @BeforeAll
+    public static void deleteOldLogs() throws IOException {
+        FileSystemUtils.deleteRecursively(LOG.getParent());
+    }
+
+    @Test
+    public void testRequestsAreLoggedAndFilesRolled() throws Exception {
+        // Enough requests for several 2KB files
+        for (int i = 0; i < 40; i++) {
+            restTemplate.getForObject("/user/customer", String.class);
+        }
+        CustomerDTO customerDTO = new CustomerDTO();
+        customerDTO.setName("Logged Customer");
+        customerDTO.setPhoneNumber("123-456-789");
+        restTemplate.postForObject("/user/customer", customerDTO, CustomerDTO.class);
+        restTemplate.getForObject("/user/customer/pet/{petId}", String.class, Long.MAX_VALUE);
+
+        // The writer runs in the background
+        JsonNode failed = null;
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (failed == null && System.currentTimeMillis() < deadline) {
+            failed = find(readLines(), "GET", "/user/customer/pet/{petId}").orElse(null);
+            if (failed == null) {
+                Thread.sleep(50);
+            }
+        }
+        Assertions.assertNotNull(failed, "The last request was not logged");
+        Assertions.assertEquals(400, failed.get("status").asInt());
+
+        JsonNode saved = find(readLines(), "POST", "/user/customer").orElseThrow();
+        Assertions.assertEquals(200, saved.get("status").asInt());
+        Assertions.assertFalse(saved.get("async").asBoolean());
+        Assertions.assertTrue(saved.get("dbStatements").asInt() > 0);
+        Assertions.assertTrue(saved.get("durationMicros").asLong() >= saved.get("dbMicros").asLong());
+        Assertions.assertTrue(saved.has("serializationMicros"));
+
+        // Rolled over by size, and only max-history old files kept
+        Assertions.assertTrue(Files.exists(LOG.resolveSibling("access.log.1")));
+        Assertions.assertTrue(Files.exists(LOG.resolveSibling("access.log.2")));
+        Assertions.assertFalse(Files.exists(LOG.resolveSibling("access.log.3")));
+        Assertions.assertTrue(Files.size(LOG.resolveSibling("access.log.1")) <= 2048);
+    }
+
+    private List<JsonNode> readLines() throws IOException {
+        List<JsonNode> lines = new ArrayList<>();
+        for (String file : new String[]{"access.log.2", "access.log.1", "access.log"}) {
+            try {
+                for (String line : Files.readAllLines(LOG.resolveSibling(file))) {
+                    lines.add(objectMapper.readTree(line));
+                }
+            } catch (NoSuchFileException exception) {
+                // Not rolled that far yet, or being rolled right now
+            }
+        }
+        return lines;
+    }
+
+    private static Optional<JsonNode> find(List<JsonNode> lines, String method, String route) {
+        return lines.stream()
+                .filter(line -> method.equals(line.get("method").asText()) && route.equals(line.get("route").asText()))
+                .reduce((first, second) -> second);
+    }
+}
@@ -0,0 +1,158 @@
+package com.udacity.jdnd.course3.critter;
+
+import com.udacity.jdnd.course3.critter.entity.Employee;
+import com.udacity.jdnd.course3.critter.entity.EnumSetMaskConverter;
+import com.udacity.jdnd.course3.critter.repository.EmployeeRepository;
+import com.udacity.jdnd.course3.critter.service.EmployeeAvailabilityIndex;
+import com.udacity.jdnd.course3.critter.service.EmployeeService;
+import com.udacity.jdnd.course3.critter.tenant.TenantScoped;
+import com.udacity.jdnd.course3.critter.user.EmployeeSkill;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Tests that the in-memory availability index answers like the database lookup, and that it only takes over
+ * written employees once they are committed.
+ * <p>
+ * The writes commit, so this class runs on its own database without the shared second-level cache.
+ */
+@SpringBootTest(classes = CritterApplication.class, properties = {
+        "spring.datasource.url=jdbc:h2:mem:critter-availability-index",
+        // The JCache regions are shared by all contexts in the JVM, so a context on its own database must not use them
+        "spring.jpa.properties.hibernate.cache.use_second_level_cache=false",
+        "spring.jpa.properties.hibernate.cache.use_query_cache=false"
+})
+public class CritterAvailabilityIndexTest {
+
+    // A Monday long before the materialized capacity horizon, so lookups use the index or the mask query
+    private static final LocalDate MONDAY = LocalDate.of(2019, 12, 23);
+
+    @Autowired
+    private EmployeeService employeeService;
+
+    @Autowired
+    private EmployeeRepository employeeRepository;
+
+    @Autowired
+    private TenantScoped<EmployeeAvailabilityIndex> availabilityIndexes;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private EmployeeAvailabilityIndex availabilityIndex;
+
+    @BeforeEach
+    public void populate() {
+        availabilityIndex = availabilityIndexes.get();
+        if (!employeeRepository.findAll().isEmpty()) {
+            return;
+        }
+        // Every combination of two skills, each on a different pair of days
+        EmployeeSkill[] skills = EmployeeSkill.values();
+        DayOfWeek[] days = DayOfWeek.values();
+        int n = 0;
+        for (int first = 0; first < skills.length; first++) {
+            for (int second = first; second < skills.length; second++, n++) {
+                employeeService.saveEmployee(new Employee(null, "Employee " + n,
+                        EnumSet.of(days[n % days.length], days[(n * 3) % days.length]),
+                        EnumSet.of(skills[first], skills[second])), null);
+            }
+        }
+    }
+
+    @Test
+    public void testIndexMatchesTheMaskQuery() {
+        Assertions.assertTrue(availabilityIndex.isReady());
+        for (DayOfWeek day : DayOfWeek.values()) {
+            for (Set<EmployeeSkill> skills : skillCombinations()) {
+                Set<Long> fromQuery = employeeRepository.findAvailable(
+                                EnumSetMaskConverter.toMask(EnumSet.of(day)), EnumSetMaskConverter.toMask(skills))
+                        .stream().map(Employee::getId).collect(Collectors.toCollection(TreeSet::new));
+                Assertions.assertEquals(fromQuery, new TreeSet<>(availabilityIndex.findEmployeeIds(day, skills)),
+                        day + " " + skills);
+            }
+        }
+    }
+
+    @Test
+    public void testServiceAnswersTheSameWithoutTheIndex() {
+        List<Set<Long>> withIndex = lookUpEveryDay();
+        Object target = AopTestUtils.getUltimateTargetObject(employeeService);
+        ReflectionTestUtils.setField(target, "availabilityIndexEnabled", false);
+        try {
+            Assertions.assertEquals(withIndex, lookUpEveryDay());
+        } finally {
+            ReflectionTestUtils.setField(target, "availabilityIndexEnabled", true);
+        }
+    }
+
+    @Test
+    public void testIndexFollowsCommittedAvailabilityOnly() {
+        long employeeId = employeeService.saveEmployee(new Employee(null, "Moving Employee",
+                EnumSet.of(DayOfWeek.MONDAY), EnumSet.of(EmployeeSkill.SHAVING)), null).getId();
+        Assertions.assertTrue(findIds(DayOfWeek.MONDAY).contains(employeeId));
+
+        employeeService.setEmployeeAvailability(EnumSet.of(DayOfWeek.TUESDAY), employeeId);
+        Assertions.assertFalse(findIds(DayOfWeek.MONDAY).contains(employeeId));
+        Assertions.assertTrue(findIds(DayOfWeek.TUESDAY).contains(employeeId));
+
+        // A change that is rolled back never reaches the index, while its own transaction reads it back
+        transactionTemplate.executeWithoutResult(status -> {
+            employeeService.setEmployeeAvailability(EnumSet.of(DayOfWeek.FRIDAY), employeeId);
+            Assertions.assertFalse(findIds(DayOfWeek.FRIDAY).contains(employeeId));
+            Assertions.assertTrue(employeeService.getEmployeesByService(MONDAY.plusDays(4),
+                    EnumSet.of(EmployeeSkill.SHAVING)).stream().anyMatch(e -> e.getId() == employeeId));
+            status.setRollbackOnly();
+        });
+        Assertions.assertFalse(findIds(DayOfWeek.FRIDAY).contains(employeeId));
+        Assertions.assertTrue(findIds(DayOfWeek.TUESDAY).contains(employeeId));
+        Assertions.assertTrue(employeeService.getEmployeesByService(MONDAY.plusDays(1),
+                EnumSet.of(EmployeeSkill.SHAVING)).stream().anyMatch(e -> e.getId() == employeeId));
+    }
+
+    private List<Long> findIds(DayOfWeek day) {
+        return availabilityIndex.findEmployeeIds(day, EnumSet.of(EmployeeSkill.SHAVING));
+    }
+
+    private List<Set<Long>> lookUpEveryDay() {
+        List<Set<Long>> result = new ArrayList<>();
+        for (int day = 0; day < 7; day++) {
+            for (Set<EmployeeSkill> skills : skillCombinations()) {
+                result.add(employeeService.getEmployeesByService(MONDAY.plusDays(day), skills).stream()
+                        .map(Employee::getId).collect(Collectors.toCollection(TreeSet::new)));
+            }
+        }
+        return result;
+    }
+
+    // Every subset of the skills, the empty one included
+    private static List<Set<EmployeeSkill>> skillCombinations() {
+        EmployeeSkill[] skills = EmployeeSkill.values();
+        List<Set<EmployeeSkill>> combinations = new ArrayList<>();
+        for (int mask = 0; mask < 1 << skills.length; mask++) {
+            Set<EmployeeSkill> combination = EnumSet.noneOf(EmployeeSkill.class);
+            for (EmployeeSkill skill : skills) {
+                if ((mask & 1 << skill.ordinal()) != 0) {
+                    combination.add(skill);
+                }
+            }
+            combinations.add(combination);
+        }
+        return combinations;
+    }
+}
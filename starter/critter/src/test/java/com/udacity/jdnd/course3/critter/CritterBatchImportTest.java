@@ -0,0 +1,79 @@
+package com.udacity.jdnd.course3.critter;
+
+import com.udacity.jdnd.course3.critter.pet.PetController;
+import com.udacity.jdnd.course3.critter.pet.PetDTO;
+import com.udacity.jdnd.course3.critter.user.CustomerDTO;
+import com.udacity.jdnd.course3.critter.user.EmployeeDTO;
+import com.udacity.jdnd.course3.critter.user.EmployeeSkill;
+import com.udacity.jdnd.course3.critter.user.UserController;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.DayOfWeek;
+import java.util.List;
+
+/**
+ * Tests the batch import endpoints with both a JSON array and newline-delimited JSON as input.
+ */
+@Transactional
+@SpringBootTest(classes = CritterApplication.class)
+public class CritterBatchImportTest {
+
+    @Autowired
+    private UserController userController;
+
+    @Autowired
+    private PetController petController;
+
+    @Test
+    public void testImportCustomersAndPets() {
+        List<Long> customerIds = userController.saveCustomers(body(
+                "[{\"name\":\"Customer A\",\"phoneNumber\":\"123-456-789\"}," +
+                        "{\"name\":\"Customer B\",\"phoneNumber\":\"987-654-321\",\"notes\":\"Imported\"}]"));
+        Assertions.assertEquals(2, customerIds.size());
+
+        long ownerId = customerIds.get(1);
+        List<Long> petIds = petController.savePets(body(
+                "{\"type\":\"CAT\",\"name\":\"Kilo\",\"ownerId\":" + ownerId + "}\n" +
+                        "{\"type\":\"DOG\",\"name\":\"Rex\",\"ownerId\":" + ownerId + ",\"birthDate\":\"2019-01-01\"}\n"));
+        Assertions.assertEquals(2, petIds.size());
+
+        PetDTO pet = petController.getPet(petIds.get(1));
+        Assertions.assertEquals("Rex", pet.getName());
+        Assertions.assertEquals(ownerId, pet.getOwnerId());
+
+        CustomerDTO owner = userController.getOwnerByPet(petIds.get(0));
+        Assertions.assertEquals("Customer B", owner.getName());
+        Assertions.assertEquals(petIds, owner.getPetIds());
+    }
+
+    @Test
+    public void testImportEmployees() {
+        List<Long> employeeIds = userController.saveEmployees(body(
+                "{\"name\":\"Employee A\",\"skills\":[\"FEEDING\"],\"daysAvailable\":[\"MONDAY\"]}\n" +
+                        "{\"name\":\"Employee B\",\"skills\":[\"WALKING\",\"PETTING\"],\"daysAvailable\":[\"FRIDAY\"]}"));
+        Assertions.assertEquals(2, employeeIds.size());
+
+        EmployeeDTO employee = userController.getEmployee(employeeIds.get(1));
+        Assertions.assertEquals("Employee B", employee.getName());
+        Assertions.assertTrue(employee.getSkills().contains(EmployeeSkill.PETTING));
+        Assertions.assertTrue(employee.getDaysAvailable().contains(DayOfWeek.FRIDAY));
+    }
+
+    @Test
+    public void testMalformedInputIsBadRequest() {
+        Assertions.assertThrows(ResponseStatusException.class,
+                () -> userController.saveCustomers(body("[{\"name\":\"Customer A\"},")));
+    }
+
+    private static InputStream body(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,585 @@
+package com.udacity.jdnd.course3.critter;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.udacity.jdnd.course3.critter.entity.EmployeeSlot;
+import com.udacity.jdnd.course3.critter.entity.EnumSetMaskConverter;
+import com.udacity.jdnd.course3.critter.pet.PetController;
+import com.udacity.jdnd.course3.critter.pet.PetDTO;
+import com.udacity.jdnd.course3.critter.pet.PetType;
+import com.udacity.jdnd.course3.critter.schedule.AssignmentResultDTO;
+import com.udacity.jdnd.course3.critter.schedule.RecurringScheduleDTO;
+import com.udacity.jdnd.course3.critter.schedule.ScheduleDTO;
+import com.udacity.jdnd.course3.critter.service.AssignmentSolver;
+import com.udacity.jdnd.course3.critter.service.EmployeeDayCapacityService;
+import com.udacity.jdnd.course3.critter.service.EmployeeService;
+import com.udacity.jdnd.course3.critter.service.ScheduleConflictException;
+import com.udacity.jdnd.course3.critter.service.ScheduleService;
+import com.udacity.jdnd.course3.critter.user.CustomerDTO;
+import com.udacity.jdnd.course3.critter.user.EmployeeDTO;
+import com.udacity.jdnd.course3.critter.user.EmployeeRequestDTO;
+import com.udacity.jdnd.course3.critter.user.EmployeeSkill;
+import com.udacity.jdnd.course3.critter.user.EmployeeSlotDTO;
+import com.udacity.jdnd.course3.critter.user.UserController;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests schedule booking: availability and skill validation, time slots, recurring and batch bookings, the free
+ * slot searches, the materialized day capacity, employee assignment, and that concurrent bookings never assign an
+ * employee twice at the same time.
+ * <p>
+ * The bookings commit, so this class runs on its own database without the shared second-level cache.
+ */
+@SpringBootTest(classes = CritterApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {
+                "spring.datasource.url=jdbc:h2:mem:critter-booking",
+                // The JCache regions are shared by all contexts in the JVM, so a context on its own database must not use them
+                "spring.jpa.properties.hibernate.cache.use_second_level_cache=false",
+                "spring.jpa.properties.hibernate.cache.use_query_cache=false",
+                "critter.booking.validate-availability=true"
+        })
+public class CritterBookingTest {
+
+    private static final int REQUESTS = Integer.getInteger("critter.stress.requests", 2000);
+    private static final int THREADS = Integer.getInteger("critter.stress.threads", 16);
+    private static final LocalDate MONDAY = LocalDate.of(2030, 1, 7);
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private UserController userController;
+
+    @Autowired
+    private PetController petController;
+
+    @Autowired
+    private ScheduleService scheduleService;
+
+    @Autowired
+    private EmployeeService employeeService;
+
+    @Autowired
+    private EmployeeDayCapacityService dayCapacityService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void testBookingIsValidatedAgainstAvailabilityAndSkills() {
+        long employeeId = saveEmployee(Sets.newHashSet(EmployeeSkill.FEEDING), Sets.newHashSet(DayOfWeek.MONDAY));
+        long petId = savePet();
+
+        // Not available on Tuesday
+        Assertions.assertEquals(HttpStatus.BAD_REQUEST,
+                post(employeeId, petId, MONDAY.plusDays(1), EmployeeSkill.FEEDING).getStatusCode());
+        // Cannot walk
+        Assertions.assertEquals(HttpStatus.BAD_REQUEST,
+                post(employeeId, petId, MONDAY, EmployeeSkill.WALKING).getStatusCode());
+        // Unknown employee
+        Assertions.assertEquals(HttpStatus.BAD_REQUEST,
+                post(Long.MAX_VALUE, petId, MONDAY, EmployeeSkill.FEEDING).getStatusCode());
+
+        Assertions.assertEquals(HttpStatus.OK, post(employeeId, petId, MONDAY, EmployeeSkill.FEEDING).getStatusCode());
+        // Already booked on that date
+        Assertions.assertEquals(HttpStatus.CONFLICT,
+                post(employeeId, petId, MONDAY, EmployeeSkill.FEEDING).getStatusCode());
+        Assertions.assertEquals(HttpStatus.OK,
+                post(employeeId, petId, MONDAY.plusWeeks(1), EmployeeSkill.FEEDING).getStatusCode());
+    }
+
+    @Test
+    public void testTimeSlotsConflictOnlyWhenOverlapping() {
+        long employeeId = saveEmployee(EnumSet.allOf(EmployeeSkill.class), EnumSet.allOf(DayOfWeek.class));
+        long petId = savePet();
+        LocalDate date = MONDAY.plusWeeks(150);
+
+        Assertions.assertEquals(HttpStatus.OK, post(employeeId, petId, date.atTime(9, 0), date.atTime(10, 0))
+                .getStatusCode());
+        // Overlaps the first slot
+        Assertions.assertEquals(HttpStatus.CONFLICT,
+                post(employeeId, petId, date.atTime(9, 30), date.atTime(10, 30)).getStatusCode());
+        // Starts when the first slot ends
+        ResponseEntity<ScheduleDTO> adjacent = post(employeeId, petId, date.atTime(10, 0), date.atTime(11, 0));
+        Assertions.assertEquals(HttpStatus.OK, adjacent.getStatusCode());
+        Assertions.assertEquals(date, adjacent.getBody().getDate());
+        Assertions.assertEquals(date.atTime(10, 0), adjacent.getBody().getStartTime());
+        Assertions.assertEquals(date.atTime(11, 0), adjacent.getBody().getEndTime());
+        // A booking without times takes the whole day
+        Assertions.assertEquals(HttpStatus.CONFLICT,
+                post(employeeId, petId, date, EmployeeSkill.FEEDING).getStatusCode());
+
+        // Empty, multi-day and mismatching slots are rejected
+        Assertions.assertEquals(HttpStatus.BAD_REQUEST,
+                post(employeeId, petId, date.atTime(12, 0), date.atTime(12, 0)).getStatusCode());
+        Assertions.assertEquals(HttpStatus.BAD_REQUEST,
+                post(employeeId, petId, date.atTime(23, 0), date.plusDays(1).atTime(1, 0)).getStatusCode());
+        ScheduleDTO mismatch = createScheduleDTO(Lists.newArrayList(employeeId), petId, date.plusDays(1),
+                EmployeeSkill.FEEDING);
+        mismatch.setStartTime(date.atTime(12, 0));
+        mismatch.setEndTime(date.atTime(13, 0));
+        Assertions.assertEquals(HttpStatus.BAD_REQUEST,
+                restTemplate.postForEntity("/schedule", mismatch, ScheduleDTO.class).getStatusCode());
+    }
+
+    @Test
+    public void testFreeEmployeeAndNextSlotSearch() {
+        long busyId = saveEmployee(Sets.newHashSet(EmployeeSkill.FEEDING), Sets.newHashSet(DayOfWeek.MONDAY));
+        long freeId = saveEmployee(Sets.newHashSet(EmployeeSkill.FEEDING), Sets.newHashSet(DayOfWeek.MONDAY));
+        long walkerId = saveEmployee(Sets.newHashSet(EmployeeSkill.WALKING), Sets.newHashSet(DayOfWeek.MONDAY));
+        long petId = savePet();
+        LocalDate date = MONDAY.plusWeeks(160);
+        Assertions.assertEquals(HttpStatus.OK, post(busyId, petId, date.atTime(9, 0), date.atTime(12, 0))
+                .getStatusCode());
+
+        // Only the employee without a booking is free during the slot; the walker lacks the skill
+        List<Long> free = freeEmployeeIds(date.atTime(10, 0), date.atTime(11, 0));
+        Assertions.assertTrue(free.contains(freeId));
+        Assertions.assertFalse(free.contains(busyId));
+        Assertions.assertFalse(free.contains(walkerId));
+        Assertions.assertTrue(freeEmployeeIds(date.atTime(12, 0), date.atTime(13, 0)).contains(busyId));
+        // Nobody works on Tuesday
+        Assertions.assertTrue(freeEmployeeIds(date.plusDays(1).atTime(10, 0), date.plusDays(1).atTime(11, 0))
+                .stream().noneMatch(id -> id == busyId || id == freeId));
+
+        // An hour fits before the booking, two hours only after it
+        Assertions.assertEquals(date.atTime(8, 0), nextSlot(busyId, date.atTime(8, 0), 60).getStartTime());
+        EmployeeSlotDTO afterBooking = nextSlot(busyId, date.atTime(8, 0), 120);
+        Assertions.assertEquals(date.atTime(12, 0), afterBooking.getStartTime());
+        Assertions.assertEquals(date.atTime(14, 0), afterBooking.getEndTime());
+        // Slots stay within one working day, so the next one is on the following Monday
+        Assertions.assertEquals(date.plusWeeks(1).atStartOfDay(),
+                nextSlot(busyId, date.atTime(23, 30), 60).getStartTime());
+    }
+
+    @Test
+    public void testDayCapacityFollowsBookingsAndAvailability() {
+        long wholeDayId = saveEmployee(Sets.newHashSet(EmployeeSkill.SHAVING), EnumSet.allOf(DayOfWeek.class));
+        long oneHourId = saveEmployee(Sets.newHashSet(EmployeeSkill.SHAVING, EmployeeSkill.FEEDING),
+                EnumSet.allOf(DayOfWeek.class));
+        long petId = savePet();
+        // Within the materialized horizon
+        LocalDate date = LocalDate.now().plusDays(3);
+        Assertions.assertTrue(availableEmployeeIds(date).containsAll(List.of(wholeDayId, oneHourId)));
+
+        Assertions.assertEquals(HttpStatus.OK, post(wholeDayId, petId, date, EmployeeSkill.SHAVING).getStatusCode());
+        Assertions.assertEquals(HttpStatus.OK, post(oneHourId, petId, date.atTime(9, 0), date.atTime(10, 0))
+                .getStatusCode());
+
+        // Booked for the whole day, the employee has no capacity left on it
+        List<Long> available = availableEmployeeIds(date);
+        Assertions.assertFalse(available.contains(wholeDayId));
+        Assertions.assertTrue(available.contains(oneHourId));
+        Assertions.assertTrue(availableEmployeeIds(date.plusDays(1)).contains(wholeDayId));
+        Assertions.assertEquals(23 * 60, jdbcTemplate.queryForObject("select remaining_minutes from " +
+                "employee_day_capacity where work_date = ? and employee_id = ?", Integer.class, date, oneHourId));
+
+        // No longer working on that weekday
+        userController.setAvailability(EnumSet.complementOf(EnumSet.of(date.getDayOfWeek())), oneHourId);
+        Assertions.assertFalse(availableEmployeeIds(date).contains(oneHourId));
+        Assertions.assertTrue(availableEmployeeIds(date.plusDays(1)).contains(oneHourId));
+    }
+
+    @Test
+    public void testDayCapacityIsWrittenOncePerDatabase() {
+        long employeeId = saveEmployee(Sets.newHashSet(EmployeeSkill.SHAVING), EnumSet.allOf(DayOfWeek.class));
+        LocalDate lastDay = jdbcTemplate.queryForObject("select last_day from day_capacity_horizon " +
+                "where tenant_id = 'default'", LocalDate.class);
+        Assertions.assertFalse(lastDay.isBefore(LocalDate.now()));
+        jdbcTemplate.update("update employee_day_capacity set remaining_minutes = 1 where employee_id = ?",
+                employeeId);
+
+        // As another node starting on the same database: the recorded days are not written again
+        Object restarted = AopTestUtils.getUltimateTargetObject(dayCapacityService);
+        ReflectionTestUtils.setField(restarted, "horizon", null);
+        dayCapacityService.rebuild();
+        Assertions.assertTrue(dayCapacityService.covers(lastDay));
+        Assertions.assertEquals(0, jdbcTemplate.queryForObject("select count(*) from employee_day_capacity " +
+                "where employee_id = ? and work_date <= ? and remaining_minutes <> 1", Integer.class,
+                employeeId, lastDay));
+        jdbcTemplate.update("update employee_day_capacity set remaining_minutes = ? where employee_id = ?",
+                24 * 60, employeeId);
+    }
+
+    @Test
+    public void testBookedAllDayIsLeftOutInsideAndOutsideTheHorizon() {
+        long wholeDayId = saveEmployee(Sets.newHashSet(EmployeeSkill.SHAVING), EnumSet.allOf(DayOfWeek.class));
+        long oneHourId = saveEmployee(Sets.newHashSet(EmployeeSkill.SHAVING, EmployeeSkill.FEEDING),
+                EnumSet.allOf(DayOfWeek.class));
+        long petId = savePet();
+        // One date read from the capacity rows, one from the availability index or the mask query
+        LocalDate inside = LocalDate.now().plusDays(5);
+        LocalDate outside = MONDAY.plusWeeks(30);
+        Assertions.assertTrue(dayCapacityService.covers(inside));
+        Assertions.assertFalse(dayCapacityService.covers(outside));
+
+        for (LocalDate date : List.of(inside, outside)) {
+            Assertions.assertEquals(HttpStatus.OK,
+                    post(wholeDayId, petId, date, EmployeeSkill.SHAVING).getStatusCode());
+            Assertions.assertEquals(HttpStatus.OK,
+                    post(oneHourId, petId, date.atTime(9, 0), date.atTime(10, 0)).getStatusCode());
+        }
+
+        Object target = AopTestUtils.getUltimateTargetObject(employeeService);
+        for (boolean indexEnabled : List.of(true, false)) {
+            ReflectionTestUtils.setField(target, "availabilityIndexEnabled", indexEnabled);
+            try {
+                for (LocalDate date : List.of(inside, outside)) {
+                    List<Long> available = availableEmployeeIds(date);
+                    Assertions.assertFalse(available.contains(wholeDayId), date + " index " + indexEnabled);
+                    Assertions.assertTrue(available.contains(oneHourId), date + " index " + indexEnabled);
+                    Assertions.assertTrue(availableEmployeeIds(date.plusDays(1)).contains(wholeDayId));
+                }
+            } finally {
+                ReflectionTestUtils.setField(target, "availabilityIndexEnabled", true);
+            }
+        }
+    }
+
+    @Test
+    public void testRecurringAndBatchBookingsAreAllOrNothing() {
+        long employeeId = saveEmployee(Sets.newHashSet(EmployeeSkill.WALKING), Sets.newHashSet(DayOfWeek.MONDAY));
+        long petId = savePet();
+        LocalDate firstMonday = MONDAY.plusWeeks(200);
+
+        // Every Monday for 26 weeks
+        RecurringScheduleDTO weekly = new RecurringScheduleDTO();
+        weekly.setEmployeeIds(Lists.newArrayList(employeeId));
+        weekly.setPetIds(Lists.newArrayList(petId));
+        weekly.setActivities(Sets.newHashSet(EmployeeSkill.WALKING));
+        weekly.setStartDate(firstMonday);
+        weekly.setWeeks(26);
+        weekly.setStartTime(LocalTime.of(9, 0));
+        weekly.setEndTime(LocalTime.of(10, 0));
+        ResponseEntity<ScheduleDTO[]> booked = restTemplate.postForEntity("/schedule/recurring", weekly,
+                ScheduleDTO[].class);
+        Assertions.assertEquals(HttpStatus.OK, booked.getStatusCode());
+        Assertions.assertEquals(26, booked.getBody().length);
+        Assertions.assertEquals(firstMonday.plusWeeks(25).atTime(9, 0), booked.getBody()[25].getStartTime());
+
+        // The last week overlaps, so none of the bookings is made
+        weekly.setStartDate(firstMonday.plusWeeks(25));
+        weekly.setStartTime(LocalTime.of(9, 30));
+        weekly.setEndTime(LocalTime.of(10, 30));
+        Assertions.assertEquals(HttpStatus.CONFLICT,
+                restTemplate.postForEntity("/schedule/recurring", weekly, String.class).getStatusCode());
+        Assertions.assertEquals(26, scheduleService.getEmployeeSchedule(employeeId).size());
+
+        // Two bookings of the batch overlap each other
+        ScheduleDTO first = createScheduleDTO(Lists.newArrayList(employeeId), petId, firstMonday.plusWeeks(30),
+                EmployeeSkill.WALKING);
+        ScheduleDTO second = createScheduleDTO(Lists.newArrayList(employeeId), petId, null, EmployeeSkill.WALKING);
+        second.setStartTime(firstMonday.plusWeeks(30).atTime(14, 0));
+        second.setEndTime(firstMonday.plusWeeks(30).atTime(15, 0));
+        Assertions.assertEquals(HttpStatus.CONFLICT, restTemplate.postForEntity("/schedule/batch",
+                Lists.newArrayList(first, second), String.class).getStatusCode());
+
+        // The employee does not work on Tuesday
+        ScheduleDTO tuesday = createScheduleDTO(Lists.newArrayList(employeeId), petId, firstMonday.plusWeeks(30)
+                .plusDays(1), EmployeeSkill.WALKING);
+        Assertions.assertEquals(HttpStatus.BAD_REQUEST, restTemplate.postForEntity("/schedule/batch",
+                Lists.newArrayList(first, tuesday), String.class).getStatusCode());
+        Assertions.assertEquals(26, scheduleService.getEmployeeSchedule(employeeId).size());
+
+        Assertions.assertEquals(HttpStatus.OK, restTemplate.postForEntity("/schedule/batch",
+                Lists.newArrayList(first), ScheduleDTO[].class).getStatusCode());
+        Assertions.assertEquals(27, scheduleService.getEmployeeSchedule(employeeId).size());
+    }
+
+    @Test
+    public void testAssignmentPlansAndBooksFreeQualifiedEmployees() {
+        LocalDate date = MONDAY.plusWeeks(400);
+        for (int i = 0; i < 6; i++) {
+            saveEmployee(Sets.newHashSet(EmployeeSkill.FEEDING), Sets.newHashSet(DayOfWeek.MONDAY, DayOfWeek.TUESDAY));
+        }
+        long petId = savePet();
+
+        // Six requests for the same hour, and one for the whole next day
+        List<ScheduleDTO> requests = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            ScheduleDTO request = createScheduleDTO(null, petId, null, EmployeeSkill.FEEDING);
+            request.setStartTime(date.atTime(9, 0));
+            request.setEndTime(date.atTime(10, 0));
+            requests.add(request);
+        }
+        requests.add(createScheduleDTO(null, petId, date.plusDays(1), EmployeeSkill.FEEDING));
+
+        AssignmentResultDTO plan = restTemplate.postForObject("/schedule/assign?book=false", requests,
+                AssignmentResultDTO.class);
+        Assertions.assertTrue(plan.getUnassigned().isEmpty());
+        Assertions.assertEquals(7, plan.getSchedules().size());
+        Assertions.assertTrue(plan.getSchedules().stream().allMatch(schedule -> schedule.getId() == 0));
+
+        AssignmentResultDTO booked = restTemplate.postForObject("/schedule/assign", requests,
+                AssignmentResultDTO.class);
+        Assertions.assertTrue(booked.getUnassigned().isEmpty());
+        Set<Long> employeesAtNine = new HashSet<>();
+        for (ScheduleDTO schedule : booked.getSchedules()) {
+            Assertions.assertNotEquals(0, schedule.getId());
+            Assertions.assertEquals(1, schedule.getEmployeeIds().size());
+            if (schedule.getDate().equals(date)) {
+                employeesAtNine.add(schedule.getEmployeeIds().get(0));
+            }
+        }
+        // Booking validated the skills and days; nobody got two of the nine o'clock requests
+        Assertions.assertEquals(6, employeesAtNine.size());
+
+        // Requests must leave the choice of employee to the assignment
+        ScheduleDTO named = createScheduleDTO(Lists.newArrayList(employeesAtNine.iterator().next()), petId,
+                date.plusWeeks(1), EmployeeSkill.FEEDING);
+        Assertions.assertEquals(HttpStatus.BAD_REQUEST, restTemplate.postForEntity("/schedule/assign",
+                Lists.newArrayList(named), AssignmentResultDTO.class).getStatusCode());
+    }
+
+    @Test
+    public void testAssignmentSolverLeavesOnlyImpossibleRequestsAndBalancesLoad() {
+        LocalDate date = MONDAY.plusWeeks(410);
+        int feeding = EnumSetMaskConverter.toMask(EnumSet.of(EmployeeSkill.FEEDING));
+        int walking = EnumSetMaskConverter.toMask(EnumSet.of(EmployeeSkill.WALKING));
+        int monday = EnumSetMaskConverter.toMask(EnumSet.of(DayOfWeek.MONDAY));
+        List<AssignmentSolver.Candidate> candidates = Lists.newArrayList(
+                new AssignmentSolver.Candidate(1, feeding | walking, monday),
+                new AssignmentSolver.Candidate(2, feeding, monday),
+                new AssignmentSolver.Candidate(3, feeding | walking, 0));
+
+        // Only employee 1 can walk on Monday, so the feeding at nine must go to employee 2; employee 1 is also
+        // booked at eleven already. The overlapping walk at half past nine and the Tuesday request cannot be
+        // assigned.
+        List<AssignmentSolver.Request> requests = Lists.newArrayList(
+                new AssignmentSolver.Request(date.atTime(9, 0), date.atTime(10, 0), feeding),
+                new AssignmentSolver.Request(date.atTime(9, 0), date.atTime(10, 0), walking),
+                new AssignmentSolver.Request(date.atTime(9, 30), date.atTime(10, 30), walking),
+                new AssignmentSolver.Request(date.atTime(11, 0), date.atTime(12, 0), feeding),
+                new AssignmentSolver.Request(date.atTime(13, 0), date.atTime(14, 0), feeding),
+                new AssignmentSolver.Request(date.atTime(15, 0), date.atTime(16, 0), feeding),
+                new AssignmentSolver.Request(date.plusDays(1).atTime(9, 0), date.plusDays(1).atTime(10, 0),
+                        feeding));
+        List<EmployeeSlot> booked = Lists.newArrayList(
+                new EmployeeSlot(1L, date.atTime(11, 0), date.atTime(12, 0)));
+
+        long[] assignment = new AssignmentSolver(ForkJoinPool.commonPool(), 3).solve(requests, candidates, booked);
+        Assertions.assertEquals(2, assignment[0]);
+        Assertions.assertEquals(1, assignment[1]);
+        Assertions.assertEquals(AssignmentSolver.UNASSIGNED, assignment[2]);
+        Assertions.assertEquals(2, assignment[3]);
+        Assertions.assertEquals(AssignmentSolver.UNASSIGNED, assignment[6]);
+        // Employee 1 has the walk and the booking, employee 2 the feeding at nine and eleven, so the
+        // remaining two feedings are split between them
+        Assertions.assertNotEquals(assignment[4], assignment[5]);
+    }
+
+    @Test
+    public void testOverlappingTransactionsFailOnEmployeeVersion() throws Exception {
+        long employeeId = saveEmployee(EnumSet.allOf(EmployeeSkill.class), EnumSet.allOf(DayOfWeek.class));
+        long petId = savePet();
+
+        // Two bookings that both pass the double-booking check before either commits, as on two nodes
+        // without a shared lock
+        CyclicBarrier checked = new CyclicBarrier(2);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        List<Future<?>> results = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            results.add(executor.submit(() -> transactionTemplate.execute(status -> {
+                scheduleService.bookSchedule(Lists.newArrayList(employeeId), Lists.newArrayList(petId),
+                        MONDAY.plusWeeks(10), Sets.newHashSet(EmployeeSkill.FEEDING));
+                await(checked);
+                return null;
+            })));
+        }
+
+        int failures = 0;
+        for (Future<?> result : results) {
+            try {
+                result.get(1, TimeUnit.MINUTES);
+            } catch (java.util.concurrent.ExecutionException exception) {
+                Assertions.assertTrue(exception.getCause() instanceof ConcurrencyFailureException,
+                        exception.getCause().toString());
+                failures++;
+            }
+        }
+        executor.shutdown();
+        Assertions.assertEquals(1, failures);
+
+        // The retry of the losing booking sees the winner's schedule
+        Assertions.assertThrows(ScheduleConflictException.class, () -> scheduleService.bookSchedule(
+                Lists.newArrayList(employeeId), Lists.newArrayList(petId), MONDAY.plusWeeks(10),
+                Sets.newHashSet(EmployeeSkill.FEEDING)));
+    }
+
+    @Test
+    public void testReplacingEmployeeNeedsCurrentVersion() {
+        EmployeeDTO employeeDTO = new EmployeeDTO();
+        employeeDTO.setName("TestEmployee");
+        employeeDTO.setSkills(Sets.newHashSet(EmployeeSkill.FEEDING));
+        EmployeeDTO saved = restTemplate.postForEntity("/user/employee", employeeDTO, EmployeeDTO.class).getBody();
+
+        // Two clients read the same version; the first replacement wins and the second is stale
+        saved.setName("First");
+        ResponseEntity<EmployeeDTO> first = restTemplate.postForEntity("/user/employee", saved, EmployeeDTO.class);
+        Assertions.assertEquals(HttpStatus.OK, first.getStatusCode());
+        Assertions.assertNotEquals(saved.getVersion(), first.getBody().getVersion());
+
+        saved.setName("Second");
+        Assertions.assertEquals(HttpStatus.CONFLICT,
+                restTemplate.postForEntity("/user/employee", saved, String.class).getStatusCode());
+        saved.setVersion(null);
+        Assertions.assertEquals(HttpStatus.CONFLICT,
+                restTemplate.postForEntity("/user/employee", saved, String.class).getStatusCode());
+        Assertions.assertEquals("First", userController.getEmployee(saved.getId()).getName());
+    }
+
+    @Test
+    public void testParallelBookingsNeverDoubleBook() throws Exception {
+        List<Long> employeeIds = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            employeeIds.add(saveEmployee(EnumSet.allOf(EmployeeSkill.class), EnumSet.allOf(DayOfWeek.class)));
+        }
+        long petId = savePet();
+        LocalDate firstDate = MONDAY.plusYears(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<ResponseEntity<ScheduleDTO>>> responses = new ArrayList<>();
+        for (int i = 0; i < REQUESTS; i++) {
+            responses.add(executor.submit(() -> {
+                // One or two random employees on one of 14 days
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                List<Long> booked = Lists.newArrayList(employeeIds.get(random.nextInt(employeeIds.size())));
+                if (random.nextBoolean()) {
+                    booked.add(employeeIds.get(random.nextInt(employeeIds.size())));
+                }
+                return restTemplate.postForEntity("/schedule", createScheduleDTO(booked, petId,
+                        firstDate.plusDays(random.nextInt(14)), EmployeeSkill.FEEDING), ScheduleDTO.class);
+            }));
+        }
+
+        int booked = 0;
+        for (Future<ResponseEntity<ScheduleDTO>> response : responses) {
+            HttpStatusCode status = response.get(5, TimeUnit.MINUTES).getStatusCode();
+            Assertions.assertTrue(status == HttpStatus.OK || status == HttpStatus.CONFLICT, status.toString());
+            if (status == HttpStatus.OK) {
+                booked++;
+            }
+        }
+        executor.shutdown();
+
+        // Every (employee, date) pair appears in at most one schedule
+        Set<String> bookings = new HashSet<>();
+        int schedules = 0;
+        for (ScheduleDTO schedule : restTemplate.getForObject("/schedule", ScheduleDTO[].class)) {
+            if (schedule.getDate().isBefore(firstDate)) {
+                continue;
+            }
+            schedules++;
+            for (Long employeeId : new HashSet<>(schedule.getEmployeeIds())) {
+                Assertions.assertTrue(bookings.add(employeeId + "@" + schedule.getDate()),
+                        "Employee " + employeeId + " is double-booked on " + schedule.getDate());
+            }
+        }
+        Assertions.assertEquals(booked, schedules);
+        Assertions.assertTrue(booked > 0);
+    }
+
+    private ResponseEntity<ScheduleDTO> post(long employeeId, long petId, LocalDate date, EmployeeSkill activity) {
+        return restTemplate.postForEntity("/schedule",
+                createScheduleDTO(Lists.newArrayList(employeeId), petId, date, activity), ScheduleDTO.class);
+    }
+
+    private ResponseEntity<ScheduleDTO> post(long employeeId, long petId, LocalDateTime start, LocalDateTime end) {
+        ScheduleDTO scheduleDTO = createScheduleDTO(Lists.newArrayList(employeeId), petId, null,
+                EmployeeSkill.FEEDING);
+        scheduleDTO.setStartTime(start);
+        scheduleDTO.setEndTime(end);
+        return restTemplate.postForEntity("/schedule", scheduleDTO, ScheduleDTO.class);
+    }
+
+    private List<Long> availableEmployeeIds(LocalDate date) {
+        EmployeeRequestDTO request = new EmployeeRequestDTO();
+        request.setDate(date);
+        request.setSkills(Sets.newHashSet(EmployeeSkill.SHAVING));
+        return userController.findEmployeesForService(request).stream().map(EmployeeDTO::getId)
+                .collect(Collectors.toList());
+    }
+
+    private List<Long> freeEmployeeIds(LocalDateTime start, LocalDateTime end) {
+        EmployeeDTO[] employees = restTemplate.getForObject(
+                "/user/employee/availability?start={start}&end={end}&skills=FEEDING", EmployeeDTO[].class,
+                start, end);
+        return Arrays.stream(employees).map(EmployeeDTO::getId).collect(Collectors.toList());
+    }
+
+    private EmployeeSlotDTO nextSlot(long employeeId, LocalDateTime from, long minutes) {
+        return restTemplate.getForObject("/user/employee/{id}/next-slot?from={from}&minutes={minutes}",
+                EmployeeSlotDTO.class, employeeId, from, minutes);
+    }
+
+    private static ScheduleDTO createScheduleDTO(List<Long> employeeIds, long petId, LocalDate date,
+                                                 EmployeeSkill activity) {
+        ScheduleDTO scheduleDTO = new ScheduleDTO();
+        scheduleDTO.setEmployeeIds(employeeIds);
+        scheduleDTO.setPetIds(Lists.newArrayList(petId));
+        scheduleDTO.setDate(date);
+        scheduleDTO.setActivities(Sets.newHashSet(activity));
+        return scheduleDTO;
+    }
+
+    private long saveEmployee(Set<EmployeeSkill> skills, Set<DayOfWeek> daysAvailable) {
+        EmployeeDTO employeeDTO = new EmployeeDTO();
+        employeeDTO.setName("TestEmployee");
+        employeeDTO.setSkills(skills);
+        employeeDTO.setDaysAvailable(daysAvailable);
+        return userController.saveEmployee(employeeDTO).getId();
+    }
+
+    private long savePet() {
+        CustomerDTO customerDTO = new CustomerDTO();
+        customerDTO.setName("TestCustomer");
+        customerDTO.setPhoneNumber("123-456-789");
+        PetDTO petDTO = new PetDTO();
+        petDTO.setName("TestPet");
+        petDTO.setType(PetType.CAT);
+        petDTO.setOwnerId(userController.saveCustomer(customerDTO).getId());
+        return petController.savePet(petDTO).getId();
+    }
+
+    private static void await(CyclicBarrier barrier) {
+        try {
+            barrier.await(1, TimeUnit.MINUTES);
+        } catch (Exception exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.udacity.jdnd.course3.critter;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.udacity.jdnd.course3.critter.pet.PetDTO;
+import com.udacity.jdnd.course3.critter.pet.PetType;
+import com.udacity.jdnd.course3.critter.repository.ResourceVersionRepository;
+import com.udacity.jdnd.course3.critter.schedule.ScheduleDTO;
+import com.udacity.jdnd.course3.critter.service.ResourceVersions;
+import com.udacity.jdnd.course3.critter.user.CustomerDTO;
+import com.udacity.jdnd.course3.critter.user.EmployeeDTO;
+import com.udacity.jdnd.course3.critter.user.EmployeeSkill;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Tests that the polled reads carry an ETag and Cache-Control, that an unchanged resource is answered with 304
+ * without the queries of the resource, and that a committed write changes the ETag, also for another node.
+ * <p>
+ * The requests commit, so this class runs on its own database without the shared second-level cache.
+ */
+@SpringBootTest(classes = CritterApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {
+                "spring.datasource.url=jdbc:h2:mem:critter-conditional-get",
+                "critter.booking.validate-availability=false",
+                // The JCache regions are shared by all contexts in the JVM, so a context on its own database must not use them
+                "spring.jpa.properties.hibernate.cache.use_second_level_cache=false",
+                "spring.jpa.properties.hibernate.cache.use_query_cache=false",
+                "spring.jpa.properties.hibernate.generate_statistics=true"
+        })
+public class CritterConditionalGetTest {
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private ResourceVersions resourceVersions;
+
+    @Autowired
+    private ResourceVersionRepository resourceVersionRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    public void testUnchangedOwnerPetsAreNotModified() {
+        CustomerDTO customer = new CustomerDTO();
+        customer.setName("Polling Customer");
+        customer.setPhoneNumber("123-456-789");
+        long ownerId = restTemplate.postForObject("/user/customer", customer, CustomerDTO.class).getId();
+        savePet(ownerId);
+
+        ResponseEntity<PetDTO[]> first = get("/pet/owner/{id}", null, PetDTO[].class, ownerId);
+        Assertions.assertEquals(HttpStatus.OK, first.getStatusCode());
+        Assertions.assertEquals(1, first.getBody().length);
+        String etag = first.getHeaders().getETag();
+        Assertions.assertNotNull(etag);
+        Assertions.assertTrue(first.getHeaders().getCacheControl().contains("no-cache"));
+
+        // Answered from the version row, before the repository is reached
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        long statements = statistics.getPrepareStatementCount();
+        ResponseEntity<PetDTO[]> unchanged = get("/pet/owner/{id}", etag, PetDTO[].class, ownerId);
+        Assertions.assertEquals(HttpStatus.NOT_MODIFIED, unchanged.getStatusCode());
+        Assertions.assertNull(unchanged.getBody());
+        Assertions.assertEquals(statements, statistics.getPrepareStatementCount());
+
+        savePet(ownerId);
+        ResponseEntity<PetDTO[]> changed = get("/pet/owner/{id}", etag, PetDTO[].class, ownerId);
+        Assertions.assertEquals(HttpStatus.OK, changed.getStatusCode());
+        Assertions.assertEquals(2, changed.getBody().length);
+        Assertions.assertNotEquals(etag, changed.getHeaders().getETag());
+    }
+
+    @Test
+    public void testBookingChangesEmployeeAndPetScheduleETags() {
+        CustomerDTO customer = new CustomerDTO();
+        customer.setName("Polling Customer");
+        customer.setPhoneNumber("123-456-789");
+        long ownerId = restTemplate.postForObject("/user/customer", customer, CustomerDTO.class).getId();
+        long petId = savePet(ownerId);
+        EmployeeDTO employee = new EmployeeDTO();
+        employee.setName("Polled Employee");
+        employee.setSkills(Sets.newHashSet(EmployeeSkill.FEEDING));
+        long employeeId = restTemplate.postForObject("/user/employee", employee, EmployeeDTO.class).getId();
+
+        String employeeETag = get("/schedule/employee/{id}", null, ScheduleDTO[].class, employeeId)
+                .getHeaders().getETag();
+        String petETag = get("/schedule/pet/{id}", null, ScheduleDTO[].class, petId).getHeaders().getETag();
+        Assertions.assertEquals(HttpStatus.NOT_MODIFIED,
+                get("/schedule/employee/{id}", employeeETag, ScheduleDTO[].class, employeeId).getStatusCode());
+
+        ScheduleDTO schedule = new ScheduleDTO();
+        schedule.setEmployeeIds(Lists.newArrayList(employeeId));
+        schedule.setPetIds(Lists.newArrayList(petId));
+        schedule.setDate(LocalDate.of(2019, 12, 25));
+        schedule.setActivities(Sets.newHashSet(EmployeeSkill.FEEDING));
+        Assertions.assertEquals(HttpStatus.OK,
+                restTemplate.postForEntity("/schedule", schedule, ScheduleDTO.class).getStatusCode());
+
+        ResponseEntity<ScheduleDTO[]> employeeSchedule =
+                get("/schedule/employee/{id}", employeeETag, ScheduleDTO[].class, employeeId);
+        Assertions.assertEquals(HttpStatus.OK, employeeSchedule.getStatusCode());
+        Assertions.assertEquals(1, employeeSchedule.getBody().length);
+        ResponseEntity<ScheduleDTO[]> petSchedule = get("/schedule/pet/{id}", petETag, ScheduleDTO[].class, petId);
+        Assertions.assertEquals(HttpStatus.OK, petSchedule.getStatusCode());
+        Assertions.assertEquals(1, petSchedule.getBody().length);
+
+        // A failed booking is rolled back and leaves the ETag alone
+        String bookedETag = employeeSchedule.getHeaders().getETag();
+        schedule.setPetIds(Lists.newArrayList(-1L));
+        Assertions.assertEquals(HttpStatus.BAD_REQUEST,
+                restTemplate.postForEntity("/schedule", schedule, ScheduleDTO.class).getStatusCode());
+        Assertions.assertEquals(HttpStatus.NOT_MODIFIED,
+                get("/schedule/employee/{id}", bookedETag, ScheduleDTO[].class, employeeId).getStatusCode());
+    }
+
+    @Test
+    public void testVersionsWrittenByAnotherNodeAreSeen() {
+        // Another node shares the database but nothing in memory
+        ResourceVersions otherNode = new ResourceVersions(resourceVersionRepository, List.of(),
+                Duration.ofSeconds(5), Duration.ofSeconds(1));
+        long employeeId = 987654;
+        String etag = resourceVersions.getETag(ResourceVersions.EMPLOYEE_SCHEDULE, employeeId);
+        Assertions.assertEquals(etag, otherNode.getETag(ResourceVersions.EMPLOYEE_SCHEDULE, employeeId));
+
+        // A rolled back change leaves the version alone
+        transactionTemplate.executeWithoutResult(status -> {
+            otherNode.bump(ResourceVersions.EMPLOYEE_SCHEDULE, List.of(employeeId));
+            status.setRollbackOnly();
+        });
+        Assertions.assertEquals(etag, resourceVersions.getETag(ResourceVersions.EMPLOYEE_SCHEDULE, employeeId));
+
+        transactionTemplate.executeWithoutResult(status ->
+                otherNode.bump(ResourceVersions.EMPLOYEE_SCHEDULE, List.of(employeeId, employeeId + 1)));
+        String changed = resourceVersions.getETag(ResourceVersions.EMPLOYEE_SCHEDULE, employeeId);
+        Assertions.assertNotEquals(etag, changed);
+        Assertions.assertEquals(changed, otherNode.getETag(ResourceVersions.EMPLOYEE_SCHEDULE, employeeId));
+
+        transactionTemplate.executeWithoutResult(status ->
+                resourceVersions.bump(ResourceVersions.EMPLOYEE_SCHEDULE, List.of(employeeId)));
+        Assertions.assertNotEquals(changed, otherNode.getETag(ResourceVersions.EMPLOYEE_SCHEDULE, employeeId));
+        Assertions.assertEquals(etag, resourceVersions.getETag(ResourceVersions.PET_SCHEDULE, employeeId));
+    }
+
+    private long savePet(long ownerId) {
+        PetDTO pet = new PetDTO();
+        pet.setName("Polled Pet");
+        pet.setType(PetType.DOG);
+        pet.setOwnerId(ownerId);
+        return restTemplate.postForObject("/pet", pet, PetDTO.class).getId();
+    }
+
+    private <T> ResponseEntity<T> get(String url, String ifNoneMatch, Class<T> type, Object... variables) {
+        HttpHeaders headers = new HttpHeaders();
+        if (ifNoneMatch != null) {
+            headers.setIfNoneMatch(ifNoneMatch);
+        }
+        return restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(headers), type, variables);
+    }
+}
@@ -0,0 +1,220 @@
+package com.udacity.jdnd.course3.critter;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.udacity.jdnd.course3.critter.event.CritterEvent;
+import com.udacity.jdnd.course3.critter.event.CritterEventBus;
+import com.udacity.jdnd.course3.critter.event.CritterEventType;
+import com.udacity.jdnd.course3.critter.event.EventController;
+import com.udacity.jdnd.course3.critter.event.EventSubscription;
+import com.udacity.jdnd.course3.critter.pet.PetDTO;
+import com.udacity.jdnd.course3.critter.pet.PetType;
+import com.udacity.jdnd.course3.critter.schedule.ScheduleDTO;
+import com.udacity.jdnd.course3.critter.user.CustomerDTO;
+import com.udacity.jdnd.course3.critter.user.EmployeeDTO;
+import com.udacity.jdnd.course3.critter.user.EmployeeSkill;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Tests that committed changes are pushed to the matching event subscribers, how a full subscriber
+ * buffer drops or coalesces events, and that concurrent subscriptions stop at the limit.
+ * <p>
+ * The requests commit, so this class runs on its own database without the shared second-level cache.
+ */
+@SpringBootTest(classes = CritterApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {
+                "spring.datasource.url=jdbc:h2:mem:critter-events",
+                "critter.booking.validate-availability=false",
+                // The JCache regions are shared by all contexts in the JVM, so a context on its own database must not use them
+                "spring.jpa.properties.hibernate.cache.use_second_level_cache=false",
+                "spring.jpa.properties.hibernate.cache.use_query_cache=false"
+        })
+public class CritterEventStreamTest {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private CritterEventBus eventBus;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private EventController eventController;
+
+    @Test
+    public void testServerSentEventsOfOneCustomer() throws Exception {
+        long customerId = saveCustomer();
+        long otherCustomerId = saveCustomer();
+
+        HttpClient client = HttpClient.newHttpClient();
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port
+                        + "/events?customerId=" + customerId))
+                .header("Accept", "text/event-stream")
+                .build();
+        HttpResponse<Stream<String>> response = client.send(request, HttpResponse.BodyHandlers.ofLines());
+        Assertions.assertEquals(200, response.statusCode());
+
+        // Collect the data lines in the background, the stream does not end on its own
+        BlockingQueue<JsonNode> events = new LinkedBlockingQueue<>();
+        Thread reader = new Thread(() -> response.body()
+                .filter(line -> line.startsWith("data:"))
+                .forEach(line -> {
+                    try {
+                        events.add(objectMapper.readTree(line.substring("data:".length())));
+                    } catch (Exception exception) {
+                        throw new IllegalStateException(exception);
+                    }
+                }));
+        reader.setDaemon(true);
+        reader.start();
+
+        try {
+            // Another customer's pet is filtered out, so the first event is about the subscribed customer's pet
+            savePet(otherCustomerId);
+            long petId = savePet(customerId);
+            JsonNode petAdded = events.poll(10, TimeUnit.SECONDS);
+            Assertions.assertNotNull(petAdded);
+            Assertions.assertEquals(CritterEventType.PET_ADDED.name(), petAdded.get("type").asText());
+            Assertions.assertEquals(petId, petAdded.get("data").get("id").asLong());
+
+            EmployeeDTO employee = new EmployeeDTO();
+            employee.setName("Dispatched Employee");
+            employee.setSkills(Sets.newHashSet(EmployeeSkill.FEEDING));
+            long employeeId = restTemplate.postForObject("/user/employee", employee, EmployeeDTO.class).getId();
+            ScheduleDTO schedule = new ScheduleDTO();
+            schedule.setEmployeeIds(Lists.newArrayList(employeeId));
+            schedule.setPetIds(Lists.newArrayList(petId));
+            schedule.setDate(LocalDate.of(2019, 12, 25));
+            schedule.setActivities(Sets.newHashSet(EmployeeSkill.FEEDING));
+            long scheduleId = restTemplate.postForObject("/schedule", schedule, ScheduleDTO.class).getId();
+
+            JsonNode scheduleCreated = events.poll(10, TimeUnit.SECONDS);
+            Assertions.assertNotNull(scheduleCreated);
+            Assertions.assertEquals(CritterEventType.SCHEDULE_CREATED.name(), scheduleCreated.get("type").asText());
+            Assertions.assertEquals(scheduleId, scheduleCreated.get("data").get("id").asLong());
+            Assertions.assertEquals(employeeId, scheduleCreated.get("employeeIds").get(0).asLong());
+            Assertions.assertTrue(scheduleCreated.get("sequence").asLong() > petAdded.get("sequence").asLong());
+        } finally {
+            reader.interrupt();
+        }
+    }
+
+    @Test
+    public void testFullBufferDropsOldestEvents() throws Exception {
+        try (EventSubscription subscription = eventBus.subscribe(event -> true,
+                EventSubscription.OverflowPolicy.DROP_OLDEST, 2)) {
+            // Without a transaction the events are published right away
+            eventBus.publishAfterCommit(List.of(petAdded(1), petAdded(2), petAdded(3)));
+
+            List<CritterEvent> events = subscription.poll(Duration.ofSeconds(1));
+            Assertions.assertEquals(3, events.size());
+            Assertions.assertEquals(CritterEventType.EVENTS_DROPPED, events.get(0).getType());
+            Assertions.assertEquals(1L, events.get(0).getData());
+            Assertions.assertEquals("pet:2", events.get(1).getKey());
+            Assertions.assertEquals("pet:3", events.get(2).getKey());
+        }
+    }
+
+    @Test
+    public void testCoalescingKeepsLatestEventPerKey() throws Exception {
+        try (EventSubscription subscription = eventBus.subscribe(event -> true,
+                EventSubscription.OverflowPolicy.COALESCE, 2)) {
+            eventBus.publishAfterCommit(List.of(petAdded(1), petAdded(2), petAdded(1), petAdded(1)));
+
+            List<CritterEvent> events = subscription.poll(Duration.ofSeconds(1));
+            Assertions.assertEquals(2, events.size());
+            Assertions.assertEquals("pet:2", events.get(0).getKey());
+            Assertions.assertEquals("pet:1", events.get(1).getKey());
+            Assertions.assertTrue(events.get(1).getSequence() > events.get(0).getSequence());
+        }
+    }
+
+    @Test
+    public void testConcurrentSubscriptionsStopAtTheLimit() throws Exception {
+        ReflectionTestUtils.setField(eventController, "maxSubscribers", 5);
+        ExecutorService executor = Executors.newFixedThreadPool(20);
+        try {
+            // All requests pass the limit check at the same time
+            CyclicBarrier start = new CyclicBarrier(20);
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    try {
+                        eventController.streamEvents(null, null, null,
+                                EventSubscription.OverflowPolicy.DROP_OLDEST);
+                        return true;
+                    } catch (ResponseStatusException exception) {
+                        Assertions.assertEquals(HttpStatus.SERVICE_UNAVAILABLE, exception.getStatusCode());
+                        return false;
+                    }
+                }));
+            }
+            int subscribed = 0;
+            for (Future<Boolean> result : results) {
+                subscribed += result.get(1, TimeUnit.MINUTES) ? 1 : 0;
+            }
+            Assertions.assertEquals(5, subscribed);
+            Assertions.assertEquals(5, eventBus.getSubscriberCount());
+        } finally {
+            executor.shutdown();
+            // Ends the delivery threads, which give their places back
+            eventBus.destroy();
+            ReflectionTestUtils.setField(eventController, "maxSubscribers", 1000);
+        }
+    }
+
+    private static CritterEventBus.PendingEvent petAdded(long petId) {
+        return new CritterEventBus.PendingEvent(CritterEventType.PET_ADDED, "pet:" + petId,
+                Collections.emptySet(), Set.of(petId), Collections.emptySet(), null);
+    }
+
+    private long saveCustomer() {
+        CustomerDTO customer = new CustomerDTO();
+        customer.setName("Dispatch Customer");
+        customer.setPhoneNumber("123-456-789");
+        return restTemplate.postForObject("/user/customer", customer, CustomerDTO.class).getId();
+    }
+
+    private long savePet(long ownerId) {
+        PetDTO pet = new PetDTO();
+        pet.setName("Dispatched Pet");
+        pet.setType(PetType.DOG);
+        pet.setOwnerId(ownerId);
+        return restTemplate.postForObject("/pet", pet, PetDTO.class).getId();
+    }
+}
@@ -0,0 +1,88 @@
+package com.udacity.jdnd.course3.critter;
+
+import com.udacity.jdnd.course3.critter.user.CustomerDTO;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * Tests that the controller, service and repository timers, the Hibernate statistics, the connection pool
+ * gauges, the connection wait timer and the SQL timers are published on the Prometheus scrape endpoint. The
+ * pool is warmed up at startup, which is part of the check, and every statement counts as slow, so that the
+ * slow-query log sees all of them.
+ * <p>
+ * The requests commit, so this class runs on its own database without the shared second-level cache.
+ * Metrics export is off in tests unless enabled with {@link AutoConfigureObservability}.
+ */
+@AutoConfigureObservability
+@SpringBootTest(classes = CritterApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {
+                "spring.datasource.url=jdbc:h2:mem:critter-metrics",
+                "critter.datasource.warmup.enabled=true",
+                "critter.sql.slow-threshold=0ms",
+                // The JCache regions are shared by all contexts in the JVM, so a context on its own database must not use them
+                "spring.jpa.properties.hibernate.cache.use_second_level_cache=false",
+                "spring.jpa.properties.hibernate.cache.use_query_cache=false",
+                "spring.jpa.properties.hibernate.generate_statistics=true"
+        })
+public class CritterMetricsTest {
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Test
+    public void testPrometheusEndpointPublishesLayerTimers() {
+        CustomerDTO customerDTO = new CustomerDTO();
+        customerDTO.setName("Metrics Customer");
+        customerDTO.setPhoneNumber("123-456-789");
+        CustomerDTO customer = restTemplate.postForObject("/user/customer", customerDTO, CustomerDTO.class);
+        restTemplate.getForObject("/user/customer/pet/{petId}", String.class, 1);
+        restTemplate.getForObject("/user/customer", String.class);
+
+        ResponseEntity<String> response = restTemplate.getForEntity("/actuator/prometheus", String.class);
+        Assertions.assertEquals(HttpStatus.OK, response.getStatusCode());
+        String scrape = response.getBody();
+
+        // Every layer is timed, with a histogram for percentiles
+        assertTimed(scrape, "controller", "UserController", "saveCustomer", "none");
+        assertTimed(scrape, "service", "CustomerService", "saveCustomer", "none");
+        assertTimed(scrape, "repository", "CustomerRepository", "save", "none");
+        Assertions.assertTrue(scrape.contains("critter_method_seconds_bucket{"));
+        Assertions.assertTrue(scrape.contains("http_server_requests_seconds_bucket{"));
+
+        // Failed calls are tagged with the exception
+        Assertions.assertTrue(scrape.matches("(?s).*critter_method_seconds_count\\{[^}]*class=\"UserController\""
+                + ",exception=\"ResponseStatusException\"[^}]*method=\"getOwnerByPet\".*"));
+
+        // Hibernate statistics and the connection pool
+        Assertions.assertTrue(scrape.contains("hibernate_query_executions_total{"));
+        // Hibernate 6 only publishes cache metrics per region, and this context has no regions
+        Assertions.assertTrue(scrape.contains("hibernate_entities_inserts_total{"));
+        Assertions.assertTrue(scrape.contains("hikaricp_connections_active{"));
+
+        // Connection waits by route, and outside of requests for the startup warmup
+        Assertions.assertTrue(scrape.contains("critter_datasource_connection_wait_seconds_bucket{"));
+        Assertions.assertTrue(scrape.matches("(?s).*critter_datasource_connection_wait_seconds_count\\{[^}]*"
+                + "method=\"POST\",pool=\"[^\"]+\",uri=\"/user/customer\".*"));
+        Assertions.assertTrue(scrape.matches("(?s).*critter_datasource_connection_wait_seconds_count\\{[^}]*"
+                + "method=\"none\",pool=\"[^\"]+\",uri=\"none\".*"));
+
+        // Statements by query shape, and the slow ones handed to the log
+        Assertions.assertTrue(scrape.contains("critter_sql_seconds_bucket{"));
+        Assertions.assertTrue(scrape.matches("(?s).*critter_sql_seconds_count\\{[^}]*operation=\"insert\","
+                + "outcome=\"success\",shape=\"[0-9a-f]{8}\",table=\"customer\".*"));
+        Assertions.assertTrue(scrape.matches("(?s).*critter_sql_logged_total\\{[^}]*reason=\"slow\".*"));
+        Assertions.assertTrue(customer.getId() > 0);
+    }
+
+    private static void assertTimed(String scrape, String layer, String type, String method, String exception) {
+        String series = "critter_method_seconds_count{application=\"critter\",class=\"" + type + "\",exception=\""
+                + exception + "\",layer=\"" + layer + "\",method=\"" + method + "\",}";
+        Assertions.assertTrue(scrape.contains(series), () -> "Missing " + series);
+    }
+}
@@ -0,0 +1,274 @@
+package com.udacity.jdnd.course3.critter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.udacity.jdnd.course3.critter.pet.PetController;
+import com.udacity.jdnd.course3.critter.pet.PetDTO;
+import com.udacity.jdnd.course3.critter.pet.PetType;
+import com.udacity.jdnd.course3.critter.repository.ScheduleQueryRepository;
+import com.udacity.jdnd.course3.critter.schedule.ScheduleController;
+import com.udacity.jdnd.course3.critter.schedule.ScheduleDTO;
+import com.udacity.jdnd.course3.critter.user.*;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Tests the keyset-paginated and NDJSON-streamed variants of the list endpoints against the plain lists.
+ */
+@Transactional
+@SpringBootTest(classes = CritterApplication.class)
+public class CritterPaginationTest {
+
+    @Autowired
+    private UserController userController;
+
+    @Autowired
+    private PetController petController;
+
+    @Autowired
+    private ScheduleController scheduleController;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ScheduleQueryRepository scheduleQueryRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void testPagesCoverWholeList() {
+        populate(7);
+
+        List<PetDTO> pets = collectPages(after -> petController.getPets(3, after));
+        assertSameIds(petController.getPets(), pets, PetDTO::getId);
+
+        List<CustomerDTO> customers = collectPages(after -> userController.getCustomers(2, after));
+        assertSameIds(userController.getAllCustomers(), customers, CustomerDTO::getId);
+        Assertions.assertEquals(2, customers.get(0).getPetIds().size());
+
+        List<ScheduleDTO> schedules = collectPages(after -> scheduleController.getSchedules(3, after));
+        List<ScheduleDTO> allSchedules = scheduleController.getAllSchedules();
+        assertSameIds(allSchedules, schedules, ScheduleDTO::getId);
+        for (int i = 0; i < schedules.size(); i++) {
+            Assertions.assertEquals(allSchedules.get(i).getPetIds(), schedules.get(i).getPetIds());
+            Assertions.assertEquals(allSchedules.get(i).getEmployeeIds(), schedules.get(i).getEmployeeIds());
+            Assertions.assertEquals(allSchedules.get(i).getActivities(), schedules.get(i).getActivities());
+        }
+    }
+
+    @Test
+    public void testLastPageHasNoCursor() {
+        populate(2);
+        CursorPage<PetDTO> page = petController.getPets(1000, 0);
+        Assertions.assertNull(page.getNext());
+        Assertions.assertEquals(petController.getPets().size(), page.getItems().size());
+    }
+
+    @Test
+    public void testStreamWritesOneJsonObjectPerLine() throws Exception {
+        populate(3);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        scheduleController.streamSchedules().getBody().writeTo(out);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8.name()).split("\n");
+        List<ScheduleDTO> allSchedules = scheduleController.getAllSchedules();
+        Assertions.assertEquals(allSchedules.size(), lines.length);
+        Assertions.assertEquals(allSchedules.get(0).getPetIds(),
+                objectMapper.readValue(lines[0], ScheduleDTO.class).getPetIds());
+    }
+
+    @Test
+    public void testCustomerScheduleReturnsEachScheduleOnce() {
+        populate(3);
+        PetDTO pet = petController.getPets().get(0);
+        long customerId = pet.getOwnerId();
+        List<Long> petIds = userController.getAllCustomers().stream()
+                .filter(customer -> customer.getId() == customerId).findFirst().get().getPetIds();
+        long employeeId = scheduleController.getAllSchedules().get(0).getEmployeeIds().get(0);
+
+        // A second schedule of the same customer, for one pet only and on a later date
+        ScheduleDTO later = new ScheduleDTO();
+        later.setPetIds(Lists.newArrayList(pet.getId()));
+        later.setEmployeeIds(Lists.newArrayList(employeeId));
+        later.setDate(LocalDate.of(2019, 12, 26));
+        later.setActivities(Sets.newHashSet(EmployeeSkill.FEEDING));
+        long laterId = scheduleController.createSchedule(later).getId();
+
+        // The first schedule includes both of the customer's pets and is still returned once
+        List<ScheduleDTO> schedules = scheduleController.getScheduleForCustomer(customerId);
+        Assertions.assertEquals(2, schedules.size());
+        Assertions.assertEquals(petIds, schedules.get(0).getPetIds());
+        Assertions.assertEquals(Lists.newArrayList(employeeId), schedules.get(0).getEmployeeIds());
+        Assertions.assertEquals(laterId, schedules.get(1).getId());
+
+        List<ScheduleDTO> fromLater = scheduleController.getScheduleForCustomer(customerId,
+                LocalDate.of(2019, 12, 26), null);
+        Assertions.assertEquals(Lists.newArrayList(laterId),
+                fromLater.stream().map(ScheduleDTO::getId).collect(Collectors.toList()));
+        Assertions.assertTrue(scheduleController.getScheduleForCustomer(customerId, null,
+                LocalDate.of(2019, 12, 24)).isEmpty());
+
+        List<ScheduleDTO> pages = collectPages(after -> scheduleController.getScheduleForCustomer(customerId,
+                null, null, 1, after));
+        assertSameIds(schedules, pages, ScheduleDTO::getId);
+        Assertions.assertEquals(Sets.newHashSet(EmployeeSkill.FEEDING), pages.get(1).getActivities());
+    }
+
+    @Test
+    public void testScheduleWrittenBetweenPageAndMembersIsLeftOut() {
+        populate(3);
+        List<ScheduleDTO> allSchedules = scheduleController.getAllSchedules();
+        ScheduleDTO first = allSchedules.get(allSchedules.size() - 3);
+        ScheduleDTO middle = allSchedules.get(allSchedules.size() - 2);
+        ScheduleDTO last = allSchedules.get(allSchedules.size() - 1);
+
+        // The id of the middle schedule is free again and taken by a schedule written after the page was read,
+        // as another node's id block can put one between the ids of a page
+        deleteSchedule(middle.getId());
+        List<ScheduleDTO> page = new ArrayList<>();
+        writeBeforeMemberQuery(
+                () -> insertSchedule(middle.getId(), first.getPetIds().get(0), first.getEmployeeIds().get(0)),
+                () -> page.addAll(scheduleController.getSchedules(2, first.getId() - 1).getItems()));
+
+        Assertions.assertEquals(Lists.newArrayList(first.getId(), last.getId()),
+                page.stream().map(ScheduleDTO::getId).collect(Collectors.toList()));
+        Assertions.assertEquals(first.getPetIds(), page.get(0).getPetIds());
+        Assertions.assertEquals(last.getPetIds(), page.get(1).getPetIds());
+        Assertions.assertEquals(last.getEmployeeIds(), page.get(1).getEmployeeIds());
+    }
+
+    @Test
+    public void testCustomerScheduleWrittenBetweenPageAndMembersIsLeftOut() {
+        populate(1);
+        List<ScheduleDTO> allSchedules = scheduleController.getAllSchedules();
+        ScheduleDTO booked = allSchedules.get(allSchedules.size() - 1);
+        long petId = booked.getPetIds().get(0);
+        long customerId = petController.getPet(petId).getOwnerId();
+        List<Long> scheduleIds = new ArrayList<>();
+        scheduleIds.add(booked.getId());
+        for (int i = 0; i < 2; i++) {
+            ScheduleDTO schedule = new ScheduleDTO();
+            schedule.setPetIds(Lists.newArrayList(petId));
+            schedule.setEmployeeIds(booked.getEmployeeIds());
+            schedule.setDate(LocalDate.of(2019, 12, 26 + i));
+            schedule.setActivities(Sets.newHashSet(EmployeeSkill.FEEDING));
+            scheduleIds.add(scheduleController.createSchedule(schedule).getId());
+        }
+
+        // A schedule of the same customer takes the freed middle id after the page was read
+        deleteSchedule(scheduleIds.get(1));
+        List<ScheduleDTO> page = new ArrayList<>();
+        writeBeforeMemberQuery(
+                () -> insertSchedule(scheduleIds.get(1), petId, booked.getEmployeeIds().get(0)),
+                () -> page.addAll(scheduleController.getScheduleForCustomer(customerId, null, null, 2,
+                        scheduleIds.get(0) - 1).getItems()));
+
+        Assertions.assertEquals(Lists.newArrayList(scheduleIds.get(0), scheduleIds.get(2)),
+                page.stream().map(ScheduleDTO::getId).collect(Collectors.toList()));
+        Assertions.assertEquals(booked.getPetIds(), page.get(0).getPetIds());
+        Assertions.assertEquals(Lists.newArrayList(petId), page.get(1).getPetIds());
+        Assertions.assertEquals(booked.getEmployeeIds(), page.get(1).getEmployeeIds());
+    }
+
+    // Runs `write` after the schedule query repository has read a page and before it reads the members
+    private void writeBeforeMemberQuery(Runnable write, Runnable read) {
+        Object repository = AopTestUtils.getUltimateTargetObject(scheduleQueryRepository);
+        JdbcTemplate original = (JdbcTemplate) ReflectionTestUtils.getField(repository, "jdbcTemplate");
+        ReflectionTestUtils.setField(repository, "jdbcTemplate", new JdbcTemplate(original.getDataSource()) {
+            private boolean written;
+
+            @Override
+            public void query(String sql, RowCallbackHandler rch, Object... args) {
+                if (!written) {
+                    written = true;
+                    write.run();
+                }
+                super.query(sql, rch, args);
+            }
+        });
+        try {
+            read.run();
+        } finally {
+            ReflectionTestUtils.setField(repository, "jdbcTemplate", original);
+        }
+    }
+
+    private void deleteSchedule(long scheduleId) {
+        for (String table : new String[]{"employee_slot", "schedule_employee", "schedule_pets"}) {
+            jdbcTemplate.update("delete from " + table + " where schedule_id = ?", scheduleId);
+        }
+        jdbcTemplate.update("delete from schedule where id = ?", scheduleId);
+    }
+
+    private void insertSchedule(long scheduleId, long petId, long employeeId) {
+        jdbcTemplate.update("insert into schedule (id, version, date) values (?, 0, ?)",
+                scheduleId, LocalDate.of(2019, 12, 27));
+        jdbcTemplate.update("insert into schedule_pets (schedule_id, pets_id) values (?, ?)", scheduleId, petId);
+        jdbcTemplate.update("insert into schedule_employee (schedule_id, employee_id) values (?, ?)",
+                scheduleId, employeeId);
+    }
+
+    private static <T> List<T> collectPages(Function<Long, CursorPage<T>> pages) {
+        List<T> items = new ArrayList<>();
+        CursorPage<T> page = pages.apply(0L);
+        items.addAll(page.getItems());
+        while (page.getNext() != null) {
+            page = pages.apply(page.getNext());
+            items.addAll(page.getItems());
+        }
+        return items;
+    }
+
+    private static <T> void assertSameIds(List<T> expected, List<T> actual, Function<T, Long> id) {
+        Assertions.assertEquals(expected.stream().map(id).collect(Collectors.toList()),
+                actual.stream().map(id).collect(Collectors.toList()));
+    }
+
+    private void populate(int rows) {
+        for (int i = 0; i < rows; i++) {
+            CustomerDTO customer = new CustomerDTO();
+            customer.setName("TestCustomer");
+            customer.setPhoneNumber("123-456-789");
+            long customerId = userController.saveCustomer(customer).getId();
+
+            List<Long> petIds = new ArrayList<>();
+            for (int p = 0; p < 2; p++) {
+                PetDTO pet = new PetDTO();
+                pet.setName("TestPet");
+                pet.setType(PetType.CAT);
+                pet.setOwnerId(customerId);
+                petIds.add(petController.savePet(pet).getId());
+            }
+
+            EmployeeDTO employee = new EmployeeDTO();
+            employee.setName("TestEmployee");
+            employee.setSkills(Sets.newHashSet(EmployeeSkill.FEEDING, EmployeeSkill.PETTING));
+            long employeeId = userController.saveEmployee(employee).getId();
+
+            ScheduleDTO schedule = new ScheduleDTO();
+            schedule.setPetIds(petIds);
+            schedule.setEmployeeIds(Lists.newArrayList(employeeId));
+            schedule.setDate(LocalDate.of(2019, 12, 25));
+            schedule.setActivities(Sets.newHashSet(EmployeeSkill.FEEDING, EmployeeSkill.PETTING));
+            scheduleController.createSchedule(schedule);
+        }
+    }
+}
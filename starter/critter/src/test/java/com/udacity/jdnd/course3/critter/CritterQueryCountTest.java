@@ -0,0 +1,165 @@
+package com.udacity.jdnd.course3.critter;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.udacity.jdnd.course3.critter.pet.PetController;
+import com.udacity.jdnd.course3.critter.pet.PetDTO;
+import com.udacity.jdnd.course3.critter.pet.PetType;
+import com.udacity.jdnd.course3.critter.schedule.ScheduleController;
+import com.udacity.jdnd.course3.critter.schedule.ScheduleDTO;
+import com.udacity.jdnd.course3.critter.service.ScheduleService;
+import com.udacity.jdnd.course3.critter.user.*;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Verifies that the read endpoints run a bounded number of SQL statements, i.e. that the number of
+ * statements does not grow with the number of rows returned.
+ */
+@Transactional
+@SpringBootTest(classes = CritterApplication.class)
+public class CritterQueryCountTest {
+
+    private static final LocalDate DATE = LocalDate.of(2019, 12, 25); //wednesday
+
+    @Autowired
+    private UserController userController;
+
+    @Autowired
+    private PetController petController;
+
+    @Autowired
+    private ScheduleController scheduleController;
+
+    @Autowired
+    private ScheduleService scheduleService;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    public void enableStatistics() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+    }
+
+    @Test
+    public void testListEndpointsRunBoundedStatements() {
+        Fixture small = populate(2);
+        long[] smallCounts = countStatements(small);
+
+        Fixture large = populate(12);
+        long[] largeCounts = countStatements(large);
+
+        Assertions.assertArrayEquals(smallCounts, largeCounts);
+    }
+
+    @Test
+    public void testScheduleEntitiesFetchAssociationsUpFront() {
+        populate(5);
+        long statements = statementsFor(() -> scheduleService.getAllSchedules()
+                .forEach(scheduleController::convertScheduleToDTO));
+        Assertions.assertTrue(statements <= 2, "Loading all schedules ran " + statements + " statements");
+    }
+
+    private long[] countStatements(Fixture fixture) {
+        return new long[]{
+                statementsFor(() -> petController.getPets()),
+                statementsFor(() -> userController.getAllCustomers()),
+                statementsFor(() -> scheduleController.getAllSchedules()),
+                statementsFor(() -> scheduleController.getScheduleForEmployee(fixture.employeeId)),
+                statementsFor(() -> scheduleController.getScheduleForPet(fixture.petId)),
+                statementsFor(() -> scheduleController.getScheduleForCustomer(fixture.customerId)),
+                statementsFor(() -> userController.findEmployeesForService(createEmployeeRequestDTO())),
+        };
+    }
+
+    private long statementsFor(Runnable call) {
+        // Start from an empty persistence context so that nothing is served from the first-level cache
+        entityManager.flush();
+        entityManager.clear();
+        statistics.clear();
+        call.run();
+        return statistics.getPrepareStatementCount();
+    }
+
+    /**
+     * Creates {@code rows} customers with two pets each, {@code rows} employees and one schedule per customer
+     * that books both of the customer's pets with two employees.
+     */
+    private Fixture populate(int rows) {
+        Fixture fixture = new Fixture();
+        for (int i = 0; i < rows; i++) {
+            CustomerDTO customer = userController.saveCustomer(createCustomerDTO());
+            PetDTO pet1 = petController.savePet(createPetDTO(customer.getId()));
+            PetDTO pet2 = petController.savePet(createPetDTO(customer.getId()));
+            EmployeeDTO employee1 = userController.saveEmployee(createEmployeeDTO());
+            EmployeeDTO employee2 = userController.saveEmployee(createEmployeeDTO());
+
+            ScheduleDTO schedule = new ScheduleDTO();
+            schedule.setPetIds(Lists.newArrayList(pet1.getId(), pet2.getId()));
+            schedule.setEmployeeIds(Lists.newArrayList(employee1.getId(), employee2.getId()));
+            schedule.setDate(DATE);
+            schedule.setActivities(Sets.newHashSet(EmployeeSkill.FEEDING, EmployeeSkill.PETTING));
+            scheduleController.createSchedule(schedule);
+
+            fixture.customerId = customer.getId();
+            fixture.petId = pet1.getId();
+            fixture.employeeId = employee1.getId();
+        }
+        return fixture;
+    }
+
+    private static class Fixture {
+        private long customerId;
+        private long petId;
+        private long employeeId;
+    }
+
+    private static EmployeeDTO createEmployeeDTO() {
+        EmployeeDTO employeeDTO = new EmployeeDTO();
+        employeeDTO.setName("TestEmployee");
+        employeeDTO.setSkills(Sets.newHashSet(EmployeeSkill.FEEDING, EmployeeSkill.PETTING));
+        employeeDTO.setDaysAvailable(Sets.newHashSet(DayOfWeek.MONDAY, DayOfWeek.WEDNESDAY));
+        return employeeDTO;
+    }
+
+    private static CustomerDTO createCustomerDTO() {
+        CustomerDTO customerDTO = new CustomerDTO();
+        customerDTO.setName("TestCustomer");
+        customerDTO.setPhoneNumber("123-456-789");
+        return customerDTO;
+    }
+
+    private static PetDTO createPetDTO(long ownerId) {
+        PetDTO petDTO = new PetDTO();
+        petDTO.setName("TestPet");
+        petDTO.setType(PetType.CAT);
+        petDTO.setOwnerId(ownerId);
+        return petDTO;
+    }
+
+    private static EmployeeRequestDTO createEmployeeRequestDTO() {
+        EmployeeRequestDTO employeeRequestDTO = new EmployeeRequestDTO();
+        employeeRequestDTO.setDate(DATE);
+        employeeRequestDTO.setSkills(Sets.newHashSet(EmployeeSkill.FEEDING));
+        return employeeRequestDTO;
+    }
+}
@@ -0,0 +1,242 @@
+package com.udacity.jdnd.course3.critter;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.udacity.jdnd.course3.critter.entity.Employee;
+import com.udacity.jdnd.course3.critter.entity.EnumSetMaskConverter;
+import com.udacity.jdnd.course3.critter.entity.Schedule;
+import com.udacity.jdnd.course3.critter.pet.PetController;
+import com.udacity.jdnd.course3.critter.pet.PetDTO;
+import com.udacity.jdnd.course3.critter.pet.PetType;
+import com.udacity.jdnd.course3.critter.repository.CustomerRepository;
+import com.udacity.jdnd.course3.critter.repository.EmployeeRepository;
+import com.udacity.jdnd.course3.critter.repository.PetRepository;
+import com.udacity.jdnd.course3.critter.repository.ScheduleRepository;
+import com.udacity.jdnd.course3.critter.schedule.ScheduleController;
+import com.udacity.jdnd.course3.critter.schedule.ScheduleDTO;
+import com.udacity.jdnd.course3.critter.tenant.TenantContext;
+import com.udacity.jdnd.course3.critter.user.CustomerDTO;
+import com.udacity.jdnd.course3.critter.user.EmployeeDTO;
+import com.udacity.jdnd.course3.critter.user.EmployeeSkill;
+import com.udacity.jdnd.course3.critter.user.UserController;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Runs every lookup query of the JPA repositories, captures the SQL that Hibernate sends, and checks with
+ * H2's EXPLAIN that no table in it is read by a full scan, i.e. that the indexes of the schema migrations fit
+ * the queries. The queries that read whole tables by design (findAll and the startup loads) are left out, and
+ * so is EmployeeRepository.findAvailable: its bitwise predicates on the day and skill masks cannot use an index
+ * and filter the employee rows as they are scanned, which is checked for its result instead.
+ * <p>
+ * The second-level and query caches are off, so every call reaches the database. The tenant restriction that
+ * Hibernate adds to every query is explained with the tenant the test runs as.
+ */
+@SpringBootTest(classes = CritterApplication.class, properties = {
+        "spring.datasource.url=jdbc:h2:mem:critter-query-plan",
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+                + "com.udacity.jdnd.course3.critter.CritterQueryPlanTest$CapturedStatements",
+        // The JCache regions are shared by all contexts in the JVM, so a context on its own database must not use them
+        "spring.jpa.properties.hibernate.cache.use_second_level_cache=false",
+        "spring.jpa.properties.hibernate.cache.use_query_cache=false"
+})
+public class CritterQueryPlanTest {
+
+    // A table read without an index, or through an index without any condition on it
+    private static final Pattern FULL_SCAN = Pattern.compile("\\.tableScan|/\\* PUBLIC\\.\\w+ \\*/");
+
+    // The tenant parameter of Hibernate's tenant restriction, which is not among the expected parameters
+    private static final Pattern TENANT_PARAMETER = Pattern.compile("tenant_id\\s*=\\s*\\?");
+
+    @Autowired
+    private UserController userController;
+
+    @Autowired
+    private PetController petController;
+
+    @Autowired
+    private ScheduleController scheduleController;
+
+    @Autowired
+    private PetRepository petRepository;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private EmployeeRepository employeeRepository;
+
+    @Autowired
+    private ScheduleRepository scheduleRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private long customerId;
+    private long petId;
+    private long employeeId;
+    private long otherEmployeeId;
+    private long scheduleId;
+    private LocalDateTime start;
+    private LocalDateTime end;
+
+    @BeforeEach
+    public void populate() {
+        CustomerDTO customerDTO = new CustomerDTO();
+        customerDTO.setName("Plan Customer");
+        customerDTO.setPhoneNumber("123-456-789");
+        customerId = userController.saveCustomer(customerDTO).getId();
+
+        PetDTO petDTO = new PetDTO();
+        petDTO.setName("Plan Pet");
+        petDTO.setType(PetType.CAT);
+        petDTO.setOwnerId(customerId);
+        petId = petController.savePet(petDTO).getId();
+
+        employeeId = saveEmployee();
+        otherEmployeeId = saveEmployee();
+
+        start = LocalDateTime.of(2019, 12, 23, 9, 0);
+        end = start.plusHours(1);
+        ScheduleDTO scheduleDTO = new ScheduleDTO();
+        scheduleDTO.setEmployeeIds(Lists.newArrayList(employeeId));
+        scheduleDTO.setPetIds(Lists.newArrayList(petId));
+        scheduleDTO.setDate(start.toLocalDate());
+        scheduleDTO.setStartTime(start);
+        scheduleDTO.setEndTime(end);
+        scheduleDTO.setActivities(Sets.newHashSet(EmployeeSkill.FEEDING));
+        scheduleId = scheduleController.createSchedule(scheduleDTO).getId();
+    }
+
+    @Test
+    public void testPetAndCustomerLookupsUseIndexes() {
+        assertIndexed("PetRepository.findPetByCustomerId", List.of(customerId),
+                () -> petRepository.findPetByCustomerId(customerId));
+        assertIndexed("CustomerRepository.findOwnerWithPetsByPetId", List.of(petId),
+                () -> customerRepository.findOwnerWithPetsByPetId(petId));
+    }
+
+    @Test
+    public void testEmployeeLookupsUseIndexes() {
+        assertIndexed("EmployeeRepository.findAllWithDetailsByIdIn", List.of(employeeId, otherEmployeeId),
+                () -> employeeRepository.findAllWithDetailsByIdIn(List.of(employeeId, otherEmployeeId)));
+        assertIndexed("EmployeeRepository.findForBookingByIdIn", List.of(employeeId, otherEmployeeId),
+                () -> employeeRepository.findForBookingByIdIn(List.of(employeeId, otherEmployeeId)));
+    }
+
+    @Test
+    public void testAvailableEmployeesAreFilteredByMasks() {
+        int monday = EnumSetMaskConverter.toMask(EnumSet.of(DayOfWeek.MONDAY));
+        int feeding = EnumSetMaskConverter.toMask(EnumSet.of(EmployeeSkill.FEEDING));
+
+        List<Employee> available = transactionTemplate.execute(status -> employeeRepository.findAvailable(monday,
+                EnumSetMaskConverter.toMask(EnumSet.of(EmployeeSkill.FEEDING, EmployeeSkill.PETTING))));
+        Employee employee = available.stream().filter(e -> e.getId() == employeeId).findFirst().orElseThrow();
+        Assertions.assertEquals(EnumSet.of(EmployeeSkill.FEEDING, EmployeeSkill.PETTING), employee.getSkills());
+        Assertions.assertEquals(EnumSet.of(DayOfWeek.MONDAY, DayOfWeek.TUESDAY), employee.getDaysAvailable());
+
+        // Not available on Wednesday, and missing one of the skills
+        int wednesday = EnumSetMaskConverter.toMask(EnumSet.of(DayOfWeek.WEDNESDAY));
+        Assertions.assertTrue(employeeRepository.findAvailable(wednesday, feeding).stream()
+                .noneMatch(e -> e.getId() == employeeId));
+        Assertions.assertTrue(employeeRepository.findAvailable(monday,
+                        EnumSetMaskConverter.toMask(EnumSet.of(EmployeeSkill.FEEDING, EmployeeSkill.SHAVING)))
+                .stream().noneMatch(e -> e.getId() == employeeId));
+    }
+
+    @Test
+    public void testScheduleLookupsUseIndexes() {
+        assertIndexed("ScheduleRepository.findByPets", List.of(petId),
+                () -> scheduleRepository.findByPets(petRepository.getReferenceById(petId)));
+        assertIndexed("ScheduleRepository.findByEmployee", List.of(employeeId),
+                () -> scheduleRepository.findByEmployee(employeeRepository.getReferenceById(employeeId)));
+        assertIndexed("ScheduleRepository.findByCustomerId", List.of(customerId),
+                () -> scheduleRepository.findByCustomerId(customerId));
+
+        // The parameters in the order of the SQL: the employee ids, then "start_time < end and end_time > start"
+        List<Long> employeeIds = List.of(employeeId, otherEmployeeId);
+        assertIndexed("ScheduleRepository.findBookedEmployeeIds", List.of(employeeId, otherEmployeeId, end, start),
+                () -> scheduleRepository.findBookedEmployeeIds(employeeIds, start, end));
+        assertIndexed("ScheduleRepository.findSlotsOverlapping", List.of(employeeId, otherEmployeeId, end, start),
+                () -> scheduleRepository.findSlotsOverlapping(employeeIds, start, end));
+        assertIndexed("ScheduleRepository.findSlotsEndingAfter", List.of(employeeId, start),
+                () -> scheduleRepository.findSlotsEndingAfter(employeeId, start));
+
+        assertIndexed("ScheduleRepository.fetchPets", List.of(scheduleId), () -> {
+            Schedule schedule = scheduleRepository.getReferenceById(scheduleId);
+            scheduleRepository.fetchPets(List.of(schedule));
+        });
+    }
+
+    private long saveEmployee() {
+        EmployeeDTO employeeDTO = new EmployeeDTO();
+        employeeDTO.setName("Plan Employee");
+        employeeDTO.setSkills(Sets.newHashSet(EmployeeSkill.FEEDING, EmployeeSkill.PETTING));
+        employeeDTO.setDaysAvailable(Sets.newHashSet(DayOfWeek.MONDAY, DayOfWeek.TUESDAY));
+        return userController.saveEmployee(employeeDTO).getId();
+    }
+
+    // Runs the call in a transaction, then EXPLAINs every select it sent with the given parameters
+    private void assertIndexed(String query, List<Object> parameters, Runnable call) {
+        CapturedStatements.clear();
+        transactionTemplate.executeWithoutResult(status -> call.run());
+        List<String> selects = CapturedStatements.selects();
+        Assertions.assertFalse(selects.isEmpty(), query + " sent no select");
+
+        for (String captured : selects) {
+            String sql = TENANT_PARAMETER.matcher(captured)
+                    .replaceAll("tenant_id='" + TenantContext.DEFAULT_TENANT + "'");
+            Assertions.assertEquals(parameters.size(), sql.chars().filter(c -> c == '?').count(),
+                    query + " has other parameters than expected: " + sql);
+            String plan = jdbcTemplate.queryForObject("EXPLAIN " + sql, String.class, parameters.toArray());
+            Assertions.assertFalse(FULL_SCAN.matcher(plan).find(), query + " reads a table without index: " + plan);
+        }
+    }
+
+    /**
+     * Records the SQL of every statement Hibernate prepares.
+     */
+    public static class CapturedStatements implements StatementInspector {
+
+        private static final List<String> statements = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public String inspect(String sql) {
+            statements.add(sql);
+            return sql;
+        }
+
+        static void clear() {
+            statements.clear();
+        }
+
+        static List<String> selects() {
+            synchronized (statements) {
+                List<String> selects = new ArrayList<>();
+                for (String sql : statements) {
+                    if (sql.trim().toLowerCase().startsWith("select")) {
+                        selects.add(sql);
+                    }
+                }
+                return selects;
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.udacity.jdnd.course3.critter;
+
+import com.udacity.jdnd.course3.critter.datasource.ReadReplicaDataSource;
+import com.udacity.jdnd.course3.critter.service.CustomerService;
+import com.udacity.jdnd.course3.critter.service.EmployeeAvailabilityIndex;
+import com.udacity.jdnd.course3.critter.service.EmployeeSlotIndex;
+import com.udacity.jdnd.course3.critter.tenant.TenantScoped;
+import com.udacity.jdnd.course3.critter.user.CustomerDTO;
+import com.udacity.jdnd.course3.critter.user.UserController;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Tests that read-only transactions are served by the read replica and everything else by the primary, and
+ * that reads fall back to the primary when the replica lags too far behind.
+ * <p>
+ * The primary and the replica are two H2 databases; replication is simulated by copying the primary into the
+ * replica with SCRIPT and RUNSCRIPT, and the lag is read from a table on the replica.
+ */
+@SpringBootTest(classes = CritterApplication.class, properties = {
+        "spring.datasource.url=jdbc:h2:mem:critter-primary",
+        "critter.datasource.replica.urls=" + CritterReadReplicaTest.REPLICA_URL,
+        "critter.datasource.replica.lag-query=SELECT seconds FROM replication_lag",
+        "critter.datasource.replica.max-lag=5s",
+        // Checked on demand by the test
+        "critter.datasource.replica.check-interval=1h",
+        // The JCache regions are shared by all contexts in the JVM, so a context on its own database must not use them
+        "spring.jpa.properties.hibernate.cache.use_second_level_cache=false",
+        "spring.jpa.properties.hibernate.cache.use_query_cache=false"
+})
+public class CritterReadReplicaTest {
+
+    static final String REPLICA_URL = "jdbc:h2:mem:critter-replica;DB_CLOSE_DELAY=-1";
+
+    @Autowired
+    private UserController userController;
+
+    @Autowired
+    private CustomerService customerService;
+
+    @Autowired
+    private HikariDataSource primaryDataSource;
+
+    @Autowired
+    private ReadReplicaDataSource replicaDataSource;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private TenantScoped<EmployeeSlotIndex> slotIndexes;
+
+    @Autowired
+    private TenantScoped<EmployeeAvailabilityIndex> availabilityIndexes;
+
+    @Test
+    public void testReadOnlyTransactionsUseFreshReplica() throws Exception {
+        // The replica has no lag table yet, so it is not used
+        Assertions.assertFalse(replicaDataSource.isFresh("replica-0"));
+
+        saveCustomer("Replicated");
+        replicate(0);
+        Assertions.assertTrue(replicaDataSource.isFresh("replica-0"));
+        saveCustomer("Not replicated");
+
+        // Read-only transactions read the replica, which does not have the second customer yet
+        List<String> replicaNames = customerNames();
+        Assertions.assertTrue(replicaNames.contains("Replicated"));
+        Assertions.assertFalse(replicaNames.contains("Not replicated"));
+
+        // A read within a read-write transaction goes to the primary
+        List<String> primaryNames = transactionTemplate.execute(status -> customerNames());
+        Assertions.assertTrue(primaryNames.contains("Not replicated"));
+
+        // A replica that lags more than max-lag is no longer used
+        setLag(60);
+        Assertions.assertFalse(replicaDataSource.isFresh("replica-0"));
+        Assertions.assertTrue(customerNames().contains("Not replicated"));
+    }
+
+    @Test
+    public void testNodeLocalIndexesAreOffWithReplicas() {
+        // Replicas mean several nodes, whose writes a node-local index would miss
+        Assertions.assertFalse(slotIndexes.get().isReady());
+        Assertions.assertFalse(availabilityIndexes.get().isReady());
+    }
+
+    private void saveCustomer(String name) {
+        CustomerDTO customerDTO = new CustomerDTO();
+        customerDTO.setName(name);
+        customerDTO.setPhoneNumber("123-456-789");
+        userController.saveCustomer(customerDTO);
+    }
+
+    private List<String> customerNames() {
+        return customerService.getAllCustomerDTOs().stream().map(CustomerDTO::getName).collect(Collectors.toList());
+    }
+
+    // Copies the primary into the replica and reports the given lag
+    private void replicate(int lagSeconds) throws Exception {
+        Path script = Files.createTempFile("critter-replica", ".sql");
+        try {
+            try (Connection connection = primaryDataSource.getConnection();
+                 Statement statement = connection.createStatement()) {
+                statement.execute("SCRIPT TO '" + script + "'");
+            }
+            try (Connection connection = DriverManager.getConnection(REPLICA_URL, "sa", "");
+                 Statement statement = connection.createStatement()) {
+                statement.execute("DROP ALL OBJECTS");
+                statement.execute("RUNSCRIPT FROM '" + script + "'");
+                statement.execute("CREATE TABLE replication_lag (seconds INT)");
+                statement.execute("INSERT INTO replication_lag VALUES (" + lagSeconds + ")");
+            }
+        } finally {
+            Files.delete(script);
+        }
+        replicaDataSource.checkReplicas();
+    }
+
+    private void setLag(int lagSeconds) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(REPLICA_URL, "sa", "");
+             Statement statement = connection.createStatement()) {
+            statement.execute("UPDATE replication_lag SET seconds = " + lagSeconds);
+        }
+        replicaDataSource.checkReplicas();
+    }
+}
@@ -0,0 +1,111 @@
+package com.udacity.jdnd.course3.critter;
+
+import com.udacity.jdnd.course3.critter.pet.PetController;
+import com.udacity.jdnd.course3.critter.pet.PetDTO;
+import com.udacity.jdnd.course3.critter.pet.PetType;
+import com.udacity.jdnd.course3.critter.schedule.ScheduleController;
+import com.udacity.jdnd.course3.critter.schedule.ScheduleDTO;
+import com.udacity.jdnd.course3.critter.user.CustomerDTO;
+import com.udacity.jdnd.course3.critter.user.EmployeeDTO;
+import com.udacity.jdnd.course3.critter.user.EmployeeSkill;
+import com.udacity.jdnd.course3.critter.user.UserController;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tests that a database created by the application before Flyway is taken over: baselined at V1, brought to the
+ * current schema by the later migrations, accepted by Hibernate's validation, and handing out ids above the ones
+ * already in use.
+ */
+@SpringBootTest(classes = CritterApplication.class, properties = {
+        "spring.flyway.baseline-on-migrate=true",
+        // The JCache regions are shared by all contexts in the JVM, so a context on its own database must not use them
+        "spring.jpa.properties.hibernate.cache.use_second_level_cache=false",
+        "spring.jpa.properties.hibernate.cache.use_query_cache=false"
+})
+public class CritterSchemaUpgradeTest {
+
+    private static final String URL = "jdbc:h2:mem:critter-upgrade;DB_CLOSE_DELAY=-1";
+
+    @Autowired
+    private UserController userController;
+
+    @Autowired
+    private PetController petController;
+
+    @Autowired
+    private ScheduleController scheduleController;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // The tables and rows the application had before Flyway, in place before the context starts
+    @DynamicPropertySource
+    static void createDatabaseBeforeFlyway(DynamicPropertyRegistry registry) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(URL, "sa", "");
+             Statement statement = connection.createStatement()) {
+            statement.execute("runscript from 'classpath:db/migration/h2/V1__schema.sql'");
+            statement.execute("insert into customer (id, name, phone_number) values (7, 'Old Customer', '123')");
+            statement.execute("insert into pet (id, type, name, customer_id) values (12, 0, 'Old Pet', 7)");
+            statement.execute("insert into employee (id, name) values (5, 'Old Employee')");
+            statement.execute("insert into tbl_skills (employee_id, skill) values (5, 'FEEDING')");
+            statement.execute("insert into employee_day_available (employee_id, days_available) values (5, 'MONDAY')");
+            statement.execute("insert into schedule (id, date) values (20, date '2030-01-07')");
+            statement.execute("insert into schedule_employee (schedule_id, employee_id) values (20, 5)");
+            statement.execute("insert into schedule_pets (schedule_id, pets_id) values (20, 12)");
+            // FEEDING, stored as its ordinal
+            statement.execute("insert into schedule_activities (schedule_id, activities) values (20, 2)");
+        }
+        registry.add("spring.datasource.url", () -> URL);
+    }
+
+    @Test
+    public void testOldRowsAreReadAfterTheUpgrade() {
+        Assertions.assertEquals("1", jdbcTemplate.queryForObject(
+                "select \"version\" from \"flyway_schema_history\" where \"type\" = 'BASELINE'", String.class));
+
+        EmployeeDTO employee = userController.getEmployee(5);
+        Assertions.assertEquals(Set.of(EmployeeSkill.FEEDING), employee.getSkills());
+        Assertions.assertEquals(Set.of(DayOfWeek.MONDAY), employee.getDaysAvailable());
+
+        List<ScheduleDTO> schedules = scheduleController.getScheduleForEmployee(5);
+        Assertions.assertEquals(1, schedules.size());
+        Assertions.assertEquals(List.of(12L), schedules.get(0).getPetIds());
+        Assertions.assertEquals(Set.of(EmployeeSkill.FEEDING), schedules.get(0).getActivities());
+        // The schedule got its whole-day slot on startup
+        Assertions.assertEquals(LocalDate.of(2030, 1, 7).atStartOfDay(), schedules.get(0).getStartTime());
+    }
+
+    @Test
+    public void testNewIdsStartAboveTheOldOnes() {
+        CustomerDTO customerDTO = new CustomerDTO();
+        customerDTO.setName("New Customer");
+        customerDTO.setPhoneNumber("456");
+        long customerId = userController.saveCustomer(customerDTO).getId();
+        Assertions.assertTrue(customerId > 7);
+
+        PetDTO petDTO = new PetDTO();
+        petDTO.setName("New Pet");
+        petDTO.setType(PetType.DOG);
+        petDTO.setOwnerId(customerId);
+        Assertions.assertTrue(petController.savePet(petDTO).getId() > 12);
+
+        EmployeeDTO employeeDTO = new EmployeeDTO();
+        employeeDTO.setName("New Employee");
+        Assertions.assertTrue(userController.saveEmployee(employeeDTO).getId() > 5);
+    }
+}
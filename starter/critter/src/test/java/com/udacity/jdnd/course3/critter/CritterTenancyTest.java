@@ -0,0 +1,249 @@
+package com.udacity.jdnd.course3.critter;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.udacity.jdnd.course3.critter.pet.PetDTO;
+import com.udacity.jdnd.course3.critter.pet.PetType;
+import com.udacity.jdnd.course3.critter.repository.CustomerRepository;
+import com.udacity.jdnd.course3.critter.schedule.ScheduleDTO;
+import com.udacity.jdnd.course3.critter.service.EmployeeAvailabilityIndex;
+import com.udacity.jdnd.course3.critter.tenant.TenantContext;
+import com.udacity.jdnd.course3.critter.tenant.TenantScoped;
+import com.udacity.jdnd.course3.critter.user.CustomerDTO;
+import com.udacity.jdnd.course3.critter.user.EmployeeDTO;
+import com.udacity.jdnd.course3.critter.user.EmployeeSkill;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Tests that every clinic only sees its own rows, through the entity queries, the JDBC projections and the
+ * in-memory availability indexes, and that a clinic with a database of its own is served from that database.
+ * <p>
+ * The shared and the dedicated database are two H2 databases of this class. It uses clinics of its own, and the
+ * second-level cache keys carry the clinic, so it can share the entity and collection cache with the other contexts
+ * in the JVM, but not the query cache.
+ */
+@SpringBootTest(classes = CritterApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {
+                "spring.datasource.url=jdbc:h2:mem:critter-tenancy",
+                "critter.tenancy.databases." + CritterTenancyTest.DEDICATED_CLINIC + ".url="
+                        + CritterTenancyTest.DEDICATED_URL,
+                "critter.tenancy.databases." + CritterTenancyTest.DEDICATED_CLINIC + ".username=sa",
+                "critter.booking.validate-availability=false",
+                // The cached results of the default clinic's queries would be shared with the other contexts
+                "spring.jpa.properties.hibernate.cache.use_query_cache=false"
+        })
+public class CritterTenancyTest {
+
+    static final String DEDICATED_CLINIC = "big-clinic";
+    static final String DEDICATED_URL = "jdbc:h2:mem:critter-tenancy-big;DB_CLOSE_DELAY=-1";
+
+    private static final String HEADER = "X-Clinic-Id";
+
+    // A Monday
+    private static final LocalDateTime START = LocalDateTime.of(2019, 12, 23, 9, 0);
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private TenantScoped<EmployeeAvailabilityIndex> availabilityIndexes;
+
+    @Test
+    public void testClinicsOnlySeeTheirOwnRows() {
+        long northOwnerId = saveCustomer("north", "North Customer");
+        saveCustomer("south", "South Customer");
+        Assertions.assertEquals(List.of("North Customer"), customerNames("north"));
+        Assertions.assertEquals(List.of("South Customer"), customerNames("south"));
+
+        // Lookups by id do not reach into another clinic
+        long northEmployeeId = saveEmployee("north");
+        Assertions.assertEquals(HttpStatus.OK, get("north", "/user/employee/{id}", EmployeeDTO.class,
+                northEmployeeId).getStatusCode());
+        Assertions.assertEquals(HttpStatus.BAD_REQUEST, get("south", "/user/employee/{id}", EmployeeDTO.class,
+                northEmployeeId).getStatusCode());
+
+        // Neither do the availability indexes
+        long southEmployeeId = saveEmployee("south");
+        Assertions.assertArrayEquals(new long[]{northEmployeeId}, freeEmployeeIds("north"));
+        Assertions.assertArrayEquals(new long[]{southEmployeeId}, freeEmployeeIds("south"));
+
+        // Nor the schedule projections, and another clinic's pet cannot be booked
+        PetDTO pet = new PetDTO();
+        pet.setName("North Pet");
+        pet.setType(PetType.CAT);
+        pet.setOwnerId(northOwnerId);
+        long petId = post("north", "/pet", pet, PetDTO.class).getBody().getId();
+        Assertions.assertEquals(HttpStatus.OK,
+                post("north", "/schedule", schedule(northEmployeeId, petId), ScheduleDTO.class).getStatusCode());
+        Assertions.assertEquals(HttpStatus.BAD_REQUEST,
+                post("south", "/schedule", schedule(southEmployeeId, petId), ScheduleDTO.class).getStatusCode());
+        Assertions.assertEquals(1, get("north", "/schedule", ScheduleDTO[].class).getBody().length);
+        Assertions.assertEquals(0, get("south", "/schedule", ScheduleDTO[].class).getBody().length);
+        Assertions.assertEquals(0, freeEmployeeIds("north").length);
+    }
+
+    @Test
+    public void testImportedPetsReachTheCachedOwnerOfTheClinic() {
+        String clinic = "importing-clinic";
+        long ownerId = saveCustomer(clinic, "Importing Customer");
+        PetDTO pet = new PetDTO();
+        pet.setName("First Pet");
+        pet.setType(PetType.DOG);
+        pet.setOwnerId(ownerId);
+        long petId = post(clinic, "/pet", pet, PetDTO.class).getBody().getId();
+        // Puts the owner's pets collection into the second-level cache, under the clinic
+        Assertions.assertEquals(1, ownerPetCount(clinic, ownerId));
+
+        String pets = "{\"type\":\"CAT\",\"name\":\"Kilo\",\"ownerId\":" + ownerId + "}\n" +
+                "{\"type\":\"DOG\",\"name\":\"Rex\",\"ownerId\":" + ownerId + "}\n";
+        HttpHeaders headers = headers(clinic);
+        headers.setContentType(MediaType.parseMediaType(NdjsonStream.MEDIA_TYPE));
+        Assertions.assertEquals(HttpStatus.OK, restTemplate.exchange("/pet/batch", HttpMethod.POST,
+                new HttpEntity<>(pets, headers), Long[].class).getStatusCode());
+
+        // The owner loaded by id sees the imported pets, and so does the owner of the first pet
+        Assertions.assertEquals(3, ownerPetCount(clinic, ownerId));
+        Assertions.assertEquals(3, get(clinic, "/user/customer/pet/{id}", CustomerDTO.class, petId).getBody()
+                .getPetIds().size());
+    }
+
+    @Test
+    public void testETagOfOneClinicDoesNotMatchAnother() {
+        long employeeId = saveEmployee("north");
+        ResponseEntity<ScheduleDTO[]> north = get("north", "/schedule/employee/{id}", ScheduleDTO[].class, employeeId);
+        String etag = north.getHeaders().getETag();
+        Assertions.assertTrue(north.getHeaders().getVary().contains(HEADER));
+
+        // Both schedules are unchanged, at the same version, but the other clinic's copy is not the client's
+        HttpHeaders headers = headers("south");
+        headers.setIfNoneMatch(etag);
+        ResponseEntity<ScheduleDTO[]> south = restTemplate.exchange("/schedule/employee/{id}", HttpMethod.GET,
+                new HttpEntity<>(headers), ScheduleDTO[].class, employeeId);
+        Assertions.assertEquals(HttpStatus.OK, south.getStatusCode());
+        Assertions.assertNotEquals(etag, south.getHeaders().getETag());
+
+        headers = headers("north");
+        headers.setIfNoneMatch(etag);
+        Assertions.assertEquals(HttpStatus.NOT_MODIFIED, restTemplate.exchange("/schedule/employee/{id}",
+                HttpMethod.GET, new HttpEntity<>(headers), ScheduleDTO[].class, employeeId).getStatusCode());
+    }
+
+    @Test
+    public void testUnknownClinicsDoNotGetIndexes() {
+        // Reads with made-up clinic ids all see the one shared empty index
+        Assertions.assertEquals(0, freeEmployeeIds("made-up-1").length);
+        Assertions.assertEquals(0, freeEmployeeIds("made-up-2").length);
+        Assertions.assertSame(availabilityIndexes.get("made-up-1"), availabilityIndexes.get("made-up-2"));
+        Assertions.assertTrue(availabilityIndexes.get("made-up-1").isReady());
+
+        // A clinic gets its own once it has rows
+        long employeeId = saveEmployee("new-clinic");
+        Assertions.assertNotSame(availabilityIndexes.get("made-up-1"), availabilityIndexes.get("new-clinic"));
+        Assertions.assertTrue(availabilityIndexes.get("new-clinic").contains(employeeId));
+        Assertions.assertFalse(availabilityIndexes.get("made-up-1").contains(employeeId));
+        Assertions.assertArrayEquals(new long[]{employeeId}, freeEmployeeIds("new-clinic"));
+    }
+
+    @Test
+    public void testMalformedClinicIdIsRejected() {
+        Assertions.assertEquals(HttpStatus.BAD_REQUEST,
+                get("north clinic; drop", "/user/customer", String.class).getStatusCode());
+    }
+
+    @Test
+    public void testDedicatedClinicUsesItsOwnDatabase() {
+        saveCustomer(DEDICATED_CLINIC, "Dedicated Customer");
+        Assertions.assertEquals(List.of("Dedicated Customer"), customerNames(DEDICATED_CLINIC));
+
+        String count = "select count(*) from customer where name = 'Dedicated Customer'";
+        JdbcTemplate dedicated = new JdbcTemplate(new DriverManagerDataSource(DEDICATED_URL, "sa", ""));
+        Assertions.assertEquals(1, dedicated.queryForObject(count, Integer.class));
+        Assertions.assertEquals(0, jdbcTemplate.queryForObject(count, Integer.class));
+    }
+
+    private long saveCustomer(String clinic, String name) {
+        CustomerDTO customer = new CustomerDTO();
+        customer.setName(name);
+        customer.setPhoneNumber("123-456-789");
+        return post(clinic, "/user/customer", customer, CustomerDTO.class).getBody().getId();
+    }
+
+    // The size of the pets collection of the owner loaded by id, which is read from the second-level cache
+    private int ownerPetCount(String clinic, long ownerId) {
+        return TenantContext.callAs(clinic, () -> transactionTemplate.execute(status ->
+                customerRepository.findById(ownerId).orElseThrow().getPets().size()));
+    }
+
+    private long saveEmployee(String clinic) {
+        EmployeeDTO employee = new EmployeeDTO();
+        employee.setName("Clinic Employee");
+        employee.setSkills(Sets.newHashSet(EmployeeSkill.FEEDING));
+        employee.setDaysAvailable(Sets.newHashSet(DayOfWeek.MONDAY));
+        return post(clinic, "/user/employee", employee, EmployeeDTO.class).getBody().getId();
+    }
+
+    private static ScheduleDTO schedule(long employeeId, long petId) {
+        ScheduleDTO schedule = new ScheduleDTO();
+        schedule.setEmployeeIds(Lists.newArrayList(employeeId));
+        schedule.setPetIds(Lists.newArrayList(petId));
+        schedule.setDate(START.toLocalDate());
+        schedule.setStartTime(START);
+        schedule.setEndTime(START.plusHours(1));
+        schedule.setActivities(Sets.newHashSet(EmployeeSkill.FEEDING));
+        return schedule;
+    }
+
+    private List<String> customerNames(String clinic) {
+        return Arrays.stream(get(clinic, "/user/customer", CustomerDTO[].class).getBody())
+                .map(CustomerDTO::getName).collect(Collectors.toList());
+    }
+
+    // The employees of the clinic that can feed during the first hour of START
+    private long[] freeEmployeeIds(String clinic) {
+        return Arrays.stream(get(clinic, "/user/employee/availability?start={start}&end={end}&skills=FEEDING",
+                        EmployeeDTO[].class, START, START.plusHours(1)).getBody())
+                .mapToLong(EmployeeDTO::getId).sorted().toArray();
+    }
+
+    private <T> ResponseEntity<T> get(String clinic, String url, Class<T> type, Object... variables) {
+        return restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(headers(clinic)), type, variables);
+    }
+
+    private <T> ResponseEntity<T> post(String clinic, String url, Object body, Class<T> type) {
+        return restTemplate.exchange(url, HttpMethod.POST, new HttpEntity<>(body, headers(clinic)), type);
+    }
+
+    private static HttpHeaders headers(String clinic) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HEADER, clinic);
+        return headers;
+    }
+}
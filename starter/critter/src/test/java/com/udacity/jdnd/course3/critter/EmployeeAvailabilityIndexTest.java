@@ -0,0 +1,108 @@
+package com.udacity.jdnd.course3.critter;
+
+import com.udacity.jdnd.course3.critter.service.EmployeeAvailabilityIndex;
+import com.udacity.jdnd.course3.critter.user.EmployeeSkill;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.DayOfWeek;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tests the masks and posting lists of the in-memory availability index on its own.
+ */
+public class EmployeeAvailabilityIndexTest {
+
+    @Test
+    public void testMasksUseOneBitPerOrdinal() {
+        Set<EmployeeSkill> skills = EnumSet.of(EmployeeSkill.PETTING, EmployeeSkill.SHAVING);
+        Set<DayOfWeek> days = EnumSet.of(DayOfWeek.MONDAY, DayOfWeek.SUNDAY);
+        Assertions.assertEquals((byte) (1 << EmployeeSkill.PETTING.ordinal() | 1 << EmployeeSkill.SHAVING.ordinal()),
+                EmployeeAvailabilityIndex.skillMask(skills));
+        Assertions.assertEquals((byte) 0b1000001, EmployeeAvailabilityIndex.dayMask(days));
+        Assertions.assertEquals(0, EmployeeAvailabilityIndex.skillMask(null));
+    }
+
+    @Test
+    public void testLookupIsTheIntersectionOfDayAndSkillPostings() {
+        EmployeeAvailabilityIndex index = new EmployeeAvailabilityIndex();
+        index.put(1L, EnumSet.of(EmployeeSkill.FEEDING, EmployeeSkill.PETTING), EnumSet.of(DayOfWeek.MONDAY), 1);
+        index.put(2L, EnumSet.of(EmployeeSkill.FEEDING), EnumSet.of(DayOfWeek.MONDAY, DayOfWeek.TUESDAY), 1);
+        index.put(3L, EnumSet.of(EmployeeSkill.PETTING), EnumSet.of(DayOfWeek.TUESDAY), 1);
+
+        Assertions.assertEquals(Arrays.asList(1L, 2L),
+                index.findEmployeeIds(DayOfWeek.MONDAY, Collections.emptySet()));
+        Assertions.assertEquals(Arrays.asList(1L, 2L), index.findEmployeeIds(DayOfWeek.MONDAY, null));
+        Assertions.assertEquals(Arrays.asList(1L, 2L),
+                index.findEmployeeIds(DayOfWeek.MONDAY, EnumSet.of(EmployeeSkill.FEEDING)));
+        Assertions.assertEquals(Collections.singletonList(1L),
+                index.findEmployeeIds(DayOfWeek.MONDAY, EnumSet.of(EmployeeSkill.FEEDING, EmployeeSkill.PETTING)));
+        Assertions.assertEquals(Collections.singletonList(3L),
+                index.findEmployeeIds(DayOfWeek.TUESDAY, EnumSet.of(EmployeeSkill.PETTING)));
+        Assertions.assertEquals(Collections.emptyList(),
+                index.findEmployeeIds(DayOfWeek.FRIDAY, Collections.emptySet()));
+    }
+
+    @Test
+    public void testRewriteAndRemoveClearTheOldPostings() {
+        EmployeeAvailabilityIndex index = new EmployeeAvailabilityIndex();
+        index.put(1L, EnumSet.of(EmployeeSkill.FEEDING), EnumSet.of(DayOfWeek.MONDAY), 1);
+        index.put(1L, EnumSet.of(EmployeeSkill.WALKING), EnumSet.of(DayOfWeek.FRIDAY), 2);
+
+        Assertions.assertEquals(Collections.emptyList(),
+                index.findEmployeeIds(DayOfWeek.MONDAY, Collections.emptySet()));
+        Assertions.assertEquals(Collections.emptyList(),
+                index.findEmployeeIds(DayOfWeek.FRIDAY, EnumSet.of(EmployeeSkill.FEEDING)));
+        Assertions.assertEquals(Collections.singletonList(1L),
+                index.findEmployeeIds(DayOfWeek.FRIDAY, EnumSet.of(EmployeeSkill.WALKING)));
+
+        index.remove(1L);
+        Assertions.assertEquals(Collections.emptyList(),
+                index.findEmployeeIds(DayOfWeek.FRIDAY, Collections.emptySet()));
+        Assertions.assertTrue(index.contains(1L));
+        index.remove(2L);
+        Assertions.assertFalse(index.contains(2L));
+    }
+
+    @Test
+    public void testOlderVersionDoesNotOverwriteNewer() {
+        EmployeeAvailabilityIndex index = new EmployeeAvailabilityIndex();
+        // The put of a later commit arrives first
+        index.put(1L, EnumSet.of(EmployeeSkill.WALKING), EnumSet.of(DayOfWeek.FRIDAY), 3);
+        index.put(1L, EnumSet.of(EmployeeSkill.FEEDING), EnumSet.of(DayOfWeek.MONDAY), 2);
+
+        Assertions.assertEquals(Collections.emptyList(),
+                index.findEmployeeIds(DayOfWeek.MONDAY, Collections.emptySet()));
+        Assertions.assertEquals(Collections.singletonList(1L),
+                index.findEmployeeIds(DayOfWeek.FRIDAY, EnumSet.of(EmployeeSkill.WALKING)));
+
+        // The same version again is the same row, written again within one transaction
+        index.put(1L, EnumSet.of(EmployeeSkill.FEEDING), EnumSet.of(DayOfWeek.FRIDAY), 3);
+        Assertions.assertEquals(Collections.singletonList(1L),
+                index.findEmployeeIds(DayOfWeek.FRIDAY, EnumSet.of(EmployeeSkill.FEEDING)));
+    }
+
+    @Test
+    public void testPostingListsGrowPastOneWord() {
+        // Enough employees for several 64-bit words, with every third one working on Wednesdays
+        EmployeeAvailabilityIndex index = new EmployeeAvailabilityIndex();
+        List<Long> expected = new ArrayList<>();
+        for (long employeeId = 1; employeeId <= 200; employeeId++) {
+            boolean wednesday = employeeId % 3 == 0;
+            index.put(employeeId, EnumSet.of(EmployeeSkill.MEDICATING),
+                    wednesday ? EnumSet.of(DayOfWeek.WEDNESDAY) : EnumSet.of(DayOfWeek.THURSDAY), 1);
+            if (wednesday) {
+                expected.add(employeeId);
+            }
+        }
+        Assertions.assertEquals(expected,
+                index.findEmployeeIds(DayOfWeek.WEDNESDAY, EnumSet.of(EmployeeSkill.MEDICATING)));
+        Assertions.assertEquals(200 - expected.size(),
+                index.findEmployeeIds(DayOfWeek.THURSDAY, Collections.emptySet()).size());
+    }
+}
@@ -0,0 +1,197 @@
+package com.udacity.jdnd.course3.critter;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.udacity.jdnd.course3.critter.pet.PetController;
+import com.udacity.jdnd.course3.critter.pet.PetDTO;
+import com.udacity.jdnd.course3.critter.pet.PetType;
+import com.udacity.jdnd.course3.critter.schedule.ScheduleController;
+import com.udacity.jdnd.course3.critter.schedule.ScheduleDTO;
+import com.udacity.jdnd.course3.critter.user.CustomerDTO;
+import com.udacity.jdnd.course3.critter.user.EmployeeDTO;
+import com.udacity.jdnd.course3.critter.user.EmployeeSkill;
+import com.udacity.jdnd.course3.critter.user.UserController;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares requests/s and p99 latency of the read endpoints of UserController, PetController and
+ * ScheduleController under a large number of concurrent clients, with requests handled on the Tomcat worker
+ * pool against requests handled on virtual threads ({@code spring.threads.virtual.enabled}). Both runs use the
+ * same connection pool size.
+ * <p>
+ * Every client is a virtual thread that sends its requests one after the other, so the number of clients is
+ * the number of requests in flight. This is a measurement, not a check, so it only runs on request:
+ * {@code mvn test -Dtest=ExecutionModeLoadTest -Dcritter.benchmark=true [-Dcritter.benchmark.clients=10000]}
+ * <p>
+ * Client and server run in one JVM, so every client holds two sockets: the number of clients has to stay below
+ * half the open file limit ({@code ulimit -n}).
+ */
+@EnabledIfSystemProperty(named = "critter.benchmark", matches = "true")
+public class ExecutionModeLoadTest {
+
+    private static final int CLIENTS = Integer.getInteger("critter.benchmark.clients", 10000);
+    private static final int REQUESTS_PER_CLIENT = Integer.getInteger("critter.benchmark.requests", 20);
+    private static final int POOL_SIZE = Integer.getInteger("critter.benchmark.pool-size", 20);
+    private static final int ROWS = 200;
+    private static final LocalDate DATE = LocalDate.of(2019, 12, 25);
+
+    @Test
+    public void compareExecutionModes() throws Exception {
+        Result platform = measure(false);
+        Result virtual = measure(true);
+        System.out.printf("GET user/pet/schedule clients=%d pool=%d: platform threads: %8.1f requests/s, "
+                        + "p99 %6d ms, %d failed | virtual threads: %8.1f requests/s, p99 %6d ms, %d failed%n",
+                CLIENTS, POOL_SIZE, platform.requestsPerSecond, platform.p99Millis, platform.failed,
+                virtual.requestsPerSecond, virtual.p99Millis, virtual.failed);
+    }
+
+    private static Result measure(boolean virtualThreads) throws Exception {
+        // Every run gets its own database, so that the second one does not read the rows of the first
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(CritterApplication.class)
+                .properties(
+                        "server.port=0",
+                        "spring.threads.virtual.enabled=" + virtualThreads,
+                        "spring.datasource.url=jdbc:h2:mem:execution-mode-" + virtualThreads,
+                        "spring.datasource.hikari.maximum-pool-size=" + POOL_SIZE,
+                        "server.tomcat.max-connections=" + (CLIENTS + 100),
+                        // The JCache regions are shared by all contexts in the JVM, so a context on its own database must not use them
+                        "spring.jpa.properties.hibernate.cache.use_second_level_cache=false",
+                        "spring.jpa.properties.hibernate.cache.use_query_cache=false")
+                .run()) {
+            List<String> paths = populate(context);
+            String baseUrl = "http://localhost:"
+                    + ((ServletWebServerApplicationContext) context).getWebServer().getPort();
+
+            // Warm up the JIT and the connection pool with a small fraction of the load
+            run(baseUrl, paths, Math.max(1, CLIENTS / 10));
+            return run(baseUrl, paths, CLIENTS);
+        }
+    }
+
+    private static Result run(String baseUrl, List<String> paths, int clients) throws Exception {
+        long[] latencies = new long[clients * REQUESTS_PER_CLIENT];
+        AtomicInteger failed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+             HttpClient client = HttpClient.newBuilder()
+                     .executor(executor)
+                     .connectTimeout(Duration.ofMinutes(1))
+                     .build()) {
+            List<Future<?>> results = Lists.newArrayList();
+            for (int c = 0; c < clients; c++) {
+                int first = c * REQUESTS_PER_CLIENT;
+                results.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < REQUESTS_PER_CLIENT; i++) {
+                        HttpRequest request = HttpRequest.newBuilder(
+                                        URI.create(baseUrl + paths.get((first + i) % paths.size())))
+                                .timeout(Duration.ofMinutes(2))
+                                .build();
+                        long sent = System.nanoTime();
+                        try {
+                            if (client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() != 200) {
+                                failed.incrementAndGet();
+                            }
+                        } catch (IOException exception) {
+                            // Refused or timed out connections count as failures, with the time it took them to fail
+                            failed.incrementAndGet();
+                        }
+                        latencies[first + i] = System.nanoTime() - sent;
+                    }
+                    return null;
+                }));
+            }
+
+            long started = System.nanoTime();
+            start.countDown();
+            for (Future<?> result : results) {
+                result.get(10, TimeUnit.MINUTES);
+            }
+            double seconds = (System.nanoTime() - started) / 1e9;
+
+            Arrays.sort(latencies);
+            long p99 = latencies[(int) Math.ceil(latencies.length * 0.99) - 1];
+            return new Result(latencies.length / seconds, TimeUnit.NANOSECONDS.toMillis(p99), failed.get());
+        }
+    }
+
+    // Creates customers with one pet and employees with one schedule each, and returns the read paths to hit
+    private static List<String> populate(ConfigurableApplicationContext context) {
+        UserController userController = context.getBean(UserController.class);
+        PetController petController = context.getBean(PetController.class);
+        ScheduleController scheduleController = context.getBean(ScheduleController.class);
+
+        List<String> paths = Lists.newArrayList();
+        for (int i = 0; i < ROWS; i++) {
+            CustomerDTO customer = new CustomerDTO();
+            customer.setName("Customer " + i);
+            customer.setPhoneNumber("123-456-789");
+            long customerId = userController.saveCustomer(customer).getId();
+
+            PetDTO pet = new PetDTO();
+            pet.setName("Pet " + i);
+            pet.setType(PetType.DOG);
+            pet.setOwnerId(customerId);
+            long petId = petController.savePet(pet).getId();
+
+            EmployeeDTO employee = new EmployeeDTO();
+            employee.setName("Employee " + i);
+            employee.setSkills(Sets.newHashSet(EmployeeSkill.FEEDING, EmployeeSkill.WALKING));
+            employee.setDaysAvailable(EnumSet.allOf(DayOfWeek.class));
+            long employeeId = userController.saveEmployee(employee).getId();
+
+            ScheduleDTO schedule = new ScheduleDTO();
+            schedule.setPetIds(Lists.newArrayList(petId));
+            schedule.setEmployeeIds(Lists.newArrayList(employeeId));
+            schedule.setDate(DATE);
+            schedule.setActivities(Sets.newHashSet(EmployeeSkill.FEEDING));
+            scheduleController.createSchedule(schedule);
+
+            paths.add("/user/employee/" + employeeId);
+            paths.add("/user/customer/pet/" + petId);
+            paths.add("/pet/" + petId);
+            paths.add("/pet/owner/" + customerId);
+            paths.add("/schedule/employee/" + employeeId);
+            paths.add("/schedule/customer/" + customerId);
+        }
+        Assertions.assertFalse(paths.isEmpty());
+        return paths;
+    }
+
+    private static final class Result {
+
+        private final double requestsPerSecond;
+        private final long p99Millis;
+        private final int failed;
+
+        private Result(double requestsPerSecond, long p99Millis, int failed) {
+            this.requestsPerSecond = requestsPerSecond;
+            this.p99Millis = p99Millis;
+            this.failed = failed;
+        }
+    }
+}
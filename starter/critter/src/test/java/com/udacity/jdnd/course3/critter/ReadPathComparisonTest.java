@@ -0,0 +1,171 @@
+package com.udacity.jdnd.course3.critter;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.udacity.jdnd.course3.critter.entity.Customer;
+import com.udacity.jdnd.course3.critter.entity.Pet;
+import com.udacity.jdnd.course3.critter.pet.PetController;
+import com.udacity.jdnd.course3.critter.pet.PetDTO;
+import com.udacity.jdnd.course3.critter.pet.PetType;
+import com.udacity.jdnd.course3.critter.schedule.ScheduleController;
+import com.udacity.jdnd.course3.critter.schedule.ScheduleDTO;
+import com.udacity.jdnd.course3.critter.service.CustomerService;
+import com.udacity.jdnd.course3.critter.service.PetService;
+import com.udacity.jdnd.course3.critter.service.ScheduleService;
+import com.udacity.jdnd.course3.critter.user.*;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Compares allocation and latency of the entity read path (hydrate entities, convert in the controller)
+ * with the JDBC projection read path for the list endpoints.
+ * <p>
+ * This is a measurement, not a check, so it only runs on request:
+ * {@code mvn test -Dtest=ReadPathComparisonTest -Dcritter.benchmark=true [-Dcritter.benchmark.rows=2000]}
+ */
+@EnabledIfSystemProperty(named = "critter.benchmark", matches = "true")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@SpringBootTest(classes = CritterApplication.class, properties = {
+        "spring.datasource.url=jdbc:h2:mem:read-path-comparison",
+        // The JCache regions are shared by all contexts in the JVM, so a context on its own database must not use them
+        "spring.jpa.properties.hibernate.cache.use_second_level_cache=false",
+        "spring.jpa.properties.hibernate.cache.use_query_cache=false"
+})
+public class ReadPathComparisonTest {
+
+    private static final int ROWS = Integer.getInteger("critter.benchmark.rows", 2000);
+    private static final int EMPLOYEES = 50;
+    private static final int ITERATIONS = 30;
+    private static final LocalDate DATE = LocalDate.of(2019, 12, 25);
+
+    @Autowired
+    private UserController userController;
+    @Autowired
+    private PetController petController;
+    @Autowired
+    private ScheduleController scheduleController;
+    @Autowired
+    private PetService petService;
+    @Autowired
+    private CustomerService customerService;
+    @Autowired
+    private ScheduleService scheduleService;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeAll
+    public void populate() {
+        List<Long> employeeIds = Lists.newArrayList();
+        for (int i = 0; i < EMPLOYEES; i++) {
+            EmployeeDTO employee = new EmployeeDTO();
+            employee.setName("Employee " + i);
+            employee.setSkills(Sets.newHashSet(EmployeeSkill.FEEDING, EmployeeSkill.WALKING));
+            employee.setDaysAvailable(Sets.newHashSet(DayOfWeek.WEDNESDAY));
+            employeeIds.add(userController.saveEmployee(employee).getId());
+        }
+        for (int i = 0; i < ROWS; i++) {
+            CustomerDTO customer = new CustomerDTO();
+            customer.setName("Customer " + i);
+            customer.setPhoneNumber("123-456-789");
+            long customerId = userController.saveCustomer(customer).getId();
+
+            List<Long> petIds = Lists.newArrayList();
+            for (int p = 0; p < 2; p++) {
+                PetDTO pet = new PetDTO();
+                pet.setName("Pet " + i + "-" + p);
+                pet.setType(PetType.DOG);
+                pet.setOwnerId(customerId);
+                petIds.add(petController.savePet(pet).getId());
+            }
+
+            ScheduleDTO schedule = new ScheduleDTO();
+            schedule.setPetIds(petIds);
+            schedule.setEmployeeIds(Lists.newArrayList(
+                    employeeIds.get(i % EMPLOYEES), employeeIds.get((i + 1) % EMPLOYEES)));
+            // One Wednesday per schedule, as consecutive schedules share an employee and bookings may not overlap
+            schedule.setDate(DATE.plusWeeks(i));
+            schedule.setActivities(Sets.newHashSet(EmployeeSkill.FEEDING, EmployeeSkill.WALKING));
+            scheduleController.createSchedule(schedule);
+        }
+    }
+
+    @Test
+    public void comparePets() {
+        compare("GET /pet", () -> transactionTemplate.execute(status -> petService.getAllPets().stream()
+                        .map(pet -> new PetDTO(pet.getId(), pet.getType(), pet.getName(), pet.getCustomer().getId(),
+                                pet.getBirthDate(), pet.getNotes()))
+                        .collect(Collectors.toList())),
+                () -> petController.getPets());
+    }
+
+    @Test
+    public void compareCustomers() {
+        compare("GET /user/customer", () -> transactionTemplate.execute(status -> customerService.getAllCustomers()
+                        .stream()
+                        .map(ReadPathComparisonTest::toCustomerDTO)
+                        .collect(Collectors.toList())),
+                () -> userController.getAllCustomers());
+    }
+
+    @Test
+    public void compareSchedules() {
+        compare("GET /schedule", () -> transactionTemplate.execute(status -> scheduleService.getAllSchedules()
+                        .stream()
+                        .map(scheduleController::convertScheduleToDTO)
+                        .collect(Collectors.toList())),
+                () -> scheduleController.getAllSchedules());
+    }
+
+    private static CustomerDTO toCustomerDTO(Customer customer) {
+        List<Long> petIds = customer.getPets().stream().map(Pet::getId).collect(Collectors.toList());
+        return new CustomerDTO(customer.getId(), customer.getName(), customer.getPhoneNumber(), customer.getNotes(),
+                petIds);
+    }
+
+    private static void compare(String endpoint, Supplier<List<?>> entityPath, Supplier<List<?>> projectionPath) {
+        Measurement entities = measure(entityPath);
+        Measurement projection = measure(projectionPath);
+        System.out.printf("%-18s rows=%-6d entity path: %8.2f ms %10d KB | projection path: %8.2f ms %10d KB%n",
+                endpoint, entities.rows, entities.millis, entities.kilobytes,
+                projection.millis, projection.kilobytes);
+    }
+
+    private static Measurement measure(Supplier<List<?>> call) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        int rows = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            rows = call.get().size();
+        }
+        long allocatedBefore = threads.getThreadAllocatedBytes(Thread.currentThread().threadId());
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            call.get();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().threadId()) - allocatedBefore;
+
+        Measurement measurement = new Measurement();
+        measurement.rows = rows;
+        measurement.millis = elapsed / 1e6 / ITERATIONS;
+        measurement.kilobytes = allocated / 1024 / ITERATIONS;
+        return measurement;
+    }
+
+    private static class Measurement {
+        private int rows;
+        private double millis;
+        private long kilobytes;
+    }
+}
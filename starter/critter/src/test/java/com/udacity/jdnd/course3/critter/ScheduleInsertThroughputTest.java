@@ -0,0 +1,142 @@
+package com.udacity.jdnd.course3.critter;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.udacity.jdnd.course3.critter.pet.PetController;
+import com.udacity.jdnd.course3.critter.pet.PetDTO;
+import com.udacity.jdnd.course3.critter.pet.PetType;
+import com.udacity.jdnd.course3.critter.schedule.ScheduleController;
+import com.udacity.jdnd.course3.critter.schedule.ScheduleDTO;
+import com.udacity.jdnd.course3.critter.user.CustomerDTO;
+import com.udacity.jdnd.course3.critter.user.EmployeeDTO;
+import com.udacity.jdnd.course3.critter.user.EmployeeSkill;
+import com.udacity.jdnd.course3.critter.user.UserController;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures schedule creation throughput under concurrent load with an id allocation size of 1 (a locked
+ * update of the id_generator row for every insert, like the old shared hibernate_sequence table) against
+ * the pooled-lo allocation used by the application.
+ * <p>
+ * This is a measurement, not a check, so it only runs on request:
+ * {@code mvn test -Dtest=ScheduleInsertThroughputTest -Dcritter.benchmark=true [-Dcritter.benchmark.threads=8]}
+ */
+@EnabledIfSystemProperty(named = "critter.benchmark", matches = "true")
+public class ScheduleInsertThroughputTest {
+
+    private static final int THREADS = Integer.getInteger("critter.benchmark.threads", 8);
+    private static final int SCHEDULES_PER_THREAD = Integer.getInteger("critter.benchmark.schedules", 500);
+    private static final int WARMUP_PER_THREAD = 50;
+    private static final LocalDate DATE = LocalDate.of(2019, 12, 25);
+
+    @Test
+    public void compareAllocationSizes() throws Exception {
+        double unpooled = measure(1, "none");
+        double pooled = measure(50, "pooled-lo");
+        System.out.printf("POST /schedule threads=%d: allocation size 1: %8.1f schedules/s | "
+                + "pooled-lo 50: %8.1f schedules/s%n", THREADS, unpooled, pooled);
+    }
+
+    private static double measure(int allocationSize, String optimizer) throws Exception {
+        // Every run gets its own database so that both start from an empty id_generator table
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(CritterApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.datasource.url=jdbc:h2:mem:schedule-insert-" + allocationSize,
+                        "spring.jpa.properties.critter.id.allocation-size=" + allocationSize,
+                        "spring.jpa.properties.critter.id.optimizer=" + optimizer,
+                        // The JCache regions are shared by all contexts in the JVM, so a context on its own database must not use them
+                        "spring.jpa.properties.hibernate.cache.use_second_level_cache=false",
+                        "spring.jpa.properties.hibernate.cache.use_query_cache=false")
+                .run()) {
+            ScheduleDTO template = createScheduleTemplate(context);
+            ScheduleController scheduleController = context.getBean(ScheduleController.class);
+            AtomicInteger days = new AtomicInteger();
+
+            run(scheduleController, template, days, WARMUP_PER_THREAD);
+            long start = System.nanoTime();
+            int created = run(scheduleController, template, days, SCHEDULES_PER_THREAD);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            return created / seconds;
+        }
+    }
+
+    private static int run(ScheduleController scheduleController, ScheduleDTO template, AtomicInteger days,
+                           int perThread) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Integer>> results = Lists.newArrayList();
+            for (int t = 0; t < THREADS; t++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < perThread; i++) {
+                        // The employee can only be booked once per day, so every schedule gets the next date
+                        ScheduleDTO schedule = new ScheduleDTO();
+                        schedule.setPetIds(template.getPetIds());
+                        schedule.setEmployeeIds(template.getEmployeeIds());
+                        schedule.setDate(DATE.plusDays(days.getAndIncrement()));
+                        schedule.setActivities(template.getActivities());
+                        scheduleController.createSchedule(schedule);
+                    }
+                    return perThread;
+                }));
+            }
+            start.countDown();
+
+            int created = 0;
+            for (Future<Integer> result : results) {
+                created += result.get();
+            }
+            return created;
+        } finally {
+            executor.shutdown();
+            Assertions.assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        }
+    }
+
+    private static ScheduleDTO createScheduleTemplate(ConfigurableApplicationContext context) {
+        UserController userController = context.getBean(UserController.class);
+        PetController petController = context.getBean(PetController.class);
+
+        CustomerDTO customer = new CustomerDTO();
+        customer.setName("Customer");
+        customer.setPhoneNumber("123-456-789");
+        long customerId = userController.saveCustomer(customer).getId();
+
+        PetDTO pet = new PetDTO();
+        pet.setName("Pet");
+        pet.setType(PetType.DOG);
+        pet.setOwnerId(customerId);
+        long petId = petController.savePet(pet).getId();
+
+        EmployeeDTO employee = new EmployeeDTO();
+        employee.setName("Employee");
+        employee.setSkills(Sets.newHashSet(EmployeeSkill.FEEDING, EmployeeSkill.WALKING));
+        employee.setDaysAvailable(EnumSet.allOf(DayOfWeek.class));
+        long employeeId = userController.saveEmployee(employee).getId();
+
+        ScheduleDTO schedule = new ScheduleDTO();
+        schedule.setPetIds(Lists.newArrayList(petId));
+        schedule.setEmployeeIds(Lists.newArrayList(employeeId));
+        schedule.setDate(DATE);
+        schedule.setActivities(Sets.newHashSet(EmployeeSkill.FEEDING, EmployeeSkill.WALKING));
+        return schedule;
+    }
+}